@@ -29,7 +29,21 @@ public class OAuthConverter {
     public static OAuthAccessor createOAuthAccessor(ServiceProviderToken token) {
         requireNonNull(token, "token");
 
-        OAuthAccessor accessor = new OAuthAccessor(OAuthConverter.toOAuthConsumer(token.getConsumer()));
+        return createOAuthAccessor(token, OAuthConverter.toOAuthConsumer(token.getConsumer()));
+    }
+
+    /**
+     * Creates an OAuth Accessor based on input token, for an already converted consumer
+     *
+     * @param token    input token
+     * @param consumer the token's consumer, as returned by {@link #toOAuthConsumer(Consumer)}
+     * @return Oauth accessor
+     */
+    public static OAuthAccessor createOAuthAccessor(ServiceProviderToken token, OAuthConsumer consumer) {
+        requireNonNull(token, "token");
+        requireNonNull(consumer, "consumer");
+
+        OAuthAccessor accessor = new OAuthAccessor(consumer);
         setTokenData(accessor, token);
         return accessor;
     }
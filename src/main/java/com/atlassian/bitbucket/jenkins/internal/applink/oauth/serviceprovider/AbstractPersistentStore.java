@@ -63,9 +63,9 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
             }
         }
         // storedMap will be unmarshalled as a HashMap if the config file exists, otherwise will be null. Either
-        // way, we convert it to the Jenkins-provided concurrent copy-on-write Map that will be copied on each save and
-        // written to disk, until the next Jenkins restart
-        entityMap = new CopyOnWriteMap.Hash<>(entityMap != null ? entityMap : emptyMap());
+        // way, we convert it to a concurrent Map that will be written to disk on each save, until the next Jenkins
+        // restart
+        entityMap = newEntityMap(entityMap != null ? entityMap : emptyMap());
     }
 
     @Override
@@ -106,6 +106,17 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
         return Secret.toString(Secret.decrypt(encryptedValue));
     }
 
+    /**
+     * Creates the in-memory map holding the entities once they have been loaded. Defaults to the Jenkins-provided
+     * concurrent copy-on-write Map, which suits stores that are rarely written to.
+     *
+     * @param entities the entities loaded from disk
+     * @return the map to hold the entities in
+     */
+    protected Map<String, T> newEntityMap(Map<String, T> entities) {
+        return new CopyOnWriteMap.Hash<>(entities);
+    }
+
     protected abstract Class<T> getEntityClass();
 
     protected abstract String getStoreValueName();
@@ -1,7 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
 
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.OAuthConverter;
-import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ConsumerVerifier;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.InvalidTokenException;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.NoSuchUserException;
@@ -184,8 +184,8 @@ public class OAuth1aRequestFilter implements Filter {
 
             throw new OAuthProblemException(TOKEN_EXPIRED);
         }
-        validate3LOMessage(message, token);
-        validateConsumer(message);
+        ConsumerVerifier verifier = validateConsumer(message);
+        validate3LOMessage(message, token, verifier);
         return token.getUser();
     }
 
@@ -231,11 +231,11 @@ public class OAuth1aRequestFilter implements Filter {
         }
     }
 
-    private Consumer validateConsumer(OAuthMessage message) throws IOException, OAuthException {
+    private ConsumerVerifier validateConsumer(OAuthMessage message) throws IOException, OAuthException {
         // This consumer must exist at the time the token is used.
         String consumerKey = message.getConsumerKey();
 
-        return consumerStore.get(consumerKey).orElseThrow(() -> {
+        return consumerStore.getVerifier(consumerKey).orElseThrow(() -> {
             log.log(INFO, "Unknown consumer key:'{}' supplied in OAuth request" + consumerKey);
             return new OAuthProblemException(CONSUMER_KEY_UNKNOWN);
         });
@@ -279,11 +279,12 @@ public class OAuth1aRequestFilter implements Filter {
         }
     }
 
-    private void validate3LOMessage(OAuthMessage message, ServiceProviderToken token)
+    private void validate3LOMessage(OAuthMessage message, ServiceProviderToken token, ConsumerVerifier verifier)
             throws OAuthException, IOException, URISyntaxException {
         printMessageToDebug(message);
 
-        validator.validateMessage(message, OAuthConverter.createOAuthAccessor(token));
+        // the verifier is for the current consumer, so changes to its key apply to tokens issued before the change
+        validator.validateMessage(message, OAuthConverter.createOAuthAccessor(token, verifier.getOAuthConsumer()));
     }
 
     private static String getBaseUrl(HttpServletRequest request) {
@@ -0,0 +1,135 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Remembers the nonces of recent OAuth requests, so that a signed request cannot be replayed. Nonces are kept
+ * separately for each consumer, so that one consumer making a lot of requests cannot lock out another.
+ * Only requests whose timestamp is within the accepted age of the current time get this far, so each consumer's
+ * nonces are kept in a ring of buckets, one per {@link #BUCKET_WIDTH} of request timestamps, covering the whole
+ * accepted range. A bucket is replaced by an empty one when the first request of a newer window falls into it, at
+ * which point none of the nonces it held could be accepted again anyway.
+ * <p>
+ * Adding and looking up a nonce is a single insert into a concurrent set, and the cache never holds more than
+ * {@link #MAX_SIZE} nonces for each consumer. A nonce is never forgotten while a request with its timestamp could still
+ * be accepted, so when a bucket is full, further requests from that consumer with timestamps in its window are
+ * rejected. Nonces are only recorded once a request's signature has been verified, so requests that were not signed
+ * by the consumer can neither fill its buckets nor add consumers.
+ */
+@Singleton
+public class OAuthNonceCache {
+
+    /**
+     * The maximum number of nonces to remember for each consumer. Defaults to 100,000.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.oauth.nonce.cache.size", 100_000);
+    /**
+     * The range of request timestamps sharing a bucket, in ms.
+     */
+    static final long BUCKET_WIDTH = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger log = Logger.getLogger(OAuthNonceCache.class.getName());
+
+    private final int bucketCount;
+    private final Map<String, ConsumerNonces> consumers = new ConcurrentHashMap<>();
+    private final int maxBucketSize;
+
+    @Inject
+    public OAuthNonceCache() {
+        this(ReplayProtectingOAuthValidator.MAX_TIMESTAMP_AGE, MAX_SIZE);
+    }
+
+    @VisibleForTesting
+    OAuthNonceCache(long maxTimestampAge, long maxSize) {
+        // requests up to maxTimestampAge either side of now are accepted, and one more bucket is needed so that the
+        // bucket being replaced is never one that can still be used
+        bucketCount = (int) (2 * maxTimestampAge / BUCKET_WIDTH) + 2;
+        maxBucketSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxSize / bucketCount));
+    }
+
+    /**
+     * Records the nonce of a request, unless it has already been used.
+     *
+     * @param consumerKey the key of the consumer that signed the request
+     * @param token       the token the request was made with, if any
+     * @param nonce       the nonce of the request
+     * @param timestamp   the timestamp of the request, in seconds
+     * @return {@code true} if the nonce had not been used with this consumer, token and timestamp before, or
+     *         {@code false} if the request must be rejected
+     */
+    public boolean add(String consumerKey, @Nullable String token, String nonce, long timestamp) {
+        return consumers.computeIfAbsent(consumerKey, ConsumerNonces::new)
+                .add((token == null ? "" : token) + '\n' + timestamp + '\n' + nonce, timestamp);
+    }
+
+    private final class Bucket {
+
+        private final String consumerKey;
+        private final Set<String> nonces = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+        private final long window;
+
+        private Bucket(String consumerKey, long window) {
+            this.consumerKey = consumerKey;
+            this.window = window;
+        }
+
+        private boolean add(String key) {
+            if (size.get() >= maxBucketSize) {
+                if (size.getAndIncrement() == maxBucketSize) {
+                    log.warning(() -> String.format("Consumer %s made more than %d OAuth requests within %d ms, " +
+                                                    "further requests in that time are rejected", consumerKey,
+                            maxBucketSize, BUCKET_WIDTH));
+                }
+                return false;
+            }
+            if (!nonces.add(key)) {
+                return false;
+            }
+            size.incrementAndGet();
+            return true;
+        }
+    }
+
+    private final class ConsumerNonces {
+
+        private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(bucketCount);
+        private final String consumerKey;
+
+        private ConsumerNonces(String consumerKey) {
+            this.consumerKey = consumerKey;
+        }
+
+        private boolean add(String key, long timestamp) {
+            long window = Math.floorDiv(TimeUnit.SECONDS.toMillis(timestamp), BUCKET_WIDTH);
+            int index = (int) Math.floorMod(window, (long) buckets.length());
+            while (true) {
+                Bucket bucket = buckets.get(index);
+                if (bucket == null || bucket.window < window) {
+                    Bucket replacement = new Bucket(consumerKey, window);
+                    if (!buckets.compareAndSet(index, bucket, replacement)) {
+                        continue;
+                    }
+                    bucket = replacement;
+                } else if (bucket.window > window) {
+                    // a request far newer has been seen, so this one is too old to be told apart from a replay
+                    return false;
+                }
+                return bucket.add(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ConsumerVerifier;
+import net.oauth.*;
+import net.oauth.signature.OAuthSignatureMethod;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+
+import static java.util.Objects.requireNonNull;
+import static net.oauth.OAuth.Problems.NONCE_USED;
+import static net.oauth.OAuth.Problems.OAUTH_ACCEPTABLE_TIMESTAMPS;
+import static net.oauth.OAuth.Problems.SIGNATURE_INVALID;
+import static net.oauth.OAuth.Problems.TIMESTAMP_REFUSED;
+
+/**
+ * Validates OAuth messages as {@link SimpleOAuthValidator} does, but checks nonces against the shared, bounded
+ * {@link OAuthNonceCache} instead of the validator's own set of used nonces, which is guarded by a single lock and
+ * is only trimmed as requests come in. A nonce is only recorded once the request's signature has been verified, so
+ * that requests that were not signed by the consumer cannot use up its nonces.
+ * <p>
+ * RSA-SHA1 signatures are checked with the {@link ConsumerVerifier} attached to the accessor's consumer, if there is
+ * one, rather than creating a new signature method and {@link java.security.Signature} for every request.
+ */
+@Singleton
+public class ReplayProtectingOAuthValidator extends SimpleOAuthValidator {
+
+    /**
+     * How far the timestamp of a request may be from the current time, in ms.
+     */
+    static final long MAX_TIMESTAMP_AGE = DEFAULT_MAX_TIMESTAMP_AGE;
+
+    private final Clock clock;
+    private final OAuthNonceCache nonceCache;
+
+    @Inject
+    public ReplayProtectingOAuthValidator(OAuthNonceCache nonceCache, Clock clock) {
+        this.nonceCache = requireNonNull(nonceCache, "nonceCache");
+        this.clock = requireNonNull(clock, "clock");
+    }
+
+    @Override
+    protected long currentTimeMsec() {
+        return clock.millis();
+    }
+
+    @Override
+    public void validateMessage(OAuthMessage message, OAuthAccessor accessor)
+            throws OAuthException, IOException, URISyntaxException {
+        super.validateMessage(message, accessor);
+        recordNonce(message);
+    }
+
+    /**
+     * Checks that the request has a nonce and that its timestamp is close enough to the current time. The nonce itself
+     * is checked by {@link #validateMessage} once the signature has been verified.
+     */
+    @Override
+    protected void validateTimestampAndNonce(OAuthMessage message) throws IOException, OAuthProblemException {
+        message.requireParameters(OAuth.OAUTH_TIMESTAMP, OAuth.OAUTH_NONCE);
+        long timestamp = Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP));
+        long now = currentTimeMsec();
+        long min = (now - MAX_TIMESTAMP_AGE + 500) / 1000L;
+        long max = (now + MAX_TIMESTAMP_AGE + 500) / 1000L;
+        if (timestamp < min || max < timestamp) {
+            OAuthProblemException problem = new OAuthProblemException(TIMESTAMP_REFUSED);
+            problem.setParameter(OAUTH_ACCEPTABLE_TIMESTAMPS, min + "-" + max);
+            throw problem;
+        }
+    }
+
+    @Override
+    protected void validateSignature(OAuthMessage message, OAuthAccessor accessor)
+            throws OAuthException, IOException, URISyntaxException {
+        ConsumerVerifier verifier = ConsumerVerifier.of(accessor.consumer);
+        if (verifier == null || !verifier.canVerify(message.getSignatureMethod())) {
+            super.validateSignature(message, accessor);
+            return;
+        }
+        message.requireParameters(OAuth.OAUTH_CONSUMER_KEY, OAuth.OAUTH_SIGNATURE_METHOD, OAuth.OAUTH_SIGNATURE);
+        String signature = message.getSignature();
+        String baseString = OAuthSignatureMethod.getBaseString(message);
+        boolean valid;
+        try {
+            valid = verifier.verify(baseString.getBytes(OAuth.ENCODING), OAuthSignatureMethod.decodeBase64(signature));
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+        if (!valid) {
+            OAuthProblemException problem = new OAuthProblemException(SIGNATURE_INVALID);
+            problem.setParameter(OAuth.OAUTH_SIGNATURE, signature);
+            problem.setParameter("oauth_signature_base_string", baseString);
+            problem.setParameter(OAuth.OAUTH_SIGNATURE_METHOD, message.getSignatureMethod());
+            throw problem;
+        }
+    }
+
+    private void recordNonce(OAuthMessage message) throws IOException, OAuthProblemException {
+        long timestamp = Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP));
+        if (!nonceCache.add(message.getConsumerKey(), message.getToken(),
+                message.getParameter(OAuth.OAUTH_NONCE), timestamp)) {
+            throw new OAuthProblemException(NONCE_USED);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.OAuthConverter;
+import net.oauth.OAuth;
+import net.oauth.OAuthConsumer;
+
+import javax.annotation.CheckForNull;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Everything needed to check the signature of a request from a {@link Consumer consumer}, built once per consumer so
+ * that requests do not have to convert the consumer for the OAuth library or look up signature algorithms each time.
+ * <p>
+ * The verifier is attached to its {@link #getOAuthConsumer() OAuth consumer} as the {@link #PROPERTY} property, so
+ * that a validator given an accessor for the consumer can find it.
+ *
+ * @see ServiceProviderConsumerStore#getVerifier(String)
+ */
+public final class ConsumerVerifier {
+
+    /**
+     * The name of the {@link OAuthConsumer} property holding the consumer's verifier.
+     */
+    public static final String PROPERTY = ConsumerVerifier.class.getName();
+
+    // Signature instances are not thread safe, so each thread keeps its own and initializes it with the key to use
+    private static final ThreadLocal<Signature> RSA_SHA1_SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA1withRSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA1withRSA signatures are not supported", e);
+        }
+    });
+
+    private final Consumer consumer;
+    private final OAuthConsumer oauthConsumer;
+    private final PublicKey publicKey;
+
+    public ConsumerVerifier(Consumer consumer) {
+        this.consumer = requireNonNull(consumer, "consumer");
+        publicKey = consumer.getSignatureMethod() == Consumer.SignatureMethod.RSA_SHA1 ?
+                consumer.getPublicKey().orElse(null) : null;
+        oauthConsumer = OAuthConverter.toOAuthConsumer(consumer);
+        oauthConsumer.setProperty(PROPERTY, this);
+    }
+
+    /**
+     * Returns the verifier attached to the OAuth consumer, if it was created from a {@code ConsumerVerifier}.
+     *
+     * @param oauthConsumer the OAuth consumer
+     * @return the verifier, or {@code null} if there is none
+     */
+    @CheckForNull
+    public static ConsumerVerifier of(OAuthConsumer oauthConsumer) {
+        Object verifier = oauthConsumer.getProperty(PROPERTY);
+        return verifier instanceof ConsumerVerifier ? (ConsumerVerifier) verifier : null;
+    }
+
+    /**
+     * @return the consumer the verifier was created for
+     */
+    public Consumer getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * @return the consumer, converted for the OAuth library. It must not be modified.
+     */
+    public OAuthConsumer getOAuthConsumer() {
+        return oauthConsumer;
+    }
+
+    /**
+     * @param signatureMethod the signature method of a request
+     * @return {@code true} if {@link #verify(byte[], byte[])} can check signatures made with the method
+     */
+    public boolean canVerify(String signatureMethod) {
+        return publicKey != null && OAuth.RSA_SHA1.equals(signatureMethod);
+    }
+
+    /**
+     * Checks an RSA-SHA1 signature against the consumer's public key.
+     *
+     * @param data      the signed data
+     * @param signature the signature
+     * @return {@code true} if the signature is valid
+     * @throws GeneralSecurityException if the signature could not be checked
+     * @throws IllegalStateException    if the consumer has no public key
+     */
+    public boolean verify(byte[] data, byte[] signature) throws GeneralSecurityException {
+        if (publicKey == null) {
+            throw new IllegalStateException("Consumer " + consumer.getKey() + " has no RSA public key");
+        }
+        Signature verifier = RSA_SHA1_SIGNATURE.get();
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
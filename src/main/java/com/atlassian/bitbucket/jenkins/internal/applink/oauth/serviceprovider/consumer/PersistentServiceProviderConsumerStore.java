@@ -22,6 +22,7 @@ import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import static java.util.Objects.requireNonNull;
@@ -48,6 +49,8 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
     private static final String CONSUMER_STORE_KEY_NAME = "consumer-key";
     private static final String CONSUMER_STORE_VALUE_NAME = "consumer-details";
 
+    private final transient Map<String, ConsumerVerifier> verifiers = new ConcurrentHashMap<>();
+
     public PersistentServiceProviderConsumerStore() {
         super("oauth-consumers.xml", new ConsumerConverter());
     }
@@ -77,6 +80,23 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
         return ofNullable(entityMap.get(key));
     }
 
+    @Override
+    public Optional<ConsumerVerifier> getVerifier(String key) {
+        requireNonNull(key, "key");
+        load();
+        Consumer consumer = entityMap.get(key);
+        if (consumer == null) {
+            return Optional.empty();
+        }
+        // the verifier is also rebuilt if the consumer was replaced without going through update, e.g. by a reload
+        ConsumerVerifier verifier = verifiers.get(key);
+        if (verifier == null || verifier.getConsumer() != consumer) {
+            verifier = new ConsumerVerifier(consumer);
+            verifiers.put(key, verifier);
+        }
+        return Optional.of(verifier);
+    }
+
     @Override
     public Iterable<Consumer> getAll() {
         load();
@@ -87,6 +107,7 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
     public void delete(String key) {
         requireNonNull(key, "key");
         load();
+        verifiers.remove(key);
         if (entityMap.remove(key) != null) {
             save();
         }
@@ -101,6 +122,7 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
             throw new StoreException("No Consumer with the given key " + consumer.getKey());
         }
         entityMap.replace(consumer.getKey(), consumer);
+        verifiers.remove(consumer.getKey());
         save();
     }
 
@@ -33,6 +33,21 @@ public interface ServiceProviderConsumerStore {
      */
     Optional<Consumer> get(String key);
 
+    /**
+     * Retrieve the {@link ConsumerVerifier verifier} for the {@link Consumer consumer} whose
+     * {@link Consumer#getKey() key} attribute is equal to the {@code key} parameter, or
+     * {@link Optional#empty() empty} if such a {@link Consumer consumer} doesn't exist. Implementations may return the
+     * same verifier until the consumer is {@link #update(Consumer) updated} or {@link #delete(String) deleted}.
+     *
+     * @param key the {@link Consumer#getKey() consumer key}
+     * @return the verifier for the {@link Consumer consumer} with the given {@code key}, or
+     *         {@link Optional#empty() empty} if such a {@link Consumer consumer} doesn't exist
+     * @throws NullPointerException if the given {@code key} is {@code null}
+     */
+    default Optional<ConsumerVerifier> getVerifier(String key) {
+        return get(key).map(ConsumerVerifier::new);
+    }
+
     /**
      * Retrieve all the {@link Consumer consumers} from the store.
      *
@@ -0,0 +1,53 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Periodically removes expired OAuth tokens and the tokens of expired sessions from the
+ * {@link ServiceProviderTokenStore}, which would otherwise be kept forever.
+ */
+@Extension
+public class OAuthTokenExpiryReaper extends AsyncPeriodicWork {
+
+    /**
+     * How often expired tokens are removed. Defaults to 1 hour in ms.
+     */
+    static final long REAP_PERIOD =
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.token.reaper.period", TimeUnit.HOURS.toMillis(1));
+
+    private static final long INITIAL_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    @Inject
+    private ServiceProviderTokenStore tokenStore;
+
+    public OAuthTokenExpiryReaper() {
+        super("Bitbucket OAuth token expiry");
+    }
+
+    OAuthTokenExpiryReaper(ServiceProviderTokenStore tokenStore) {
+        this();
+        this.tokenStore = tokenStore;
+    }
+
+    @Override
+    public long getInitialDelay() {
+        return INITIAL_DELAY;
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return REAP_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        tokenStore.removeExpiredTokensAndSessions();
+    }
+}
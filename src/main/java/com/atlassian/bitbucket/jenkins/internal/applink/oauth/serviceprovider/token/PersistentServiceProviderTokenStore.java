@@ -5,6 +5,7 @@ import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.co
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.StoreException;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Authorization;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenJournal.Record;
 import com.google.common.annotations.VisibleForTesting;
 import com.thoughtworks.xstream.converters.ConversionException;
 import com.thoughtworks.xstream.converters.Converter;
@@ -12,33 +13,56 @@ import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+import hudson.BulkChange;
 import hudson.model.Saveable;
 import hudson.util.XStream2;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Authorization.AUTHORIZED;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newRequestToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenUtils.isTokenExpired;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenUtils.isTokenSessionExpired;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 import static java.util.stream.Collectors.toList;
 
 /**
  * A {@link ServiceProviderTokenStore} implementation that persists the {@link ServiceProviderToken tokens} to an XML
  * file
  * <p>
+ * Rather than rewriting the whole file whenever a token is added or removed, each change is appended to a
+ * {@link ServiceProviderTokenJournal journal} next to it. The XML file is a snapshot of the tokens: on load the
+ * journal is replayed on top of it, and once the journal holds more records than there are tokens (and at least
+ * {@link #COMPACTION_THRESHOLD}), the tokens are written to the XML file and the journal is started afresh. The XML
+ * file therefore stays in the same format, and can still be read by itself.
+ * <p>
+ * Tokens are also indexed by the user that authorized them and by their consumer, so that listing a user's tokens
+ * or removing a consumer's tokens only touches those tokens. The indexes are only changed along with the tokens,
+ * while holding the store's lock, and are rebuilt whenever the tokens are loaded.
+ * <p>
+ * Likewise, tokens are ordered by when they and their sessions expire, so that removing expired tokens only
+ * touches the tokens that have expired. {@link OAuthTokenExpiryReaper} does so periodically.
+ * <p>
  * Only one instance of this class must be created per Jenkins instance.
  *
  * @see Saveable
@@ -48,12 +72,25 @@ import static java.util.stream.Collectors.toList;
 public class PersistentServiceProviderTokenStore extends AbstractPersistentStore<ServiceProviderToken>
         implements ServiceProviderTokenStore {
 
+    /**
+     * The minimum number of journal records before the journal is compacted into the XML file. Defaults to 1000.
+     */
+    static final long COMPACTION_THRESHOLD =
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.token.journal.compaction", 1000);
+
     private static final Logger log = Logger.getLogger(PersistentServiceProviderTokenStore.class.getName());
 
+    private static final String JOURNAL_FILE_NAME = "oauth-tokens.journal";
     private static final String TOKEN_STORE_ENTRY_NAME = "oauth-token";
     private static final String TOKEN_STORE_KEY_NAME = "token-value";
     private static final String TOKEN_STORE_VALUE_NAME = "token-details";
 
+    private final transient ExpiryIndex sessionExpiries = new ExpiryIndex();
+    private final transient ExpiryIndex tokenExpiries = new ExpiryIndex();
+    private final transient SecondaryIndex tokensByConsumer = new SecondaryIndex();
+    private final transient SecondaryIndex tokensByUser = new SecondaryIndex();
+    private transient long journalSize;
+
     @Inject
     public PersistentServiceProviderTokenStore(ServiceProviderConsumerStore consumerStore) {
         super("oauth-tokens.xml", new ServiceProviderTokenConverter(consumerStore));
@@ -76,72 +113,317 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     public Iterable<ServiceProviderToken> getAccessTokensForUser(String username) {
         requireNonNull(username, "username");
         load();
-        return entityMap.values().stream().filter(token -> Objects.equals(username, token.getUser())).collect(toList());
+        return getIndexed(tokensByUser, username)
+                .filter(token -> Objects.equals(username, token.getUser()))
+                .collect(toList());
     }
 
     @Override
-    public ServiceProviderToken put(ServiceProviderToken token) {
+    public synchronized void load() {
+        if (entityMap != null) {
+            return;
+        }
+        super.load();
+        try {
+            journalSize = getJournal().replay(this::applyJournalRecord);
+        } catch (IOException e) {
+            log.log(SEVERE, "Failed to replay token journal", e);
+            throw new StoreException("Failed to load from disk", e);
+        }
+        rebuildIndexes();
+    }
+
+    @Override
+    public synchronized ServiceProviderToken put(ServiceProviderToken token) {
         requireNonNull(token, "token");
         load();
-        entityMap.put(token.getToken(), token);
-        save();
+        ServiceProviderToken previous = entityMap.put(token.getToken(), token);
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(token);
+        appendToJournal(singletonList(Record.put(toJournalPayload(token))));
         return token;
     }
 
     @Override
-    public void remove(String token) {
+    public synchronized void remove(String token) {
         requireNonNull(token, "token");
         load();
-        if (entityMap.remove(token) != null) {
-            save();
+        ServiceProviderToken removed = entityMap.remove(token);
+        if (removed != null) {
+            unindex(removed);
+            appendToJournal(singletonList(Record.remove(encrypt(token))));
         }
     }
 
     @Override
-    public void removeExpiredTokens() {
+    public synchronized void removeExpiredTokens() {
         load();
-        boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
-            if (isTokenExpired(token) && entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
-            }
-        }
-        if (needToSave) {
-            save();
-        }
+        removeAll(getExpired(tokenExpiries), ServiceProviderTokenUtils::isTokenExpired);
     }
 
     @Override
-    public void removeExpiredSessions() {
+    public synchronized void removeExpiredSessions() {
         load();
-        boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
-            if (isTokenSessionExpired(token) && entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
-            }
-        }
-        if (needToSave) {
-            save();
-        }
+        removeAll(getExpired(sessionExpiries), ServiceProviderTokenUtils::isTokenSessionExpired);
+    }
+
+    @Override
+    public synchronized void removeExpiredTokensAndSessions() {
+        load();
+        Set<ServiceProviderToken> expired = new HashSet<>(getExpired(tokenExpiries));
+        expired.addAll(getExpired(sessionExpiries));
+        removeAll(expired, token -> isTokenExpired(token) || isTokenSessionExpired(token));
     }
 
     @Override
-    public void removeByConsumer(String consumerKey) {
+    public synchronized void removeByConsumer(String consumerKey) {
         requireNonNull(consumerKey, "consumerKey");
         load();
-        boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
+        removeAll(getIndexed(tokensByConsumer, consumerKey).collect(toList()), token -> {
             Consumer consumer = token.getConsumer();
-            if (consumer != null && Objects.equals(consumerKey, consumer.getKey()) &&
-                entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
-            }
+            return consumer != null && Objects.equals(consumerKey, consumer.getKey());
+        });
+    }
+
+    /**
+     * Writes all tokens to the XML file, and starts a new journal.
+     */
+    @Override
+    public synchronized void save() {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        super.save();
+        try {
+            getJournal().delete();
+        } catch (IOException e) {
+            log.log(SEVERE, "Failed to remove compacted token journal", e);
+            throw new StoreException("Failed to persist to disk", e);
         }
-        if (needToSave) {
+        journalSize = 0;
+    }
+
+    @Override
+    protected Map<String, ServiceProviderToken> newEntityMap(Map<String, ServiceProviderToken> entities) {
+        return new ConcurrentHashMap<>(entities);
+    }
+
+    @VisibleForTesting
+    void appendToJournal(List<Record> records) {
+        try {
+            getJournal().append(records);
+        } catch (IOException e) {
+            log.log(SEVERE, "Failed to append to token journal", e);
+            throw new StoreException("Failed to persist to disk", e);
+        }
+        journalSize += records.size();
+        if (journalSize >= Math.max(COMPACTION_THRESHOLD, entityMap.size())) {
             save();
         }
     }
 
+    /**
+     * Rebuilds the indexes from the tokens, after they have been loaded.
+     */
+    @VisibleForTesting
+    synchronized void rebuildIndexes() {
+        sessionExpiries.clear();
+        tokenExpiries.clear();
+        tokensByConsumer.clear();
+        tokensByUser.clear();
+        entityMap.values().forEach(this::index);
+    }
+
+    /**
+     * The file where changes to the {@link ServiceProviderToken tokens} are journaled, next to the XML file
+     */
+    @VisibleForTesting
+    protected File getJournalFile() {
+        return new File(getConfigFile().getFile().getParentFile(), JOURNAL_FILE_NAME);
+    }
+
+    private void applyJournalRecord(Record record) {
+        if (record.isRemove()) {
+            entityMap.remove(decrypt(record.getPayload()));
+            return;
+        }
+        try {
+            ServiceProviderToken token = (ServiceProviderToken) xStream.fromXML(record.getPayload());
+            entityMap.put(token.getToken(), token);
+        } catch (RuntimeException e) {
+            // Most likely the token's consumer has since been deleted, along with its tokens
+            log.log(WARNING, "Skipping token journal record that could not be read", e);
+        }
+    }
+
+    private List<ServiceProviderToken> getExpired(ExpiryIndex index) {
+        return index.getExpiredBefore(currentTimeMillis()).stream()
+                .map(entityMap::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
+
+    private Stream<ServiceProviderToken> getIndexed(SecondaryIndex index, String key) {
+        return index.get(key).stream()
+                .map(entityMap::get)
+                .filter(Objects::nonNull);
+    }
+
+    private ServiceProviderTokenJournal getJournal() {
+        return new ServiceProviderTokenJournal(getJournalFile());
+    }
+
+    private void index(ServiceProviderToken token) {
+        tokenExpiries.add(getExpiry(token), token.getToken());
+        if (token.getSession() != null) {
+            sessionExpiries.add(getExpiry(token.getSession()), token.getToken());
+        }
+        if (token.getConsumer() != null) {
+            tokensByConsumer.add(token.getConsumer().getKey(), token.getToken());
+        }
+        if (token.getUser() != null) {
+            tokensByUser.add(token.getUser(), token.getToken());
+        }
+    }
+
+    private void removeAll(Collection<ServiceProviderToken> candidates, Predicate<ServiceProviderToken> predicate) {
+        List<Record> removed = new ArrayList<>();
+        for (ServiceProviderToken token : candidates) {
+            if (predicate.test(token) && entityMap.remove(token.getToken()) != null) {
+                unindex(token);
+                removed.add(Record.remove(encrypt(token.getToken())));
+            }
+        }
+        if (!removed.isEmpty()) {
+            appendToJournal(removed);
+        }
+    }
+
+    private String toJournalPayload(ServiceProviderToken token) {
+        StringWriter writer = new StringWriter();
+        xStream.marshal(token, new CompactWriter(writer));
+        return writer.toString();
+    }
+
+    private void unindex(ServiceProviderToken token) {
+        tokenExpiries.remove(getExpiry(token), token.getToken());
+        if (token.getSession() != null) {
+            sessionExpiries.remove(getExpiry(token.getSession()), token.getToken());
+        }
+        if (token.getConsumer() != null) {
+            tokensByConsumer.remove(token.getConsumer().getKey(), token.getToken());
+        }
+        if (token.getUser() != null) {
+            tokensByUser.remove(token.getUser(), token.getToken());
+        }
+    }
+
+    private static long getExpiry(ServiceProviderToken token) {
+        return saturatedAdd(token.getCreationTime(), token.getTimeToLive());
+    }
+
+    private static long getExpiry(ServiceProviderToken.Session session) {
+        return saturatedAdd(session.getLastRenewalTime(), session.getTimeToLive());
+    }
+
+    private static long saturatedAdd(long time, long timeToLive) {
+        return timeToLive > Long.MAX_VALUE - time ? Long.MAX_VALUE : time + timeToLive;
+    }
+
+    /**
+     * Orders token values by when they expire, so that the expired ones can be found without looking at the others.
+     * Must only be used while holding the store's lock.
+     */
+    private static final class ExpiryIndex {
+
+        private final NavigableSet<Expiry> expiries = new TreeSet<>();
+
+        private void add(long expiry, String token) {
+            expiries.add(new Expiry(expiry, token));
+        }
+
+        private void clear() {
+            expiries.clear();
+        }
+
+        private List<String> getExpiredBefore(long now) {
+            // A token has expired once the current time is after its expiry time
+            return expiries.headSet(new Expiry(now, ""), false).stream()
+                    .map(expiry -> expiry.token)
+                    .collect(toList());
+        }
+
+        private void remove(long expiry, String token) {
+            expiries.remove(new Expiry(expiry, token));
+        }
+    }
+
+    private static final class Expiry implements Comparable<Expiry> {
+
+        private static final Comparator<Expiry> ORDER =
+                Comparator.<Expiry>comparingLong(expiry -> expiry.time).thenComparing(expiry -> expiry.token);
+
+        private final long time;
+        private final String token;
+
+        private Expiry(long time, String token) {
+            this.time = time;
+            this.token = token;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return ORDER.compare(this, other);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Expiry expiry = (Expiry) o;
+            return time == expiry.time && token.equals(expiry.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, token);
+        }
+    }
+
+    /**
+     * Maps a key, such as a username, to the values of the tokens with that key. Safe for concurrent reads, but must
+     * only be changed while holding the store's lock.
+     */
+    private static final class SecondaryIndex {
+
+        private final Map<String, Set<String>> index = new ConcurrentHashMap<>();
+
+        private void add(String key, String token) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(token);
+        }
+
+        private void clear() {
+            index.clear();
+        }
+
+        private Set<String> get(String key) {
+            return index.getOrDefault(key, emptySet());
+        }
+
+        private void remove(String key, String token) {
+            index.computeIfPresent(key, (k, tokens) -> {
+                tokens.remove(token);
+                return tokens.isEmpty() ? null : tokens;
+            });
+        }
+    }
+
     @Override
     protected Class<ServiceProviderToken> getEntityClass() {
         return ServiceProviderToken.class;
@@ -0,0 +1,167 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An append-only log of the changes made to a {@link PersistentServiceProviderTokenStore} since its snapshot was last
+ * written. Each record is stored as {@code [byte operation][int length][int crc32][payload]}, where the payload is
+ * UTF-8 encoded and the checksum covers the operation and the payload.
+ * <p>
+ * Replay stops at the first record that was only partly written, for example because Jenkins stopped while writing
+ * it, or that is corrupt: an unknown operation, a length over {@link #MAX_RECORD_LENGTH} or a checksum that does not
+ * match. Such a record and everything after it are discarded, so that later records are appended after the last
+ * valid one. A corrupt record is logged as an error, since the changes after it are lost.
+ */
+final class ServiceProviderTokenJournal {
+
+    /**
+     * The largest payload a record may have, in bytes. Tokens are a few KB, so a larger length can only come from a
+     * corrupt record.
+     */
+    static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private static final Logger log = Logger.getLogger(ServiceProviderTokenJournal.class.getName());
+
+    private static final int HEADER_SIZE = 1 + 4 + 4;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final File file;
+
+    ServiceProviderTokenJournal(File file) {
+        this.file = requireNonNull(file, "file");
+    }
+
+    /**
+     * Appends the records to the journal, and waits for them to be written to disk.
+     *
+     * @param records the records to append
+     * @throws IOException if the records could not be written, or one of them is larger than
+     *                     {@link #MAX_RECORD_LENGTH}
+     */
+    void append(List<Record> records) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            for (Record record : records) {
+                byte[] payload = record.payload.getBytes(StandardCharsets.UTF_8);
+                if (payload.length > MAX_RECORD_LENGTH) {
+                    throw new IOException("Token journal record of " + payload.length + " bytes is too large");
+                }
+                byte operation = record.remove ? REMOVE : PUT;
+                data.writeByte(operation);
+                data.writeInt(payload.length);
+                data.writeInt(checksum(operation, payload));
+                data.write(payload);
+            }
+            data.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Removes the journal, once its records have been written to a snapshot.
+     *
+     * @throws IOException if the journal could not be removed
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Passes every valid record in the journal, in the order they were appended, to the handler. The journal is
+     * truncated after the last valid record.
+     *
+     * @param handler applies each record
+     * @return the number of records replayed
+     * @throws IOException if the journal could not be read
+     */
+    int replay(Consumer<Record> handler) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        long validLength = 0;
+        boolean corrupt = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int operation;
+            while ((operation = in.read()) != -1) {
+                int length = in.readInt();
+                int expectedChecksum = in.readInt();
+                if ((operation != PUT && operation != REMOVE) || length < 0 || length > MAX_RECORD_LENGTH) {
+                    corrupt = true;
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksum(operation, payload) != expectedChecksum) {
+                    corrupt = true;
+                    break;
+                }
+                handler.accept(new Record(operation == REMOVE, new String(payload, StandardCharsets.UTF_8)));
+                validLength += HEADER_SIZE + length;
+                count++;
+            }
+        } catch (EOFException e) {
+            log.warning(() -> String.format("Discarding incomplete record at the end of %s", file));
+            truncate(validLength);
+            return count;
+        }
+        if (corrupt) {
+            long offset = validLength;
+            long discarded = file.length() - validLength;
+            log.severe(() -> String.format("Token journal %s has a corrupt record at offset %d, discarding the " +
+                                           "last %d bytes. Token changes recorded from that offset on are lost",
+                    file, offset, discarded));
+            truncate(validLength);
+        }
+        return count;
+    }
+
+    private static int checksum(int operation, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(operation);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    static final class Record {
+
+        private final String payload;
+        private final boolean remove;
+
+        private Record(boolean remove, String payload) {
+            this.remove = remove;
+            this.payload = requireNonNull(payload, "payload");
+        }
+
+        static Record put(String payload) {
+            return new Record(false, payload);
+        }
+
+        static Record remove(String payload) {
+            return new Record(true, payload);
+        }
+
+        String getPayload() {
+            return payload;
+        }
+
+        boolean isRemove() {
+            return remove;
+        }
+    }
+}
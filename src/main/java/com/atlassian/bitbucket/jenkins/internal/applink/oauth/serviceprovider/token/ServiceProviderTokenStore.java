@@ -78,6 +78,17 @@ public interface ServiceProviderTokenStore {
      */
     void removeExpiredSessions();
 
+    /**
+     * Remove every {@code ServiceProviderToken} that either {@link #removeExpiredTokens} or
+     * {@link #removeExpiredSessions} would remove. Stores may override this to remove them all in one operation.
+     *
+     * @throws StoreException thrown if there is a problem removing the {@code ServiceProviderToken}s
+     */
+    default void removeExpiredTokensAndSessions() {
+        removeExpiredTokens();
+        removeExpiredSessions();
+    }
+
     /**
      * Remove all the {@code ServiceProviderToken}s created by the consumer.
      *
@@ -0,0 +1,62 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketDirectoryChild;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPathType;
+
+import java.util.List;
+
+/**
+ * Client for reading the files of a repository at a given commit, without cloning it.
+ */
+public interface BitbucketFilePathClient {
+
+    /**
+     * Returns the files and directories in the directory at the given commit.
+     *
+     * @param commitId the commit to list the directory at
+     * @param path     the path of the directory, relative to the root of the repository, or an empty string for the
+     *                 root itself
+     * @return the children of the directory
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the path does not exist at the commit
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    List<BitbucketDirectoryChild> getDirectoryContent(String commitId, String path);
+
+    /**
+     * Returns the type of the path at the given commit.
+     *
+     * @param commitId the commit to look the path up at
+     * @param path     the path, relative to the root of the repository
+     * @return the type of the path
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the path does not exist at the commit
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    BitbucketPathType getPathType(String commitId, String path);
+
+    /**
+     * Returns the content of the file at the given commit.
+     *
+     * @param commitId the commit to read the file at
+     * @param path     the path of the file, relative to the root of the repository
+     * @return the raw bytes of the file
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the file does not exist at the commit
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    byte[] getRawContent(String commitId, String path);
+}
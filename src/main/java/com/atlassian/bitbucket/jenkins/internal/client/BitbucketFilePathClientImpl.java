@@ -0,0 +1,95 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketDirectoryChild;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPathType;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import okhttp3.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.valueOf;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.stripToNull;
+
+public class BitbucketFilePathClientImpl implements BitbucketFilePathClient {
+
+    private final BitbucketRequestExecutor bitbucketRequestExecutor;
+    private final HttpUrl rawUrl;
+    private final HttpUrl url;
+
+    BitbucketFilePathClientImpl(BitbucketRequestExecutor bitbucketRequestExecutor,
+                                String projectKey,
+                                String repoSlug) {
+        this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+        HttpUrl repositoryUrl = bitbucketRequestExecutor.getCoreRestPath().newBuilder()
+                .addPathSegment("projects")
+                .addPathSegment(requireNonNull(stripToNull(projectKey), "projectKey"))
+                .addPathSegment("repos")
+                .addPathSegment(requireNonNull(stripToNull(repoSlug), "repoSlug"))
+                .build();
+        url = repositoryUrl.newBuilder().addPathSegment("browse").build();
+        rawUrl = repositoryUrl.newBuilder().addPathSegment("raw").build();
+    }
+
+    @Override
+    public List<BitbucketDirectoryChild> getDirectoryContent(String commitId, String path) {
+        List<BitbucketDirectoryChild> children = new ArrayList<>();
+        BitbucketPage<BitbucketDirectoryChild> page;
+        int start = 0;
+        do {
+            HttpUrl.Builder directoryUrl = url.newBuilder();
+            if (!isEmpty(path)) {
+                directoryUrl.addPathSegments(path);
+            }
+            directoryUrl.addQueryParameter("at", commitId)
+                    .addQueryParameter("start", valueOf(start));
+            page = bitbucketRequestExecutor.makeGetRequest(directoryUrl.build(), Directory.class).getBody().children;
+            children.addAll(page.getValues());
+            start = page.getNextPageStart();
+        } while (!page.isLastPage());
+        return children;
+    }
+
+    @Override
+    public BitbucketPathType getPathType(String commitId, String path) {
+        HttpUrl typeUrl = url.newBuilder()
+                .addPathSegments(path)
+                .addQueryParameter("at", commitId)
+                .addQueryParameter("type", "true")
+                .build();
+        Map<String, String> response = bitbucketRequestExecutor.makeGetRequest(typeUrl,
+                new TypeReference<Map<String, String>>() {}).getBody();
+        return BitbucketPathType.fromValue(response.get("type"));
+    }
+
+    @Override
+    public byte[] getRawContent(String commitId, String path) {
+        HttpUrl fileUrl = rawUrl.newBuilder()
+                .addPathSegments(path)
+                .addQueryParameter("at", commitId)
+                .build();
+        return bitbucketRequestExecutor.makeRawGetRequest(fileUrl).getBody();
+    }
+
+    /**
+     * The response of the browse resource for a directory, which pages the directory's children.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class Directory {
+
+        private final BitbucketPage<BitbucketDirectoryChild> children;
+
+        @JsonCreator
+        Directory(@JsonProperty(value = "children", required = true)
+                          BitbucketPage<BitbucketDirectoryChild> children) {
+            this.children = requireNonNull(children, "children");
+        }
+    }
+}
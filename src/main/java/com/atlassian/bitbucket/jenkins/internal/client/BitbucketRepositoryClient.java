@@ -1,7 +1,13 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCommit;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketTag;
+
+import java.util.stream.Stream;
 
 /**
  * Repository client, used to interact with a remote repository for all operations except cloning
@@ -9,6 +15,58 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
  */
 public interface BitbucketRepositoryClient {
 
+    /**
+     * Gets all branches of the repository, together with the commit each one points at. Pages are fetched lazily,
+     * each one while the previous one is being consumed.
+     *
+     * @return the branches of the repository
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketBranch> getBranches();
+
+    /**
+     * Gets the commit with the given id.
+     *
+     * @param commitId the id of the commit
+     * @return the commit
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the commit does not exist
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    BitbucketCommit getCommit(String commitId);
+
+    /**
+     * A client for reading the files of the repository.
+     *
+     * @return a client.
+     */
+    BitbucketFilePathClient getFilePathClient();
+
+    /**
+     * Gets all open pull requests targeting the repository, including those from forks. Pages are fetched lazily, each
+     * one while the previous one is being consumed.
+     *
+     * @return the open pull requests of the repository
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketPullRequest> getPullRequests();
+
     /**
      * Make the call out to Bitbucket and read the response.
      *
@@ -23,6 +81,21 @@ public interface BitbucketRepositoryClient {
      */
     BitbucketRepository getRepository();
 
+    /**
+     * Gets all tags of the repository, together with the commit each one points at. Pages are fetched lazily, each
+     * one while the previous one is being consumed.
+     *
+     * @return the tags of the repository
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws NoContentException if the server did not respond with a body
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BadRequestException if the request was malformed and thus rejected by the server
+     * @throws ServerErrorException if the server failed to process the request
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketTag> getTags();
+
     /**
      * A client for performing various webhook related operations.
      *
@@ -1,13 +1,34 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.NextPageFetcher;
+import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.fasterxml.jackson.core.type.TypeReference;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import okhttp3.HttpUrl;
 
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.valueOf;
 import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient {
 
+    /**
+     * The number of branches, tags or pull requests to request per page. Bitbucket Server caps this at its own maximum
+     * page size. Defaults to 500.
+     */
+    private static final long REF_PAGE_LIMIT = parsePositiveLongFromSystemProperty("bitbucket.refs.page.limit", 500);
+    private static final ExecutorService PAGE_PREFETCH_EXECUTOR = createPagePrefetchExecutor();
+
     private final BitbucketRequestExecutor bitbucketRequestExecutor;
     private final String projectKey;
     private final String repositorySlug;
@@ -18,19 +39,107 @@ public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient
         this.repositorySlug = requireNonNull(stripToNull(repositorySlug), "repositorySlug");
     }
 
+    @Override
+    public Stream<BitbucketBranch> getBranches() {
+        return getRefs("branches", new TypeReference<BitbucketPage<BitbucketBranch>>() {});
+    }
+
+    @Override
+    public BitbucketCommit getCommit(String commitId) {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment("commits")
+                .addPathSegment(requireNonNull(stripToNull(commitId), "commitId"))
+                .build();
+        return bitbucketRequestExecutor.makeGetRequest(url, BitbucketCommit.class).getBody();
+    }
+
+    @Override
+    public BitbucketFilePathClient getFilePathClient() {
+        return new BitbucketFilePathClientImpl(bitbucketRequestExecutor, projectKey, repositorySlug);
+    }
+
+    @Override
+    public Stream<BitbucketPullRequest> getPullRequests() {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment("pull-requests")
+                .addQueryParameter("state", BitbucketPullRequestState.OPEN.name())
+                .addQueryParameter("limit", valueOf(REF_PAGE_LIMIT))
+                .build();
+        return getPages(url, new TypeReference<BitbucketPage<BitbucketPullRequest>>() {});
+    }
+
     @Override
     public BitbucketRepository getRepository() {
-        HttpUrl.Builder urlBuilder = bitbucketRequestExecutor.getCoreRestPath().newBuilder()
-                .addPathSegment("projects")
-                .addPathSegment(projectKey)
-                .addPathSegment("repos")
-                .addPathSegment(repositorySlug);
+        HttpUrl.Builder urlBuilder = getRepositoryUrl();
 
         return bitbucketRequestExecutor.makeGetRequest(urlBuilder.build(), BitbucketRepository.class).getBody();
     }
 
+    @Override
+    public Stream<BitbucketTag> getTags() {
+        return getRefs("tags", new TypeReference<BitbucketPage<BitbucketTag>>() {});
+    }
+
     @Override
     public BitbucketWebhookClient getWebhookClient() {
         return new BitbucketWebhookClientImpl(bitbucketRequestExecutor, projectKey, repositorySlug);
     }
+
+    private static ExecutorService createPagePrefetchExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(8, 8, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketPagePrefetch"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private <T> Stream<T> getPages(HttpUrl url, TypeReference<BitbucketPage<T>> pageType) {
+        BitbucketPage<T> firstPage = bitbucketRequestExecutor.makeGetRequest(url, pageType).getBody();
+        return BitbucketPageStreamUtil.toStream(firstPage,
+                new NextPageFetcherImpl<>(url, bitbucketRequestExecutor, pageType), PAGE_PREFETCH_EXECUTOR)
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
+    }
+
+    private <T> Stream<T> getRefs(String resource, TypeReference<BitbucketPage<T>> pageType) {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment(resource)
+                .addQueryParameter("limit", valueOf(REF_PAGE_LIMIT))
+                .build();
+        return getPages(url, pageType);
+    }
+
+    private HttpUrl.Builder getRepositoryUrl() {
+        return bitbucketRequestExecutor.getCoreRestPath().newBuilder()
+                .addPathSegment("projects")
+                .addPathSegment(projectKey)
+                .addPathSegment("repos")
+                .addPathSegment(repositorySlug);
+    }
+
+    static class NextPageFetcherImpl<T> implements NextPageFetcher<T> {
+
+        private final HttpUrl url;
+        private final BitbucketRequestExecutor bitbucketRequestExecutor;
+        private final TypeReference<BitbucketPage<T>> pageType;
+
+        NextPageFetcherImpl(HttpUrl url,
+                            BitbucketRequestExecutor bitbucketRequestExecutor,
+                            TypeReference<BitbucketPage<T>> pageType) {
+            this.url = url;
+            this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+            this.pageType = pageType;
+        }
+
+        @Override
+        public BitbucketPage<T> next(BitbucketPage<T> previous) {
+            if (previous.isLastPage()) {
+                throw new IllegalArgumentException("Last page does not have next page");
+            }
+            return bitbucketRequestExecutor.makeGetRequest(nextPageUrl(previous), pageType).getBody();
+        }
+
+        private HttpUrl nextPageUrl(BitbucketPage<T> previous) {
+            return url.newBuilder().addQueryParameter("start", valueOf(previous.getNextPageStart())).build();
+        }
+    }
 }
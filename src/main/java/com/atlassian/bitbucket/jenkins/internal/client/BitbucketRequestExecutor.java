@@ -12,6 +12,7 @@ import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -105,6 +106,17 @@ public class BitbucketRequestExecutor {
         return makeGetRequest(url, in -> objectMapper.readValue(in, returnType));
     }
 
+    /**
+     * Make a GET request to the url given and return the body of the response as is, for resources such as the raw
+     * content of a file that are not JSON. This method will add authentication headers as needed.
+     *
+     * @param url url to connect to
+     * @return the bytes of the response body
+     */
+    public BitbucketResponse<byte[]> makeRawGetRequest(HttpUrl url) {
+        return makeGetRequest(url, IOUtils::toByteArray);
+    }
+
     /**
      * Makes a POST request to the given URL with given request payload.
      *
@@ -4,6 +4,8 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 
+import java.util.stream.Stream;
+
 public interface BitbucketSearchClient {
 
     /**
@@ -32,4 +34,20 @@ public interface BitbucketSearchClient {
      * @return a page of repositories matching the filter
      */
     BitbucketPage<BitbucketRepository> findRepositories(String repositoryName);
+
+    /**
+     * Returns every project the credentials can see, fetching further pages as the stream is consumed. The client's
+     * project name is applied as a filter in the same way as {@link #findProjects()}.
+     *
+     * @return the projects
+     */
+    Stream<BitbucketProject> getAllProjects();
+
+    /**
+     * Returns every repository the credentials can see, fetching further pages as the stream is consumed. The
+     * client's project name is applied as a filter in the same way as {@link #findRepositories(String)}.
+     *
+     * @return the repositories
+     */
+    Stream<BitbucketRepository> getAllRepositories();
 }
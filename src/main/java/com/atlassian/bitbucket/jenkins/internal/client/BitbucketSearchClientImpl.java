@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
+import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
@@ -7,13 +8,23 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.HttpUrl;
 
 import javax.annotation.CheckForNull;
+import java.util.Collection;
+import java.util.stream.Stream;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.valueOf;
 import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.stripToEmpty;
 
 public class BitbucketSearchClientImpl implements BitbucketSearchClient {
 
+    /**
+     * The number of projects or repositories to request per page when fetching all of them. Bitbucket Server caps
+     * this at its own maximum page size. Defaults to 1000.
+     */
+    private static final long PAGE_LIMIT = parsePositiveLongFromSystemProperty("bitbucket.search.page.limit", 1000);
+
     private final BitbucketRequestExecutor bitbucketRequestExecutor;
     private final String projectName;
 
@@ -47,4 +58,31 @@ public class BitbucketSearchClientImpl implements BitbucketSearchClient {
         return bitbucketRequestExecutor.makeGetRequest(url, new TypeReference<BitbucketPage<BitbucketRepository>>() {})
                 .getBody();
     }
+
+    @Override
+    public Stream<BitbucketProject> getAllProjects() {
+        HttpUrl.Builder urlBuilder = bitbucketRequestExecutor.getCoreRestPath().newBuilder().addPathSegment("projects");
+        if (!isBlank(projectName)) {
+            urlBuilder.addQueryParameter("name", projectName);
+        }
+        urlBuilder.addQueryParameter("limit", valueOf(PAGE_LIMIT));
+        return getPages(urlBuilder.build(), new TypeReference<BitbucketPage<BitbucketProject>>() {});
+    }
+
+    @Override
+    public Stream<BitbucketRepository> getAllRepositories() {
+        HttpUrl.Builder urlBuilder = bitbucketRequestExecutor.getCoreRestPath().newBuilder().addPathSegment("repos");
+        if (!isBlank(projectName)) {
+            urlBuilder.addQueryParameter("projectname", projectName);
+        }
+        urlBuilder.addQueryParameter("limit", valueOf(PAGE_LIMIT));
+        return getPages(urlBuilder.build(), new TypeReference<BitbucketPage<BitbucketRepository>>() {});
+    }
+
+    private <T> Stream<T> getPages(HttpUrl url, TypeReference<BitbucketPage<T>> pageType) {
+        BitbucketPage<T> firstPage = bitbucketRequestExecutor.makeGetRequest(url, pageType).getBody();
+        return BitbucketPageStreamUtil.toStream(firstPage,
+                new BitbucketRepositoryClientImpl.NextPageFetcherImpl<>(url, bitbucketRequestExecutor, pageType))
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
+    }
 }
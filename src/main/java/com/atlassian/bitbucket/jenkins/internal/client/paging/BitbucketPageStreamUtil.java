@@ -4,6 +4,9 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -26,6 +29,23 @@ public final class BitbucketPageStreamUtil {
         return StreamSupport.stream(pageIterable(firstPage, nextPageFetcher).spliterator(), false);
     }
 
+    /**
+     * Returns a Stream of Bitbucket Pages that fetches each next page on the given executor as soon as the previous
+     * page has been returned, so that the next request is in flight while the caller processes the current page.
+     *
+     * @param firstPage       First Page
+     * @param nextPageFetcher Used for fetching next page
+     * @param executor        Used for fetching the next page in the background
+     * @param <T>             Type for Page
+     * @return Stream of pages.
+     */
+    public static <T> Stream<BitbucketPage<T>> toStream(BitbucketPage<T> firstPage,
+                                                        NextPageFetcher<T> nextPageFetcher,
+                                                        Executor executor) {
+        Iterable<BitbucketPage<T>> pages = () -> new PrefetchingPageIterator<>(nextPageFetcher, firstPage, executor);
+        return StreamSupport.stream(pages.spliterator(), false);
+    }
+
     private static <T> Iterable<BitbucketPage<T>> pageIterable(BitbucketPage<T> firstPage,
                                                                NextPageFetcher<T> nextPageFetcher) {
         return () -> new PageIterator<>(nextPageFetcher, firstPage);
@@ -63,4 +83,54 @@ public final class BitbucketPageStreamUtil {
             return result;
         }
     }
+
+    private static class PrefetchingPageIterator<T> implements Iterator<BitbucketPage<T>> {
+
+        private final Executor executor;
+        private final NextPageFetcher<T> nextPageFetcher;
+        private BitbucketPage<T> currentPage;
+        private CompletableFuture<BitbucketPage<T>> nextPage;
+
+        PrefetchingPageIterator(NextPageFetcher<T> nextPageFetcher,
+                                BitbucketPage<T> firstPage,
+                                Executor executor) {
+            this.nextPageFetcher = nextPageFetcher;
+            this.currentPage = firstPage;
+            this.executor = executor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return currentPage != null || nextPage != null;
+        }
+
+        @Override
+        public BitbucketPage<T> next() {
+            if (currentPage == null) {
+                if (nextPage == null) {
+                    throw new NoSuchElementException("The current page is null");
+                }
+                currentPage = awaitNextPage();
+            }
+            BitbucketPage<T> result = currentPage;
+            currentPage = null;
+            nextPage = result.isLastPage() ? null :
+                    CompletableFuture.supplyAsync(() -> nextPageFetcher.next(result), executor);
+            return result;
+        }
+
+        private BitbucketPage<T> awaitNextPage() {
+            try {
+                return nextPage.join();
+            } catch (CompletionException e) {
+                // Rethrow the client's own exception, so that callers can handle it as if the page was fetched here
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            } finally {
+                nextPage = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+
+/**
+ * Shows the progress of updating jobs after the base URL of a Bitbucket Server instance changed.
+ */
+@Extension
+public class BaseUrlJobUpdateLink extends ManagementLink {
+
+    public static final String RELATIVE_PATH = "bitbucket-job-updates";
+
+    @Inject
+    private BaseUrlJobUpdater baseUrlJobUpdater;
+
+    @SuppressWarnings("unused") // Stapler
+    public BaseUrlJobUpdater getUpdater() {
+        return baseUrlJobUpdater;
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return "refresh.png";
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return Messages.BaseUrlJobUpdateLink_displayname();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.BaseUrlJobUpdateLink_description();
+    }
+
+    @CheckForNull
+    @Override
+    public String getUrlName() {
+        return RELATIVE_PATH;
+    }
+}
@@ -0,0 +1,434 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.provider.DefaultJenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepositoryCache;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.XStream2;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import jenkins.util.io.OnMaster;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.lowerCase;
+
+/**
+ * Regenerates the Bitbucket SCMs of every job using a server whose base URL has changed, so that their clone URLs
+ * point at the new address. Regenerating an SCM looks its repository up on Bitbucket Server again, which adds up
+ * across many jobs, so it is done in the background rather than while the global configuration is being saved.
+ * <ul>
+ *     <li>Jobs are grouped by the repositories they use, and the jobs in a group are updated one after the other.
+ *     Only the first job in a group has to resolve the repositories, the rest are served by the
+ *     {@link BitbucketRepositoryCache}. Multibranch projects are grouped by all of their Bitbucket sources.</li>
+ *     <li>The groups of each server are updated in parallel, on up to {@link #THREADS_PER_SERVER} threads per
+ *     server. The thread pools are shared by every pass of an update, and shut down once it finishes.</li>
+ *     <li>The jobs still to be updated are written to disk after each group. If Jenkins stops before every job has
+ *     been updated, the rest are updated once jobs have been loaded again.</li>
+ * </ul>
+ * Progress is shown by {@link BaseUrlJobUpdateLink}.
+ */
+@Singleton
+public class BaseUrlJobUpdater implements Saveable, OnMaster {
+
+    /**
+     * The number of repositories of each server that are resolved at the same time. Defaults to 4.
+     */
+    static final int THREADS_PER_SERVER =
+            (int) parsePositiveLongFromSystemProperty("bitbucket.baseurl.update.threads", 4);
+
+    private static final String CONFIG_FILE_NAME = "bitbucket-base-url-update.xml";
+    private static final Logger LOGGER = Logger.getLogger(BaseUrlJobUpdater.class.getName());
+
+    private final transient Set<String> changedServerIds = ConcurrentHashMap.newKeySet();
+    private final transient AtomicInteger completed = new AtomicInteger();
+    private final transient Executor executor;
+    private final transient List<String> failedJobs = new CopyOnWriteArrayList<>();
+    private final transient JenkinsProvider jenkinsProvider;
+    private final transient Set<String> pendingJobs = ConcurrentHashMap.newKeySet();
+    private final transient AtomicBoolean running = new AtomicBoolean();
+    private final transient AtomicInteger total = new AtomicInteger();
+    private final transient XStream2 xStream = new XStream2();
+    private Set<String> jobs;
+    private Set<String> serverIds;
+
+    public BaseUrlJobUpdater() {
+        this(new DefaultJenkinsProvider());
+    }
+
+    @Inject
+    public BaseUrlJobUpdater(JenkinsProvider jenkinsProvider) {
+        this(jenkinsProvider, Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketBaseUrlJobUpdater")));
+    }
+
+    @VisibleForTesting
+    BaseUrlJobUpdater(JenkinsProvider jenkinsProvider, Executor executor) {
+        this.jenkinsProvider = requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.executor = requireNonNull(executor, "executor");
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumeOnStartup() {
+        Jenkins.get().getInjector().getInstance(BaseUrlJobUpdater.class).resume();
+    }
+
+    /**
+     * Starts updating every job that uses one of the given servers in the background. If an update is already in
+     * progress, the jobs are added to it.
+     *
+     * @param serverIds the ids of the servers whose base URL has changed
+     */
+    public void start(Set<String> serverIds) {
+        if (serverIds.isEmpty()) {
+            return;
+        }
+        Set<String> affectedJobs;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            affectedJobs = jenkinsProvider.get().getAllItems(Item.class).stream()
+                    .filter(item -> !getRepositoryGroups(item, serverIds).isEmpty())
+                    .map(Item::getFullName)
+                    .collect(Collectors.toSet());
+        }
+        synchronized (this) {
+            if (!running.get()) {
+                resetProgress();
+            }
+            changedServerIds.addAll(serverIds);
+            affectedJobs.stream().filter(pendingJobs::add).forEach(job -> total.incrementAndGet());
+            save();
+        }
+        runIfIdle();
+    }
+
+    /**
+     * Resumes an update that had not finished when Jenkins stopped.
+     */
+    public void resume() {
+        synchronized (this) {
+            XmlFile configFile = getConfigFile();
+            if (running.get() || !configFile.exists()) {
+                return;
+            }
+            try {
+                configFile.unmarshal(this);
+                if (jobs != null && serverIds != null && !jobs.isEmpty()) {
+                    LOGGER.info("Resuming the update of " + jobs.size() + " jobs using Bitbucket Server instances " +
+                                serverIds + " after their base URL changed");
+                    resetProgress();
+                    changedServerIds.addAll(serverIds);
+                    pendingJobs.addAll(jobs);
+                    total.set(jobs.size());
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to load the pending Bitbucket job updates from disk", e);
+            } finally {
+                jobs = null;
+                serverIds = null;
+            }
+        }
+        runIfIdle();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public List<String> getFailedJobs() {
+        return Collections.unmodifiableList(failedJobs);
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public synchronized void save() {
+        jobs = new HashSet<>(pendingJobs);
+        serverIds = new HashSet<>(changedServerIds);
+        try {
+            getConfigFile().write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to persist the pending Bitbucket job updates to disk", e);
+        } finally {
+            jobs = null;
+            serverIds = null;
+        }
+    }
+
+    /**
+     * Waits for the current update, if any, to finish.
+     *
+     * @param timeoutMillis how long to wait for
+     * @return true if no update is running
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @VisibleForTesting
+    synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (running.get() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return !running.get();
+    }
+
+    @VisibleForTesting
+    XmlFile getConfigFile() {
+        return new XmlFile(xStream, new File(jenkinsProvider.get().getRootDir(), CONFIG_FILE_NAME));
+    }
+
+    private synchronized boolean finishIfDone() {
+        if (!pendingJobs.isEmpty()) {
+            return false;
+        }
+        changedServerIds.clear();
+        try {
+            getConfigFile().delete();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete the completed Bitbucket job updates from disk", e);
+        }
+        LOGGER.info("Updated " + completed.get() + " jobs after a Bitbucket Server base URL changed, " +
+                    failedJobs.size() + " failed");
+        return true;
+    }
+
+    /**
+     * Returns the repositories the item uses on the given servers, in the order they are configured, or an empty list
+     * if it does not use any of them.
+     */
+    private static List<RepositoryGroup> getRepositoryGroups(Item item, Set<String> serverIds) {
+        if (item instanceof AbstractProject && ((AbstractProject<?, ?>) item).getScm() instanceof BitbucketSCM) {
+            return getRepositoryGroups((BitbucketSCM) ((AbstractProject<?, ?>) item).getScm(), serverIds);
+        }
+        if (item instanceof WorkflowJob && ((WorkflowJob) item).getDefinition() instanceof CpsScmFlowDefinition) {
+            CpsScmFlowDefinition definition = (CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition();
+            if (definition.getScm() instanceof BitbucketSCM) {
+                return getRepositoryGroups((BitbucketSCM) definition.getScm(), serverIds);
+            }
+        }
+        if (item instanceof MultiBranchProject) {
+            return ((MultiBranchProject<?, ?>) item).getSCMSources().stream()
+                    .filter(source -> source instanceof BitbucketSCMSource)
+                    .map(source -> (BitbucketSCMSource) source)
+                    .filter(source -> serverIds.contains(source.getServerId()))
+                    .map(source -> new RepositoryGroup(source.getServerId(), source.getProjectName(),
+                            source.getRepositoryName(), source.getMirrorName()))
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<RepositoryGroup> getRepositoryGroups(BitbucketSCM scm, Set<String> serverIds) {
+        if (!serverIds.contains(scm.getServerId())) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new RepositoryGroup(scm.getServerId(), scm.getProjectName(),
+                scm.getRepositoryName(), scm.getMirrorName()));
+    }
+
+    /**
+     * Groups the pending jobs by server and then by the repositories they use. Jobs using several servers are grouped
+     * under the server of their first repository. Jobs that no longer exist or no longer use a changed server are
+     * dropped.
+     */
+    private Map<String, Map<List<RepositoryGroup>, List<String>>> groupPendingJobs() {
+        Map<String, Map<List<RepositoryGroup>, List<String>>> groupsByServer = new HashMap<>();
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (String job : new ArrayList<>(pendingJobs)) {
+                Item item = jenkinsProvider.get().getItemByFullName(job);
+                List<RepositoryGroup> groups =
+                        item == null ? Collections.emptyList() : getRepositoryGroups(item, changedServerIds);
+                if (!groups.isEmpty()) {
+                    groupsByServer.computeIfAbsent(groups.get(0).serverId, serverId -> new HashMap<>())
+                            .computeIfAbsent(groups, key -> new ArrayList<>())
+                            .add(job);
+                } else {
+                    pendingJobs.remove(job);
+                    completed.incrementAndGet();
+                }
+            }
+        }
+        return groupsByServer;
+    }
+
+    private void resetProgress() {
+        completed.set(0);
+        failedJobs.clear();
+        total.set(0);
+    }
+
+    /**
+     * Updates the pending jobs until there are none left. Only the thread that set {@link #running} runs this, and
+     * it is the only one to clear it again, once it is done.
+     */
+    private void run() {
+        boolean finished = false;
+        Map<String, ExecutorService> pools = new HashMap<>();
+        try {
+            do {
+                List<Future<?>> updates = new ArrayList<>();
+                groupPendingJobs().forEach((serverId, groups) -> {
+                    ExecutorService pool = pools.computeIfAbsent(serverId, id -> Executors.newFixedThreadPool(
+                            THREADS_PER_SERVER,
+                            new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketBaseUrlJobUpdater-" + id)));
+                    groups.values().forEach(group -> updates.add(pool.submit(() -> updateGroup(group))));
+                });
+                for (Future<?> update : updates) {
+                    update.get();
+                }
+                save();
+            } while (!finishIfDone());
+            finished = true;
+        } catch (InterruptedException e) {
+            // The pending jobs are on disk and will be updated after the next restart
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to update the jobs using a Bitbucket Server instance whose base URL " +
+                                     "changed, the remaining jobs will be updated after the next restart", e);
+        } finally {
+            pools.values().forEach(ExecutorService::shutdownNow);
+            synchronized (this) {
+                running.set(false);
+                notifyAll();
+            }
+        }
+        if (finished) {
+            // Jobs added after the last check for pending jobs would otherwise wait for the next update
+            runIfIdle();
+        }
+    }
+
+    private void runIfIdle() {
+        if (!pendingJobs.isEmpty() && running.compareAndSet(false, true)) {
+            executor.execute(this::run);
+        }
+    }
+
+    private void update(Item item) throws IOException {
+        if (item instanceof AbstractProject && ((AbstractProject<?, ?>) item).getScm() instanceof BitbucketSCM) {
+            AbstractProject<?, ?> project = (AbstractProject<?, ?>) item;
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) project.getScm();
+            if (changedServerIds.contains(bitbucketSCM.getServerId())) {
+                // This server has had its base URL updated so we need to recalculate the clone URL
+                project.setScm(new BitbucketSCM(bitbucketSCM));
+            }
+        } else if (item instanceof WorkflowJob &&
+                   ((WorkflowJob) item).getDefinition() instanceof CpsScmFlowDefinition &&
+                   ((CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition()).getScm() instanceof BitbucketSCM) {
+            WorkflowJob workflowJob = (WorkflowJob) item;
+            CpsScmFlowDefinition definition = (CpsScmFlowDefinition) workflowJob.getDefinition();
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) definition.getScm();
+            if (changedServerIds.contains(bitbucketSCM.getServerId())) {
+                // This server has had its base URL updated so we need to recalculate the clone URL
+                workflowJob.setDefinition(
+                        new CpsScmFlowDefinition(new BitbucketSCM(bitbucketSCM), definition.getScriptPath()));
+            }
+        } else if (item instanceof MultiBranchProject) {
+            MultiBranchProject<?, ?> project = (MultiBranchProject<?, ?>) item;
+            List<SCMSource> sources = project.getSCMSources().stream().map(scm -> {
+                if (scm instanceof BitbucketSCMSource) {
+                    BitbucketSCMSource src = (BitbucketSCMSource) scm;
+                    if (changedServerIds.contains(src.getServerId())) {
+                        return new BitbucketSCMSource(src);
+                    }
+                }
+                return scm;
+            }).collect(Collectors.toList());
+            project.setSourcesList(sources);
+        }
+    }
+
+    private void updateGroup(List<String> group) {
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (String job : group) {
+                try {
+                    Item item = jenkinsProvider.get().getItemByFullName(job);
+                    if (item != null) {
+                        update(item);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failedJobs.add(job);
+                    LOGGER.log(Level.SEVERE, String.format("Error updating configuration for Job %s.", job), e);
+                } finally {
+                    pendingJobs.remove(job);
+                    completed.incrementAndGet();
+                }
+            }
+        }
+        save();
+    }
+
+    /**
+     * The repository a job uses. Names are compared ignoring case, as Bitbucket Server does when resolving them.
+     */
+    private static final class RepositoryGroup {
+
+        private final String mirrorName;
+        private final String projectName;
+        private final String repositoryName;
+        private final String serverId;
+
+        private RepositoryGroup(String serverId, @CheckForNull String projectName,
+                                @CheckForNull String repositoryName, @CheckForNull String mirrorName) {
+            this.serverId = serverId;
+            this.projectName = lowerCase(projectName, Locale.ROOT);
+            this.repositoryName = lowerCase(repositoryName, Locale.ROOT);
+            this.mirrorName = mirrorName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RepositoryGroup that = (RepositoryGroup) o;
+            return Objects.equals(serverId, that.serverId) &&
+                   Objects.equals(projectName, that.projectName) &&
+                   Objects.equals(repositoryName, that.repositoryName) &&
+                   Objects.equals(mirrorName, that.mirrorName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverId, projectName, repositoryName, mirrorName);
+        }
+    }
+}
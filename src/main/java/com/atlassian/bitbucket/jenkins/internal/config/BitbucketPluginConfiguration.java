@@ -1,28 +1,15 @@
 package com.atlassian.bitbucket.jenkins.internal.config;
 
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import hudson.Extension;
-import hudson.model.AbstractProject;
-import hudson.security.ACL;
-import hudson.security.ACLContext;
 import hudson.util.FormValidation;
 import hudson.util.FormValidation.Kind;
-import jenkins.branch.MultiBranchProject;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
-import jenkins.model.ParameterizedJobMixIn;
-import jenkins.scm.api.SCMSource;
 import net.sf.json.JSONObject;
-import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
-import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
-import java.io.IOException;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -35,9 +22,8 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
         "unused") // Stapler calls many of the methods via reflection (such as the setServerList)
 public class BitbucketPluginConfiguration extends GlobalConfiguration {
 
-    private static final Logger LOGGER = Logger.getLogger(BitbucketPluginConfiguration.class.getName());
-
     private List<BitbucketServerConfiguration> serverList = new ArrayList<>();
+    private transient volatile ServerSnapshot serverSnapshot;
 
     public BitbucketPluginConfiguration() {
         getConfigFile().getXStream().alias("atl-bbs-configuration", BitbucketServerConfiguration.class);
@@ -69,7 +55,17 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
         if (isBlank(serverId)) {
             return empty();
         }
-        return serverList.stream().filter(server -> server.getId().equals(serverId)).findFirst();
+        return Optional.ofNullable(getServerSnapshot().serversById.get(serverId));
+    }
+
+    /**
+     * Returns a number that changes whenever the list of configured servers changes, so that values derived from the
+     * configuration can be cached and discarded once it changes.
+     *
+     * @return the current version of the server configuration
+     */
+    public long getConfigurationVersion() {
+        return getServerSnapshot().version;
     }
 
     /**
@@ -84,6 +80,7 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
 
     public void setServerList(List<BitbucketServerConfiguration> serverList) {
         this.serverList = requireNonNull(serverList);
+        getServerSnapshot();
     }
 
     /**
@@ -107,61 +104,53 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
         return serverList.stream().anyMatch(server -> server.validate().kind == Kind.ERROR);
     }
 
+    private ServerSnapshot getServerSnapshot() {
+        List<BitbucketServerConfiguration> servers = serverList;
+        ServerSnapshot snapshot = serverSnapshot;
+        if (snapshot == null || !snapshot.isSnapshotOf(servers)) {
+            snapshot = new ServerSnapshot(servers, snapshot == null ? 0 : snapshot.version + 1);
+            serverSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
     private void updateJobs(Map<String, String> oldBaseUrls) {
         Set<String> changedServerIds = serverList.stream()
                 .filter(serverConfig -> !serverConfig.getBaseUrl().equalsIgnoreCase(oldBaseUrls.get(serverConfig.getId())))
                 .map(BitbucketServerConfiguration::getId)
                 .collect(toSet());
         if (!changedServerIds.isEmpty()) {
-            try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
-                Jenkins.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
-                        .forEach(job -> {
-                            if (job instanceof AbstractProject && ((AbstractProject) job).getScm() instanceof BitbucketSCM) {
-                                AbstractProject<?, ?> project = (AbstractProject<?, ?>) job;
-                                BitbucketSCM bitbucketSCM = (BitbucketSCM) project.getScm();
-                                if (changedServerIds.contains(bitbucketSCM.getServerId())) {
-                                    try {
-                                        // This server has had its base URL updated so we need to recalculate the clone URL
-                                        project.setScm(new BitbucketSCM(bitbucketSCM));
-                                    } catch (IOException e) {
-                                        LOGGER.log(Level.SEVERE, String.format("Error updating configuration for Job %s.",
-                                                project.getName()), e);
-                                    }
-                                }
-                            } else if (job instanceof WorkflowJob &&
-                                       ((WorkflowJob) job).getDefinition() instanceof CpsScmFlowDefinition &&
-                                       ((CpsScmFlowDefinition) ((WorkflowJob) job).getDefinition()).getScm() instanceof BitbucketSCM) {
-                                WorkflowJob workflowJob = (WorkflowJob) job;
-                                CpsScmFlowDefinition definition = (CpsScmFlowDefinition) workflowJob.getDefinition();
-                                BitbucketSCM bitbucketSCM = (BitbucketSCM) definition.getScm();
-                                if (changedServerIds.contains(bitbucketSCM.getServerId())) {
-                                    // This server has had its base URL updated so we need to recalculate the clone URL
-                                    workflowJob.setDefinition(new CpsScmFlowDefinition(new BitbucketSCM(bitbucketSCM), definition.getScriptPath()));
-                                }
-                            }
-                        });
-                Jenkins.get().getAllItems(MultiBranchProject.class)
-                        .forEach(project -> processMultiBranchProject(project, changedServerIds));
-            }
+            // These servers have had their base URL updated so we need to recalculate the clone URLs of their jobs
+            Jenkins.get().getInjector().getInstance(BaseUrlJobUpdater.class).start(changedServerIds);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void processMultiBranchProject(MultiBranchProject project, Set<String> changedServerIds) {
-        List<SCMSource> sources = (List<SCMSource>) project.getSources().stream().map(scm -> {
-            if (scm instanceof BitbucketSCMSource) {
-                BitbucketSCMSource src = (BitbucketSCMSource) scm;
-                if (changedServerIds.contains(src.getServerId())) {
-                    return new BitbucketSCMSource(src);
-                }
-            }
-            return scm;
-        }).collect(Collectors.toList());
-        try {
-            project.setSourcesList(sources);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error updating configuration for MultiBranchProject %s.",
-                    project.getName()), e);
+    /**
+     * An immutable index of the configured servers by ID. The server list is exposed as a mutable list, and is
+     * replaced wholesale when the configuration is loaded or saved, so the snapshot is rebuilt whenever the list is
+     * replaced or its size changes.
+     */
+    private static final class ServerSnapshot {
+
+        private final Map<String, BitbucketServerConfiguration> serversById;
+        private final int size;
+        private final List<BitbucketServerConfiguration> source;
+        private final long version;
+
+        private ServerSnapshot(List<BitbucketServerConfiguration> source, long version) {
+            Map<String, BitbucketServerConfiguration> serversById = new HashMap<>();
+            // Servers are looked up by the first configured server with the ID
+            source.stream()
+                    .filter(server -> server.getId() != null)
+                    .forEach(server -> serversById.putIfAbsent(server.getId(), server));
+            this.serversById = Collections.unmodifiableMap(serversById);
+            this.size = source.size();
+            this.source = source;
+            this.version = version;
+        }
+
+        private boolean isSnapshotOf(List<BitbucketServerConfiguration> servers) {
+            return servers == source && servers.size() == size;
         }
     }
 }
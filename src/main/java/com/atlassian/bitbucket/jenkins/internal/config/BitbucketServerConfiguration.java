@@ -6,6 +6,7 @@ import com.atlassian.bitbucket.jenkins.internal.client.exception.AuthorizationEx
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.ConnectionFailureException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentialsCache;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentialsModule;
@@ -223,13 +224,15 @@ public class BitbucketServerConfiguration
 
     @Nullable
     private BitbucketTokenCredentials getAdminCredentials() {
-        return firstOrNull(
-                lookupCredentials(
-                        BitbucketTokenCredentials.class,
-                        Jenkins.get(),
-                        ACL.SYSTEM,
-                        Collections.emptyList()),
-                withId(trimToEmpty(adminCredentialsId)));
+        return Jenkins.get().getInjector().getInstance(BitbucketCredentialsCache.class)
+                .get(adminCredentialsId, null, BitbucketTokenCredentials.class, () -> Optional.ofNullable(firstOrNull(
+                        lookupCredentials(
+                                BitbucketTokenCredentials.class,
+                                Jenkins.get(),
+                                ACL.SYSTEM,
+                                Collections.emptyList()),
+                        withId(trimToEmpty(adminCredentialsId)))))
+                .orElse(null);
     }
 
     @Symbol("BbS")
@@ -0,0 +1,133 @@
+package com.atlassian.bitbucket.jenkins.internal.credentials;
+
+import com.google.common.annotations.VisibleForTesting;
+import hudson.model.Item;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.trimToEmpty;
+
+/**
+ * Caches credentials resolved from Jenkins' credential providers, since searching every provider for a credentials
+ * ID is done for every call to Bitbucket Server, including every build status posted. Entries are keyed by
+ * credentials ID, the context the credentials were looked up in and the type they were resolved to.
+ * <ul>
+ *     <li>The whole cache is cleared whenever a credentials store changes (see
+ *     {@link BitbucketCredentialsCacheListener}).</li>
+ *     <li>Entries are kept for at most {@link #TTL} milliseconds, so that credentials from providers that are not
+ *     backed by a Jenkins credentials store are picked up when they change.</li>
+ *     <li>At most {@link #MAX_SIZE} entries are kept, evicting the least recently used first.</li>
+ * </ul>
+ * Credentials that could not be found are cached as well, until the next change.
+ */
+@Singleton
+public class BitbucketCredentialsCache {
+
+    /**
+     * How long resolved credentials are cached for, in milliseconds. Defaults to 1 minute.
+     */
+    static final long TTL = parsePositiveLongFromSystemProperty("bitbucket.credentials.cache.ttl", 60 * 1000);
+    /**
+     * The maximum number of resolved credentials to cache. Defaults to 500.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.credentials.cache.size", 500);
+
+    private final Map<CacheKey, CachedCredentials> cache = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, CachedCredentials>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedCredentials> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            });
+    private final Clock clock;
+
+    @Inject
+    public BitbucketCredentialsCache() {
+        this(Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    BitbucketCredentialsCache(Clock clock) {
+        this.clock = requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Returns the cached credentials, resolving them if they are not cached or have expired.
+     *
+     * @param credentialsId the ID of the credentials
+     * @param context       the item the credentials are looked up for, or {@code null} for Jenkins itself
+     * @param type          the type the credentials are resolved to
+     * @param loader        resolves the credentials
+     * @param <T>           the type the credentials are resolved to
+     * @return the resolved credentials, or {@link Optional#empty()} if they do not exist
+     */
+    public <T> Optional<T> get(@Nullable String credentialsId, @Nullable Item context, Class<T> type,
+                               Supplier<Optional<T>> loader) {
+        CacheKey key = new CacheKey(credentialsId, context, type);
+        long now = clock.millis();
+        CachedCredentials cached = cache.get(key);
+        if (cached == null || cached.expiry <= now) {
+            cached = new CachedCredentials(loader.get().orElse(null), now + TTL);
+            cache.put(key, cached);
+        }
+        return Optional.ofNullable(type.cast(cached.credentials));
+    }
+
+    /**
+     * Removes all cached credentials.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private static final class CacheKey {
+
+        private final String context;
+        private final String credentialsId;
+        private final Class<?> type;
+
+        private CacheKey(@Nullable String credentialsId, @Nullable Item context, Class<?> type) {
+            this.credentialsId = trimToEmpty(credentialsId);
+            this.context = context == null ? null : context.getFullName();
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(context, cacheKey.context) &&
+                   Objects.equals(credentialsId, cacheKey.credentialsId) &&
+                   Objects.equals(type, cacheKey.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(context, credentialsId, type);
+        }
+    }
+
+    private static final class CachedCredentials {
+
+        private final Object credentials;
+        private final long expiry;
+
+        private CachedCredentials(@Nullable Object credentials, long expiry) {
+            this.credentials = credentials;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.atlassian.bitbucket.jenkins.internal.credentials;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+
+import javax.inject.Inject;
+
+/**
+ * Clears the {@link BitbucketCredentialsCache} whenever one of the credentials stores is saved. Global credentials
+ * are saved by the {@link SystemCredentialsProvider}, while folder and user credentials are saved along with the
+ * folder or user that holds them.
+ */
+@Extension
+public class BitbucketCredentialsCacheListener extends SaveableListener {
+
+    @Inject
+    private BitbucketCredentialsCache credentialsCache;
+
+    public BitbucketCredentialsCacheListener() {
+    }
+
+    BitbucketCredentialsCacheListener(BitbucketCredentialsCache credentialsCache) {
+        this.credentialsCache = credentialsCache;
+    }
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof SystemCredentialsProvider || o instanceof AbstractFolder || o instanceof User) {
+            credentialsCache.invalidateAll();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.commons.codec.Charsets;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
 import javax.annotation.Nullable;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.Base64;
 
@@ -15,10 +16,22 @@ import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCred
 @Singleton
 public class JenkinsToBitbucketCredentialsImpl implements JenkinsToBitbucketCredentials {
 
+    private final BitbucketCredentialsCache credentialsCache;
+
+    public JenkinsToBitbucketCredentialsImpl() {
+        this(new BitbucketCredentialsCache());
+    }
+
+    @Inject
+    public JenkinsToBitbucketCredentialsImpl(BitbucketCredentialsCache credentialsCache) {
+        this.credentialsCache = credentialsCache;
+    }
+
     @Override
     public BitbucketCredentials toBitbucketCredentials(@Nullable String credentialId) {
-        return CredentialUtils.getCredentials(credentialId)
-                .map(this::toBitbucketCredentials).orElse(ANONYMOUS_CREDENTIALS);
+        return credentialsCache.get(credentialId, null, BitbucketCredentials.class,
+                () -> CredentialUtils.getCredentials(credentialId).map(this::toBitbucketCredentials))
+                .orElse(ANONYMOUS_CREDENTIALS);
     }
 
     @Override
@@ -38,11 +51,13 @@ public class JenkinsToBitbucketCredentialsImpl implements JenkinsToBitbucketCred
     }
 
     public static BitbucketCredentials getBearerCredentials(String bearerToken) {
-        return () -> "Bearer " + bearerToken;
+        String headerValue = "Bearer " + bearerToken;
+        return () -> headerValue;
     }
 
     private static BitbucketCredentials getBasicCredentials(String username, String password) {
         String authorization = username + ':' + password;
-        return () -> "Basic " + Base64.getEncoder().encodeToString(authorization.getBytes(Charsets.UTF_8));
+        String headerValue = "Basic " + Base64.getEncoder().encodeToString(authorization.getBytes(Charsets.UTF_8));
+        return () -> headerValue;
     }
 }
@@ -1,7 +1,9 @@
 package com.atlassian.bitbucket.jenkins.internal.credentials;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import jenkins.model.Jenkins;
 
 public class JenkinsToBitbucketCredentialsModule extends AbstractModule {
 
@@ -11,4 +13,13 @@ public class JenkinsToBitbucketCredentialsModule extends AbstractModule {
                 .to(JenkinsToBitbucketCredentialsImpl.class)
                 .in(Singleton.class);
     }
+
+    /**
+     * Shares the credentials cache held by Jenkins, which is the one cleared when credentials change, rather than
+     * creating a new one for every injector built from this module.
+     */
+    @Provides
+    BitbucketCredentialsCache provideCredentialsCache() {
+        return Jenkins.get().getInjector().getInstance(BitbucketCredentialsCache.class);
+    }
 }
@@ -0,0 +1,51 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A branch of a repository, together with the commit it currently points at.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketBranch {
+
+    private final boolean defaultBranch;
+    private final String displayId;
+    private final String id;
+    private final String latestCommit;
+
+    @JsonCreator
+    public BitbucketBranch(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "displayId", required = true) String displayId,
+            @JsonProperty(value = "latestCommit", required = true) String latestCommit,
+            @JsonProperty(value = "isDefault") boolean defaultBranch) {
+        this.id = requireNonNull(id, "id");
+        this.displayId = requireNonNull(displayId, "displayId");
+        this.latestCommit = requireNonNull(latestCommit, "latestCommit");
+        this.defaultBranch = defaultBranch;
+    }
+
+    public String getDisplayId() {
+        return displayId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLatestCommit() {
+        return latestCommit;
+    }
+
+    public boolean isDefault() {
+        return defaultBranch;
+    }
+
+    public BitbucketRef toRef() {
+        return new BitbucketRef(id, displayId, BitbucketRefType.BRANCH);
+    }
+}
@@ -0,0 +1,36 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A commit of a repository. Only the details needed by the plugin are read.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketCommit {
+
+    private final long committerTimestamp;
+    private final String id;
+
+    @JsonCreator
+    public BitbucketCommit(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "committerTimestamp") long committerTimestamp) {
+        this.id = requireNonNull(id, "id");
+        this.committerTimestamp = committerTimestamp;
+    }
+
+    /**
+     * @return when the commit was committed, in milliseconds since the epoch
+     */
+    public long getCommitterTimestamp() {
+        return committerTimestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
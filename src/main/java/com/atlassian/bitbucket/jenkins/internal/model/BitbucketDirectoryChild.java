@@ -0,0 +1,55 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A file or directory in a directory of a repository, as listed by the browse REST resource. Bitbucket Server collapses
+ * directories that contain nothing but a single directory, so the path of a child can have more than one component.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketDirectoryChild {
+
+    private final List<String> components;
+    private final BitbucketPathType type;
+
+    @JsonCreator
+    public BitbucketDirectoryChild(@JsonProperty(value = "path", required = true) Path path,
+                                   @JsonProperty(value = "type", required = true) String type) {
+        this(requireNonNull(path, "path").components, BitbucketPathType.fromValue(type));
+    }
+
+    public BitbucketDirectoryChild(List<String> components, BitbucketPathType type) {
+        this.components = Collections.unmodifiableList(new ArrayList<>(requireNonNull(components, "components")));
+        this.type = requireNonNull(type, "type");
+    }
+
+    /**
+     * @return the components of the child's path, relative to the directory it was listed from
+     */
+    public List<String> getComponents() {
+        return components;
+    }
+
+    public BitbucketPathType getType() {
+        return type;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Path {
+
+        private final List<String> components;
+
+        @JsonCreator
+        public Path(@JsonProperty(value = "components", required = true) List<String> components) {
+            this.components = requireNonNull(components, "components");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+/**
+ * The type of a path in a repository at a given commit.
+ */
+public enum BitbucketPathType {
+    DIRECTORY,
+    FILE,
+    SUBMODULE,
+    /**
+     * A type the plugin does not know about.
+     */
+    OTHER;
+
+    public static BitbucketPathType fromValue(String value) {
+        for (BitbucketPathType type : values()) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,64 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.stripToEmpty;
+
+/**
+ * A pull request, with the branch it merges from and the branch it merges into.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketPullRequest {
+
+    private final BitbucketPullRequestRef fromRef;
+    private final long id;
+    private final BitbucketPullRequestState state;
+    private final String title;
+    private final BitbucketPullRequestRef toRef;
+
+    @JsonCreator
+    public BitbucketPullRequest(
+            @JsonProperty(value = "id", required = true) long id,
+            @JsonProperty(value = "title") @Nullable String title,
+            @JsonProperty(value = "state", required = true) BitbucketPullRequestState state,
+            @JsonProperty(value = "fromRef", required = true) BitbucketPullRequestRef fromRef,
+            @JsonProperty(value = "toRef", required = true) BitbucketPullRequestRef toRef) {
+        this.id = id;
+        this.title = stripToEmpty(title);
+        this.state = requireNonNull(state, "state");
+        this.fromRef = requireNonNull(fromRef, "fromRef");
+        this.toRef = requireNonNull(toRef, "toRef");
+    }
+
+    public BitbucketPullRequestRef getFromRef() {
+        return fromRef;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public BitbucketPullRequestState getState() {
+        return state;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public BitbucketPullRequestRef getToRef() {
+        return toRef;
+    }
+
+    /**
+     * @return true if the pull request comes from a branch of another repository, such as a fork
+     */
+    public boolean isFromOtherRepository() {
+        return fromRef.getRepository().getId() != toRef.getRepository().getId();
+    }
+}
@@ -0,0 +1,48 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The source or target branch of a pull request, together with the commit it pointed at when the pull request was
+ * last updated and the repository it belongs to.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketPullRequestRef {
+
+    private final String displayId;
+    private final String id;
+    private final String latestCommit;
+    private final BitbucketRepository repository;
+
+    @JsonCreator
+    public BitbucketPullRequestRef(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "displayId", required = true) String displayId,
+            @JsonProperty(value = "latestCommit", required = true) String latestCommit,
+            @JsonProperty(value = "repository", required = true) BitbucketRepository repository) {
+        this.id = requireNonNull(id, "id");
+        this.displayId = requireNonNull(displayId, "displayId");
+        this.latestCommit = requireNonNull(latestCommit, "latestCommit");
+        this.repository = requireNonNull(repository, "repository");
+    }
+
+    public String getDisplayId() {
+        return displayId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLatestCommit() {
+        return latestCommit;
+    }
+
+    public BitbucketRepository getRepository() {
+        return repository;
+    }
+}
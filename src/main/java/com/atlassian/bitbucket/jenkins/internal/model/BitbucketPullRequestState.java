@@ -0,0 +1,8 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+public enum BitbucketPullRequestState {
+
+    DECLINED,
+    MERGED,
+    OPEN
+}
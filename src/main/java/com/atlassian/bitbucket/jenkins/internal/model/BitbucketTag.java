@@ -0,0 +1,44 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A tag of a repository, together with the commit it points at.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketTag {
+
+    private final String displayId;
+    private final String id;
+    private final String latestCommit;
+
+    @JsonCreator
+    public BitbucketTag(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "displayId", required = true) String displayId,
+            @JsonProperty(value = "latestCommit", required = true) String latestCommit) {
+        this.id = requireNonNull(id, "id");
+        this.displayId = requireNonNull(displayId, "displayId");
+        this.latestCommit = requireNonNull(latestCommit, "latestCommit");
+    }
+
+    public String getDisplayId() {
+        return displayId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLatestCommit() {
+        return latestCommit;
+    }
+
+    public BitbucketRef toRef() {
+        return new BitbucketRef(id, displayId, BitbucketRefType.TAG);
+    }
+}
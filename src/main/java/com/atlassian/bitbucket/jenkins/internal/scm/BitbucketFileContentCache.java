@@ -0,0 +1,107 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.inject.Singleton;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Caches what {@link BitbucketSCMFileSystem} reads from Bitbucket Server, so that loading the same Jenkinsfile or
+ * library file for every build of a commit only asks Bitbucket Server for it once. Entries are keyed by repository,
+ * commit hash and path. What a path holds at a commit never changes, so entries do not expire, but the content kept
+ * adds up to at most {@link #MAX_TOTAL_SIZE} bytes, evicting the least recently used first. Directory listings and
+ * path types count as a single byte each.
+ * <ul>
+ *     <li>Files larger than {@link #MAX_FILE_SIZE} bytes are not cached.</li>
+ *     <li>Paths that do not exist, and any other failure, are not cached.</li>
+ * </ul>
+ */
+@Singleton
+public class BitbucketFileContentCache {
+
+    /**
+     * The maximum total size, in bytes, of the cached file content. Defaults to 64 MiB.
+     */
+    static final long MAX_TOTAL_SIZE =
+            parsePositiveLongFromSystemProperty("bitbucket.file.cache.maxTotalSize", 64 * 1024 * 1024);
+    /**
+     * The size, in bytes, above which the content of a file is not cached. Defaults to 1 MiB.
+     */
+    static final long MAX_FILE_SIZE =
+            parsePositiveLongFromSystemProperty("bitbucket.file.cache.maxFileSize", 1024 * 1024);
+
+    private final Cache<CacheKey, Object> cache = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_TOTAL_SIZE)
+            .weigher((CacheKey key, Object value) -> weigh(value))
+            .build();
+
+    /**
+     * Returns the cached value, loading it if it is not cached.
+     *
+     * @param repository identifies the repository, and the server and credentials it is read from
+     * @param commitId   the full hash of the commit the path is read at
+     * @param path       the path, relative to the root of the repository
+     * @param type       the type of value, so that a file's content, type and listing are cached separately
+     * @param loader     reads the value from Bitbucket Server
+     * @param <T>        the type of value
+     * @return the value
+     * @throws NotFoundException        if the path does not exist at the commit
+     * @throws BitbucketClientException if the value could not be read
+     */
+    public <T> T get(String repository, String commitId, String path, Class<T> type, Supplier<T> loader) {
+        CacheKey key = new CacheKey(repository, commitId, path, type);
+        Object cached = cache.getIfPresent(key);
+        if (cached == null) {
+            cached = loader.get();
+            if (!(cached instanceof byte[]) || ((byte[]) cached).length <= MAX_FILE_SIZE) {
+                cache.put(key, cached);
+            }
+        }
+        return type.cast(cached);
+    }
+
+    private static int weigh(Object value) {
+        return value instanceof byte[] ? Math.max(1, ((byte[]) value).length) : 1;
+    }
+
+    private static final class CacheKey {
+
+        private final String commitId;
+        private final String path;
+        private final String repository;
+        private final Class<?> type;
+
+        private CacheKey(String repository, String commitId, String path, Class<?> type) {
+            this.repository = repository;
+            this.commitId = commitId;
+            this.path = path;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(repository, cacheKey.repository) &&
+                   Objects.equals(commitId, cacheKey.commitId) &&
+                   Objects.equals(path, cacheKey.path) &&
+                   Objects.equals(type, cacheKey.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repository, commitId, path, type);
+        }
+    }
+}
@@ -26,40 +26,27 @@ public class BitbucketJobLinkActionFactory extends TransientActionFactory<Job> {
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
     @Inject
     private BitbucketScmFormValidationDelegate formValidation;
+    @Inject
+    private BitbucketJobLinkCache jobLinkCache;
 
     public BitbucketJobLinkActionFactory() { }
 
     @Inject
     public BitbucketJobLinkActionFactory(BitbucketPluginConfiguration bitbucketPluginConfiguration,
-                                         BitbucketScmFormValidationDelegate formValidation) {
+                                         BitbucketScmFormValidationDelegate formValidation,
+                                         BitbucketJobLinkCache jobLinkCache) {
         this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
         this.formValidation = formValidation;
+        this.jobLinkCache = jobLinkCache;
     }
 
     @Nonnull
     @Override
     public Collection<? extends Action> createFor(@Nonnull Job target) {
-        Optional<BitbucketSCMRepository> maybeRepository = getBitbucketSCMRepository(target);
-        if (!maybeRepository.isPresent()) {
-            return Collections.emptySet();
-        }
-        BitbucketSCMRepository bitbucketRepository = maybeRepository.get();
-        String serverId = Objects.toString(bitbucketRepository.getServerId(), "");
-
-        Optional<BitbucketServerConfiguration> maybeConfig = bitbucketPluginConfiguration.getServerById(serverId);
-        FormValidation configValid = maybeConfig.map(BitbucketServerConfiguration::validate)
-                .orElse(FormValidation.error("Valid config is not present"));
-
-        if (configValid.kind == FormValidation.Kind.ERROR) {
-            return Collections.emptySet();
-        }
-
-        String url = maybeConfig.get().getBaseUrl() +
-                     "/projects/" +
-                     bitbucketRepository.getProjectKey() +
-                     "/repos/" +
-                     bitbucketRepository.getRepositorySlug();
-        return Collections.singleton(BitbucketExternalLink.createDashboardLink(url, target));
+        Optional<String> url = jobLinkCache.getDashboardUrl(target,
+                bitbucketPluginConfiguration.getConfigurationVersion(), () -> getDashboardUrl(target));
+        return url.map(link -> Collections.singleton(BitbucketExternalLink.createDashboardLink(link, target)))
+                .orElse(Collections.emptySet());
     }
 
     @Override
@@ -77,7 +64,30 @@ public class BitbucketJobLinkActionFactory extends TransientActionFactory<Job> {
         return job.getSCMs();
     }
 
-    private Optional<BitbucketSCMRepository> getBitbucketSCMRepository(Job job) {
+    private Optional<String> getDashboardUrl(Job<?, ?> target) {
+        Optional<BitbucketSCMRepository> maybeRepository = getBitbucketSCMRepository(target);
+        if (!maybeRepository.isPresent()) {
+            return Optional.empty();
+        }
+        BitbucketSCMRepository bitbucketRepository = maybeRepository.get();
+        String serverId = Objects.toString(bitbucketRepository.getServerId(), "");
+
+        Optional<BitbucketServerConfiguration> maybeConfig = bitbucketPluginConfiguration.getServerById(serverId);
+        FormValidation configValid = maybeConfig.map(BitbucketServerConfiguration::validate)
+                .orElse(FormValidation.error("Valid config is not present"));
+
+        if (configValid.kind == FormValidation.Kind.ERROR) {
+            return Optional.empty();
+        }
+
+        return Optional.of(maybeConfig.get().getBaseUrl() +
+                           "/projects/" +
+                           bitbucketRepository.getProjectKey() +
+                           "/repos/" +
+                           bitbucketRepository.getRepositorySlug());
+    }
+
+    private Optional<BitbucketSCMRepository> getBitbucketSCMRepository(Job<?, ?> job) {
         // Freestyle Job
         if (job instanceof FreeStyleProject) {
             FreeStyleProject freeStyleProject = (FreeStyleProject) job;
@@ -0,0 +1,95 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.google.common.annotations.VisibleForTesting;
+import hudson.model.Item;
+import hudson.model.Job;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caches the Bitbucket dashboard URL computed by {@link BitbucketJobLinkActionFactory} for each job, since the
+ * factory is asked for the link every time a job is rendered. Entries are discarded when:
+ * <ul>
+ *     <li>the job, or the item containing it, is saved (see {@link BitbucketJobLinkCacheListener});</li>
+ *     <li>the Bitbucket Server configuration changes, as tracked by its configuration version; or</li>
+ *     <li>{@link #TTL} milliseconds have passed, so that changes to the admin credentials the server configuration
+ *     is validated against are picked up.</li>
+ * </ul>
+ * Jobs are held weakly, so that deleted or reloaded jobs do not stay in the cache.
+ */
+@Singleton
+public class BitbucketJobLinkCache {
+
+    /**
+     * How long the dashboard link of a job is cached for, in milliseconds. Defaults to 1 minute.
+     */
+    static final long TTL = parsePositiveLongFromSystemProperty("bitbucket.job.link.cache.ttl", 60 * 1000);
+
+    private final Map<Job<?, ?>, CachedLink> cache = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Clock clock;
+
+    @Inject
+    public BitbucketJobLinkCache() {
+        this(Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    BitbucketJobLinkCache(Clock clock) {
+        this.clock = requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Returns the cached dashboard URL of the job, computing it if it is not cached, has expired or was computed
+     * against a different version of the plugin configuration.
+     *
+     * @param job                  the job to get the dashboard URL of
+     * @param configurationVersion the current version of the plugin configuration
+     * @param loader               computes the dashboard URL of the job
+     * @return the dashboard URL, or {@link Optional#empty()} if the job should not link to Bitbucket
+     */
+    public Optional<String> getDashboardUrl(Job<?, ?> job, long configurationVersion,
+                                            Supplier<Optional<String>> loader) {
+        long now = clock.millis();
+        CachedLink cached = cache.get(job);
+        if (cached == null || cached.configurationVersion != configurationVersion || cached.expiry <= now) {
+            cached = new CachedLink(loader.get(), configurationVersion, now + TTL);
+            cache.put(job, cached);
+        }
+        return cached.url;
+    }
+
+    /**
+     * Removes the cached link of the item, if it is a job, and of every job it directly contains, such as the
+     * branch jobs of a multibranch project.
+     *
+     * @param item the item that changed
+     */
+    public void invalidate(Item item) {
+        synchronized (cache) {
+            cache.keySet().removeIf(job -> job == item || job.getParent() == item);
+        }
+    }
+
+    private static final class CachedLink {
+
+        private final long configurationVersion;
+        private final long expiry;
+        private final Optional<String> url;
+
+        private CachedLink(Optional<String> url, long configurationVersion, long expiry) {
+            this.url = url;
+            this.configurationVersion = configurationVersion;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import javax.inject.Inject;
+
+/**
+ * Discards the cached dashboard link of a job whenever the job, or the multibranch project containing it, is saved.
+ */
+@Extension
+public class BitbucketJobLinkCacheListener extends SaveableListener {
+
+    @Inject
+    private BitbucketJobLinkCache jobLinkCache;
+
+    public BitbucketJobLinkCacheListener() {
+    }
+
+    BitbucketJobLinkCacheListener(BitbucketJobLinkCache jobLinkCache) {
+        this.jobLinkCache = jobLinkCache;
+    }
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof Item) {
+            jobLinkCache.invalidate((Item) o);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caches the mirrors a repository is available on, as found by {@link BitbucketMirrorHandler}, so that filling in
+ * the mirror drop down or building an SCM does not ask every mirror about the repository each time. Entries are
+ * keyed by server URL, credentials and repository, are kept for {@link #TTL} milliseconds and at most
+ * {@link #MAX_SIZE} are kept, evicting the least recently used first.
+ * <p>
+ * Mirrors that did not respond in time are cached as unavailable along with the others, so that an unreachable
+ * mirror only slows down the first lookup. Failures to list a repository's mirrors are not cached.
+ * <p>
+ * The measured latency of each mirror, used to pick the fastest mirror automatically, is cached per mirror host for
+ * {@link #LATENCY_TTL} milliseconds. Mirrors that could not be reached are only remembered as unreachable for
+ * {@link #UNREACHABLE_TTL} milliseconds, so that a mirror that was briefly down is picked up again soon.
+ */
+@Singleton
+public class BitbucketMirrorCache {
+
+    /**
+     * How long the mirrors of a repository are cached for, in milliseconds. Defaults to 1 minute.
+     */
+    static final long TTL = parsePositiveLongFromSystemProperty("bitbucket.mirror.cache.ttl", 60 * 1000);
+    /**
+     * The maximum number of repositories to cache the mirrors of. Defaults to 500.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.mirror.cache.size", 500);
+    /**
+     * How long the measured latency of a mirror is cached for, in milliseconds. Defaults to 5 minutes.
+     */
+    static final long LATENCY_TTL =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.latency.ttl", 5 * 60 * 1000);
+    /**
+     * How long a mirror that could not be reached is remembered as unreachable, in milliseconds. Defaults to 30
+     * seconds.
+     */
+    static final long UNREACHABLE_TTL =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.latency.unreachable.ttl", 30 * 1000);
+
+    private final Map<CacheKey, CachedMirrors> cache = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, CachedMirrors>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedMirrors> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            });
+    private final Clock clock;
+    private final Map<String, CachedLatency> latencyByHost = new ConcurrentHashMap<>();
+
+    @Inject
+    public BitbucketMirrorCache() {
+        this(Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    BitbucketMirrorCache(Clock clock) {
+        this.clock = requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Returns the cached mirrors of the repository, loading them if they are not cached or have expired.
+     *
+     * @param baseUrl      the base URL of the upstream Bitbucket Server instance
+     * @param credentials  the credentials used to look up the mirrors
+     * @param repositoryId the ID of the repository on the upstream server
+     * @param loader       asks each mirror for the repository's details
+     * @return the repository's details on each mirror
+     * @throws BitbucketClientException if the mirrors could not be listed
+     */
+    public List<BitbucketMirroredRepository> getMirroredRepositories(
+            String baseUrl, BitbucketCredentials credentials, int repositoryId,
+            Supplier<List<BitbucketMirroredRepository>> loader) {
+        CacheKey key = new CacheKey(baseUrl, credentials, repositoryId);
+        CachedMirrors cached = cache.get(key);
+        if (cached == null || cached.expiry <= clock.millis()) {
+            cached = new CachedMirrors(loader.get(), clock.millis() + TTL);
+            cache.put(key, cached);
+        }
+        return cached.mirroredRepositories;
+    }
+
+    /**
+     * Returns the cached latency of the mirror serving the given clone URL, measuring it if it is not cached or has
+     * expired. Latencies are cached per host, since every repository on a mirror is served from the same host.
+     *
+     * @param cloneUrl the clone URL of a repository on the mirror
+     * @param probe    measures the latency of the mirror
+     * @return the latency, in nanoseconds, or {@link MirrorLatencyProbe#UNREACHABLE}
+     */
+    long getLatency(String cloneUrl, MirrorLatencyProbe probe) {
+        String host = getHost(cloneUrl);
+        CachedLatency cached = latencyByHost.get(host);
+        if (cached == null || cached.expiry <= clock.millis()) {
+            long latency = probe.probe(cloneUrl);
+            long ttl = latency == MirrorLatencyProbe.UNREACHABLE ? UNREACHABLE_TTL : LATENCY_TTL;
+            cached = new CachedLatency(latency, clock.millis() + ttl);
+            latencyByHost.put(host, cached);
+        }
+        return cached.latency;
+    }
+
+    private static String getHost(String cloneUrl) {
+        try {
+            URI uri = new URI(cloneUrl);
+            return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        } catch (URISyntaxException e) {
+            return cloneUrl;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String baseUrl;
+        private final String credentials;
+        private final int repositoryId;
+
+        private CacheKey(String baseUrl, BitbucketCredentials credentials, int repositoryId) {
+            this.baseUrl = baseUrl;
+            this.credentials = Hashing.sha256().hashString(credentials.toHeaderValue(), UTF_8).toString();
+            this.repositoryId = repositoryId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return repositoryId == cacheKey.repositoryId &&
+                   Objects.equals(baseUrl, cacheKey.baseUrl) &&
+                   Objects.equals(credentials, cacheKey.credentials);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, credentials, repositoryId);
+        }
+    }
+
+    private static final class CachedLatency {
+
+        private final long expiry;
+        private final long latency;
+
+        private CachedLatency(long latency, long expiry) {
+            this.latency = latency;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class CachedMirrors {
+
+        private final long expiry;
+        private final List<BitbucketMirroredRepository> mirroredRepositories;
+
+        private CachedMirrors(List<BitbucketMirroredRepository> mirroredRepositories, long expiry) {
+            this.mirroredRepositories = Collections.unmodifiableList(new ArrayList<>(mirroredRepositories));
+            this.expiry = expiry;
+        }
+    }
+}
@@ -9,15 +9,22 @@ import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCr
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
+import hudson.util.NamingThreadFactory;
 
-import java.util.Collections;
-import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
@@ -26,30 +33,82 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 public class BitbucketMirrorHandler {
 
+    /**
+     * The mirror name to use to clone from whichever available mirror Jenkins can reach the fastest.
+     */
+    public static final String AUTO_MIRROR_NAME = "auto";
+
     private static final String DEFAULT_UPSTREAM_SERVER = "Primary Server";
     private static final Option DEFAULT_OPTION_SELECTED = new Option(DEFAULT_UPSTREAM_SERVER, "", true);
     private static final Logger LOGGER = Logger.getLogger(BitbucketMirrorHandler.class.getName());
+    /**
+     * How long to wait for the mirrors to return a repository's details, in milliseconds. Mirrors that have not
+     * responded by then are treated as unavailable. Defaults to 5 seconds.
+     */
+    private static final long MIRROR_DETAILS_TIMEOUT =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.details.timeout", 5000);
+    private static final ExecutorService MIRROR_DETAILS_EXECUTOR = createMirrorDetailsExecutor();
+    private static final MirrorLatencyProbe CONNECT_TIME_PROBE =
+            MirrorLatencyProbe.connectTime((int) Math.min(Integer.MAX_VALUE, MIRROR_DETAILS_TIMEOUT));
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    private final BitbucketMirrorCache mirrorCache;
+    private final MirrorLatencyProbe latencyProbe;
     private final BitbucketRepoFetcher bitbucketRepoFetcher;
 
     public BitbucketMirrorHandler(
             BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
             JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
             BitbucketRepoFetcher bitbucketRepoFetcher) {
+        this(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, bitbucketRepoFetcher, null);
+    }
+
+    /**
+     * @param mirrorCache the cache of each repository's mirrors, or {@code null} to always ask the mirrors
+     */
+    public BitbucketMirrorHandler(
+            BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+            JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            @Nullable BitbucketMirrorCache mirrorCache) {
+        this(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, bitbucketRepoFetcher, mirrorCache,
+                CONNECT_TIME_PROBE);
+    }
+
+    @VisibleForTesting
+    BitbucketMirrorHandler(
+            BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+            JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            @Nullable BitbucketMirrorCache mirrorCache,
+            MirrorLatencyProbe latencyProbe) {
         this.bitbucketClientFactoryProvider = bitbucketClientFactoryProvider;
         this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
         this.bitbucketRepoFetcher = bitbucketRepoFetcher;
+        this.mirrorCache = mirrorCache;
+        this.latencyProbe = latencyProbe;
     }
 
+    /**
+     * Returns the repository on the selected mirror. If the selection is {@link #AUTO_MIRROR_NAME}, and no mirror is
+     * actually called that, the available mirror that Jenkins can reach the fastest is returned.
+     *
+     * @param mirrorFetchRequest the repository and mirror to fetch
+     * @return the repository on the mirror
+     * @throws MirrorFetchException if the mirror is not available, or no mirror is reachable
+     */
     public EnrichedBitbucketMirroredRepository fetchRepository(MirrorFetchRequest mirrorFetchRequest) {
-        return this.fetchRepositories(mirrorFetchRequest)
+        List<EnrichedBitbucketMirroredRepository> repositories = this.fetchRepositories(mirrorFetchRequest);
+        Optional<EnrichedBitbucketMirroredRepository> selected = repositories
                 .stream()
                 .filter(r -> r.getMirroringDetails().getMirrorName().equals(mirrorFetchRequest.getExistingMirrorSelection()))
-                .findFirst()
-                .orElseThrow(() -> new MirrorFetchException(
-                        "Unable to find the mirror" + mirrorFetchRequest.getExistingMirrorSelection()));
+                .findFirst();
+        if (!selected.isPresent() && AUTO_MIRROR_NAME.equals(mirrorFetchRequest.getExistingMirrorSelection())) {
+            selected = selectFastest(repositories);
+        }
+        return selected.orElseThrow(() -> new MirrorFetchException(
+                "Unable to find the mirror" + mirrorFetchRequest.getExistingMirrorSelection()));
     }
 
     public ListBoxModel fetchAsListBox(MirrorFetchRequest mirrorFetchRequest) {
@@ -97,11 +156,12 @@ public class BitbucketMirrorHandler {
         BitbucketClientFactory client = bitbucketClientFactoryProvider.getClient(bitbucketBaseUrl, jobOrGlobalConf);
         BitbucketRepository repository =
                 bitbucketRepoFetcher.fetchRepo(client, mirrorFetchRequest.getProjectNameOrKey(), mirrorFetchRequest.getRepoNameOrSlug());
-        BitbucketMirrorClient mirrorClient = client.getMirroredRepositoriesClient(repository.getId());
-        return mirrorClient.getMirroredRepositoryDescriptors()
-                .getValues()
+        List<BitbucketMirroredRepository> mirroredRepositories = mirrorCache == null ?
+                fetchMirroredRepos(client, repository.getId()) :
+                mirrorCache.getMirroredRepositories(bitbucketBaseUrl, jobOrGlobalConf, repository.getId(),
+                        () -> fetchMirroredRepos(client, repository.getId()));
+        return mirroredRepositories
                 .stream()
-                .map(repoDescriptor -> fetchMirroredRepo(mirrorClient, repoDescriptor, repository.getId()))
                 .filter(BitbucketMirroredRepository::isAvailable)
                 .map(mirrorDetails -> new EnrichedBitbucketMirroredRepository(repository, mirrorDetails))
                 .collect(Collectors.toList());
@@ -126,6 +186,118 @@ public class BitbucketMirrorHandler {
         }
     }
 
+    @CheckForNull
+    private static String getProbeUrl(BitbucketMirroredRepository mirroredRepository) {
+        return mirroredRepository.getCloneUrls()
+                .stream()
+                .sorted(Comparator.comparing(link -> !CloneProtocol.HTTP.name.equals(link.getName())))
+                .map(BitbucketNamedLink::getHref)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static long awaitLatency(Future<Long> latency, long deadline) {
+        try {
+            return latency.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            latency.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return MirrorLatencyProbe.UNREACHABLE;
+    }
+
+    private static ExecutorService createMirrorDetailsExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketMirrorDetails"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Asks every mirror for the repository's details at the same time, so that looking up the mirrors takes as long
+     * as the slowest mirror rather than all of them combined, and no longer than {@link #MIRROR_DETAILS_TIMEOUT}.
+     */
+    private List<BitbucketMirroredRepository> fetchMirroredRepos(BitbucketClientFactory client, int repositoryId) {
+        BitbucketMirrorClient mirrorClient = client.getMirroredRepositoriesClient(repositoryId);
+        List<BitbucketMirroredRepositoryDescriptor> descriptors =
+                mirrorClient.getMirroredRepositoryDescriptors().getValues();
+        List<Future<BitbucketMirroredRepository>> details = descriptors.stream()
+                .map(repoDescriptor -> MIRROR_DETAILS_EXECUTOR.submit(
+                        () -> fetchMirroredRepo(mirrorClient, repoDescriptor, repositoryId)))
+                .collect(Collectors.toList());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MIRROR_DETAILS_TIMEOUT);
+        List<BitbucketMirroredRepository> result = new ArrayList<>(descriptors.size());
+        for (int i = 0; i < descriptors.size(); i++) {
+            result.add(awaitMirroredRepo(details.get(i), descriptors.get(i), repositoryId, deadline));
+        }
+        return result;
+    }
+
+    private BitbucketMirroredRepository awaitMirroredRepo(Future<BitbucketMirroredRepository> details,
+                                                          BitbucketMirroredRepositoryDescriptor repoDescriptor,
+                                                          int repositoryId, long deadline) {
+        String mirrorName = repoDescriptor.getMirrorServer().getName();
+        try {
+            return details.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.fine(() -> format("Mirror %s did not respond within %dms", mirrorName, MIRROR_DETAILS_TIMEOUT));
+        } catch (ExecutionException e) {
+            LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " + mirrorName, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        details.cancel(true);
+        return unavailable(mirrorName, repositoryId);
+    }
+
+    private long measureLatency(BitbucketMirroredRepository mirroredRepository) {
+        String cloneUrl = getProbeUrl(mirroredRepository);
+        if (cloneUrl == null) {
+            return MirrorLatencyProbe.UNREACHABLE;
+        }
+        return mirrorCache == null ? latencyProbe.probe(cloneUrl) : mirrorCache.getLatency(cloneUrl, latencyProbe);
+    }
+
+    /**
+     * Measures the latency of every mirror at the same time and returns the fastest one that could be reached.
+     * Mirrors whose last synchronization succeeded are preferred over faster mirrors that failed to synchronize,
+     * since those may be serving stale refs.
+     */
+    private Optional<EnrichedBitbucketMirroredRepository> selectFastest(
+            List<EnrichedBitbucketMirroredRepository> repositories) {
+        List<Future<Long>> latencies = repositories.stream()
+                .map(repository -> MIRROR_DETAILS_EXECUTOR.submit(
+                        () -> measureLatency(repository.getMirroringDetails())))
+                .collect(Collectors.toList());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MIRROR_DETAILS_TIMEOUT);
+        EnrichedBitbucketMirroredRepository fastest = null;
+        long fastestLatency = MirrorLatencyProbe.UNREACHABLE;
+        for (int i = 0; i < repositories.size(); i++) {
+            long latency = awaitLatency(latencies.get(i), deadline);
+            if (latency == MirrorLatencyProbe.UNREACHABLE) {
+                continue;
+            }
+            boolean inSync = isInSync(repositories.get(i));
+            if (fastest == null || (inSync && !isInSync(fastest)) ||
+                (inSync == isInSync(fastest) && latency < fastestLatency)) {
+                fastest = repositories.get(i);
+                fastestLatency = latency;
+            }
+        }
+        if (fastest != null) {
+            String mirrorName = fastest.getMirroringDetails().getMirrorName();
+            long latency = TimeUnit.NANOSECONDS.toMillis(fastestLatency);
+            LOGGER.fine(() -> format("Selected mirror %s, reachable in %dms", mirrorName, latency));
+        }
+        return Optional.ofNullable(fastest);
+    }
+
+    private static boolean isInSync(EnrichedBitbucketMirroredRepository repository) {
+        return repository.getMirroringDetails().getStatus() == BitbucketMirroredRepositoryStatus.AVAILABLE;
+    }
+
     private BitbucketMirroredRepository fetchMirroredRepo(BitbucketMirrorClient client,
                                                           BitbucketMirroredRepositoryDescriptor repoDescriptor,
                                                           int repositoryId) {
@@ -134,8 +306,12 @@ public class BitbucketMirrorHandler {
         } catch (BitbucketClientException e) {
             LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " +
                              repoDescriptor.getMirrorServer().getName(), e);
-            return new BitbucketMirroredRepository(false, emptyMap(),
-                    repoDescriptor.getMirrorServer().getName(), repositoryId, BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+            return unavailable(repoDescriptor.getMirrorServer().getName(), repositoryId);
         }
     }
+
+    private static BitbucketMirroredRepository unavailable(String mirrorName, int repositoryId) {
+        return new BitbucketMirroredRepository(false, emptyMap(), mirrorName, repositoryId,
+                BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+    }
 }
@@ -0,0 +1,47 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import hudson.Extension;
+import jenkins.scm.api.SCMHeadCategory;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.ChangeRequestSCMHeadCategory;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.util.List;
+
+/**
+ * Turns on discovery of pull requests for a {@link BitbucketSCMSource}. Pull requests are discovered by
+ * {@link BitbucketRefDiscovery} through the REST API, so this trait does not change the git context.
+ */
+public class BitbucketPullRequestDiscoveryTrait extends SCMSourceTrait {
+
+    @DataBoundConstructor
+    public BitbucketPullRequestDiscoveryTrait() {
+    }
+
+    static boolean isEnabled(List<SCMSourceTrait> traits) {
+        return traits.stream().anyMatch(BitbucketPullRequestDiscoveryTrait.class::isInstance);
+    }
+
+    @Override
+    protected boolean includeCategory(SCMHeadCategory category) {
+        return category instanceof ChangeRequestSCMHeadCategory;
+    }
+
+    @Symbol("bitbucketPullRequestDiscovery")
+    @Extension
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return "Discover pull requests";
+        }
+
+        @Override
+        public Class<? extends SCMSource> getSourceClass() {
+            return BitbucketSCMSource.class;
+        }
+    }
+}
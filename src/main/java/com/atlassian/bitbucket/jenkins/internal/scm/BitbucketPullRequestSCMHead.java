@@ -0,0 +1,86 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadOrigin;
+import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A pull request discovered through the Bitbucket Server REST API. It is named {@code PR-<id>} and is checked out
+ * from {@code refs/pull-requests/<id>/from}, which Bitbucket Server keeps pointing at the pull request's source
+ * branch, so pull requests from forks can be fetched from the target repository.
+ */
+public class BitbucketPullRequestSCMHead extends SCMHead implements ChangeRequestSCMHead2 {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final SCMHeadOrigin origin;
+    private final String originName;
+    private final GitBranchSCMHead target;
+
+    public BitbucketPullRequestSCMHead(String id, String originName, GitBranchSCMHead target,
+                                       SCMHeadOrigin origin) {
+        super("PR-" + requireNonNull(id, "id"));
+        this.id = id;
+        this.originName = requireNonNull(originName, "originName");
+        this.target = requireNonNull(target, "target");
+        this.origin = requireNonNull(origin, "origin");
+    }
+
+    public BitbucketPullRequestSCMHead(BitbucketPullRequest pullRequest) {
+        this(String.valueOf(pullRequest.getId()), pullRequest.getFromRef().getDisplayId(),
+                new GitBranchSCMHead(pullRequest.getToRef().getDisplayId()),
+                pullRequest.isFromOtherRepository() ?
+                        new SCMHeadOrigin.Fork(pullRequest.getFromRef().getRepository().getProject().getKey() + "/" +
+                                               pullRequest.getFromRef().getRepository().getSlug()) :
+                        SCMHeadOrigin.DEFAULT);
+    }
+
+    /**
+     * Only the pull request's source branch is checked out, it is not merged with its target branch.
+     */
+    @Nonnull
+    @Override
+    public ChangeRequestCheckoutStrategy getCheckoutStrategy() {
+        return ChangeRequestCheckoutStrategy.HEAD;
+    }
+
+    @Nonnull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Nonnull
+    @Override
+    public SCMHeadOrigin getOrigin() {
+        return origin;
+    }
+
+    @Nonnull
+    @Override
+    public String getOriginName() {
+        return originName;
+    }
+
+    /**
+     * @return the refspec that fetches the pull request's source branch into the remote tracking ref named after
+     * this head
+     */
+    public String getRefSpec() {
+        return "+refs/pull-requests/" + id + "/from:refs/remotes/@{remote}/" + getName();
+    }
+
+    @Nonnull
+    @Override
+    public GitBranchSCMHead getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,47 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.scm.api.mixin.ChangeRequestSCMRevision;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The revision of a pull request: the commit at the tip of its source branch and, as the target revision, the commit
+ * at the tip of its target branch. Since pull requests are built without merging, two revisions are the same if their
+ * source commits are the same, so a pull request is only rebuilt when new commits are pushed to its source branch.
+ */
+public class BitbucketPullRequestSCMRevision extends ChangeRequestSCMRevision<BitbucketPullRequestSCMHead> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String fromHash;
+
+    public BitbucketPullRequestSCMRevision(BitbucketPullRequestSCMHead head, String fromHash, String toHash) {
+        super(head, new SCMRevisionImpl(head.getTarget(), requireNonNull(toHash, "toHash")));
+        this.fromHash = requireNonNull(fromHash, "fromHash");
+    }
+
+    @Override
+    public boolean equivalent(ChangeRequestSCMRevision<?> revision) {
+        return revision instanceof BitbucketPullRequestSCMRevision &&
+               fromHash.equals(((BitbucketPullRequestSCMRevision) revision).fromHash);
+    }
+
+    public String getFromHash() {
+        return fromHash;
+    }
+
+    public String getToHash() {
+        return ((SCMRevisionImpl) getTarget()).getHash();
+    }
+
+    @Override
+    public String toString() {
+        return fromHash;
+    }
+
+    @Override
+    protected int _hashCode() {
+        return fromHash.hashCode();
+    }
+}
@@ -0,0 +1,240 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketTag;
+import hudson.model.TaskListener;
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSCMSourceContext;
+import jenkins.plugins.git.GitSCMSourceRequest;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
+import jenkins.plugins.git.traits.DiscoverOtherRefsTrait;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceRequest;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Discovers the branches, tags and, optionally, the open pull requests of a repository through the Bitbucket Server
+ * REST API, rather than listing the remote's refs with git. Refs are streamed a page at a time, with the next page
+ * fetched while the current one is processed, and heads and revisions are built straight from the responses.
+ * Multibranch criteria are checked with a {@link BitbucketSCMProbe}, so git is only needed to check out a build.
+ * <p>
+ * The branch and tag heads and revisions created are the same as those {@link GitSCMSource} creates, so existing
+ * branch and tag jobs are matched up whichever way they were discovered. Pull requests are discovered as
+ * {@link BitbucketPullRequestSCMHead}s, so {@code refs/pull-requests/*} never has to be fetched to find them. Refs
+ * configured through {@link DiscoverOtherRefsTrait} are not supported and must be discovered with git.
+ */
+class BitbucketRefDiscovery {
+
+    private final boolean discoverPullRequests;
+    private final BitbucketRepositoryClient repositoryClient;
+    private final BitbucketTagTimestampCache tagTimestamps;
+
+    BitbucketRefDiscovery(BitbucketRepositoryClient repositoryClient, boolean discoverPullRequests,
+                          BitbucketTagTimestampCache tagTimestamps) {
+        this.repositoryClient = requireNonNull(repositoryClient, "repositoryClient");
+        this.discoverPullRequests = discoverPullRequests;
+        this.tagTimestamps = requireNonNull(tagTimestamps, "tagTimestamps");
+    }
+
+    /**
+     * @param context the context of the retrieval, with the source's traits applied
+     * @return true if every ref the context asks for can be discovered through the REST API
+     */
+    static boolean isSupported(GitSCMSourceContext<?, ?> context) {
+        return context.getRefNameMappings().isEmpty();
+    }
+
+    /**
+     * Discovers the branches and tags wanted by the context, and the open pull requests if they are wanted, and hands
+     * them to the context's observer.
+     *
+     * @param context  the context of the retrieval, with the source's traits applied
+     * @param source   the source being retrieved
+     * @param listener the listener to log progress to
+     * @throws BitbucketClientException if the refs could not be listed
+     * @throws IOException              if the criteria could not be checked
+     * @throws InterruptedException     if interrupted
+     */
+    void discover(GitSCMSourceContext<?, ?> context, SCMSource source, TaskListener listener)
+            throws IOException, InterruptedException {
+        try (GitSCMSourceRequest request = context.newRequest(source, listener)) {
+            if (context.wantBranches() && discoverBranches(request, listener)) {
+                return;
+            }
+            if (context.wantTags() && discoverTags(request, listener)) {
+                return;
+            }
+            if (discoverPullRequests) {
+                discoverPullRequests(request, listener);
+            }
+        }
+    }
+
+    /**
+     * Hands only the given heads to the context's observer, at the given revisions, without listing the refs of the
+     * repository. This is used for events that say exactly which refs changed and what they now point at. Events do
+     * not say when a tag's commit was made, so tags are observed with the timestamp of the commit they point at.
+     *
+     * @param context  the context of the retrieval, with the source's traits applied
+     * @param source   the source being retrieved
+     * @param heads    the changed heads and their new revisions
+     * @param listener the listener to log progress to
+     * @throws IOException          if the criteria could not be checked
+     * @throws InterruptedException if interrupted
+     */
+    void observe(GitSCMSourceContext<?, ?> context, SCMSource source, Map<SCMHead, SCMRevision> heads,
+                 TaskListener listener) throws IOException, InterruptedException {
+        listener.getLogger().format("Processing %d changed refs from the event%n", heads.size());
+        try (GitSCMSourceRequest request = context.newRequest(source, listener)) {
+            for (Map.Entry<SCMHead, SCMRevision> entry : heads.entrySet()) {
+                checkInterrupted();
+                SCMHead head = entry.getKey();
+                if (!isWanted(context, head)) {
+                    continue;
+                }
+                SCMRevision revision = entry.getValue();
+                long timestamp = 0L;
+                if (head instanceof GitTagSCMHead) {
+                    String hash = getHash(revision);
+                    timestamp = getTagTimestamp(hash);
+                    GitTagSCMHead tagHead = new GitTagSCMHead(head.getName(), timestamp);
+                    head = tagHead;
+                    revision = new GitTagSCMRevision(tagHead, hash);
+                }
+                if (observe(request, head, revision, timestamp, listener)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Returns the commit to check the criteria against, which for a pull request is the tip of its source branch.
+     */
+    private static String getHash(SCMRevision revision) {
+        if (revision instanceof BitbucketPullRequestSCMRevision) {
+            return ((BitbucketPullRequestSCMRevision) revision).getFromHash();
+        }
+        return ((SCMRevisionImpl) revision).getHash();
+    }
+
+    private static SCMSourceRequest.Witness witness(TaskListener listener) {
+        return (head, revision, isMatch) -> listener.getLogger()
+                .println("    " + head.getName() + (isMatch ? ": Met criteria" : ": Does not meet criteria"));
+    }
+
+    private boolean discoverBranches(GitSCMSourceRequest request, TaskListener listener)
+            throws IOException, InterruptedException {
+        listener.getLogger().println("Listing branches from Bitbucket Server");
+        int count = 0;
+        for (Iterator<BitbucketBranch> branches = repositoryClient.getBranches().iterator(); branches.hasNext(); ) {
+            checkInterrupted();
+            BitbucketBranch branch = branches.next();
+            count++;
+            if (request.<GitBranchSCMHead, GitBranchSCMRevision>process(
+                    new GitBranchSCMHead(branch.getDisplayId()),
+                    head -> new GitBranchSCMRevision(head, branch.getLatestCommit()),
+                    (head, revision) -> new BitbucketSCMProbe(repositoryClient, head.getName(), revision.getHash(), 0L),
+                    witness(listener))) {
+                listener.getLogger().format("Processed %d branches (query complete)%n", count);
+                return true;
+            }
+        }
+        listener.getLogger().format("Processed %d branches%n", count);
+        return false;
+    }
+
+    private boolean discoverPullRequests(GitSCMSourceRequest request, TaskListener listener)
+            throws IOException, InterruptedException {
+        listener.getLogger().println("Listing pull requests from Bitbucket Server");
+        int count = 0;
+        for (Iterator<BitbucketPullRequest> pullRequests = repositoryClient.getPullRequests().iterator();
+             pullRequests.hasNext(); ) {
+            checkInterrupted();
+            BitbucketPullRequest pullRequest = pullRequests.next();
+            count++;
+            if (request.<BitbucketPullRequestSCMHead, BitbucketPullRequestSCMRevision>process(
+                    new BitbucketPullRequestSCMHead(pullRequest),
+                    head -> new BitbucketPullRequestSCMRevision(head, pullRequest.getFromRef().getLatestCommit(),
+                            pullRequest.getToRef().getLatestCommit()),
+                    (head, revision) -> new BitbucketSCMProbe(repositoryClient, head.getName(),
+                            revision.getFromHash(), 0L),
+                    witness(listener))) {
+                listener.getLogger().format("Processed %d pull requests (query complete)%n", count);
+                return true;
+            }
+        }
+        listener.getLogger().format("Processed %d pull requests%n", count);
+        return false;
+    }
+
+    private boolean discoverTags(GitSCMSourceRequest request, TaskListener listener)
+            throws IOException, InterruptedException {
+        listener.getLogger().println("Listing tags from Bitbucket Server");
+        int count = 0;
+        for (Iterator<BitbucketTag> tags = repositoryClient.getTags().iterator(); tags.hasNext(); ) {
+            checkInterrupted();
+            BitbucketTag tag = tags.next();
+            count++;
+            // The tag's timestamp costs a request the first time, so only look it up for tags that are not filtered
+            // out by name
+            if (request.isExcluded(new GitTagSCMHead(tag.getDisplayId(), 0L))) {
+                continue;
+            }
+            long timestamp = getTagTimestamp(tag.getLatestCommit());
+            if (request.<GitTagSCMHead, GitTagSCMRevision>process(new GitTagSCMHead(tag.getDisplayId(), timestamp),
+                    head -> new GitTagSCMRevision(head, tag.getLatestCommit()),
+                    (head, revision) -> new BitbucketSCMProbe(repositoryClient, head.getName(), revision.getHash(),
+                            timestamp),
+                    witness(listener))) {
+                listener.getLogger().format("Processed %d tags (query complete)%n", count);
+                return true;
+            }
+        }
+        listener.getLogger().format("Processed %d tags%n", count);
+        return false;
+    }
+
+    private long getTagTimestamp(String commit) {
+        return tagTimestamps.getTimestamp(commit, () -> repositoryClient.getCommit(commit).getCommitterTimestamp());
+    }
+
+    private boolean isWanted(GitSCMSourceContext<?, ?> context, SCMHead head) {
+        if (head instanceof BitbucketPullRequestSCMHead) {
+            return discoverPullRequests;
+        }
+        return head instanceof GitTagSCMHead ? context.wantTags() : context.wantBranches();
+    }
+
+    /**
+     * @return true if the request is complete and no more heads need to be observed
+     */
+    private boolean observe(GitSCMSourceRequest request, SCMHead head, SCMRevision revision, long timestamp,
+                            TaskListener listener) throws IOException, InterruptedException {
+        return request.<SCMHead, SCMRevision>process(head,
+                changedHead -> revision,
+                (changedHead, changedRevision) -> new BitbucketSCMProbe(repositoryClient, changedHead.getName(),
+                        getHash(changedRevision), timestamp),
+                witness(listener));
+    }
+}
@@ -0,0 +1,375 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.google.common.annotations.VisibleForTesting;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.isAnyBlank;
+
+/**
+ * Keeps a bare copy of each repository that {@link BitbucketSCM} checks out in the Jenkins home directory, so that
+ * new workspaces can be cloned with it as a reference repository and only fetch what the copy does not have yet.
+ * Copies are keyed by server, project and repository.
+ * <ul>
+ *     <li>A copy is created in the background the first time a repository is checked out, and is only used as a
+ *     reference once it exists.</li>
+ *     <li>Copies are fetched again when Bitbucket Server sends a webhook event for a push to the repository, and the
+ *     first time they are used after Jenkins starts.</li>
+ *     <li>Workspaces cloned with a copy keep borrowing its objects. Each workspace is recorded as a borrower of the
+ *     copy, and copies are never garbage collected, so pruning deleted refs does not take objects away from them.</li>
+ *     <li>Once the copies take up more than {@link #QUOTA} bytes, the least recently used are deleted, unless a
+ *     checkout is still using them. Before a copy is deleted, the objects its borrowers use are copied into their
+ *     workspaces, as {@code git clone --dissociate} does. A copy with a borrower that cannot be reached is kept.</li>
+ *     <li>The size of a copy is only measured after it has been fetched, from the packs it holds, and the total is
+ *     kept as it changes.</li>
+ * </ul>
+ * Setting the quota to 0 turns reference repositories off.
+ */
+@Singleton
+public class BitbucketReferenceRepositoryCache {
+
+    /**
+     * The disk space, in bytes, the reference repositories may take up. Defaults to 10 GiB.
+     */
+    static final long QUOTA =
+            parsePositiveLongFromSystemProperty("bitbucket.reference.cache.quota", 10L * 1024 * 1024 * 1024);
+
+    private static final String BORROWERS_FILE = "jenkins-borrowers";
+    private static final Logger LOGGER = Logger.getLogger(BitbucketReferenceRepositoryCache.class.getName());
+
+    private final Clock clock;
+    private final ReferenceRepositoryDissociator dissociator;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final ReferenceRepositoryFetcher fetcher;
+    private final Set<String> fetching = ConcurrentHashMap.newKeySet();
+    private final File rootDir;
+    private final long quota;
+    private volatile boolean loaded;
+    private long totalSize;
+
+    @Inject
+    public BitbucketReferenceRepositoryCache() {
+        this(new File(Jenkins.get().getRootDir(), "caches/bitbucket-reference-repositories"), QUOTA,
+                Clock.systemUTC(), Executors.newSingleThreadExecutor(
+                        new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketReferenceRepositoryFetch")),
+                ReferenceRepositoryFetcher.git(), ReferenceRepositoryDissociator.git());
+    }
+
+    @VisibleForTesting
+    BitbucketReferenceRepositoryCache(File rootDir, long quota, Clock clock, Executor executor,
+                                      ReferenceRepositoryFetcher fetcher, ReferenceRepositoryDissociator dissociator) {
+        this.rootDir = requireNonNull(rootDir, "rootDir");
+        this.quota = quota;
+        this.clock = requireNonNull(clock, "clock");
+        this.executor = requireNonNull(executor, "executor");
+        this.fetcher = requireNonNull(fetcher, "fetcher");
+        this.dissociator = requireNonNull(dissociator, "dissociator");
+    }
+
+    /**
+     * Returns the path of the reference repository for the given repository, if it has been created, and records that
+     * it was used. If it has not been created yet, it is created in the background so that later checkouts can use
+     * it. A returned reference repository is not deleted until it is {@link #release released}.
+     *
+     * @param repository    the repository being checked out
+     * @param cloneUrl      the URL the repository is cloned from
+     * @param credentialsId the credentials the repository is cloned with, if any
+     * @param context       the job the repository is checked out for, which the credentials are looked up in
+     * @return the absolute path of the reference repository on the controller
+     */
+    public Optional<String> getReferencePath(BitbucketSCMRepository repository, String cloneUrl,
+                                             @CheckForNull String credentialsId, @CheckForNull Item context) {
+        if (quota == 0 || isAnyBlank(repository.getServerId(), repository.getProjectKey(),
+                repository.getRepositorySlug(), cloneUrl)) {
+            return Optional.empty();
+        }
+        load();
+        String key = getKey(repository.getServerId(), repository.getProjectKey(), repository.getRepositorySlug());
+        String name = Util.getDigestOf(key);
+        Entry entry = entries.computeIfAbsent(name, ignored -> new Entry(new File(rootDir, name), 0L));
+        entry.key = key;
+        entry.cloneUrl = cloneUrl;
+        entry.credentialsId = credentialsId;
+        entry.context = context;
+        entry.lastUsed = clock.millis();
+        if (!entry.fetched) {
+            scheduleFetch(name, entry);
+        }
+        synchronized (this) {
+            if (entry.removing || !entry.exists()) {
+                return Optional.empty();
+            }
+            entry.users++;
+        }
+        return Optional.of(entry.directory.getAbsolutePath());
+    }
+
+    /**
+     * Fetches the reference repositories of the repository with the given project key and slug again, on any server,
+     * in the background.
+     *
+     * @param projectKey     the key of the repository's project
+     * @param repositorySlug the repository's slug
+     */
+    public void refresh(String projectKey, String repositorySlug) {
+        String suffix = getKey("", projectKey, repositorySlug);
+        entries.forEach((name, entry) -> {
+            if (entry.key != null && entry.cloneUrl != null && entry.key.endsWith(suffix)) {
+                scheduleFetch(name, entry);
+            }
+        });
+    }
+
+    /**
+     * Records that a workspace was cloned with the reference repository at the given path, so that it is dissociated
+     * from it before the reference repository is deleted.
+     *
+     * @param referencePath the path returned by {@link #getReferencePath}, which has not been released yet
+     * @param borrower      the workspace
+     */
+    public synchronized void addBorrower(String referencePath, ReferenceRepositoryBorrower borrower) {
+        Entry entry = entries.get(new File(referencePath).getName());
+        if (entry != null && entry.borrowers.add(borrower)) {
+            saveBorrowers(entry);
+        }
+    }
+
+    /**
+     * Records that a checkout no longer needs the reference repository at the given path, so that it can be deleted
+     * to stay within the quota.
+     *
+     * @param referencePath the path returned by {@link #getReferencePath}
+     */
+    public synchronized void release(String referencePath) {
+        Entry entry = entries.get(new File(referencePath).getName());
+        if (entry != null && entry.users > 0) {
+            entry.users--;
+        }
+    }
+
+    private static String getKey(String serverId, String projectKey, String repositorySlug) {
+        return (serverId + "/" + projectKey + "/" + repositorySlug).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the size of the packs in the given reference repository. Fetches always keep what they receive as a
+     * pack and the repository is never garbage collected, so this covers nearly all of the space it takes up while
+     * only listing a single directory.
+     */
+    private static long getPackSize(File directory) {
+        File[] packs = new File(directory, "objects/pack").listFiles(File::isFile);
+        return packs == null ? 0L : Arrays.stream(packs).mapToLong(File::length).sum();
+    }
+
+    private static Set<ReferenceRepositoryBorrower> loadBorrowers(File directory) {
+        Set<ReferenceRepositoryBorrower> borrowers = new LinkedHashSet<>();
+        File file = new File(directory, BORROWERS_FILE);
+        if (!file.isFile()) {
+            return borrowers;
+        }
+        try {
+            for (String line : FileUtils.readLines(file, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf('\t');
+                if (separator >= 0) {
+                    borrowers.add(new ReferenceRepositoryBorrower(line.substring(0, separator),
+                            line.substring(separator + 1)));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the borrowers of reference repository " + directory, e);
+        }
+        return borrowers;
+    }
+
+    /**
+     * Dissociates every borrower of the reference repository from it.
+     *
+     * @return true if no workspace borrows from the reference repository any more
+     */
+    private boolean dissociate(Entry entry, Set<ReferenceRepositoryBorrower> borrowers) throws InterruptedException {
+        for (ReferenceRepositoryBorrower borrower : borrowers) {
+            try {
+                if (!dissociator.dissociate(entry.directory, borrower)) {
+                    LOGGER.fine(() -> "Keeping reference repository " + entry.directory + " for " + borrower);
+                    return false;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to dissociate " + borrower + " from reference repository " +
+                                          entry.directory, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used reference repositories until the rest fit within the quota. Only the fetch
+     * thread evicts, and a reference repository is marked as being removed while its borrowers are dissociated, so
+     * that it is not handed to a checkout in the meantime.
+     */
+    private void evict(String keep) throws InterruptedException {
+        List<Map.Entry<String, Entry>> leastRecentlyUsedFirst;
+        synchronized (this) {
+            if (totalSize <= quota) {
+                return;
+            }
+            leastRecentlyUsedFirst = new ArrayList<>(entries.entrySet());
+        }
+        leastRecentlyUsedFirst.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        for (Map.Entry<String, Entry> e : leastRecentlyUsedFirst) {
+            String name = e.getKey();
+            Entry entry = e.getValue();
+            Set<ReferenceRepositoryBorrower> borrowers;
+            synchronized (this) {
+                if (totalSize <= quota) {
+                    return;
+                }
+                if (name.equals(keep) || fetching.contains(name) || entry.users > 0) {
+                    continue;
+                }
+                entry.removing = true;
+                borrowers = new LinkedHashSet<>(entry.borrowers);
+            }
+            boolean dissociated = false;
+            try {
+                dissociated = dissociate(entry, borrowers);
+            } finally {
+                synchronized (this) {
+                    if (dissociated) {
+                        remove(name, entry);
+                    }
+                    entry.removing = false;
+                }
+            }
+        }
+    }
+
+    private void fetch(String name, Entry entry) {
+        try {
+            while (entry.stale) {
+                entry.stale = false;
+                fetcher.fetch(entry.directory, entry.cloneUrl, entry.credentialsId, entry.context);
+                entry.fetched = true;
+            }
+            updateSize(entry);
+            evict(name);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update the reference repository for " + entry.key, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fetching.remove(name);
+        }
+        // Pick up a push that arrived after the last fetch started
+        if (entry.stale) {
+            scheduleFetch(name, entry);
+        }
+    }
+
+    /**
+     * Registers the reference repositories left by a previous run of Jenkins, so that they count towards the quota.
+     * They are not used until the repository they belong to is checked out again.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                File[] directories = rootDir.listFiles(File::isDirectory);
+                if (directories != null) {
+                    for (File directory : directories) {
+                        Entry entry = new Entry(directory, directory.lastModified());
+                        entry.borrowers.addAll(loadBorrowers(directory));
+                        if (entries.putIfAbsent(directory.getName(), entry) == null) {
+                            updateSize(entry);
+                        }
+                    }
+                }
+                loaded = true;
+            }
+        }
+    }
+
+    private void remove(String name, Entry entry) {
+        try {
+            Util.deleteRecursive(entry.directory);
+            entries.remove(name);
+            totalSize -= entry.size;
+            LOGGER.fine(() -> "Deleted reference repository " + name + " to stay within the disk quota");
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to delete reference repository " + entry.directory, ex);
+        }
+    }
+
+    private void saveBorrowers(Entry entry) {
+        List<String> lines = new ArrayList<>();
+        for (ReferenceRepositoryBorrower borrower : entry.borrowers) {
+            lines.add(borrower.getNodeName() + '\t' + borrower.getGitDir());
+        }
+        try {
+            FileUtils.writeLines(new File(entry.directory, BORROWERS_FILE), StandardCharsets.UTF_8.name(), lines);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the borrowers of reference repository " + entry.directory, e);
+        }
+    }
+
+    private void scheduleFetch(String name, Entry entry) {
+        entry.stale = true;
+        if (fetching.add(name)) {
+            executor.execute(() -> fetch(name, entry));
+        }
+    }
+
+    private synchronized void updateSize(Entry entry) {
+        long size = getPackSize(entry.directory);
+        totalSize += size - entry.size;
+        entry.size = size;
+    }
+
+    private static final class Entry {
+
+        private final Set<ReferenceRepositoryBorrower> borrowers = new LinkedHashSet<>();
+        private final File directory;
+        private volatile String cloneUrl;
+        private volatile Item context;
+        private volatile String credentialsId;
+        private volatile boolean fetched;
+        private volatile String key;
+        private volatile long lastUsed;
+        private boolean removing;
+        private long size;
+        private volatile boolean stale;
+        private int users;
+
+        private Entry(File directory, long lastUsed) {
+            this.directory = directory;
+            this.lastUsed = lastUsed;
+        }
+
+        private boolean exists() {
+            return new File(directory, "objects").isDirectory();
+        }
+    }
+}
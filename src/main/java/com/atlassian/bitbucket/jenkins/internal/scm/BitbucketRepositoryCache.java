@@ -0,0 +1,237 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caches the projects and repositories resolved by {@link BitbucketScmHelper}, so that starting a pipeline or
+ * checking out a job does not have to search Bitbucket Server for a repository it resolved moments ago. Entries are
+ * keyed by server URL, a hash of the credentials and the names as entered by the user, and are shared by all jobs.
+ * <ul>
+ *     <li>Resolved values are kept for {@link #TTL} milliseconds. Once half of that has passed, the cached value is
+ *     still returned but is reloaded in the background, so that frequently used repositories never expire.</li>
+ *     <li>Projects and repositories that do not exist are remembered for {@link #NOT_FOUND_TTL} milliseconds.</li>
+ *     <li>Any other failure is not cached.</li>
+ *     <li>At most {@link #MAX_SIZE} entries are kept, evicting the least recently used first.</li>
+ * </ul>
+ * Repositories that are renamed or moved to another project are invalidated when Bitbucket Server sends a
+ * {@code repo:modified} webhook event.
+ */
+@Singleton
+public class BitbucketRepositoryCache {
+
+    /**
+     * How long resolved projects and repositories are cached for, in milliseconds. Defaults to 5 minutes.
+     */
+    static final long TTL = parsePositiveLongFromSystemProperty("bitbucket.repository.cache.ttl", 5 * 60 * 1000);
+    /**
+     * How long projects and repositories that were not found are cached for, in milliseconds. Defaults to 30 seconds.
+     */
+    static final long NOT_FOUND_TTL =
+            parsePositiveLongFromSystemProperty("bitbucket.repository.cache.notfound.ttl", 30 * 1000);
+    /**
+     * The maximum number of cached projects and repositories. Defaults to 1000.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.repository.cache.size", 1000);
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketRepositoryCache.class.getName());
+
+    private final Map<CacheKey, CachedValue> cache = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, CachedValue>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            });
+    private final Clock clock;
+    private final Executor executor;
+    private final Set<CacheKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public BitbucketRepositoryCache() {
+        this(Clock.systemUTC(), Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketRepositoryCacheRefresh")));
+    }
+
+    @VisibleForTesting
+    BitbucketRepositoryCache(Clock clock, Executor executor) {
+        this.clock = requireNonNull(clock, "clock");
+        this.executor = requireNonNull(executor, "executor");
+    }
+
+    /**
+     * Returns the cached project, loading it if it is not cached or has expired.
+     *
+     * @param baseUrl     the base URL of the Bitbucket Server instance
+     * @param credentials the credentials used to look up the project
+     * @param projectName the project name or key
+     * @param loader      looks the project up on Bitbucket Server
+     * @return the project
+     * @throws NotFoundException        if the project does not exist
+     * @throws BitbucketClientException if the project could not be looked up
+     */
+    public BitbucketProject getProject(String baseUrl, BitbucketCredentials credentials, String projectName,
+                                       Supplier<BitbucketProject> loader) {
+        return get(new CacheKey(baseUrl, credentials, projectName, null), loader, BitbucketProject.class);
+    }
+
+    /**
+     * Returns the cached repository, loading it if it is not cached or has expired.
+     *
+     * @param baseUrl        the base URL of the Bitbucket Server instance
+     * @param credentials    the credentials used to look up the repository
+     * @param projectName    the project name or key
+     * @param repositoryName the repository name or slug
+     * @param loader         looks the repository up on Bitbucket Server
+     * @return the repository
+     * @throws NotFoundException        if the repository does not exist
+     * @throws BitbucketClientException if the repository could not be looked up
+     */
+    public BitbucketRepository getRepository(String baseUrl, BitbucketCredentials credentials, String projectName,
+                                             String repositoryName, Supplier<BitbucketRepository> loader) {
+        return get(new CacheKey(baseUrl, credentials, projectName, repositoryName), loader,
+                BitbucketRepository.class);
+    }
+
+    /**
+     * Removes every cached entry for the repository with the given project key and slug, on any server, along with
+     * every cached "not found" result, since a renamed or moved repository may now match a name that it did not.
+     *
+     * @param projectKey     the key of the repository's project
+     * @param repositorySlug the repository's slug
+     */
+    public void invalidate(String projectKey, String repositorySlug) {
+        synchronized (cache) {
+            cache.values().removeIf(value -> value.notFound != null ||
+                                             (value.value instanceof BitbucketRepository &&
+                                              isRepository((BitbucketRepository) value.value, projectKey,
+                                                      repositorySlug)));
+        }
+    }
+
+    private static boolean isRepository(BitbucketRepository repository, String projectKey, String repositorySlug) {
+        return repository.getProject() != null &&
+               projectKey.equalsIgnoreCase(repository.getProject().getKey()) &&
+               repositorySlug.equalsIgnoreCase(repository.getSlug());
+    }
+
+    private <T> T get(CacheKey key, Supplier<T> loader, Class<T> type) {
+        long now = clock.millis();
+        CachedValue cached = cache.get(key);
+        if (cached == null || cached.expiry <= now) {
+            cached = load(key, loader);
+        } else if (cached.refreshAfter <= now && refreshing.add(key)) {
+            executor.execute(() -> refresh(key, loader));
+        }
+        return type.cast(cached.get());
+    }
+
+    private CachedValue load(CacheKey key, Supplier<?> loader) {
+        CachedValue value;
+        try {
+            value = new CachedValue(loader.get(), null, clock.millis(), TTL);
+        } catch (NotFoundException e) {
+            value = new CachedValue(null, e, clock.millis(), NOT_FOUND_TTL);
+        }
+        cache.put(key, value);
+        return value;
+    }
+
+    private void refresh(CacheKey key, Supplier<?> loader) {
+        try {
+            load(key, loader);
+        } catch (BitbucketClientException e) {
+            // Keep serving the cached value until it expires
+            LOGGER.log(Level.FINE, "Failed to refresh cached Bitbucket repository " + key, e);
+        } finally {
+            refreshing.remove(key);
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String baseUrl;
+        private final String credentials;
+        private final String projectName;
+        private final String repositoryName;
+
+        private CacheKey(String baseUrl, BitbucketCredentials credentials, String projectName,
+                         @Nullable String repositoryName) {
+            this.baseUrl = baseUrl;
+            this.credentials = Hashing.sha256().hashString(credentials.toHeaderValue(), UTF_8).toString();
+            this.projectName = projectName.toLowerCase(Locale.ROOT);
+            this.repositoryName = repositoryName == null ? null : repositoryName.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(baseUrl, cacheKey.baseUrl) &&
+                   Objects.equals(credentials, cacheKey.credentials) &&
+                   Objects.equals(projectName, cacheKey.projectName) &&
+                   Objects.equals(repositoryName, cacheKey.repositoryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, credentials, projectName, repositoryName);
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl + " " + projectName + (repositoryName == null ? "" : "/" + repositoryName);
+        }
+    }
+
+    private static final class CachedValue {
+
+        private final long expiry;
+        private final NotFoundException notFound;
+        private final long refreshAfter;
+        private final Object value;
+
+        private CachedValue(@Nullable Object value, @Nullable NotFoundException notFound, long now, long ttl) {
+            this.value = value;
+            this.notFound = notFound;
+            expiry = now + ttl;
+            // Not found results are not worth refreshing early, they are cheap to look up again once expired
+            refreshAfter = notFound == null ? now + ttl / 2 : expiry;
+        }
+
+        private Object get() {
+            if (notFound != null) {
+                throw new NotFoundException(notFound.getMessage(), null);
+            }
+            return value;
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketTokenCredentials;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
-import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentialsModule;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
-import com.google.inject.Guice;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.model.Computer;
 import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.Run;
@@ -27,9 +29,11 @@ import hudson.plugins.git.UserRemoteConfig;
 import hudson.plugins.git.browser.Stash;
 import hudson.plugins.git.extensions.GitSCMExtension;
 import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
+import hudson.plugins.git.extensions.impl.CloneOption;
 import hudson.scm.*;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -206,7 +210,18 @@ public class BitbucketSCM extends SCM {
             @CheckForNull File changelogFile,
             @CheckForNull SCMRevisionState baseline)
             throws IOException, InterruptedException {
-        gitSCM.checkout(build, launcher, workspace, listener, changelogFile, baseline);
+        Optional<String> reference = getReferencePath(build.getParent(), workspace);
+        if (!reference.isPresent()) {
+            gitSCM.checkout(build, launcher, workspace, listener, changelogFile, baseline);
+            return;
+        }
+        try {
+            GitSCM withReference = getGitSCMWithReference(reference.get());
+            withReference.checkout(build, launcher, workspace, listener, changelogFile, baseline);
+            addBorrower(withReference, reference.get(), build, workspace, listener);
+        } finally {
+            getReferenceRepositoryCache().release(reference.get());
+        }
     }
 
     @Override
@@ -317,6 +332,81 @@ public class BitbucketSCM extends SCM {
         return repositories.get(0);
     }
 
+    /**
+     * Records the workspace as a borrower of the reference repository if it was cloned with it. Such a workspace keeps
+     * borrowing the reference repository's objects, so that each clone only costs what the reference repository does
+     * not have yet, and is only dissociated from it once the reference repository is about to be deleted.
+     */
+    private void addBorrower(GitSCM withReference, String reference, Run<?, ?> build, FilePath workspace,
+                             TaskListener listener) throws IOException, InterruptedException {
+        EnvVars environment = build.getEnvironment(listener);
+        FilePath workingDirectory = workspace;
+        for (GitSCMExtension extension : withReference.getExtensions()) {
+            FilePath directory =
+                    extension.getWorkingDirectory(withReference, build.getParent(), workspace, environment, listener);
+            if (directory != null) {
+                workingDirectory = directory;
+            }
+        }
+        FilePath gitDir = workingDirectory.child(".git");
+        FilePath alternates = gitDir.child("objects/info/alternates");
+        Computer computer = workspace.toComputer();
+        if (computer == null || !alternates.exists() || !alternates.readToString().contains(reference)) {
+            return;
+        }
+        getReferenceRepositoryCache().addBorrower(reference,
+                new ReferenceRepositoryBorrower(computer.getName(), gitDir.getRemote()));
+    }
+
+    /**
+     * Returns the git SCM to check out with, which clones new workspaces with the given reference repository. The
+     * checkout option configured by the user is kept, apart from the reference.
+     */
+    private GitSCM getGitSCMWithReference(String reference) {
+        CloneOption cloneOption = gitSCM.getExtensions().get(CloneOption.class);
+        CloneOption withReference;
+        if (cloneOption == null) {
+            withReference = new CloneOption(false, false, reference, null);
+        } else {
+            withReference = new CloneOption(cloneOption.isShallow(), cloneOption.isNoTags(), reference,
+                    cloneOption.getTimeout());
+            withReference.setDepth(cloneOption.getDepth());
+            withReference.setHonorRefspec(cloneOption.isHonorRefspec());
+        }
+        List<GitSCMExtension> checkoutExtensions = new ArrayList<>(gitSCM.getExtensions());
+        checkoutExtensions.removeIf(CloneOption.class::isInstance);
+        checkoutExtensions.add(withReference);
+        return new GitSCM(gitSCM.getUserRemoteConfigs(), gitSCM.getBranches(), false, emptyList(),
+                gitSCM.getBrowser(), gitSCM.getGitTool(), checkoutExtensions);
+    }
+
+    private BitbucketReferenceRepositoryCache getReferenceRepositoryCache() {
+        return ((DescriptorImpl) getDescriptor()).getReferenceRepositoryCache();
+    }
+
+    /**
+     * Returns the repository's reference repository from {@link BitbucketReferenceRepositoryCache}, if it exists and
+     * can be reached from the node the workspace is on. The node has to be known, so that the workspace can be
+     * dissociated from the reference repository later. The caller has to release it once the checkout is done. A
+     * reference repository configured by the user always takes precedence.
+     */
+    private Optional<String> getReferencePath(Item context, FilePath workspace)
+            throws IOException, InterruptedException {
+        List<UserRemoteConfig> remotes = gitSCM.getUserRemoteConfigs();
+        CloneOption cloneOption = gitSCM.getExtensions().get(CloneOption.class);
+        if (remotes.size() != 1 || (cloneOption != null && !isBlank(cloneOption.getReference())) ||
+            workspace.toComputer() == null) {
+            return Optional.empty();
+        }
+        Optional<String> reference = getReferenceRepositoryCache().getReferencePath(getBitbucketSCMRepository(),
+                remotes.get(0).getUrl(), remotes.get(0).getCredentialsId(), context);
+        if (reference.isPresent() && !new FilePath(workspace.getChannel(), reference.get()).isDirectory()) {
+            getReferenceRepositoryCache().release(reference.get());
+            return Optional.empty();
+        }
+        return reference;
+    }
+
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls, CloneProtocol protocol) {
         return cloneUrls.stream()
                 .filter(link -> Objects.equals(protocol.name, link.getName()))
@@ -394,6 +484,12 @@ public class BitbucketSCM extends SCM {
         private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
         @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+        @Inject
+        private BitbucketMirrorCache bitbucketMirrorCache;
+        @Inject
+        private BitbucketReferenceRepositoryCache referenceRepositoryCache;
+        @Inject
+        private BitbucketRepositoryCache bitbucketRepositoryCache;
         private transient JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
 
         public DescriptorImpl() {
@@ -547,23 +643,47 @@ public class BitbucketSCM extends SCM {
                                                  @Nullable BitbucketTokenCredentials tokenCredentials) {
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials));
+                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials),
+                    bitbucketRepositoryCache);
         }
 
         private BitbucketMirrorHandler createMirrorHandler(BitbucketScmHelper helper) {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    bitbucketMirrorCache);
+        }
+
+        BitbucketReferenceRepositoryCache getReferenceRepositoryCache() {
+            return referenceRepositoryCache;
         }
 
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
             return bitbucketPluginConfiguration.getServerById(serverId);
         }
 
+        /**
+         * Returns a client for the repository, using the SCM's HTTP credentials if it has any or no credentials
+         * otherwise. The global admin credentials are never used, so that nothing is read that the job itself could
+         * not clone.
+         */
+        Optional<BitbucketRepositoryClient> getRepositoryClient(BitbucketSCMRepository repository) {
+            injectJenkinsToBitbucketCredentials();
+            return getConfiguration(repository.getServerId()).map(serverConfiguration -> {
+                BitbucketCredentials credentials =
+                        jenkinsToBitbucketCredentials.toBitbucketCredentials(repository.getCredentialsId());
+                return bitbucketClientFactoryProvider.getClient(serverConfiguration.getBaseUrl(), credentials)
+                        .getProjectClient(repository.getProjectKey())
+                        .getRepositoryClient(repository.getRepositorySlug());
+            });
+        }
+
         public void injectJenkinsToBitbucketCredentials() {
             if (jenkinsToBitbucketCredentials == null) {
-                Guice.createInjector(new JenkinsToBitbucketCredentialsModule()).injectMembers(this);
+                // the Jenkins injector is used so that the caches injected alongside are the ones shared with the
+                // rest of the plugin, rather than private copies
+                Jenkins.get().getInjector().injectMembers(this);
             }
         }
     }
@@ -0,0 +1,119 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketDirectoryChild;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPathType;
+import jenkins.scm.api.SCMFile;
+
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A file or directory of a {@link BitbucketSCMFileSystem}. The type of a file is looked up when it is first needed,
+ * unless it is already known from listing the directory the file is in.
+ */
+class BitbucketSCMFile extends SCMFile {
+
+    private final BitbucketSCMFileSystem fileSystem;
+    private volatile Type type;
+
+    /**
+     * Creates the root directory of the file system.
+     */
+    BitbucketSCMFile(BitbucketSCMFileSystem fileSystem) {
+        this.fileSystem = requireNonNull(fileSystem, "fileSystem");
+        type = Type.DIRECTORY;
+    }
+
+    private BitbucketSCMFile(BitbucketSCMFile parent, String name, @CheckForNull Type type) {
+        super(parent, name);
+        fileSystem = parent.fileSystem;
+        this.type = type;
+    }
+
+    @Override
+    public Iterable<SCMFile> children() throws IOException {
+        String path = getPath();
+        BitbucketDirectoryChild[] children;
+        try {
+            children = fileSystem.read(path, BitbucketDirectoryChild[].class,
+                    client -> client.getDirectoryContent(fileSystem.getCommitId(), path)
+                            .toArray(new BitbucketDirectoryChild[0]));
+        } catch (NotFoundException e) {
+            throw new FileNotFoundException(path);
+        } catch (BitbucketClientException e) {
+            throw new IOException("Failed to list " + path + " at " + fileSystem.getCommitId(), e);
+        }
+        // A child with more than one path component is a collapsed directory, named by its first component
+        Map<String, SCMFile> files = new LinkedHashMap<>();
+        for (BitbucketDirectoryChild child : children) {
+            String name = child.getComponents().get(0);
+            Type childType = child.getComponents().size() > 1 ? Type.DIRECTORY : toType(child.getType());
+            files.putIfAbsent(name, new BitbucketSCMFile(this, name, childType));
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    @Override
+    public InputStream content() throws IOException {
+        String path = getPath();
+        try {
+            return new ByteArrayInputStream(fileSystem.read(path, byte[].class,
+                    client -> client.getRawContent(fileSystem.getCommitId(), path)));
+        } catch (NotFoundException e) {
+            throw new FileNotFoundException(path);
+        } catch (BitbucketClientException e) {
+            throw new IOException("Failed to read " + path + " at " + fileSystem.getCommitId(), e);
+        }
+    }
+
+    /**
+     * Bitbucket Server does not say when each file was last changed without walking the history, so every file is
+     * reported as changed when the commit was made.
+     */
+    @Override
+    public long lastModified() throws IOException {
+        return fileSystem.lastModified();
+    }
+
+    @Override
+    protected SCMFile newChild(String name, boolean assumeIsDirectory) {
+        return new BitbucketSCMFile(this, name, assumeIsDirectory ? Type.DIRECTORY : null);
+    }
+
+    @Override
+    protected Type type() throws IOException {
+        if (type == null) {
+            String path = getPath();
+            try {
+                type = toType(fileSystem.read(path, BitbucketPathType.class,
+                        client -> client.getPathType(fileSystem.getCommitId(), path)));
+            } catch (NotFoundException e) {
+                type = Type.NONEXISTENT;
+            } catch (BitbucketClientException e) {
+                throw new IOException("Failed to look up " + path + " at " + fileSystem.getCommitId(), e);
+            }
+        }
+        return type;
+    }
+
+    private static Type toType(BitbucketPathType pathType) {
+        switch (pathType) {
+            case DIRECTORY:
+                return Type.DIRECTORY;
+            case FILE:
+                return Type.REGULAR_FILE;
+            default:
+                return Type.OTHER;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketFilePathClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.plugins.git.BranchSpec;
+import hudson.scm.SCM;
+import hudson.scm.SCMDescriptor;
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.scm.api.*;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.removeStart;
+
+/**
+ * Reads the files of a repository at a commit through the REST API of Bitbucket Server, so that a Jenkinsfile can be
+ * loaded with a lightweight checkout rather than by fetching the repository. What is read is cached by
+ * {@link BitbucketFileContentCache}, since the content of a commit never changes.
+ */
+public class BitbucketSCMFileSystem extends SCMFileSystem {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMFileSystem.class.getName());
+
+    private final BitbucketFileContentCache cache;
+    private final String commitId;
+    private final String repository;
+    private final BitbucketRepositoryClient repositoryClient;
+    private volatile long lastModified;
+
+    /**
+     * @param repositoryClient the client for the repository
+     * @param repository       identifies the repository, and the server and credentials it is read from, in the cache
+     * @param commitId         the full hash of the commit to read files at
+     * @param revision         the revision the commit was resolved from, if any
+     * @param cache            caches what is read
+     */
+    BitbucketSCMFileSystem(BitbucketRepositoryClient repositoryClient, String repository, String commitId,
+                           @CheckForNull SCMRevision revision, BitbucketFileContentCache cache) {
+        super(revision);
+        this.repositoryClient = requireNonNull(repositoryClient, "repositoryClient");
+        this.repository = requireNonNull(repository, "repository");
+        this.commitId = requireNonNull(commitId, "commitId");
+        this.cache = requireNonNull(cache, "cache");
+    }
+
+    @Override
+    public SCMFile getRoot() {
+        return new BitbucketSCMFile(this);
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        if (lastModified == 0L) {
+            try {
+                lastModified = repositoryClient.getCommit(commitId).getCommitterTimestamp();
+            } catch (BitbucketClientException e) {
+                throw new IOException("Failed to look up commit " + commitId, e);
+            }
+        }
+        return lastModified;
+    }
+
+    String getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * Reads a path at the file system's commit, returning the cached value if it has been read before.
+     */
+    <T> T read(String path, Class<T> type, Function<BitbucketFilePathClient, T> reader) {
+        BitbucketFilePathClient filePathClient = repositoryClient.getFilePathClient();
+        return cache.get(repository, commitId, path, type, () -> reader.apply(filePathClient));
+    }
+
+    @Extension
+    public static class BuilderImpl extends SCMFileSystem.Builder {
+
+        @Inject
+        private BitbucketFileContentCache cache;
+
+        @Override
+        public boolean supports(SCM source) {
+            return source instanceof BitbucketSCM;
+        }
+
+        @Override
+        public boolean supports(SCMSource source) {
+            return source instanceof BitbucketSCMSource;
+        }
+
+        @Override
+        protected boolean supportsDescriptor(SCMDescriptor descriptor) {
+            return descriptor instanceof BitbucketSCM.DescriptorImpl;
+        }
+
+        @Override
+        protected boolean supportsDescriptor(SCMSourceDescriptor descriptor) {
+            return descriptor instanceof BitbucketSCMSource.DescriptorImpl;
+        }
+
+        /**
+         * Builds a file system for a job that checks out a single branch. The branch is resolved to its latest commit
+         * unless a revision is given. Returns {@code null}, so that the repository is checked out instead, if the
+         * job checks out more than one branch or a branch pattern, or if the repository is read from a mirror.
+         */
+        @CheckForNull
+        @Override
+        public SCMFileSystem build(Item owner, SCM scm, @CheckForNull SCMRevision revision) {
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) scm;
+            BitbucketSCMRepository repository = bitbucketSCM.getBitbucketSCMRepository();
+            if (repository.isMirrorConfigured()) {
+                return null;
+            }
+            BitbucketSCM.DescriptorImpl descriptor = (BitbucketSCM.DescriptorImpl) bitbucketSCM.getDescriptor();
+            return descriptor.getRepositoryClient(repository)
+                    .flatMap(client -> {
+                        Optional<String> commitId = revision instanceof SCMRevisionImpl ?
+                                Optional.of(((SCMRevisionImpl) revision).getHash()) :
+                                resolveBranch(client, bitbucketSCM);
+                        return commitId.map(id -> create(client, repository, id, revision));
+                    })
+                    .orElse(null);
+        }
+
+        /**
+         * Builds a file system for a branch, tag or pull request of a multibranch project. Returns {@code null}, so
+         * that the head is checked out instead, if no revision is given or if the repository is read from a mirror,
+         * since the mirror might not have synchronized the revision yet.
+         */
+        @CheckForNull
+        @Override
+        public SCMFileSystem build(SCMSource source, SCMHead head, @CheckForNull SCMRevision revision) {
+            BitbucketSCMSource bitbucketSCMSource = (BitbucketSCMSource) source;
+            BitbucketSCMRepository repository = bitbucketSCMSource.getBitbucketSCMRepository();
+            String commitId = getCommitId(revision);
+            if (commitId == null || !bitbucketSCMSource.isValid() || repository.isMirrorConfigured()) {
+                return null;
+            }
+            BitbucketSCMSource.DescriptorImpl descriptor =
+                    (BitbucketSCMSource.DescriptorImpl) bitbucketSCMSource.getDescriptor();
+            return descriptor.getRepositoryClient(repository)
+                    .map(client -> create(client, repository, commitId, revision))
+                    .orElse(null);
+        }
+
+        @CheckForNull
+        static String getCommitId(@CheckForNull SCMRevision revision) {
+            if (revision instanceof SCMRevisionImpl) {
+                return ((SCMRevisionImpl) revision).getHash();
+            }
+            if (revision instanceof BitbucketPullRequestSCMRevision) {
+                return ((BitbucketPullRequestSCMRevision) revision).getFromHash();
+            }
+            return null;
+        }
+
+        /**
+         * Returns the latest commit of the only branch the SCM checks out, if it checks out a single branch by name.
+         */
+        static Optional<String> resolveBranch(BitbucketRepositoryClient client, BitbucketSCM scm) {
+            List<BranchSpec> branches = scm.getBranches();
+            if (branches.size() != 1) {
+                return Optional.empty();
+            }
+            String branch = removeStart(removeStart(branches.get(0).getName(), "*/"), "refs/heads/");
+            if (branch.isEmpty() || branch.contains("*") || branch.contains("$") || branch.startsWith(":")) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(client.getCommit(branch).getId());
+            } catch (BitbucketClientException e) {
+                LOGGER.log(Level.FINE, "Failed to resolve branch " + branch + " of " + scm.getRepositoryName(), e);
+                return Optional.empty();
+            }
+        }
+
+        private SCMFileSystem create(BitbucketRepositoryClient client, BitbucketSCMRepository repository,
+                                     String commitId, @CheckForNull SCMRevision revision) {
+            String cacheKey = repository.getServerId() + ":" + defaultString(repository.getCredentialsId()) + ":" +
+                              repository.getProjectKey() + "/" + repository.getRepositorySlug();
+            return new BitbucketSCMFileSystem(client, cacheKey, commitId, revision, cache);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMProbe;
+import jenkins.scm.api.SCMProbeStat;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Checks whether a branch or tag meets the criteria of a multibranch project, such as having a Jenkinsfile, by asking
+ * Bitbucket Server about paths at the head's commit rather than fetching the commit.
+ */
+class BitbucketSCMProbe extends SCMProbe {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMProbe.class.getName());
+    private static final long serialVersionUID = 1L;
+
+    private final transient BitbucketRepositoryClient repositoryClient;
+    private final String commitId;
+    private final String name;
+    private volatile long lastModified;
+
+    /**
+     * @param repositoryClient the client for the repository
+     * @param name             the name of the branch or tag
+     * @param commitId         the commit the branch or tag points at
+     * @param lastModified     when the commit was made, or 0 to look it up if asked for
+     */
+    BitbucketSCMProbe(BitbucketRepositoryClient repositoryClient, String name, String commitId, long lastModified) {
+        this.repositoryClient = requireNonNull(repositoryClient, "repositoryClient");
+        this.name = requireNonNull(name, "name");
+        this.commitId = requireNonNull(commitId, "commitId");
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public long lastModified() {
+        if (lastModified == 0L) {
+            try {
+                lastModified = repositoryClient.getCommit(commitId).getCommitterTimestamp();
+            } catch (BitbucketClientException e) {
+                LOGGER.log(Level.FINE, "Failed to look up commit " + commitId + " of " + name, e);
+            }
+        }
+        return lastModified;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SCMProbeStat stat(String path) throws IOException {
+        try {
+            switch (repositoryClient.getFilePathClient().getPathType(commitId, path)) {
+                case DIRECTORY:
+                    return SCMProbeStat.fromType(SCMFile.Type.DIRECTORY);
+                case FILE:
+                    return SCMProbeStat.fromType(SCMFile.Type.REGULAR_FILE);
+                default:
+                    return SCMProbeStat.fromType(SCMFile.Type.OTHER);
+            }
+        } catch (NotFoundException e) {
+            return SCMProbeStat.fromType(SCMFile.Type.NONEXISTENT);
+        } catch (BitbucketClientException e) {
+            throw new IOException("Failed to look up " + path + " on " + name, e);
+        }
+    }
+}
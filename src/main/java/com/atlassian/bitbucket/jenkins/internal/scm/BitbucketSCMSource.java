@@ -1,14 +1,19 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketTokenCredentials;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookConsumer.BitbucketSCMHeadEvent;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookMultibranchTrigger;
 import com.atlassian.bitbucket.jenkins.internal.trigger.RetryingWebhookHandler;
 import com.cloudbees.hudson.plugins.folder.computed.ComputedFolder;
@@ -23,10 +28,15 @@ import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
 import hudson.scm.SCM;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.plugins.git.GitSCMBuilder;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSCMSourceContext;
 import jenkins.scm.api.*;
 import jenkins.scm.api.trait.SCMSourceTrait;
 import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.ChangeRequestSCMHeadCategory;
 import jenkins.scm.impl.TagSCMHeadCategory;
 import jenkins.scm.impl.UncategorizedSCMHeadCategory;
 import jenkins.scm.impl.form.NamedArrayList;
@@ -140,18 +150,35 @@ public class BitbucketSCMSource extends SCMSource {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Building SCM for " + head.getName() + " at revision " + revision);
         }
+        if (head instanceof BitbucketPullRequestSCMHead) {
+            return buildPullRequest((BitbucketPullRequestSCMHead) head, revision);
+        }
         return gitSCMSource.build(head, revision);
     }
 
+    /**
+     * Files such as the Jenkinsfile of a pull request from a fork are read from its target branch instead, so that
+     * they cannot be changed by someone who can only push to the fork.
+     */
+    @Override
+    public SCMRevision getTrustedRevision(SCMRevision revision, TaskListener listener) {
+        if (revision instanceof BitbucketPullRequestSCMRevision &&
+            !SCMHeadOrigin.DEFAULT.equals(revision.getHead().getOrigin())) {
+            listener.getLogger().println("Loading trusted files from the target branch, as " +
+                                         revision.getHead().getName() + " is from a fork");
+            return ((BitbucketPullRequestSCMRevision) revision).getTarget();
+        }
+        return revision;
+    }
+
     @Override
     public void afterSave() {
         super.afterSave();
-        if (!webhookRegistered && isValid()) {
+        if ((!webhookRegistered || isDiscoverPullRequests()) && isValid()) {
             SCMSourceOwner owner = getOwner();
             if (owner instanceof ComputedFolder) {
                 getTriggers((ComputedFolder<?>) owner)
-                        .forEach(triggerDesc ->
-                                webhookRegistered = triggerDesc.addTrigger(owner, this));
+                        .forEach(triggerDesc -> triggerDesc.addTrigger(owner, this));
             }
         }
     }
@@ -200,6 +227,13 @@ public class BitbucketSCMSource extends SCMSource {
         return getBitbucketSCMRepository().getSshCredentialsId();
     }
 
+    /**
+     * @return true if the source discovers pull requests, and so needs pull request events from its webhook
+     */
+    public boolean isDiscoverPullRequests() {
+        return BitbucketPullRequestDiscoveryTrait.isEnabled(traits);
+    }
+
     public boolean isValid() {
         return getMirrorName() != null && isNotBlank(getProjectKey()) && isNotBlank(getProjectName()) &&
                isNotBlank(getRemote()) && isNotBlank(getRepositoryName()) && isNotBlank(getRepositorySlug()) &&
@@ -227,13 +261,93 @@ public class BitbucketSCMSource extends SCMSource {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Events from Bitbucket Server say which refs or pull requests changed and what they now point at, so only those
+     * heads are observed, and a closed pull request is not observed at all. Everything else, including periodic
+     * indexing, lists the refs and pull requests of the repository through the REST API, unless the repository is
+     * mirrored. A mirrored repository is listed from the mirror with git, so that only refs that have already been
+     * synchronized to the mirror are discovered.
+     * <p>
+     * If Bitbucket Server cannot be reached, branches and tags are listed with git instead. Git cannot list pull
+     * requests though, so when pull requests are discovered the scan fails instead, which keeps the existing pull
+     * request jobs rather than removing them.
+     */
     @Override
     protected void retrieve(@CheckForNull SCMSourceCriteria criteria, SCMHeadObserver observer,
                             @CheckForNull SCMHeadEvent<?> event,
                             TaskListener listener) throws IOException, InterruptedException {
+        GitSCMSourceContext<?, ?> context = new GitSCMSourceContext<>(criteria, observer);
+        context.withTraits(traits);
+        Optional<BitbucketRefDiscovery> refDiscovery = getRefDiscovery(context);
+        if (refDiscovery.isPresent()) {
+            Map<SCMHead, SCMRevision> changedHeads = getChangedHeads(event);
+            try {
+                if (!changedHeads.isEmpty()) {
+                    if (event.getType() == SCMEvent.Type.REMOVED) {
+                        // A closed pull request is not observed, so that its job is removed
+                        return;
+                    }
+                    refDiscovery.get().observe(context, this, changedHeads, listener);
+                    return;
+                }
+                if (!repository.isMirrorConfigured()) {
+                    refDiscovery.get().discover(context, this, listener);
+                    return;
+                }
+            } catch (BitbucketClientException e) {
+                if (isDiscoverPullRequests()) {
+                    throw new IOException("Failed to retrieve branches, tags and pull requests of " + getRemote() +
+                                          " from Bitbucket Server", e);
+                }
+                LOGGER.log(Level.FINE, "Failed to retrieve the refs of " + getRemote() + " from Bitbucket Server", e);
+                listener.getLogger().println("Failed to retrieve branches and tags from Bitbucket Server, " +
+                                             "falling back to git: " + e.getMessage());
+            }
+        }
         gitSCMSource.accessibleRetrieve(criteria, observer, event, listener);
     }
 
+    /**
+     * Returns the heads changed by a Bitbucket Server event. The changes of a push to the upstream server are ignored
+     * for a mirrored repository until the mirror has synchronized them.
+     */
+    private Map<SCMHead, SCMRevision> getChangedHeads(@CheckForNull SCMHeadEvent<?> event) {
+        if ((event instanceof BitbucketSCMHeadEvent &&
+             ((BitbucketSCMHeadEvent) event).isAvailableFrom(repository.getMirrorName())) ||
+            event instanceof BitbucketPullRequestSCMHeadEvent) {
+            return event.heads(this);
+        }
+        return Collections.emptyMap();
+    }
+
+    @VisibleForTesting
+    Optional<BitbucketRefDiscovery> getRefDiscovery(GitSCMSourceContext<?, ?> context) {
+        if (!isValid() || !BitbucketRefDiscovery.isSupported(context)) {
+            return Optional.empty();
+        }
+        return ((DescriptorImpl) getDescriptor()).getRepositoryClient(repository)
+                .map(client -> new BitbucketRefDiscovery(client, isDiscoverPullRequests(),
+                        ((DescriptorImpl) getDescriptor()).getTagTimestampCache()));
+    }
+
+    /**
+     * Checks out the tip of the pull request's source branch, fetching only the pull request's own ref rather than
+     * every branch. The trusted revision of a pull request from a fork is a commit of its target branch, see
+     * {@link #getTrustedRevision}, so that is checked out from the target branch instead.
+     */
+    private SCM buildPullRequest(BitbucketPullRequestSCMHead head, @CheckForNull SCMRevision revision) {
+        if (revision instanceof SCMRevisionImpl) {
+            return gitSCMSource.build(head.getTarget(), revision);
+        }
+        SCMRevision checkoutRevision = revision instanceof BitbucketPullRequestSCMRevision ?
+                new SCMRevisionImpl(head, ((BitbucketPullRequestSCMRevision) revision).getFromHash()) : null;
+        return new GitSCMBuilder<>(head, checkoutRevision, getRemote(), gitSCMSource.getCredentialsId())
+                .withoutRefSpecs()
+                .withRefSpec(head.getRefSpec())
+                .withTraits(traits)
+                .build();
+    }
+
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls, CloneProtocol cloneProtocol) {
         return cloneUrls.stream()
                 .filter(link -> Objects.equals(cloneProtocol.name, link.getName()))
@@ -315,11 +429,17 @@ public class BitbucketSCMSource extends SCMSource {
         @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         @Inject
+        private BitbucketMirrorCache bitbucketMirrorCache;
+        @Inject
+        private BitbucketRepositoryCache bitbucketRepositoryCache;
+        @Inject
         private BitbucketScmFormFillDelegate formFill;
         @Inject
         private BitbucketScmFormValidationDelegate formValidation;
         @Inject
         private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+        @Inject
+        private BitbucketTagTimestampCache tagTimestampCache;
 
         @Inject
         private RetryingWebhookHandler retryingWebhookHandler;
@@ -462,30 +582,58 @@ public class BitbucketSCMSource extends SCMSource {
         }
 
         public List<NamedArrayList<? extends SCMSourceTraitDescriptor>> getTraitsDescriptorLists() {
-            return gitScmSourceDescriptor.getTraitsDescriptorLists();
+            List<NamedArrayList<? extends SCMSourceTraitDescriptor>> descriptorLists =
+                    new ArrayList<>(gitScmSourceDescriptor.getTraitsDescriptorLists());
+            NamedArrayList<SCMSourceTraitDescriptor> pullRequests = new NamedArrayList<>("Pull requests");
+            pullRequests.add(
+                    Jenkins.get().getDescriptorByType(BitbucketPullRequestDiscoveryTrait.DescriptorImpl.class));
+            descriptorLists.add(pullRequests);
+            return descriptorLists;
         }
 
         @Override
         protected SCMHeadCategory[] createCategories() {
-            return new SCMHeadCategory[]{UncategorizedSCMHeadCategory.DEFAULT, TagSCMHeadCategory.DEFAULT};
+            return new SCMHeadCategory[]{UncategorizedSCMHeadCategory.DEFAULT, ChangeRequestSCMHeadCategory.DEFAULT,
+                    TagSCMHeadCategory.DEFAULT};
         }
 
         BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
                                                  @Nullable BitbucketTokenCredentials tokenCredentials) {
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials));
+                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials),
+                    bitbucketRepositoryCache);
         }
 
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
             return bitbucketPluginConfiguration.getServerById(serverId);
         }
 
+        /**
+         * Returns a client for the repository, using the source's HTTP credentials if it has any or no credentials
+         * otherwise. The global admin credentials are never used, so that nothing is read that the job itself could
+         * not clone.
+         */
+        Optional<BitbucketRepositoryClient> getRepositoryClient(BitbucketSCMRepository repository) {
+            return getConfiguration(repository.getServerId()).map(serverConfiguration -> {
+                BitbucketCredentials credentials =
+                        jenkinsToBitbucketCredentials.toBitbucketCredentials(repository.getCredentialsId());
+                return bitbucketClientFactoryProvider.getClient(serverConfiguration.getBaseUrl(), credentials)
+                        .getProjectClient(repository.getProjectKey())
+                        .getRepositoryClient(repository.getRepositorySlug());
+            });
+        }
+
+        BitbucketTagTimestampCache getTagTimestampCache() {
+            return tagTimestampCache;
+        }
+
         private BitbucketMirrorHandler createMirrorHandler(BitbucketScmHelper helper) {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    bitbucketMirrorCache);
         }
     }
 
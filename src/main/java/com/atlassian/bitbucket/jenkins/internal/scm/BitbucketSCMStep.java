@@ -29,7 +29,9 @@ import org.kohsuke.stapler.verb.POST;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.*;
+import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.AUTO_MIRROR_NAME;
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
@@ -39,6 +41,9 @@ import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketSCMStep extends SCMStep {
 
+    private static final String AUTO_MIRROR_DISPLAY_NAME = "Fastest available mirror";
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMStep.class.getName());
+
     private List<BranchSpec> branches;
     private String cloneUrl;
     private String credentialsId;
@@ -189,7 +194,13 @@ public class BitbucketSCMStep extends SCMStep {
                 repository = mirroredRepository.getRepository();
                 cloneUrl = getCloneUrl(mirroredRepository.getMirroringDetails().getCloneUrls());
             } catch (MirrorFetchException ex) {
-                throw new BitbucketSCMException("Error creating the Bitbucket SCM: " + ex.getMessage());
+                if (!AUTO_MIRROR_NAME.equals(mirrorName)) {
+                    throw new BitbucketSCMException("Error creating the Bitbucket SCM: " + ex.getMessage());
+                }
+                LOGGER.info(format("No mirror of %s/%s is reachable, cloning from the primary server",
+                        projectName, repositoryName));
+                repository = scmHelper.getRepository(projectName, repositoryName);
+                cloneUrl = getCloneUrl(repository.getCloneUrls());
             }
         } else {
             repository = scmHelper.getRepository(projectName, repositoryName);
@@ -229,6 +240,10 @@ public class BitbucketSCMStep extends SCMStep {
         @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         @Inject
+        private BitbucketMirrorCache bitbucketMirrorCache;
+        @Inject
+        private BitbucketRepositoryCache bitbucketRepositoryCache;
+        @Inject
         private BitbucketScmFormFillDelegate formFill;
         @Inject
         private BitbucketScmFormValidationDelegate formValidation;
@@ -331,8 +346,17 @@ public class BitbucketSCMStep extends SCMStep {
                                                   @QueryParameter String projectName,
                                                   @QueryParameter String repositoryName,
                                                   @QueryParameter String mirrorName) {
-            return formFill.doFillMirrorNameItems(context, serverId, credentialsId, projectName, repositoryName,
-                    mirrorName);
+            ListBoxModel options = formFill.doFillMirrorNameItems(context, serverId, credentialsId, projectName,
+                    repositoryName, mirrorName);
+            // The step looks the mirror up on every checkout, so it can pick the fastest mirror each time
+            if (options.size() > 1) {
+                boolean autoSelected = AUTO_MIRROR_NAME.equals(mirrorName);
+                if (autoSelected) {
+                    options.forEach(option -> option.selected = false);
+                }
+                options.add(1, new ListBoxModel.Option(AUTO_MIRROR_DISPLAY_NAME, AUTO_MIRROR_NAME, autoSelected));
+            }
+            return options;
         }
 
         @Override
@@ -366,14 +390,16 @@ public class BitbucketSCMStep extends SCMStep {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    bitbucketMirrorCache);
         }
 
         BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
                                                  @Nullable BitbucketTokenCredentials tokenCredentials) {
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials));
+                    jenkinsToBitbucketCredentials.toBitbucketCredentials(tokenCredentials),
+                    bitbucketRepositoryCache);
         }
 
         private Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
@@ -54,15 +54,23 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
     private static final Logger LOGGER = Logger.getLogger(BitbucketScmFormFillDelegate.class.getName());
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    private final BitbucketMirrorCache bitbucketMirrorCache;
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
+    private final BitbucketSearchIndex searchIndex;
 
+    /**
+     * @param searchIndex the index to complete project and repository names from, or {@code null} to always search
+     *                    Bitbucket Server
+     */
     @Inject
     public BitbucketScmFormFillDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                         BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                         JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                        JenkinsProvider jenkinsProvider) {
+                                        JenkinsProvider jenkinsProvider,
+                                        BitbucketMirrorCache bitbucketMirrorCache,
+                                        @Nullable BitbucketSearchIndex searchIndex) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -71,6 +79,8 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentils");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.bitbucketMirrorCache = bitbucketMirrorCache;
+        this.searchIndex = searchIndex;
     }
 
     @Override
@@ -130,8 +140,11 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                         BitbucketCredentials credentials =
                                 jenkinsToBitbucketCredentials.toBitbucketCredentials(
                                         providedCredentials.orElse(null));
-                        Collection<BitbucketProject> projects = findProjects(projectName,
-                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials));
+                        Collection<BitbucketProject> projects = findIndexedProjects(serverConf.getBaseUrl(),
+                                credentials, projectName)
+                                .orElseGet(() -> findProjects(projectName,
+                                        bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(),
+                                                credentials)));
                         return okJSON(JSONArray.fromObject(projects));
                     } catch (BitbucketClientException e) {
                         // Something went wrong with the request to Bitbucket
@@ -167,11 +180,14 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                             jenkinsToBitbucketCredentials.toBitbucketCredentials(
                                     providedCredentials.orElse(null));
                     try {
-                        Collection<BitbucketRepository> repositories = findRepositories(repositoryName, projectName,
-                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials))
-                                .stream()
-                                .filter(repository -> repository.getProject().getName().equals(projectName))
-                                .collect(Collectors.toList());
+                        Collection<BitbucketRepository> repositories = findIndexedRepositories(
+                                serverConf.getBaseUrl(), credentials, projectName, repositoryName)
+                                .orElseGet(() -> findRepositories(repositoryName, projectName,
+                                        bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(),
+                                                credentials))
+                                        .stream()
+                                        .filter(repository -> repository.getProject().getName().equals(projectName))
+                                        .collect(Collectors.toList()));
                         return okJSON(JSONArray.fromObject(repositories));
                     } catch (BitbucketClientException e) {
                         // Something went wrong with the request to Bitbucket
@@ -244,8 +260,28 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
         }
     }
 
+    private Optional<List<BitbucketProject>> findIndexedProjects(String baseUrl, BitbucketCredentials credentials,
+                                                                 String projectName) {
+        if (searchIndex == null) {
+            return Optional.empty();
+        }
+        return searchIndex.findProjects(baseUrl, credentials, projectName,
+                () -> bitbucketClientFactoryProvider.getClient(baseUrl, credentials));
+    }
+
+    private Optional<List<BitbucketRepository>> findIndexedRepositories(String baseUrl,
+                                                                        BitbucketCredentials credentials,
+                                                                        String projectName, String repositoryName) {
+        if (searchIndex == null) {
+            return Optional.empty();
+        }
+        return searchIndex.findRepositories(baseUrl, credentials, projectName, repositoryName,
+                () -> bitbucketClientFactoryProvider.getClient(baseUrl, credentials));
+    }
+
     private BitbucketMirrorHandler createMirrorHandlerUsingRepoSearch() {
         return new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client));
+                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client),
+                bitbucketMirrorCache);
     }
 }
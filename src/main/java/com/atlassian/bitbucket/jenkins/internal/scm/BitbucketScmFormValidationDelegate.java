@@ -34,6 +34,7 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValidation {
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    private final BitbucketMirrorCache bitbucketMirrorCache;
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
@@ -42,7 +43,8 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
     public BitbucketScmFormValidationDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                               BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                               JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                              JenkinsProvider jenkinsProvider) {
+                                              JenkinsProvider jenkinsProvider,
+                                              BitbucketMirrorCache bitbucketMirrorCache) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -51,6 +53,7 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentials");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.bitbucketMirrorCache = bitbucketMirrorCache;
     }
 
     @Override
@@ -228,7 +231,8 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
         return bitbucketPluginConfiguration.getServerById(serverId)
                 .flatMap(serverConfiguration ->
                         new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                                (client, project, repo) -> getRepositoryByNameOrSlug(project, repo, client)).fetchAsListBox(
+                                (client, project, repo) -> getRepositoryByNameOrSlug(project, repo, client),
+                                bitbucketMirrorCache).fetchAsListBox(
                                 new MirrorFetchRequest(
                                         serverConfiguration.getBaseUrl(),
                                         credentialsId,
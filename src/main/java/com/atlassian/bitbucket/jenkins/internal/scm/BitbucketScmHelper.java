@@ -9,6 +9,7 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
 
+import javax.annotation.Nullable;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper.getProjectByNameOrKey;
@@ -18,11 +19,27 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class BitbucketScmHelper {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketScmHelper.class.getName());
+    private final String bitbucketBaseUrl;
     private final BitbucketClientFactory clientFactory;
+    private final BitbucketCredentials credentials;
+    private final BitbucketRepositoryCache repositoryCache;
 
     public BitbucketScmHelper(String bitbucketBaseUrl,
                               BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                               BitbucketCredentials credentials) {
+        this(bitbucketBaseUrl, bitbucketClientFactoryProvider, credentials, null);
+    }
+
+    /**
+     * @param repositoryCache the cache of resolved projects and repositories, or {@code null} to always look them up
+     */
+    public BitbucketScmHelper(String bitbucketBaseUrl,
+                              BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+                              BitbucketCredentials credentials,
+                              @Nullable BitbucketRepositoryCache repositoryCache) {
+        this.bitbucketBaseUrl = bitbucketBaseUrl;
+        this.credentials = credentials;
+        this.repositoryCache = repositoryCache;
         clientFactory = bitbucketClientFactoryProvider.getClient(bitbucketBaseUrl, credentials);
     }
 
@@ -33,9 +50,9 @@ public class BitbucketScmHelper {
                     repositoryName, RepositoryState.AVAILABLE);
         }
         try {
-            BitbucketProject project = getProjectByNameOrKey(projectName, clientFactory);
+            BitbucketProject project = findProject(projectName);
             try {
-                return getRepositoryByNameOrSlug(projectName, repositoryName, clientFactory);
+                return findRepository(projectName, repositoryName);
             } catch (NotFoundException e) {
                 LOGGER.info("Error creating the Bitbucket SCM: Cannot find the repository " + project.getName() + "/" +
                             repositoryName);
@@ -58,4 +75,20 @@ public class BitbucketScmHelper {
             return new BitbucketRepository(-1, repositoryName, null, new BitbucketProject(projectName, null, projectName), repositoryName, RepositoryState.AVAILABLE);
         }
     }
+
+    private BitbucketProject findProject(String projectName) {
+        if (repositoryCache == null) {
+            return getProjectByNameOrKey(projectName, clientFactory);
+        }
+        return repositoryCache.getProject(bitbucketBaseUrl, credentials, projectName,
+                () -> getProjectByNameOrKey(projectName, clientFactory));
+    }
+
+    private BitbucketRepository findRepository(String projectName, String repositoryName) {
+        if (repositoryCache == null) {
+            return getRepositoryByNameOrSlug(projectName, repositoryName, clientFactory);
+        }
+        return repositoryCache.getRepository(bitbucketBaseUrl, credentials, projectName, repositoryName,
+                () -> getRepositoryByNameOrSlug(projectName, repositoryName, clientFactory));
+    }
 }
@@ -0,0 +1,199 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Answers the project and repository name autocompletion of the SCM configuration forms from an index of every project
+ * and repository the credentials can see, so that typing a name does not search Bitbucket Server on every keystroke.
+ * There is one index per server URL and credentials.
+ * <ul>
+ *     <li>An index is built in the background the first time it is asked for. Until it is ready, callers are expected
+ *     to search Bitbucket Server themselves.</li>
+ *     <li>An index older than {@link #TTL} milliseconds is still used, but is rebuilt in the background, so that new
+ *     projects and repositories show up.</li>
+ *     <li>Indexes that fail to build are not kept; the next query tries again.</li>
+ *     <li>At most {@link #MAX_SIZE} indexes are kept, evicting the least recently used first.</li>
+ * </ul>
+ */
+@Singleton
+public class BitbucketSearchIndex {
+
+    /**
+     * How long an index is used before it is rebuilt, in milliseconds. Defaults to 5 minutes.
+     */
+    static final long TTL = parsePositiveLongFromSystemProperty("bitbucket.search.index.ttl", 5 * 60 * 1000);
+    /**
+     * The maximum number of indexes, one per server and credentials, to keep. Defaults to 20.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.search.index.size", 20);
+    /**
+     * The maximum number of projects or repositories returned for a query, matching the size of the first page of a
+     * search on Bitbucket Server.
+     */
+    static final int MAX_RESULTS = 25;
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSearchIndex.class.getName());
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    private final Set<CacheKey> building = ConcurrentHashMap.newKeySet();
+    private final Map<CacheKey, Index> cache = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, Index>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, Index> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            });
+    private final Clock clock;
+    private final Executor executor;
+
+    @Inject
+    public BitbucketSearchIndex() {
+        this(Clock.systemUTC(), Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketSearchIndexBuilder")));
+    }
+
+    @VisibleForTesting
+    BitbucketSearchIndex(Clock clock, Executor executor) {
+        this.clock = requireNonNull(clock, "clock");
+        this.executor = requireNonNull(executor, "executor");
+    }
+
+    /**
+     * Returns the projects with a word in their name starting with the given prefix, if the index for the server and
+     * credentials has been built.
+     *
+     * @param baseUrl     the base URL of the Bitbucket Server instance
+     * @param credentials the credentials used to list the projects
+     * @param prefix      what has been typed so far
+     * @param client      the client to build the index with, if it has not been built
+     * @return the matching projects, or nothing if the index is not ready yet
+     */
+    public Optional<List<BitbucketProject>> findProjects(String baseUrl, BitbucketCredentials credentials,
+                                                         String prefix, Supplier<BitbucketClientFactory> client) {
+        return getIndex(baseUrl, credentials, client)
+                .map(index -> index.projects.find(prefix, project -> true, MAX_RESULTS));
+    }
+
+    /**
+     * Returns the repositories of the given project with a word in their name starting with the given prefix, if the
+     * index for the server and credentials has been built.
+     *
+     * @param baseUrl     the base URL of the Bitbucket Server instance
+     * @param credentials the credentials used to list the repositories
+     * @param projectName the name of the project the repositories must be in
+     * @param prefix      what has been typed so far
+     * @param client      the client to build the index with, if it has not been built
+     * @return the matching repositories, or nothing if the index is not ready yet
+     */
+    public Optional<List<BitbucketRepository>> findRepositories(String baseUrl, BitbucketCredentials credentials,
+                                                                String projectName, String prefix,
+                                                                Supplier<BitbucketClientFactory> client) {
+        return getIndex(baseUrl, credentials, client)
+                .map(index -> index.repositories.find(prefix,
+                        repository -> repository.getProject() != null &&
+                                      projectName.equals(repository.getProject().getName()),
+                        MAX_RESULTS));
+    }
+
+    private void build(CacheKey key, Supplier<BitbucketClientFactory> client) {
+        try {
+            BitbucketSearchClient searchClient = client.get().getSearchClient("");
+            List<BitbucketProject> projects = searchClient.getAllProjects()
+                    .sorted(Comparator.comparing(BitbucketProject::getName, NAME_ORDER))
+                    .collect(Collectors.toList());
+            List<BitbucketRepository> repositories = searchClient.getAllRepositories()
+                    .sorted(Comparator.comparing(BitbucketRepository::getName, NAME_ORDER))
+                    .collect(Collectors.toList());
+            cache.put(key, new Index(projects, repositories, clock.millis() + TTL));
+            LOGGER.fine(() -> "Indexed " + projects.size() + " projects and " + repositories.size() +
+                              " repositories of " + key);
+        } catch (BitbucketClientException e) {
+            LOGGER.log(Level.FINE, "Failed to index the projects and repositories of " + key, e);
+        } finally {
+            building.remove(key);
+        }
+    }
+
+    private Optional<Index> getIndex(String baseUrl, BitbucketCredentials credentials,
+                                     Supplier<BitbucketClientFactory> client) {
+        CacheKey key = new CacheKey(baseUrl, credentials);
+        Index index = cache.get(key);
+        if ((index == null || index.expiry <= clock.millis()) && building.add(key)) {
+            executor.execute(() -> build(key, client));
+        }
+        return Optional.ofNullable(index);
+    }
+
+    private static final class CacheKey {
+
+        private final String baseUrl;
+        private final String credentials;
+
+        private CacheKey(String baseUrl, BitbucketCredentials credentials) {
+            this.baseUrl = baseUrl;
+            this.credentials = Hashing.sha256().hashString(credentials.toHeaderValue(), UTF_8).toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(baseUrl, cacheKey.baseUrl) &&
+                   Objects.equals(credentials, cacheKey.credentials);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, credentials);
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl;
+        }
+    }
+
+    private static final class Index {
+
+        private final long expiry;
+        private final NamePrefixIndex<BitbucketProject> projects;
+        private final NamePrefixIndex<BitbucketRepository> repositories;
+
+        private Index(List<BitbucketProject> projects, List<BitbucketRepository> repositories, long expiry) {
+            this.projects = new NamePrefixIndex<>(projects, BitbucketProject::getName);
+            this.repositories = new NamePrefixIndex<>(repositories, BitbucketRepository::getName);
+            this.expiry = expiry;
+        }
+    }
+}
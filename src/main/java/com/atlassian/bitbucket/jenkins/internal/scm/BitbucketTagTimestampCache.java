@@ -0,0 +1,48 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Remembers the committer timestamps of the commits that tags point at, by commit hash, so that each tag's timestamp
+ * is only looked up the first time it is discovered rather than on every scan. A commit never changes, so entries do
+ * not expire, but at most {@link #MAX_SIZE} are kept, evicting the least recently used first.
+ */
+@Singleton
+public class BitbucketTagTimestampCache {
+
+    /**
+     * The maximum number of tag commit timestamps to remember. Defaults to 10000.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.tag.timestamp.cache.size", 10000);
+
+    private final Map<String, Long> timestamps = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            });
+
+    /**
+     * Returns the committer timestamp of the given commit, loading it if it is not cached.
+     *
+     * @param commitId the full hash of the commit
+     * @param loader   reads the timestamp from Bitbucket Server
+     * @return the committer timestamp, in milliseconds since the epoch
+     */
+    public long getTimestamp(String commitId, Supplier<Long> loader) {
+        Long timestamp = timestamps.get(commitId);
+        if (timestamp == null) {
+            timestamp = loader.get();
+            timestamps.put(commitId, timestamp);
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,52 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures how long it takes Jenkins to reach a mirror, so that the fastest mirror can be chosen when a repository is
+ * set to clone from whichever mirror is fastest.
+ */
+@FunctionalInterface
+interface MirrorLatencyProbe {
+
+    /**
+     * Returned by {@link #probe(String)} when the mirror could not be reached.
+     */
+    long UNREACHABLE = Long.MAX_VALUE;
+
+    /**
+     * @param cloneUrl the clone URL of the repository on the mirror
+     * @return the time taken to reach the mirror, in nanoseconds, or {@link #UNREACHABLE}
+     */
+    long probe(String cloneUrl);
+
+    /**
+     * Returns a probe that times opening a TCP connection to the host and port of the clone URL, which works for both
+     * HTTP and SSH clone URLs without needing credentials.
+     *
+     * @param timeoutMillis how long to wait for the connection before treating the mirror as unreachable
+     * @return the probe
+     */
+    static MirrorLatencyProbe connectTime(int timeoutMillis) {
+        Logger logger = Logger.getLogger(MirrorLatencyProbe.class.getName());
+        return cloneUrl -> {
+            try (Socket socket = new Socket()) {
+                URI uri = new URI(cloneUrl);
+                int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 :
+                        "ssh".equals(uri.getScheme()) ? 22 : 80;
+                long start = System.nanoTime();
+                socket.connect(new InetSocketAddress(uri.getHost(), port), timeoutMillis);
+                return System.nanoTime() - start;
+            } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                logger.log(Level.FINE, "Mirror at " + cloneUrl + " is unreachable", e);
+                return UNREACHABLE;
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An immutable index of values by name that finds the values with a word in their name starting with a given prefix,
+ * ignoring case. A word starts at the start of the name, after any character that is not a letter or digit, at an
+ * upper case letter following a lower case one, and where letters and digits meet, so that "my-repo", "myRepo" and
+ * "repo2" all match "repo".
+ *
+ * @param <T> the type of value
+ */
+final class NamePrefixIndex<T> {
+
+    private final int[] valueIndexes;
+    private final String[] words;
+    private final List<T> values;
+
+    /**
+     * @param values the values to index, in the order matches should be returned in
+     * @param name   returns the name of a value
+     */
+    NamePrefixIndex(Collection<T> values, Function<T, String> name) {
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < this.values.size(); i++) {
+            String valueName = name.apply(this.values.get(i));
+            if (valueName == null) {
+                continue;
+            }
+            String lowerCaseName = valueName.toLowerCase(Locale.ROOT);
+            for (int start = 0; start < valueName.length(); start++) {
+                if (isWordStart(valueName, start)) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(lowerCaseName.substring(start), i));
+                }
+            }
+        }
+        entries.sort(Map.Entry.comparingByKey());
+        words = new String[entries.size()];
+        valueIndexes = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            words[i] = entries.get(i).getKey();
+            valueIndexes[i] = entries.get(i).getValue();
+        }
+    }
+
+    /**
+     * Returns the values with a word in their name starting with the given prefix, in the order they were indexed.
+     *
+     * @param prefix the prefix to look for, which may span several words
+     * @param filter which of the matching values to return
+     * @param limit  the maximum number of values to return
+     * @return the matching values
+     */
+    List<T> find(String prefix, Predicate<T> filter, int limit) {
+        String lowerCasePrefix = prefix.trim().toLowerCase(Locale.ROOT);
+        int from = Arrays.binarySearch(words, lowerCasePrefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        BitSet matches = new BitSet(values.size());
+        for (int i = from; i < words.length && words[i].startsWith(lowerCasePrefix); i++) {
+            matches.set(valueIndexes[i]);
+        }
+        List<T> found = new ArrayList<>();
+        for (int i = matches.nextSetBit(0); i >= 0 && found.size() < limit; i = matches.nextSetBit(i + 1)) {
+            if (filter.test(values.get(i))) {
+                found.add(values.get(i));
+            }
+        }
+        return found;
+    }
+
+    private static boolean isWordStart(String name, int index) {
+        char c = name.charAt(index);
+        if (!Character.isLetterOrDigit(c)) {
+            return false;
+        }
+        if (index == 0) {
+            return true;
+        }
+        char previous = name.charAt(index - 1);
+        return !Character.isLetterOrDigit(previous) ||
+               (Character.isUpperCase(c) && Character.isLowerCase(previous)) ||
+               Character.isDigit(c) != Character.isDigit(previous);
+    }
+}
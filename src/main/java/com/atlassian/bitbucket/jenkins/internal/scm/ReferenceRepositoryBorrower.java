@@ -0,0 +1,54 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A workspace that was cloned with a reference repository, and so borrows objects from it.
+ */
+final class ReferenceRepositoryBorrower {
+
+    private final String gitDir;
+    private final String nodeName;
+
+    /**
+     * @param nodeName the name of the node the workspace is on, which is empty for the built-in node
+     * @param gitDir   the path of the workspace's git directory on that node
+     */
+    ReferenceRepositoryBorrower(String nodeName, String gitDir) {
+        this.nodeName = requireNonNull(nodeName, "nodeName");
+        this.gitDir = requireNonNull(gitDir, "gitDir");
+    }
+
+    String getGitDir() {
+        return gitDir;
+    }
+
+    String getNodeName() {
+        return nodeName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ReferenceRepositoryBorrower that = (ReferenceRepositoryBorrower) o;
+        return Objects.equals(gitDir, that.gitDir) &&
+               Objects.equals(nodeName, that.nodeName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gitDir, nodeName);
+    }
+
+    @Override
+    public String toString() {
+        return (nodeName.isEmpty() ? "(built-in)" : nodeName) + ":" + gitDir;
+    }
+}
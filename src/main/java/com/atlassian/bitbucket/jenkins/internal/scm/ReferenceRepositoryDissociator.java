@@ -0,0 +1,65 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitTool;
+import hudson.remoting.VirtualChannel;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Stops a workspace from borrowing objects from a reference repository that is about to be deleted, by copying the
+ * objects it borrowed into the workspace, as {@code git clone --dissociate} does.
+ */
+@FunctionalInterface
+interface ReferenceRepositoryDissociator {
+
+    /**
+     * @param reference the reference repository, on the controller
+     * @param borrower  the workspace that was cloned with the reference repository
+     * @return true if the workspace no longer borrows from the reference repository, or false if it still does and
+     *         the reference repository must be kept
+     */
+    boolean dissociate(File reference, ReferenceRepositoryBorrower borrower) throws IOException, InterruptedException;
+
+    /**
+     * Returns a dissociator that runs {@code git repack -a -d} with the default git installation of the node the
+     * workspace is on, and then removes the workspace's alternates file. A workspace on a node that has been removed
+     * is gone along with the node, but a workspace on an offline node is kept borrowing.
+     *
+     * @return the dissociator
+     */
+    static ReferenceRepositoryDissociator git() {
+        return (reference, borrower) -> {
+            Jenkins jenkins = Jenkins.get();
+            Node node = borrower.getNodeName().isEmpty() ? jenkins : jenkins.getNode(borrower.getNodeName());
+            if (node == null) {
+                return true;
+            }
+            VirtualChannel channel = node.getChannel();
+            if (channel == null) {
+                return false;
+            }
+            FilePath gitDir = new FilePath(channel, borrower.getGitDir());
+            FilePath alternates = gitDir.child("objects/info/alternates");
+            if (!alternates.exists() || !alternates.readToString().contains(reference.getAbsolutePath())) {
+                return true;
+            }
+            GitTool gitTool = GitTool.getDefaultInstallation();
+            String gitExe = gitTool == null ? "git" : gitTool.forNode(node, TaskListener.NULL).getGitExe();
+            int status = node.createLauncher(TaskListener.NULL).launch()
+                    .cmds(gitExe, "--git-dir=" + gitDir.getRemote(), "repack", "-a", "-d", "-q")
+                    .pwd(gitDir)
+                    .quiet(true)
+                    .join();
+            if (status != 0) {
+                return false;
+            }
+            alternates.delete();
+            return true;
+        };
+    }
+}
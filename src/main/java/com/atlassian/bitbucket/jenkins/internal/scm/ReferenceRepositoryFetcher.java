@@ -0,0 +1,98 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import hudson.EnvVars;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitTool;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Brings a bare repository used as a reference repository up to date with the repository it mirrors.
+ */
+@FunctionalInterface
+interface ReferenceRepositoryFetcher {
+
+    /**
+     * @param directory     the bare repository, which is created if it does not exist
+     * @param cloneUrl      the URL to fetch from
+     * @param credentialsId the credentials to fetch with, if any
+     * @param context       the job the credentials are looked up for, or {@code null} to only look up global
+     *                      credentials
+     */
+    void fetch(File directory, String cloneUrl, @CheckForNull String credentialsId, @CheckForNull Item context)
+            throws IOException, InterruptedException;
+
+    /**
+     * Returns a fetcher that uses the default git installation of the controller to fetch every branch and tag,
+     * pruning those that have been deleted. Automatic garbage collection and maintenance are turned off in the
+     * repository, so pruning a ref never removes the objects that workspaces cloned with it borrow, and what is
+     * fetched is always kept as a pack.
+     *
+     * @return the fetcher
+     */
+    static ReferenceRepositoryFetcher git() {
+        return (directory, cloneUrl, credentialsId, context) -> {
+            URIish remote;
+            try {
+                remote = new URIish(cloneUrl);
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid clone URL " + cloneUrl, e);
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory);
+            }
+            GitTool gitTool = GitTool.getDefaultInstallation();
+            GitClient git = Git.with(TaskListener.NULL, new EnvVars(EnvVars.masterEnvVars))
+                    .in(directory)
+                    .using(gitTool == null ? "git" : gitTool.getGitExe())
+                    .getClient();
+            if (!new File(directory, "HEAD").exists()) {
+                git.init_().workspace(directory.getAbsolutePath()).bare(true).execute();
+            }
+            git.withRepository((repository, channel) -> {
+                StoredConfig config = repository.getConfig();
+                config.setInt("gc", null, "auto", 0);
+                config.setBoolean("maintenance", null, "auto", false);
+                config.setInt("fetch", null, "unpackLimit", 1);
+                config.save();
+                return null;
+            });
+            if (!isBlank(credentialsId)) {
+                List<StandardCredentials> candidates = context == null ?
+                        CredentialsProvider.lookupCredentials(StandardCredentials.class, Jenkins.get(), ACL.SYSTEM,
+                                URIRequirementBuilder.fromUri(cloneUrl).build()) :
+                        CredentialsProvider.lookupCredentials(StandardCredentials.class, context, ACL.SYSTEM,
+                                URIRequirementBuilder.fromUri(cloneUrl).build());
+                StandardCredentials credentials =
+                        CredentialsMatchers.firstOrNull(candidates, CredentialsMatchers.withId(credentialsId));
+                if (credentials != null) {
+                    git.addDefaultCredentials(credentials);
+                }
+            }
+            git.fetch_()
+                    .from(remote, Arrays.asList(new RefSpec("+refs/heads/*:refs/heads/*"),
+                            new RefSpec("+refs/tags/*:refs/tags/*")))
+                    .prune(true)
+                    .execute();
+        };
+    }
+}
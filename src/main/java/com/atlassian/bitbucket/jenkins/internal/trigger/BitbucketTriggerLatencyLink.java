@@ -0,0 +1,63 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.ManagementLink;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Shows how long webhook-triggered builds take to get through each {@link TriggerStage}. The same data is available
+ * as JSON or XML through the remote API at {@code /bitbucket-trigger-latency/api/json}, for monitoring.
+ */
+@Extension
+@ExportedBean
+public class BitbucketTriggerLatencyLink extends ManagementLink {
+
+    public static final String RELATIVE_PATH = "bitbucket-trigger-latency";
+
+    @Inject
+    private TriggerLatencyStats triggerLatencyStats;
+
+    @SuppressWarnings("unused") // Stapler
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    @Exported
+    public List<LatencyHistogram> getStages() {
+        return triggerLatencyStats.getStageHistograms();
+    }
+
+    @Exported
+    public LatencyHistogram getTotal() {
+        return triggerLatencyStats.getTotalHistogram();
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return "monitor.png";
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return Messages.BitbucketTriggerLatencyLink_displayname();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.BitbucketTriggerLatencyLink_description();
+    }
+
+    @CheckForNull
+    @Override
+    public String getUrlName() {
+        return RELATIVE_PATH;
+    }
+}
@@ -2,6 +2,7 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 
 import hudson.Util;
 import hudson.model.Action;
+import hudson.model.CauseAction;
 import hudson.model.Job;
 import hudson.scm.PollingResult;
 import hudson.util.StreamTaskListener;
@@ -62,16 +63,21 @@ public class BitbucketTriggerWorker implements Runnable {
         try (StreamTaskListener listener = new StreamTaskListener(logFile)) {
 
             long start = System.currentTimeMillis();
+            Optional<TriggerTimings> timings = getTimings();
+            timings.ifPresent(t -> t.record(TriggerStage.POLL_STARTED, start));
             PrintStream logger = listener.getLogger();
             logger.println(
                     "Starting polling: "
                             + DateFormat.getDateTimeInstance().format(new Date(start)));
 
             PollingResult result = triggerItem.poll(listener);
-            logger.println("Poll complete. Took " + Util.getTimeSpanString(System.currentTimeMillis() - start));
+            long end = System.currentTimeMillis();
+            timings.ifPresent(t -> t.record(TriggerStage.POLL_COMPLETED, end));
+            logger.println("Poll complete. Took " + Util.getTimeSpanString(end - start));
 
             if (result.hasChanges()) {
                 logger.println("Changes since last build: " + result.change);
+                timings.ifPresent(t -> t.record(TriggerStage.BUILD_SCHEDULED));
                 triggerItem.scheduleBuild2(0, actions.toArray(ACTION_ARRAY));
             }
         } catch (IOException | RuntimeException e) {
@@ -95,5 +101,14 @@ public class BitbucketTriggerWorker implements Runnable {
     public SCMTriggerItem getTriggerItem() {
         return triggerItem;
     }
+
+    private Optional<TriggerTimings> getTimings() {
+        return actions.stream()
+                .filter(action -> action instanceof CauseAction)
+                .flatMap(action -> ((CauseAction) action).getCauses().stream())
+                .filter(cause -> cause instanceof BitbucketWebhookTriggerCause)
+                .map(cause -> ((BitbucketWebhookTriggerCause) cause).getTimings())
+                .findFirst();
+    }
 }
 
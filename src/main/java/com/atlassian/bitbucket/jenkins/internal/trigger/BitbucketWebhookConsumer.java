@@ -3,8 +3,13 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirrorServer;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefType;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMHead;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMRevision;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketReferenceRepositoryCache;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
@@ -18,6 +23,8 @@ import jenkins.model.Jenkins;
 import jenkins.model.ParameterizedJobMixIn;
 import jenkins.plugins.git.GitBranchSCMHead;
 import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
 import jenkins.scm.api.*;
 import jenkins.triggers.SCMTriggerItem;
 import org.eclipse.jgit.transport.RemoteConfig;
@@ -36,6 +43,7 @@ import static java.util.Collections.emptyMap;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Singleton
 public class BitbucketWebhookConsumer {
@@ -44,26 +52,56 @@ public class BitbucketWebhookConsumer {
 
     @Inject
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Inject
+    private BitbucketReferenceRepositoryCache referenceRepositoryCache;
+    @Inject
+    private RefHeadStore refHeadStore;
+    @Inject
+    private WebhookRoutingIndex webhookRoutingIndex;
 
     void process(RefsChangedWebhookEvent event) {
+        process(event, TriggerTimings.receivedAt(System.currentTimeMillis()));
+    }
+
+    void process(RefsChangedWebhookEvent event, TriggerTimings timings) {
+        timings.record(TriggerStage.DISPATCHED);
         BitbucketRepository repository = event.getRepository();
-        LOGGER.fine(format("Received refs changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
-        LOGGER.fine(String.format("Hi this is me logger 2 "));
+        LOGGER.fine(() -> format("Received refs changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
+        referenceRepositoryCache.refresh(repository.getProject().getKey(), repository.getSlug());
         if (!isEligibleRefs(event)) {
             return;
         }
         RefChangedDetails refChangedDetails = new RefChangedDetails(event);
-        triggerJob(event, refChangedDetails);
+        triggerJob(event, refChangedDetails, timings);
     }
 
     void process(MirrorSynchronizedWebhookEvent event) {
+        process(event, TriggerTimings.receivedAt(System.currentTimeMillis()));
+    }
+
+    void process(MirrorSynchronizedWebhookEvent event, TriggerTimings timings) {
+        timings.record(TriggerStage.DISPATCHED);
         BitbucketRepository repository = event.getRepository();
-        LOGGER.fine(format("Received Mirror Synchronized changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
+        LOGGER.fine(() -> format("Received Mirror Synchronized changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
+        referenceRepositoryCache.refresh(repository.getProject().getKey(), repository.getSlug());
         if (!isEligibleRefs(event)) {
             return;
         }
         RefChangedDetails refChangedDetails = new RefChangedDetails(event);
-        triggerJob(event, refChangedDetails);
+        triggerJob(event, refChangedDetails, timings);
+    }
+
+    /**
+     * Tells multibranch projects that a pull request was opened, updated or closed. Jobs with a
+     * {@link BitbucketWebhookTriggerImpl} are not triggered, they only build branches.
+     */
+    void process(PullRequestWebhookEvent event) {
+        BitbucketPullRequest pullRequest = event.getPullRequest();
+        BitbucketRepository repository = pullRequest.getToRef().getRepository();
+        LOGGER.fine(() -> format("Received %s event for pull request %d in repo: %s/%s", event.getEventKey(),
+                pullRequest.getId(), repository.getProject().getKey(), repository.getSlug()));
+        BitbucketPullRequestSCMHeadEvent.fireNow(new BitbucketPullRequestSCMHeadEvent(
+                BitbucketPullRequestSCMHeadEvent.getType(event), event, repository.getSlug()));
     }
 
     private static Set<String> eligibleRefs(RefsChangedWebhookEvent event) {
@@ -149,7 +187,8 @@ public class BitbucketWebhookConsumer {
 
     private boolean hasMatchingRepository(RefChangedDetails refChangedDetails,
                                           BitbucketSCM scm) {
-        if (refChangedDetails.isMirrorSyncEvent() && !refChangedDetails.getMirrorName().equals(scm.getMirrorName())) {
+        // Upstream events only reach jobs without a mirror, mirror events only reach jobs using that mirror
+        if (!refChangedDetails.getMirrorName().equals(Objects.toString(scm.getMirrorName(), ""))) {
             return false;
         }
         return bitbucketPluginConfiguration.getServerById(scm.getServerId())
@@ -175,13 +214,20 @@ public class BitbucketWebhookConsumer {
     }
 
     private void triggerJob(RefsChangedWebhookEvent event,
-                            RefChangedDetails refChangedDetails) {
+                            RefChangedDetails refChangedDetails,
+                            TriggerTimings timings) {
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
-            BitbucketWebhookTriggerRequest.Builder requestBuilder = BitbucketWebhookTriggerRequest.builder();
+            BitbucketWebhookTriggerRequest.Builder requestBuilder =
+                    BitbucketWebhookTriggerRequest.builder().timings(timings);
             event.getActor().ifPresent(requestBuilder::actor);
 
-            Jenkins.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
+            BitbucketRepository repository = refChangedDetails.getRepository();
+            Jenkins jenkins = Jenkins.get();
+            webhookRoutingIndex.getCandidateJobs(repository.getProject().getKey(), repository.getSlug(),
+                    refChangedDetails.getMirrorName(), refChangedDetails.getCloneLinks())
                     .stream()
+                    .map(fullName -> jenkins.getItemByFullName(fullName, ParameterizedJobMixIn.ParameterizedJob.class))
+                    .filter(Objects::nonNull)
                     .map(BitbucketWebhookConsumer::toTriggerDetails)
                     .filter(Optional::isPresent)
                     .map(Optional::get)
@@ -191,9 +237,28 @@ public class BitbucketWebhookConsumer {
             //fire the head event to indicate to the SCMSources that changes have happened.
             BitbucketSCMHeadEvent.fireNow(new BitbucketSCMHeadEvent(SCMEvent.Type.UPDATED, event, event.getRepository().getSlug()));
         }
+        recordRefHeads(event);
+    }
+
+    /**
+     * Remembers the new heads so that {@link WebhookCatchUpScanner} does not replay changes that have already been
+     * delivered.
+     */
+    private void recordRefHeads(RefsChangedWebhookEvent event) {
+        BitbucketRepository repository = event.getRepository();
+        String selfLink = repository.getSelfLink();
+        bitbucketPluginConfiguration.getServerList().stream()
+                .filter(serverConfig -> isBlank(selfLink) || selfLink.startsWith(serverConfig.getBaseUrl()))
+                .map(serverConfig -> new RepositoryKey(serverConfig.getId(), repository.getProject().getKey(),
+                        repository.getSlug(), ""))
+                .forEach(key -> refHeadStore.recordChanges(key, event.getChanges()));
     }
 
-    static class BitbucketSCMHeadEvent extends SCMHeadEvent<RefsChangedWebhookEvent> {
+    /**
+     * Tells multibranch projects which branches and tags a push added or updated, and the commits they now point at,
+     * so that {@link BitbucketSCMSource} can update just those heads without listing the repository.
+     */
+    public static class BitbucketSCMHeadEvent extends SCMHeadEvent<RefsChangedWebhookEvent> {
 
         public BitbucketSCMHeadEvent(Type type, RefsChangedWebhookEvent payload, String origin) {
             super(type, payload, origin);
@@ -204,6 +269,11 @@ public class BitbucketWebhookConsumer {
             return getPayload().getRepository().getName();
         }
 
+        /**
+         * Deleted refs are left out, they are removed by the next full scan. The event does not say when the commit a
+         * tag points at was made, so tags are given a timestamp of 0 here, and {@link BitbucketSCMSource} looks up
+         * the commit's timestamp when it observes them.
+         */
         @Override
         public Map<SCMHead, SCMRevision> heads(SCMSource source) {
             if (!(source instanceof BitbucketSCMSource)) {
@@ -213,7 +283,38 @@ public class BitbucketWebhookConsumer {
             if (!matchingRepo(getPayload().getRepository(), src.getBitbucketSCMRepository())) {
                 return emptyMap();
             }
-            return getPayload().getChanges().stream().collect(Collectors.toMap(change -> new GitBranchSCMHead(change.getRef().getDisplayId()), change -> new GitBranchSCMRevision(new GitBranchSCMHead(change.getRef().getDisplayId()), change.getToHash())));
+            Map<SCMHead, SCMRevision> heads = new HashMap<>();
+            getPayload().getChanges().stream()
+                    .filter(change -> change.getType() != BitbucketRefChangeType.DELETE)
+                    .forEach(change -> {
+                        String name = change.getRef().getDisplayId();
+                        if (change.getRef().getType() == BitbucketRefType.TAG) {
+                            GitTagSCMHead head = new GitTagSCMHead(name, 0L);
+                            heads.put(head, new GitTagSCMRevision(head, change.getToHash()));
+                        } else {
+                            GitBranchSCMHead head = new GitBranchSCMHead(name);
+                            heads.put(head, new GitBranchSCMRevision(head, change.getToHash()));
+                        }
+                    });
+            return heads;
+        }
+
+        /**
+         * Returns whether the changed refs can already be fetched from the given mirror. Changes pushed to the
+         * upstream server only reach a mirror once it has synchronized them.
+         *
+         * @param mirrorName the name of the mirror, or blank for the upstream server
+         * @return true if the commits in this event are available from the mirror
+         */
+        public boolean isAvailableFrom(@Nullable String mirrorName) {
+            if (isBlank(mirrorName)) {
+                return true;
+            }
+            return getPayload() instanceof MirrorSynchronizedWebhookEvent &&
+                   ((MirrorSynchronizedWebhookEvent) getPayload()).getMirrorServer()
+                           .map(BitbucketMirrorServer::getName)
+                           .filter(mirrorName::equals)
+                           .isPresent();
         }
 
         @Override
@@ -227,6 +328,65 @@ public class BitbucketWebhookConsumer {
         }
     }
 
+    /**
+     * Tells multibranch projects that a pull request targeting one of their repositories was opened, had commits
+     * pushed to it or was retargeted, or was merged, declined or deleted, along with the commits its source and target
+     * branches now point at.
+     */
+    public static class BitbucketPullRequestSCMHeadEvent extends SCMHeadEvent<PullRequestWebhookEvent> {
+
+        public BitbucketPullRequestSCMHeadEvent(Type type, PullRequestWebhookEvent payload, String origin) {
+            super(type, payload, origin);
+        }
+
+        static Type getType(PullRequestWebhookEvent event) {
+            switch (BitbucketWebhookEvent.findByEventId(event.getEventKey())) {
+                case PULL_REQUEST_OPENED:
+                    return Type.CREATED;
+                case PULL_REQUEST_MERGED:
+                case PULL_REQUEST_DECLINED:
+                case PULL_REQUEST_DELETED:
+                    return Type.REMOVED;
+                default:
+                    return Type.UPDATED;
+            }
+        }
+
+        @Override
+        public String getSourceName() {
+            return getPayload().getPullRequest().getToRef().getRepository().getName();
+        }
+
+        /**
+         * Pull requests are only discovered from the upstream server, so there are no heads for a source that clones
+         * from a mirror.
+         */
+        @Override
+        public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+            if (!(source instanceof BitbucketSCMSource) || isNotBlank(((BitbucketSCMSource) source).getMirrorName())) {
+                return emptyMap();
+            }
+            BitbucketPullRequest pullRequest = getPayload().getPullRequest();
+            if (!matchingRepo(pullRequest.getToRef().getRepository(),
+                    ((BitbucketSCMSource) source).getBitbucketSCMRepository())) {
+                return emptyMap();
+            }
+            BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+            return Collections.singletonMap(head, new BitbucketPullRequestSCMRevision(head,
+                    pullRequest.getFromRef().getLatestCommit(), pullRequest.getToRef().getLatestCommit()));
+        }
+
+        @Override
+        public boolean isMatch(SCMNavigator navigator) {
+            return false;
+        }
+
+        @Override
+        public boolean isMatch(SCM scm) {
+            return false;
+        }
+    }
+
     static final class RefChangedDetails {
 
         private final Set<String> cloneLinks;
@@ -1,6 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepositoryCache;
 import hudson.Extension;
 import hudson.model.UnprotectedRootAction;
 import hudson.util.HttpResponses;
@@ -13,36 +14,58 @@ import org.kohsuke.stapler.verb.POST;
 import javax.annotation.CheckForNull;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
 @Extension
 public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
 
     public static final String BIBUCKET_WEBHOOK_URL = "bitbucket-server-webhook";
     public static final String X_EVENT_KEY = "X-Event-Key";
 
+    /**
+     * Largest request body accepted, in bytes. Defaults to 10MB.
+     */
+    static final long MAX_BODY_SIZE =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.max.body.size", 10 * 1024 * 1024);
+
     private static final String APPLICATION_JSON = "application/json";
     private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookEndpoint.class.getName());
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebhookPayloadParser payloadParser = new WebhookPayloadParser();
 
     @Inject
-    private BitbucketWebhookConsumer webhookConsumer;
+    private BitbucketRepositoryCache repositoryCache;
+    @Inject
+    private WebhookEventDispatcher webhookEventDispatcher;
 
     @POST
     public HttpResponse doTrigger(StaplerRequest request, StaplerResponse response) {
+        long receivedAt = System.currentTimeMillis();
         validateContentType(request);
 
         String eventKey = getEventKey(request);
 
-        switch (BitbucketWebhookEvent.findByEventId(eventKey)) {
+        BitbucketWebhookEvent event = BitbucketWebhookEvent.findByEventId(eventKey);
+        if (event.isPullRequestEvent()) {
+            return processPullRequestEvent(eventKey, readBody(request), receivedAt);
+        }
+        switch (event) {
             case DIAGNOSTICS_PING_EVENT:
                 return org.kohsuke.stapler.HttpResponses.ok();
             case REPO_REF_CHANGE:
-                return processRefChangedEvent(request);
+                return processEvent(eventKey, readBody(request), RefsChangedWebhookEvent.class, receivedAt);
             case MIRROR_SYNCHRONIZED_EVENT:
-                return processMirrorSynchronizedEvent(request);
+                return processEvent(eventKey, readBody(request), MirrorSynchronizedWebhookEvent.class,
+                        receivedAt);
+            case REPO_MODIFIED:
+                return processRepositoryModified(readBody(request));
             default:
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 return HttpResponses.errorJSON("Event is not supported: " + eventKey);
@@ -76,11 +99,10 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
         return eventKey;
     }
 
-    private <T> T parse(StaplerRequest request, Class<T> type) {
+    private <T extends RefsChangedWebhookEvent> T parse(byte[] body, Class<T> type) {
         try {
-            T event = objectMapper.readValue(request.getInputStream(), type);
-            LOGGER.fine(String.format("Payload: %s", event));
-            LOGGER.fine(String.format("Hi this is me logger 1 "));
+            T event = payloadParser.parse(body, type);
+            LOGGER.fine(() -> "Payload: " + new String(body, StandardCharsets.UTF_8));
             return event;
         } catch (IOException e) {
             String error = "Failed to parse the body: " + e.getMessage();
@@ -89,18 +111,72 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
         }
     }
 
-    private HttpResponse processMirrorSynchronizedEvent(StaplerRequest request) {
-        MirrorSynchronizedWebhookEvent event = parse(request, MirrorSynchronizedWebhookEvent.class);
-        webhookConsumer.process(event);
+    private HttpResponse processEvent(String eventKey, byte[] body, Class<? extends RefsChangedWebhookEvent> type,
+                                      long receivedAt) {
+        RefsChangedWebhookEvent event = parse(body, type);
+        webhookEventDispatcher.accept(eventKey, body, event, receivedAt);
+        return org.kohsuke.stapler.HttpResponses.ok();
+    }
+
+    private HttpResponse processPullRequestEvent(String eventKey, byte[] body, long receivedAt) {
+        PullRequestWebhookEvent event;
+        try {
+            event = payloadParser.parsePullRequestEvent(body);
+        } catch (IOException e) {
+            String error = "Failed to parse the body: " + e.getMessage();
+            LOGGER.severe(error);
+            throw org.kohsuke.stapler.HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST, error);
+        }
+        webhookEventDispatcher.accept(eventKey, body, event, receivedAt);
         return org.kohsuke.stapler.HttpResponses.ok();
     }
 
-    private HttpResponse processRefChangedEvent(StaplerRequest request) {
-        RefsChangedWebhookEvent event = parse(request, RefsChangedWebhookEvent.class);
-        webhookConsumer.process(event);
+    private HttpResponse processRepositoryModified(byte[] body) {
+        List<BitbucketRepository> repositories;
+        try {
+            repositories = payloadParser.parseModifiedRepositories(body);
+        } catch (IOException e) {
+            String error = "Failed to parse the body: " + e.getMessage();
+            LOGGER.severe(error);
+            throw org.kohsuke.stapler.HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST, error);
+        }
+        repositories.stream()
+                .filter(repository -> repository.getProject() != null && repository.getSlug() != null)
+                .forEach(repository -> repositoryCache.invalidate(repository.getProject().getKey(),
+                        repository.getSlug()));
         return org.kohsuke.stapler.HttpResponses.ok();
     }
 
+    private byte[] readBody(StaplerRequest request) {
+        if (request.getContentLengthLong() > MAX_BODY_SIZE) {
+            throw bodyTooLarge();
+        }
+        try (InputStream in = request.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(
+                    (int) Math.min(MAX_BODY_SIZE, Math.max(request.getContentLengthLong(), 8192)));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > MAX_BODY_SIZE) {
+                    throw bodyTooLarge();
+                }
+                body.write(buffer, 0, read);
+            }
+            return body.toByteArray();
+        } catch (IOException e) {
+            String error = "Failed to read the body: " + e.getMessage();
+            LOGGER.severe(error);
+            throw org.kohsuke.stapler.HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST, error);
+        }
+    }
+
+    private static org.kohsuke.stapler.HttpResponses.HttpResponseException bodyTooLarge() {
+        String error = "Request body is larger than the maximum of " + MAX_BODY_SIZE + " bytes";
+        LOGGER.severe(error);
+        return org.kohsuke.stapler.HttpResponses.errorWithoutStack(
+                HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, error);
+    }
+
     private void validateContentType(StaplerRequest request) {
         String contentType = request.getContentType();
         if (contentType != null && !contentType.startsWith(APPLICATION_JSON)) {
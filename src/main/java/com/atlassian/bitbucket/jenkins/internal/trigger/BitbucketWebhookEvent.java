@@ -4,7 +4,14 @@ public enum BitbucketWebhookEvent {
 
     REPO_REF_CHANGE("repo:refs_changed"),
     MIRROR_SYNCHRONIZED_EVENT("mirror:repo_synchronized"),
+    REPO_MODIFIED("repo:modified"),
     DIAGNOSTICS_PING_EVENT("diagnostics:ping"),
+    PULL_REQUEST_OPENED("pr:opened"),
+    PULL_REQUEST_FROM_REF_UPDATED("pr:from_ref_updated"),
+    PULL_REQUEST_MODIFIED("pr:modified"),
+    PULL_REQUEST_MERGED("pr:merged"),
+    PULL_REQUEST_DECLINED("pr:declined"),
+    PULL_REQUEST_DELETED("pr:deleted"),
     UNSUPPORTED("");
 
     private final String eventId;
@@ -17,6 +24,13 @@ public enum BitbucketWebhookEvent {
         return eventId;
     }
 
+    /**
+     * @return true if this is one of the pull request events that pull request discovery reacts to
+     */
+    public boolean isPullRequestEvent() {
+        return eventId.startsWith("pr:");
+    }
+
     public static BitbucketWebhookEvent findByEventId(String eventId) {
         for (BitbucketWebhookEvent event : values()) {
             if (event.eventId.equalsIgnoreCase(eventId)) {
@@ -0,0 +1,100 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.JournalEntry;
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.WebhookEventJournal;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lists the most recently journaled webhook events and lets administrators replay every event received within a
+ * time range.
+ */
+@Extension
+public class BitbucketWebhookJournalLink extends ManagementLink {
+
+    public static final String RELATIVE_PATH = "bitbucket-webhook-journal";
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookJournalLink.class.getName());
+    private static final int RECENT_ENTRIES = 100;
+
+    @Inject
+    private WebhookEventDispatcher webhookEventDispatcher;
+    @Inject
+    private WebhookEventJournal webhookEventJournal;
+
+    @SuppressWarnings("unused") // Stapler
+    public List<JournalEntry> getRecentEntries() throws IOException {
+        return webhookEventJournal.getRecent(RECENT_ENTRIES);
+    }
+
+    @RequirePOST
+    @SuppressWarnings("unused") // Stapler
+    public HttpResponse doReplay(@QueryParameter String from, @QueryParameter String to) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        long start = toEpochMillis(from);
+        long end = toEpochMillis(to);
+        if (start >= end) {
+            return HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST,
+                    "The start of the range must be before its end");
+        }
+        try {
+            int replayed = webhookEventDispatcher.replay(start, end);
+            LOGGER.info("Replaying " + replayed + " journaled Bitbucket webhook events between " + from + " and " + to);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read the Bitbucket webhook journal", e);
+            return HttpResponses.error(e);
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return "notepad.png";
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return Messages.BitbucketWebhookJournalLink_displayname();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.BitbucketWebhookJournalLink_description();
+    }
+
+    @CheckForNull
+    @Override
+    public String getUrlName() {
+        return RELATIVE_PATH;
+    }
+
+    private static long toEpochMillis(String dateTime) {
+        try {
+            if (dateTime != null) {
+                return LocalDateTime.parse(dateTime).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+        } catch (DateTimeParseException e) {
+            // handled below
+        }
+        throw HttpResponses.errorWithoutStack(HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid date and time: " + dateTime);
+    }
+}
@@ -1,10 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
-import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
-import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import com.google.common.annotations.VisibleForTesting;
 import hudson.Extension;
@@ -16,15 +13,10 @@ import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.inject.Inject;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import static java.util.Objects.requireNonNull;
+import java.util.concurrent.CompletableFuture;
 
 public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProject<?, ?>> {
 
-    private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookMultibranchTrigger.class.getName());
-
     @SuppressWarnings("RedundantNoArgConstructor") // Required for Stapler
     @DataBoundConstructor
     public BitbucketWebhookMultibranchTrigger() {
@@ -40,9 +32,7 @@ public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProje
     public static class DescriptorImpl extends TriggerDescriptor {
 
         @Inject
-        private BitbucketPluginConfiguration bitbucketPluginConfiguration;
-        @Inject
-        private RetryingWebhookHandler retryingWebhookHandler;
+        private BulkWebhookRegistrar bulkWebhookRegistrar;
 
         @SuppressWarnings("unused")
         public DescriptorImpl() {
@@ -51,8 +41,19 @@ public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProje
         @VisibleForTesting
         DescriptorImpl(RetryingWebhookHandler webhookHandler,
                        BitbucketPluginConfiguration bitbucketPluginConfiguration) {
-            this.retryingWebhookHandler = webhookHandler;
-            this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
+            this(webhookHandler, bitbucketPluginConfiguration, new WebhookRegistry());
+        }
+
+        @VisibleForTesting
+        DescriptorImpl(RetryingWebhookHandler webhookHandler,
+                       BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                       WebhookRegistry webhookRegistry) {
+            this(BulkWebhookRegistrar.sameThread(bitbucketPluginConfiguration, webhookHandler, webhookRegistry));
+        }
+
+        @VisibleForTesting
+        DescriptorImpl(BulkWebhookRegistrar bulkWebhookRegistrar) {
+            this.bulkWebhookRegistrar = bulkWebhookRegistrar;
         }
 
         @Override
@@ -65,32 +66,19 @@ public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProje
             return item instanceof MultiBranchProject;
         }
 
+        /**
+         * Starts registering a webhook for the source's repository. The source is marked as registered once the
+         * registration has succeeded, and left unregistered if it fails, so that the next save retries it.
+         *
+         * @param item the multibranch project owning the source
+         * @param scm  the source to register a webhook for
+         * @return false if the registration has already failed, true otherwise
+         */
         public boolean addTrigger(Item item, BitbucketSCMSource scm) {
-            try {
-                registerWebhook(item, scm.getBitbucketSCMRepository());
-                return true;
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "There was a problem while trying to add webhook", ex);
-                throw ex;
-            }
-        }
-
-        private BitbucketServerConfiguration getServer(String serverId) {
-            return bitbucketPluginConfiguration
-                    .getServerById(serverId)
-                    .orElseThrow(() -> new BitbucketClientException(
-                            "Server config not found for input server id " + serverId));
-        }
-
-        private void registerWebhook(Item item, BitbucketSCMRepository repository) {
-            requireNonNull(repository.getServerId());
-            BitbucketServerConfiguration bitbucketServerConfiguration = getServer(repository.getServerId());
-
-            BitbucketWebhook webhook = retryingWebhookHandler.register(
-                    bitbucketServerConfiguration.getBaseUrl(),
-                    bitbucketServerConfiguration.getGlobalCredentialsProvider(item),
-                    repository);
-            LOGGER.info("Webhook returned - " + webhook);
+            CompletableFuture<BitbucketWebhook> registration =
+                    bulkWebhookRegistrar.register(item, scm.getBitbucketSCMRepository(), scm.isDiscoverPullRequests());
+            registration.whenComplete((webhook, error) -> scm.setWebhookRegistered(error == null));
+            return !registration.isCompletedExceptionally();
         }
     }
 }
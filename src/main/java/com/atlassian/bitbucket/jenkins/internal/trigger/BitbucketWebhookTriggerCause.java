@@ -9,9 +9,11 @@ import static com.atlassian.bitbucket.jenkins.internal.trigger.Messages.Bitbucke
 public class BitbucketWebhookTriggerCause extends Cause {
 
     private final BitbucketWebhookTriggerRequest triggerRequest;
+    private TriggerTimings timings;
 
     public BitbucketWebhookTriggerCause(BitbucketWebhookTriggerRequest triggerRequest) {
         this.triggerRequest = triggerRequest;
+        timings = triggerRequest.getTimings().copy();
     }
 
     @Override
@@ -34,6 +36,16 @@ public class BitbucketWebhookTriggerCause extends Cause {
                 .orElseGet(Messages::BitbucketWebhookTriggerCause_withoutAuthor);
     }
 
+    /**
+     * @return the stages this build's webhook has reached; empty for builds triggered before timings were recorded
+     */
+    public TriggerTimings getTimings() {
+        if (timings == null) {
+            timings = new TriggerTimings();
+        }
+        return timings;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(triggerRequest);
@@ -1,26 +1,18 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
-import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
-import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
-import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProviderModule;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
-import com.google.inject.Guice;
 import hudson.Extension;
 import hudson.model.CauseAction;
 import hudson.model.Item;
 import hudson.model.Job;
 import hudson.scm.SCM;
-import hudson.security.ACL;
-import hudson.security.ACLContext;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
 import hudson.util.NamingThreadFactory;
 import hudson.util.SequentialExecutionQueue;
-import jenkins.model.ParameterizedJobMixIn;
+import jenkins.model.Jenkins;
 import jenkins.triggers.SCMTriggerItem;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
@@ -31,22 +23,15 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.Collection;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-import static java.util.Objects.requireNonNull;
 import static jenkins.triggers.SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem;
-import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         implements BitbucketWebhookTrigger {
 
-    private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookTriggerImpl.class.getName());
-
     @SuppressWarnings("RedundantNoArgConstructor") // Required for Stapler
     @DataBoundConstructor
     public BitbucketWebhookTriggerImpl() {
@@ -77,8 +62,7 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
             Optional<SCM> maybeScm = fetchWorkflowSCM(triggerItem);
             maybeScm.ifPresent(scm -> {
                 if (scm instanceof BitbucketSCM) {
-                    boolean isAdded = descriptor.addTrigger(project, (BitbucketSCM) scm);
-                    ((BitbucketSCM) scm).setWebhookRegistered(isAdded);
+                    descriptor.addTrigger(project, (BitbucketSCM) scm);
                 }
             });
         } else if (triggerItem != null) {
@@ -88,21 +72,8 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                     .filter(scm -> scm instanceof BitbucketSCM)
                     .map(scm -> (BitbucketSCM) scm)
                     .filter(scm -> !scm.isWebhookRegistered())
-                    .filter(scm -> !checkTriggerExists(descriptor, scm))
-                    .forEach(scm -> {
-                        boolean isAdded = descriptor.addTrigger(project, scm);
-                        scm.setWebhookRegistered(isAdded);
-                    });
-        }
-    }
-
-    private boolean checkTriggerExists(BitbucketWebhookTriggerDescriptor descriptor,
-                                       BitbucketSCM scm) {
-        boolean isExists = descriptor.webhookExists(job, scm);
-        if (isExists) {
-            scm.setWebhookRegistered(true);
+                    .forEach(scm -> descriptor.addTrigger(project, scm));
         }
-        return isExists;
     }
 
     /**
@@ -154,9 +125,7 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         private static final int MAX_THREADS = 10;
 
         @Inject
-        private RetryingWebhookHandler retryingWebhookHandler;
-        @Inject
-        private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+        private BulkWebhookRegistrar bulkWebhookRegistrar;
         private transient JenkinsProvider jenkinsProvider;
 
         @SuppressWarnings("TransientFieldInNonSerializableClass")
@@ -171,10 +140,25 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                                                  RetryingWebhookHandler webhookHandler,
                                                  JenkinsProvider jenkinsProvider,
                                                  BitbucketPluginConfiguration bitbucketPluginConfiguration) {
+            this(queue, webhookHandler, jenkinsProvider, bitbucketPluginConfiguration,
+                    new WebhookRegistry(jenkinsProvider));
+        }
+
+        public BitbucketWebhookTriggerDescriptor(SequentialExecutionQueue queue,
+                                                 RetryingWebhookHandler webhookHandler,
+                                                 JenkinsProvider jenkinsProvider,
+                                                 BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                                                 WebhookRegistry webhookRegistry) {
+            this(queue, jenkinsProvider,
+                    BulkWebhookRegistrar.sameThread(bitbucketPluginConfiguration, webhookHandler, webhookRegistry));
+        }
+
+        public BitbucketWebhookTriggerDescriptor(SequentialExecutionQueue queue,
+                                                 JenkinsProvider jenkinsProvider,
+                                                 BulkWebhookRegistrar bulkWebhookRegistrar) {
             this.queue = queue;
-            this.retryingWebhookHandler = webhookHandler;
             this.jenkinsProvider = jenkinsProvider;
-            this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
+            this.bulkWebhookRegistrar = bulkWebhookRegistrar;
         }
 
         @Override
@@ -201,18 +185,24 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                 @Nullable Job<?, ?> job,
                 SCMTriggerItem triggerItem,
                 BitbucketWebhookTriggerRequest triggerRequest) {
-            CauseAction causeAction = new CauseAction(new BitbucketWebhookTriggerCause(triggerRequest));
+            BitbucketWebhookTriggerCause cause = new BitbucketWebhookTriggerCause(triggerRequest);
+            cause.getTimings().record(TriggerStage.QUEUED);
+            CauseAction causeAction = new CauseAction(cause);
             queue.execute(new BitbucketTriggerWorker(job, triggerItem, causeAction, triggerRequest.getAdditionalActions()));
         }
 
-        private boolean addTrigger(Item item, BitbucketSCM scm) {
-            try {
-                scm.getRepositories().forEach(repo -> registerWebhook(item, repo));
-                return true;
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "There was a problem while trying to add webhook", ex);
-                throw ex;
-            }
+        /**
+         * Starts registering webhooks for all repositories of the SCM. Once every registration has completed the SCM
+         * is marked as registered; if any registration fails it is left unregistered so that the next start retries
+         * it.
+         * <p>
+         * This runs on every pipeline build, so repositories the {@link WebhookRegistry} still trusts are looked up
+         * there by key rather than in Bitbucket or in the other jobs. The {@link WebhookRegistryReconciler} keeps
+         * those registrations trusted, so Bitbucket is only asked again for repositories it could not verify.
+         */
+        private CompletableFuture<Void> addTrigger(Item item, BitbucketSCM scm) {
+            return getBulkWebhookRegistrar().registerAll(item, scm.getRepositories())
+                    .whenComplete((ignored, error) -> scm.setWebhookRegistered(error == null));
         }
 
         private static SequentialExecutionQueue createSequentialQueue() {
@@ -222,62 +212,19 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                             new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookTrigger")));
         }
 
-        private void registerWebhook(Item item, BitbucketSCMRepository repository) {
-            requireNonNull(repository.getServerId());
-            BitbucketServerConfiguration bitbucketServerConfiguration = getServer(repository.getServerId());
-
-            BitbucketWebhook webhook = retryingWebhookHandler.register(
-                    bitbucketServerConfiguration.getBaseUrl(),
-                    bitbucketServerConfiguration.getGlobalCredentialsProvider(item),
-                    repository);
-            LOGGER.info("Webhook returned -" + webhook);
-        }
-
-        private boolean webhookExists(Job<?, ?> project, BitbucketSCM input) {
-            try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
-                if (jenkinsProvider == null) {
-                    Guice.createInjector(new JenkinsProviderModule()).injectMembers(this);
-                }
-                return jenkinsProvider
-                        .get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
-                        .stream()
-                        .filter(item -> !item.equals(project))
-                        .filter(BitbucketWebhookTriggerDescriptor::isTriggerEnabled)
-                        .map(item -> asSCMTriggerItem(item))
-                        .filter(Objects::nonNull)
-                        .map(scmItem -> scmItem.getSCMs())
-                        .flatMap(Collection::stream)
-                        .filter(scm -> scm instanceof BitbucketSCM)
-                        .map(scm -> ((BitbucketSCM) scm).getRepositories())
-                        .flatMap(Collection::stream)
-                        .anyMatch(scm -> isExistingWebhookOnRepo(input, scm));
+        private BulkWebhookRegistrar getBulkWebhookRegistrar() {
+            if (bulkWebhookRegistrar == null) {
+                injectMembers();
             }
+            return bulkWebhookRegistrar;
         }
 
-        private static boolean isTriggerEnabled(ParameterizedJobMixIn.ParameterizedJob job) {
-            return job.getTriggers()
-                    .values()
-                    .stream()
-                    .anyMatch(v -> v instanceof BitbucketWebhookTriggerImpl);
-        }
-
-        private boolean isExistingWebhookOnRepo(BitbucketSCM scm, BitbucketSCMRepository repository) {
-            return scm.isWebhookRegistered() &&
-                   scm.getRepositories().stream().allMatch(r -> r.getServerId().equals(repository.getServerId()) &&
-                                                                r.getProjectKey().equals(repository.getProjectKey()) &&
-                                                                r.getRepositorySlug().equals(repository.getRepositorySlug()) &&
-                                                                !isMirrorConfigurationDifferent(r));
-        }
-
-        private boolean isMirrorConfigurationDifferent(BitbucketSCMRepository r) {
-            return isEmpty(r.getMirrorName()) ^ isEmpty(r.getMirrorName());
-        }
-
-        private BitbucketServerConfiguration getServer(String serverId) {
-            return bitbucketPluginConfiguration
-                    .getServerById(serverId)
-                    .orElseThrow(() -> new BitbucketClientException(
-                            "Server config not found for input server id" + serverId));
+        /**
+         * The registrar holds state shared with the rest of the plugin, so it must come from the Jenkins
+         * injector rather than a new one that would create a copy of it.
+         */
+        private void injectMembers() {
+            Jenkins.get().getInjector().injectMembers(this);
         }
     }
 }
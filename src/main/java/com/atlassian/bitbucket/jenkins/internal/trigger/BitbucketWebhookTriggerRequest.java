@@ -6,16 +6,19 @@ import hudson.model.Action;
 import javax.annotation.Nullable;
 import java.util.*;
 
+import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
 public final class BitbucketWebhookTriggerRequest {
 
     private final BitbucketUser actor;
     private final List<Action> additionalActions;
+    private final TriggerTimings timings;
 
     private BitbucketWebhookTriggerRequest(Builder builder) {
         actor = builder.actor;
         additionalActions = builder.additionalActions;
+        timings = builder.timings;
     }
 
     public static Builder builder() {
@@ -42,6 +45,13 @@ public final class BitbucketWebhookTriggerRequest {
         return additionalActions;
     }
 
+    /**
+     * @return the stages the webhook has reached so far; not part of the request's identity
+     */
+    public TriggerTimings getTimings() {
+        return timings;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(actor, additionalActions);
@@ -51,6 +61,7 @@ public final class BitbucketWebhookTriggerRequest {
 
         private final List<Action> additionalActions = new ArrayList<>();
         private BitbucketUser actor;
+        private TriggerTimings timings = new TriggerTimings();
 
         public Builder actor(@Nullable BitbucketUser value) {
             actor = value;
@@ -62,6 +73,11 @@ public final class BitbucketWebhookTriggerRequest {
             return this;
         }
 
+        public Builder timings(TriggerTimings value) {
+            timings = requireNonNull(value, "timings");
+            return this;
+        }
+
         public BitbucketWebhookTriggerRequest build() {
             return new BitbucketWebhookTriggerRequest(this);
         }
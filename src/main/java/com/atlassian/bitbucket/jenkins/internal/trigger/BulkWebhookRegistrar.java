@@ -0,0 +1,194 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.model.Item;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Registers webhooks for many jobs at once, as happens when a large number of jobs is imported or copied. Each
+ * repository is registered at most once at a time: jobs that ask for a repository which is already being registered
+ * wait on the same result instead of making their own calls to Bitbucket. Registrations are run concurrently, with at
+ * most {@link #CONCURRENCY_PER_SERVER} in flight for any one Bitbucket Server.
+ * <p>
+ * Repositories which already have a verified webhook in the {@link WebhookRegistry} are not registered again, and
+ * successful registrations are recorded there.
+ */
+@Singleton
+public class BulkWebhookRegistrar {
+
+    /**
+     * Maximum number of concurrent webhook registrations sent to a single Bitbucket Server. Defaults to 4.
+     */
+    static final int CONCURRENCY_PER_SERVER =
+            (int) max(1, parsePositiveLongFromSystemProperty("bitbucket.webhook.register.concurrency.per.server", 4));
+
+    private static final long IDLE_THREAD_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    private static final Logger LOGGER = Logger.getLogger(BulkWebhookRegistrar.class.getName());
+
+    private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    private final Function<String, Executor> executorFactory;
+    private final ConcurrentMap<String, Executor> executorsByServer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RepositoryKey, CompletableFuture<BitbucketWebhook>> inFlight =
+            new ConcurrentHashMap<>();
+    private final RetryingWebhookHandler retryingWebhookHandler;
+    private final WebhookRegistry webhookRegistry;
+
+    @Inject
+    public BulkWebhookRegistrar(BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                                RetryingWebhookHandler retryingWebhookHandler,
+                                WebhookRegistry webhookRegistry) {
+        this(bitbucketPluginConfiguration, retryingWebhookHandler, webhookRegistry,
+                BulkWebhookRegistrar::createServerExecutor);
+    }
+
+    @VisibleForTesting
+    BulkWebhookRegistrar(BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                         RetryingWebhookHandler retryingWebhookHandler,
+                         WebhookRegistry webhookRegistry,
+                         Function<String, Executor> executorFactory) {
+        this.bitbucketPluginConfiguration = requireNonNull(bitbucketPluginConfiguration, "bitbucketPluginConfiguration");
+        this.retryingWebhookHandler = requireNonNull(retryingWebhookHandler, "retryingWebhookHandler");
+        this.webhookRegistry = requireNonNull(webhookRegistry, "webhookRegistry");
+        this.executorFactory = requireNonNull(executorFactory, "executorFactory");
+    }
+
+    /**
+     * Creates a registrar which runs every registration on the calling thread. Used where webhook registration must
+     * complete before the caller continues.
+     */
+    static BulkWebhookRegistrar sameThread(BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                                           RetryingWebhookHandler retryingWebhookHandler,
+                                           WebhookRegistry webhookRegistry) {
+        return new BulkWebhookRegistrar(bitbucketPluginConfiguration, retryingWebhookHandler, webhookRegistry,
+                serverId -> Runnable::run);
+    }
+
+    /**
+     * Registers webhooks for all the given repositories on behalf of the item. The returned future completes once
+     * every repository has a webhook, or completes exceptionally with the first failure.
+     *
+     * @param item         the item requesting the webhooks, used to look up global credentials
+     * @param repositories the repositories to register webhooks for
+     * @return a future which completes when all registrations have completed
+     */
+    public CompletableFuture<Void> registerAll(Item item, Collection<BitbucketSCMRepository> repositories) {
+        return CompletableFuture.allOf(repositories.stream()
+                .map(repository -> register(item, repository))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Registers a webhook for the repository on behalf of the item. If the repository is already being registered, the
+     * pending result is returned instead.
+     *
+     * @param item       the item requesting the webhook, used to look up global credentials
+     * @param repository the repository to register a webhook for
+     * @return a future holding the registered webhook, or {@code null} if it was already verified earlier
+     */
+    public CompletableFuture<BitbucketWebhook> register(Item item, BitbucketSCMRepository repository) {
+        return register(item, repository, false);
+    }
+
+    /**
+     * Registers a webhook for the repository on behalf of the item, also subscribing it to pull request events if
+     * asked to. If the repository is already being registered, the pending result is returned instead, unless pull
+     * request events are needed, in which case the repository is registered again once the pending registration is
+     * done, if that did not subscribe to them.
+     *
+     * @param item              the item requesting the webhook, used to look up global credentials
+     * @param repository        the repository to register a webhook for
+     * @param pullRequestEvents whether the webhook should deliver pull request events
+     * @return a future holding the registered webhook, or {@code null} if it was already verified earlier
+     */
+    public CompletableFuture<BitbucketWebhook> register(Item item, BitbucketSCMRepository repository,
+                                                        boolean pullRequestEvents) {
+        String serverId = requireNonNull(repository.getServerId());
+        if (webhookRegistry.isRegistered(repository, pullRequestEvents)) {
+            LOGGER.fine("Webhook already verified for " + RepositoryKey.of(repository));
+            return CompletableFuture.completedFuture(null);
+        }
+        RepositoryKey key = RepositoryKey.of(repository);
+        CompletableFuture<BitbucketWebhook> result = new CompletableFuture<>();
+        CompletableFuture<BitbucketWebhook> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            LOGGER.fine("Webhook registration already in progress for " + key);
+            return pullRequestEvents ?
+                    existing.handle((webhook, error) -> null)
+                            .thenCompose(ignored -> register(item, repository, true)) :
+                    existing;
+        }
+        try {
+            getExecutor(serverId).execute(() -> doRegister(item, repository, pullRequestEvents, key, result));
+        } catch (RejectedExecutionException e) {
+            complete(key, result, null, e);
+        }
+        return result;
+    }
+
+    private void complete(RepositoryKey key, CompletableFuture<BitbucketWebhook> result,
+                          @Nullable BitbucketWebhook webhook, @Nullable Throwable error) {
+        inFlight.remove(key, result);
+        if (error == null) {
+            result.complete(webhook);
+        } else {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static Executor createServerExecutor(String serverId) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(CONCURRENCY_PER_SERVER, CONCURRENCY_PER_SERVER,
+                IDLE_THREAD_TIMEOUT, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookRegistration"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void doRegister(Item item, BitbucketSCMRepository repository, boolean pullRequestEvents,
+                            RepositoryKey key, CompletableFuture<BitbucketWebhook> result) {
+        try {
+            BitbucketServerConfiguration serverConfiguration = getServer(repository.getServerId());
+            BitbucketWebhook webhook = retryingWebhookHandler.register(
+                    serverConfiguration.getBaseUrl(),
+                    serverConfiguration.getGlobalCredentialsProvider(item),
+                    repository,
+                    pullRequestEvents);
+            LOGGER.info("Webhook returned - " + webhook);
+            if (webhook != null) {
+                webhookRegistry.record(key, webhook);
+            }
+            complete(key, result, webhook, null);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "There was a problem while trying to add webhook for " + key, e);
+            complete(key, result, null, e);
+        }
+    }
+
+    private Executor getExecutor(String serverId) {
+        return executorsByServer.computeIfAbsent(serverId, executorFactory);
+    }
+
+    private BitbucketServerConfiguration getServer(String serverId) {
+        return bitbucketPluginConfiguration
+                .getServerById(serverId)
+                .orElseThrow(() -> new BitbucketClientException(
+                        "Server config not found for input server id " + serverId));
+    }
+}
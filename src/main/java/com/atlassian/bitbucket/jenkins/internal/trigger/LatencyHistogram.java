@@ -0,0 +1,124 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A lock-free histogram of latencies in milliseconds, using fixed buckets from 10ms to 15 minutes. Percentiles are
+ * reported as the upper bound of the bucket they fall in, or the maximum seen if they fall past the last bucket.
+ */
+@ExportedBean
+public class LatencyHistogram {
+
+    static final long[] BUCKET_BOUNDS =
+            {10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 300_000, 900_000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final String name;
+    private final AtomicLong sum = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = requireNonNull(name, "name");
+    }
+
+    /**
+     * @return the number of latencies recorded in each bucket; the last bucket holds everything past the last bound
+     */
+    @Exported
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    @Exported
+    public long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    @Exported
+    public long getCount() {
+        return count.get();
+    }
+
+    @Exported
+    public long getMax() {
+        return max.get();
+    }
+
+    @Exported
+    public long getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / total;
+    }
+
+    @Exported
+    public String getName() {
+        return name;
+    }
+
+    @Exported
+    public long getP50() {
+        return getPercentile(0.50);
+    }
+
+    @Exported
+    public long getP95() {
+        return getPercentile(0.95);
+    }
+
+    @Exported
+    public long getP99() {
+        return getPercentile(0.99);
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 1
+     * @return an upper bound for the given percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (millis <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+}
@@ -0,0 +1,187 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import com.atlassian.bitbucket.jenkins.internal.provider.DefaultJenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.BulkChange;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.util.XStream2;
+import jenkins.util.io.OnMaster;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * The last branch heads seen for each repository, either through a webhook or by {@link WebhookCatchUpScanner}. Only
+ * upstream repositories are tracked, mirrors serve the same refs.
+ * <p>
+ * Updates from webhooks are kept in memory only and written to disk when the scanner saves the store at the end of a
+ * run. Losing them in a crash is harmless: the next scan sees the difference and replays it, and the triggered jobs
+ * poll before building.
+ */
+@Singleton
+public class RefHeadStore implements Saveable, OnMaster {
+
+    private static final String CONFIG_FILE_NAME = "bitbucket-ref-heads.xml";
+    private static final Logger LOGGER = Logger.getLogger(RefHeadStore.class.getName());
+
+    private final transient JenkinsProvider jenkinsProvider;
+    private final transient XStream2 xStream = new XStream2();
+    private transient volatile ConcurrentMap<RepositoryKey, Map<String, String>> headsByRepository;
+    private Map<RepositoryKey, Map<String, String>> heads;
+
+    public RefHeadStore() {
+        this(new DefaultJenkinsProvider());
+    }
+
+    @Inject
+    public RefHeadStore(JenkinsProvider jenkinsProvider) {
+        this.jenkinsProvider = requireNonNull(jenkinsProvider, "jenkinsProvider");
+        xStream.alias("repository", RepositoryKey.class);
+    }
+
+    /**
+     * Returns a copy of the last seen heads of the repository, keyed by ref id.
+     *
+     * @param key the repository
+     * @return the heads, or empty if the repository has never been scanned
+     */
+    public Optional<Map<String, String>> getHeads(RepositoryKey key) {
+        return Optional.ofNullable(getHeadsByRepository().get(key.withoutMirror()))
+                .map(repositoryHeads -> Collections.unmodifiableMap(new HashMap<>(repositoryHeads)));
+    }
+
+    /**
+     * Replaces the last seen heads of the repository with the given ones. This starts tracking the repository if it
+     * was not tracked before.
+     *
+     * @param key   the repository
+     * @param heads the current heads, keyed by ref id
+     */
+    public void setHeads(RepositoryKey key, Map<String, String> heads) {
+        getHeadsByRepository().put(key.withoutMirror(), new ConcurrentHashMap<>(heads));
+    }
+
+    /**
+     * Applies the ref changes of a webhook to the heads of the repository. Changes for repositories that are not
+     * tracked are ignored.
+     *
+     * @param key     the repository
+     * @param changes the changes from the webhook
+     */
+    public void recordChanges(RepositoryKey key, Collection<BitbucketRefChange> changes) {
+        Map<String, String> repositoryHeads = getHeadsByRepository().get(key.withoutMirror());
+        if (repositoryHeads == null) {
+            return;
+        }
+        for (BitbucketRefChange change : changes) {
+            if (change.getType() == BitbucketRefChangeType.DELETE) {
+                repositoryHeads.remove(change.getRef().getId());
+            } else {
+                repositoryHeads.put(change.getRef().getId(), change.getToHash());
+            }
+        }
+    }
+
+    /**
+     * Moves the heads of the repository from the previous heads a scan compared against to the current ones, one ref
+     * at a time. A ref is only changed if it still has its previous head, so that a head recorded by a webhook since
+     * the previous heads were read is kept. This starts tracking the repository if it was not tracked before.
+     *
+     * @param key      the repository
+     * @param previous the heads the scan compared against, keyed by ref id
+     * @param current  the current heads, keyed by ref id
+     */
+    public void updateHeads(RepositoryKey key, Map<String, String> previous, Map<String, String> current) {
+        Map<String, String> repositoryHeads =
+                getHeadsByRepository().putIfAbsent(key.withoutMirror(), new ConcurrentHashMap<>(current));
+        if (repositoryHeads == null) {
+            return;
+        }
+        previous.forEach((ref, hash) -> {
+            if (!current.containsKey(ref)) {
+                repositoryHeads.remove(ref, hash);
+            }
+        });
+        current.forEach((ref, hash) -> {
+            String previousHash = previous.get(ref);
+            if (previousHash == null) {
+                repositoryHeads.putIfAbsent(ref, hash);
+            } else if (!previousHash.equals(hash)) {
+                repositoryHeads.replace(ref, previousHash, hash);
+            }
+        });
+    }
+
+    /**
+     * Stops tracking all repositories except the given ones.
+     *
+     * @param keys the repositories to keep
+     */
+    public void retainAll(Set<RepositoryKey> keys) {
+        getHeadsByRepository().keySet().retainAll(keys);
+    }
+
+    @Override
+    public synchronized void save() {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        heads = new HashMap<>();
+        getHeadsByRepository().forEach((key, value) -> heads.put(key, new HashMap<>(value)));
+        try {
+            getConfigFile().write(this);
+        } catch (IOException e) {
+            LOGGER.log(SEVERE, "Failed to persist Bitbucket ref heads to disk", e);
+        } finally {
+            heads = null;
+        }
+    }
+
+    @VisibleForTesting
+    XmlFile getConfigFile() {
+        return new XmlFile(xStream, new File(jenkinsProvider.get().getRootDir(), CONFIG_FILE_NAME));
+    }
+
+    private ConcurrentMap<RepositoryKey, Map<String, String>> getHeadsByRepository() {
+        ConcurrentMap<RepositoryKey, Map<String, String>> result = headsByRepository;
+        if (result == null) {
+            result = load();
+        }
+        return result;
+    }
+
+    private synchronized ConcurrentMap<RepositoryKey, Map<String, String>> load() {
+        if (headsByRepository != null) {
+            return headsByRepository;
+        }
+        ConcurrentMap<RepositoryKey, Map<String, String>> loaded = new ConcurrentHashMap<>();
+        XmlFile configFile = getConfigFile();
+        if (configFile.exists()) {
+            try {
+                configFile.unmarshal(this);
+                if (heads != null) {
+                    heads.forEach((key, value) -> loaded.put(key, new ConcurrentHashMap<>(value)));
+                }
+            } catch (IOException e) {
+                LOGGER.log(SEVERE, "Failed to load Bitbucket ref heads from disk, repositories will be re-scanned", e);
+            } finally {
+                heads = null;
+            }
+        }
+        headsByRepository = loaded;
+        return loaded;
+    }
+}
@@ -0,0 +1,91 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Identifies a repository on a particular Bitbucket Server, as seen through an (optional) mirror. Project keys and
+ * slugs are compared case-insensitively, in the same way Bitbucket does.
+ */
+public final class RepositoryKey {
+
+    private final String mirrorName;
+    private final String projectKey;
+    private final String repositorySlug;
+    private final String serverId;
+
+    public RepositoryKey(String serverId, String projectKey, String repositorySlug, String mirrorName) {
+        this.serverId = requireNonNull(serverId, "serverId");
+        this.projectKey = requireNonNull(projectKey, "projectKey").toUpperCase(Locale.ROOT);
+        this.repositorySlug = requireNonNull(repositorySlug, "repositorySlug").toLowerCase(Locale.ROOT);
+        this.mirrorName = requireNonNull(mirrorName, "mirrorName");
+    }
+
+    public static RepositoryKey of(BitbucketSCMRepository repository) {
+        return new RepositoryKey(Objects.toString(repository.getServerId(), ""),
+                Objects.toString(repository.getProjectKey(), ""),
+                Objects.toString(repository.getRepositorySlug(), ""),
+                Objects.toString(repository.getMirrorName(), ""));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RepositoryKey that = (RepositoryKey) o;
+        return serverId.equals(that.serverId) &&
+               projectKey.equals(that.projectKey) &&
+               repositorySlug.equals(that.repositorySlug) &&
+               mirrorName.equals(that.mirrorName);
+    }
+
+    public String getMirrorName() {
+        return mirrorName;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public String getRepositorySlug() {
+        return repositorySlug;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serverId, projectKey, repositorySlug, mirrorName);
+    }
+
+    /**
+     * @return the same repository as seen through the upstream server, i.e. without a mirror
+     */
+    public RepositoryKey withoutMirror() {
+        return mirrorName.isEmpty() ? this : new RepositoryKey(serverId, projectKey, repositorySlug, "");
+    }
+
+    public boolean isMirror() {
+        return !mirrorName.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryKey{" +
+               "serverId='" + serverId + '\'' +
+               ", projectKey='" + projectKey + '\'' +
+               ", repositorySlug='" + repositorySlug + '\'' +
+               ", mirrorName='" + mirrorName + '\'' +
+               '}';
+    }
+}
@@ -53,6 +53,17 @@ public class RetryingWebhookHandler {
     public BitbucketWebhook register(String bitbucketBaseUrl,
                                      GlobalCredentialsProvider globalCredentialsProvider,
                                      BitbucketSCMRepository repository) {
+        return register(bitbucketBaseUrl, globalCredentialsProvider, repository, false);
+    }
+
+    /**
+     * Registers the webhook for the repository, also subscribing it to pull request events if asked to. Pull request
+     * events the webhook is already subscribed to are kept either way.
+     */
+    public BitbucketWebhook register(String bitbucketBaseUrl,
+                                     GlobalCredentialsProvider globalCredentialsProvider,
+                                     BitbucketSCMRepository repository,
+                                     boolean pullRequestEvents) {
         if (isBlank(bitbucketBaseUrl)) {
             throw new IllegalArgumentException("Invalid Bitbucket base URL. Input - " + bitbucketBaseUrl);
         }
@@ -65,6 +76,7 @@ public class RetryingWebhookHandler {
                 .aRequest(repository.getProjectKey(), repository.getRepositorySlug())
                 .withJenkinsBaseUrl(jenkinsUrl)
                 .isMirror(repository.isMirrorConfigured())
+                .withPullRequestEvents(pullRequestEvents)
                 .withName(instanceBasedNameGenerator.getUniqueName())
                 .build();
         String jobCredentials = repository.getCredentialsId();
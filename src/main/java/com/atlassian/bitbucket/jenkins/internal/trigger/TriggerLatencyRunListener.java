@@ -0,0 +1,30 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import javax.inject.Inject;
+
+/**
+ * Completes the {@link TriggerTimings} of webhook-triggered builds when they start, and adds them to the
+ * {@link TriggerLatencyStats}.
+ */
+@Extension
+public class TriggerLatencyRunListener extends RunListener<Run<?, ?>> {
+
+    @Inject
+    private TriggerLatencyStats triggerLatencyStats;
+
+    @Override
+    public void onStarted(Run<?, ?> run, TaskListener listener) {
+        BitbucketWebhookTriggerCause cause = run.getCause(BitbucketWebhookTriggerCause.class);
+        if (cause == null) {
+            return;
+        }
+        TriggerTimings timings = cause.getTimings();
+        timings.record(TriggerStage.BUILD_STARTED, run.getStartTimeInMillis());
+        triggerLatencyStats.record(timings);
+    }
+}
@@ -0,0 +1,43 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * Aggregates the {@link TriggerTimings} of webhook-triggered builds since Jenkins started. There is a histogram of
+ * the time taken to reach each stage from the one before it, and one of the time from receiving the webhook to the
+ * build starting.
+ */
+@Singleton
+public class TriggerLatencyStats {
+
+    private final Map<TriggerStage, LatencyHistogram> stageHistograms = new EnumMap<>(TriggerStage.class);
+    private final LatencyHistogram totalHistogram = new LatencyHistogram("Webhook received to build started");
+
+    public TriggerLatencyStats() {
+        for (TriggerStage stage : TriggerStage.values()) {
+            if (stage != TriggerStage.RECEIVED) {
+                stageHistograms.put(stage, new LatencyHistogram(stage.getDisplayName()));
+            }
+        }
+    }
+
+    /**
+     * @return a histogram per stage, in stage order
+     */
+    public List<LatencyHistogram> getStageHistograms() {
+        return Collections.unmodifiableList(new ArrayList<>(stageHistograms.values()));
+    }
+
+    public LatencyHistogram getTotalHistogram() {
+        return totalHistogram;
+    }
+
+    public void record(TriggerTimings timings) {
+        stageHistograms.forEach((stage, histogram) ->
+                timings.getStageDuration(stage).ifPresent(histogram::record));
+        if (timings.getTimestamp(TriggerStage.BUILD_STARTED).isPresent()) {
+            timings.getTotalDuration().ifPresent(totalHistogram::record);
+        }
+    }
+}
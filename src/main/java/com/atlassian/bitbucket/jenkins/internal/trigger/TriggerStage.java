@@ -0,0 +1,46 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+/**
+ * The stages a webhook passes through on its way from Bitbucket to a running build, in order.
+ */
+public enum TriggerStage {
+
+    /**
+     * The webhook was received by {@link BitbucketWebhookEndpoint}.
+     */
+    RECEIVED("Received"),
+    /**
+     * The event was handed to {@link BitbucketWebhookConsumer} to find matching jobs.
+     */
+    DISPATCHED("Dispatched"),
+    /**
+     * A {@link BitbucketTriggerWorker} was queued for a matching job.
+     */
+    QUEUED("Queued for polling"),
+    /**
+     * The worker started polling the job's SCM.
+     */
+    POLL_STARTED("Polling started"),
+    /**
+     * Polling completed.
+     */
+    POLL_COMPLETED("Polling completed"),
+    /**
+     * Polling found changes and a build was scheduled.
+     */
+    BUILD_SCHEDULED("Build scheduled"),
+    /**
+     * The scheduled build left the build queue and started.
+     */
+    BUILD_STARTED("Build started");
+
+    private final String displayName;
+
+    TriggerStage(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
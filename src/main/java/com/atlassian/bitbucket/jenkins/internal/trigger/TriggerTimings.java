@@ -0,0 +1,94 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The times, in milliseconds since the epoch, at which a webhook reached each {@link TriggerStage}. Stages are
+ * recorded by different threads as the webhook moves through the trigger pipeline, so all access is synchronized.
+ * <p>
+ * The timings of a single webhook are shared until it is matched to jobs; each job then works on its own
+ * {@link #copy()}, which is persisted with the build's {@link BitbucketWebhookTriggerCause}.
+ */
+public final class TriggerTimings {
+
+    private final Map<TriggerStage, Long> timestamps;
+
+    public TriggerTimings() {
+        this(new EnumMap<>(TriggerStage.class));
+    }
+
+    private TriggerTimings(Map<TriggerStage, Long> timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * @param receivedAt the time the webhook was received
+     * @return new timings with {@link TriggerStage#RECEIVED} recorded
+     */
+    public static TriggerTimings receivedAt(long receivedAt) {
+        TriggerTimings timings = new TriggerTimings();
+        timings.record(TriggerStage.RECEIVED, receivedAt);
+        return timings;
+    }
+
+    public synchronized TriggerTimings copy() {
+        return new TriggerTimings(new EnumMap<>(timestamps));
+    }
+
+    public synchronized Optional<Long> getTimestamp(TriggerStage stage) {
+        return Optional.ofNullable(timestamps.get(stage));
+    }
+
+    /**
+     * Returns the time taken to reach the given stage from the closest earlier stage that was recorded.
+     *
+     * @param stage the stage
+     * @return the time taken, or empty if the stage or every earlier stage has not been recorded
+     */
+    public synchronized Optional<Long> getStageDuration(TriggerStage stage) {
+        Long end = timestamps.get(stage);
+        if (end == null) {
+            return Optional.empty();
+        }
+        for (int i = stage.ordinal() - 1; i >= 0; i--) {
+            Long start = timestamps.get(TriggerStage.values()[i]);
+            if (start != null) {
+                return Optional.of(Math.max(0, end - start));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the time from receiving the webhook to the latest stage recorded, or empty if either is missing
+     */
+    public synchronized Optional<Long> getTotalDuration() {
+        Long start = timestamps.get(TriggerStage.RECEIVED);
+        if (start == null) {
+            return Optional.empty();
+        }
+        TriggerStage[] stages = TriggerStage.values();
+        for (int i = stages.length - 1; i > 0; i--) {
+            Long end = timestamps.get(stages[i]);
+            if (end != null) {
+                return Optional.of(Math.max(0, end - start));
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void record(TriggerStage stage) {
+        record(stage, System.currentTimeMillis());
+    }
+
+    public synchronized void record(TriggerStage stage, long timestamp) {
+        timestamps.put(stage, timestamp);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TriggerTimings" + timestamps;
+    }
+}
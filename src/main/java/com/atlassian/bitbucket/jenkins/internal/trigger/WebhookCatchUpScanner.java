@@ -0,0 +1,232 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Catches up on pushes whose webhooks never reached Jenkins, for example because Jenkins was down or the endpoint
+ * rejected the delivery. Shortly after startup and periodically afterwards, the current branch heads of every
+ * repository with a registered webhook are compared against the last heads seen in the {@link RefHeadStore}. Any
+ * difference is replayed through the {@link BitbucketWebhookConsumer} as if Bitbucket had sent it. The stored heads
+ * are only updated once the replay has triggered the jobs, so that changes are replayed again by the next scan if
+ * Jenkins stops or the replay fails in between. They are updated one ref at a time, and only where they still hold
+ * the heads the scan compared against, so that heads recorded by webhooks during the scan are not overwritten.
+ * <p>
+ * Heads are read from the upstream server, and missed changes are replayed as upstream refs changed events, which
+ * only trigger jobs that do not clone from a mirror. Jobs bound to a mirror are deliberately left out: a mirror may
+ * not have synchronized the changes yet, and a job polling it then would find nothing to build while the change is
+ * recorded as delivered. They are triggered by the mirror synchronized webhooks of their mirror instead.
+ * <p>
+ * A repository is only compared once it has been scanned before; the first scan records its heads. At most
+ * {@link #CONCURRENCY} repositories are scanned at a time across all servers.
+ */
+@Extension
+public class WebhookCatchUpScanner extends AsyncPeriodicWork {
+
+    /**
+     * Number of repositories scanned concurrently. Defaults to 4.
+     */
+    static final int CONCURRENCY =
+            (int) max(1, parsePositiveLongFromSystemProperty("bitbucket.webhook.catchup.concurrency", 4));
+    /**
+     * How often repositories are scanned for missed pushes. Defaults to 15 minutes in ms.
+     */
+    static final long SCAN_PERIOD =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.catchup.period", TimeUnit.MINUTES.toMillis(15));
+
+    private static final String EMPTY_HASH = "0000000000000000000000000000000000000000";
+    private static final long INITIAL_DELAY = TimeUnit.MINUTES.toMillis(2);
+
+    @Inject
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    @Inject
+    private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Inject
+    private BitbucketWebhookConsumer bitbucketWebhookConsumer;
+    @Inject
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    @Inject
+    private RefHeadStore refHeadStore;
+    @Inject
+    private WebhookRegistry webhookRegistry;
+
+    public WebhookCatchUpScanner() {
+        super("Bitbucket webhook catch-up");
+    }
+
+    WebhookCatchUpScanner(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+                          BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                          BitbucketWebhookConsumer bitbucketWebhookConsumer,
+                          JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+                          RefHeadStore refHeadStore,
+                          WebhookRegistry webhookRegistry) {
+        this();
+        this.bitbucketClientFactoryProvider = bitbucketClientFactoryProvider;
+        this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
+        this.bitbucketWebhookConsumer = bitbucketWebhookConsumer;
+        this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
+        this.refHeadStore = refHeadStore;
+        this.webhookRegistry = webhookRegistry;
+    }
+
+    @Override
+    public long getInitialDelay() {
+        return INITIAL_DELAY;
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return SCAN_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        PrintStream logger = listener.getLogger();
+        Set<RepositoryKey> repositories = webhookRegistry.getAll().stream()
+                .map(registration -> registration.getKey().withoutMirror())
+                .collect(Collectors.toSet());
+        refHeadStore.retainAll(repositories);
+        if (repositories.isEmpty()) {
+            refHeadStore.save();
+            return;
+        }
+        logger.println("Scanning " + repositories.size() + " repositories for missed pushes");
+
+        Map<String, Optional<BitbucketClientFactory>> clientsByServer = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(min(CONCURRENCY, repositories.size()),
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookCatchUp"));
+        try {
+            Map<RepositoryKey, Future<Scan>> scans = new LinkedHashMap<>();
+            for (RepositoryKey key : repositories) {
+                Optional<BitbucketClientFactory> clientFactory =
+                        clientsByServer.computeIfAbsent(key.getServerId(), this::createClientFactory);
+                if (!clientFactory.isPresent()) {
+                    logger.println("Skipping " + key + ", server config not found");
+                    continue;
+                }
+                scans.put(key, executor.submit(() -> scan(clientFactory.get(), key)));
+            }
+
+            int replayed = 0;
+            for (Map.Entry<RepositoryKey, Future<Scan>> scan : scans.entrySet()) {
+                try {
+                    Scan result = scan.getValue().get();
+                    Optional<RefsChangedWebhookEvent> missedEvent = result.getMissedEvent();
+                    if (missedEvent.isPresent()) {
+                        logger.println("Replaying " + missedEvent.get().getChanges().size() +
+                                       " missed ref changes for " + scan.getKey());
+                        bitbucketWebhookConsumer.process(missedEvent.get());
+                        replayed++;
+                    }
+                    refHeadStore.updateHeads(scan.getKey(), result.getPreviousHeads(), result.getHeads());
+                } catch (ExecutionException e) {
+                    logger.println("Could not scan " + scan.getKey() + ": " + e.getCause());
+                } catch (RuntimeException e) {
+                    logger.println("Could not replay missed pushes for " + scan.getKey() + ": " + e);
+                }
+            }
+            logger.println("Replayed missed pushes for " + replayed + " repositories");
+        } finally {
+            executor.shutdownNow();
+            refHeadStore.save();
+        }
+    }
+
+    /**
+     * Compares the current branch heads of the repository against the stored ones. The stored heads are not changed;
+     * the caller updates them from the result once any missed changes have been replayed.
+     */
+    Scan scan(BitbucketClientFactory clientFactory, RepositoryKey key) {
+        BitbucketRepositoryClient repositoryClient = clientFactory
+                .getProjectClient(key.getProjectKey())
+                .getRepositoryClient(key.getRepositorySlug());
+        Map<String, BitbucketBranch> branches = repositoryClient.getBranches()
+                .collect(Collectors.toMap(BitbucketBranch::getId, branch -> branch, (first, second) -> first));
+        Map<String, String> heads = branches.values().stream()
+                .collect(Collectors.toMap(BitbucketBranch::getId, BitbucketBranch::getLatestCommit));
+        Optional<Map<String, String>> previousHeads = refHeadStore.getHeads(key);
+        if (!previousHeads.isPresent()) {
+            return new Scan(Collections.emptyMap(), heads, null);
+        }
+
+        List<BitbucketRefChange> changes = new ArrayList<>();
+        for (BitbucketBranch branch : branches.values()) {
+            String previousHash = previousHeads.get().get(branch.getId());
+            if (!branch.getLatestCommit().equals(previousHash)) {
+                changes.add(new BitbucketRefChange(branch.toRef(), branch.getId(),
+                        previousHash == null ? EMPTY_HASH : previousHash,
+                        branch.getLatestCommit(),
+                        previousHash == null ? BitbucketRefChangeType.ADD : BitbucketRefChangeType.UPDATE));
+            }
+        }
+        if (changes.isEmpty()) {
+            return new Scan(previousHeads.get(), heads, null);
+        }
+        return new Scan(previousHeads.get(), heads, new RefsChangedWebhookEvent(null, REPO_REF_CHANGE.getEventId(),
+                new Date(), changes, repositoryClient.getRepository()));
+    }
+
+    private Optional<BitbucketClientFactory> createClientFactory(String serverId) {
+        return bitbucketPluginConfiguration.getServerById(serverId).map(serverConfiguration -> {
+            BitbucketCredentials credentials = jenkinsToBitbucketCredentials.toBitbucketCredentials(
+                    serverConfiguration.getGlobalCredentialsProvider("Bitbucket webhook catch-up")
+                            .getGlobalAdminCredentials()
+                            .orElse(null));
+            return bitbucketClientFactoryProvider.getClient(serverConfiguration.getBaseUrl(), credentials);
+        });
+    }
+
+    /**
+     * The current heads of a scanned repository, the stored heads they were compared against, and the changes to
+     * replay if the repository has been scanned before.
+     */
+    static final class Scan {
+
+        private final Map<String, String> heads;
+        private final RefsChangedWebhookEvent missedEvent;
+        private final Map<String, String> previousHeads;
+
+        private Scan(Map<String, String> previousHeads, Map<String, String> heads,
+                     @CheckForNull RefsChangedWebhookEvent missedEvent) {
+            this.previousHeads = previousHeads;
+            this.heads = heads;
+            this.missedEvent = missedEvent;
+        }
+
+        Map<String, String> getHeads() {
+            return heads;
+        }
+
+        Optional<RefsChangedWebhookEvent> getMissedEvent() {
+            return Optional.ofNullable(missedEvent);
+        }
+
+        Map<String, String> getPreviousHeads() {
+            return previousHeads;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.JournalEntry;
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.WebhookEventJournal;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records accepted webhook events in the {@link WebhookEventJournal} and hands them to the
+ * {@link BitbucketWebhookConsumer} on a background thread, so that the endpoint can acknowledge an event as soon as it
+ * is on disk.
+ * <p>
+ * The dispatcher thread reads the journal from its checkpoint and processes each entry in turn, checkpointing after
+ * every one. Accepting an event only wakes the thread up, and events that were accepted but not processed before
+ * Jenkins stopped are picked up the same way once jobs have been loaded. Because every event is reached through the
+ * checkpoint, an event is dispatched once even if it is accepted while the journal is being replayed; only an event
+ * that was being processed when Jenkins stopped is processed again.
+ * <p>
+ * Events are deliberately processed on a single thread. The checkpoint can only move past an event once every earlier
+ * event has been processed, and pushes to the same repository must trigger jobs in the order they happened. Processing
+ * an event only matches it against the configured jobs and queues the resulting polls and builds, which run elsewhere,
+ * so the dispatcher thread is not held up by the builds themselves.
+ */
+@Singleton
+public class WebhookEventDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(WebhookEventDispatcher.class.getName());
+
+    private final Map<Long, AcceptedEvent> acceptedEvents = new ConcurrentHashMap<>();
+    private final BitbucketWebhookConsumer consumer;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Executor executor;
+    private final WebhookEventJournal journal;
+    private final WebhookPayloadParser payloadParser = new WebhookPayloadParser();
+
+    @Inject
+    public WebhookEventDispatcher(BitbucketWebhookConsumer consumer, WebhookEventJournal journal) {
+        this(consumer, journal, Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookDispatcher")));
+    }
+
+    @VisibleForTesting
+    WebhookEventDispatcher(BitbucketWebhookConsumer consumer, WebhookEventJournal journal, Executor executor) {
+        this.consumer = requireNonNull(consumer, "consumer");
+        this.journal = requireNonNull(journal, "journal");
+        this.executor = requireNonNull(executor, "executor");
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void replayOnStartup() {
+        Jenkins.get().getInjector().getInstance(WebhookEventDispatcher.class).replayUnprocessed();
+    }
+
+    /**
+     * Journals the event and schedules it for processing. If the event cannot be journaled it is processed straight
+     * away instead, so that it is not lost.
+     *
+     * @param eventKey   the event key sent by Bitbucket
+     * @param payload    the raw request body
+     * @param event      the parsed event
+     * @param receivedAt the time the event was received, in milliseconds since the epoch
+     */
+    public void accept(String eventKey, byte[] payload, AbstractWebhookEvent event, long receivedAt) {
+        JournalEntry entry;
+        try {
+            entry = journal.append(eventKey, payload);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to journal webhook event, processing it immediately", e);
+            process(event, receivedAt);
+            return;
+        }
+        // Saves parsing the payload again when the dispatcher reaches the entry
+        acceptedEvents.put(entry.getOffset(), new AcceptedEvent(event, receivedAt));
+        scheduleDrain();
+    }
+
+    /**
+     * Replays every journaled event accepted within the given time range, whether it was processed before or not.
+     * Replayed events do not move the checkpoint.
+     *
+     * @param from the start of the range, inclusive, in milliseconds since the epoch
+     * @param to   the end of the range, exclusive, in milliseconds since the epoch
+     * @return the number of events scheduled for replay
+     * @throws IOException if the journal could not be read
+     */
+    public int replay(long from, long to) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        journal.readRange(from, to, entry -> {
+            count.incrementAndGet();
+            executor.execute(() -> {
+                AbstractWebhookEvent event = parse(entry);
+                if (event != null) {
+                    processQuietly(entry, event, entry.getTimestamp());
+                }
+            });
+        });
+        return count.get();
+    }
+
+    /**
+     * Processes every journaled event that has not been processed yet.
+     */
+    public void replayUnprocessed() {
+        scheduleDrain();
+    }
+
+    private void dispatch(JournalEntry entry) {
+        AcceptedEvent accepted = acceptedEvents.remove(entry.getOffset());
+        try {
+            if (accepted != null) {
+                processQuietly(entry, accepted.event, accepted.receivedAt);
+            } else {
+                AbstractWebhookEvent event = parse(entry);
+                if (event != null) {
+                    processQuietly(entry, event, entry.getTimestamp());
+                }
+            }
+        } finally {
+            journal.checkpoint(entry.getNextOffset());
+        }
+    }
+
+    /**
+     * Processes every entry after the checkpoint. Entries are read from the journal one at a time, so a long backlog
+     * is not held in memory.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            journal.readFrom(journal.getCheckpoint(), this::dispatch);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read unprocessed Bitbucket webhook events from the journal", e);
+        }
+    }
+
+    @CheckForNull
+    private AbstractWebhookEvent parse(JournalEntry entry) {
+        try {
+            BitbucketWebhookEvent eventType = BitbucketWebhookEvent.findByEventId(entry.getEventKey());
+            if (eventType.isPullRequestEvent()) {
+                return payloadParser.parsePullRequestEvent(entry.getPayload());
+            }
+            switch (eventType) {
+                case REPO_REF_CHANGE:
+                    return payloadParser.parse(entry.getPayload(), RefsChangedWebhookEvent.class);
+                case MIRROR_SYNCHRONIZED_EVENT:
+                    return payloadParser.parse(entry.getPayload(), MirrorSynchronizedWebhookEvent.class);
+                default:
+                    LOGGER.warning("Skipping journaled event with unsupported key " + entry.getEventKey());
+                    return null;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Skipping unreadable journaled event at offset " + entry.getOffset(), e);
+            return null;
+        }
+    }
+
+    private void process(AbstractWebhookEvent event, long receivedAt) {
+        TriggerTimings timings = TriggerTimings.receivedAt(receivedAt);
+        if (event instanceof MirrorSynchronizedWebhookEvent) {
+            consumer.process((MirrorSynchronizedWebhookEvent) event, timings);
+        } else if (event instanceof RefsChangedWebhookEvent) {
+            consumer.process((RefsChangedWebhookEvent) event, timings);
+        } else if (event instanceof PullRequestWebhookEvent) {
+            consumer.process((PullRequestWebhookEvent) event);
+        } else {
+            LOGGER.warning("Skipping webhook event of unsupported type " + event.getClass().getName());
+        }
+    }
+
+    private void processQuietly(JournalEntry entry, AbstractWebhookEvent event, long receivedAt) {
+        try {
+            process(event, receivedAt);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to process webhook event at journal offset " + entry.getOffset(), e);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private static final class AcceptedEvent {
+
+        private final AbstractWebhookEvent event;
+        private final long receivedAt;
+
+        private AcceptedEvent(AbstractWebhookEvent event, long receivedAt) {
+            this.event = event;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * Parses webhook payloads in a single streaming pass, reading only the fields used to trigger builds: the actor, the
+ * repository's identity and links, the ref changes, for mirror events, the mirror server and, for pull request
+ * events, the pull request's identity and refs. Every other field is
+ * skipped without being materialized, which keeps large payloads, such as pushes of hundreds of tags, cheap.
+ * <p>
+ * The events produced are the same as binding the payload with an {@code ObjectMapper}, apart from the skipped fields.
+ * Missing required fields and unknown enum values are rejected with a {@link JsonParseException}.
+ */
+class WebhookPayloadParser {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * @param body the raw request body
+     * @param type {@link RefsChangedWebhookEvent} or {@link MirrorSynchronizedWebhookEvent}
+     * @return the parsed event
+     * @throws IOException if the body is not a valid event of the given type
+     */
+    <T extends RefsChangedWebhookEvent> T parse(byte[] body, Class<T> type) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            BitbucketUser actor = null;
+            List<BitbucketRefChange> changes = null;
+            Date date = null;
+            String eventKey = null;
+            BitbucketMirrorServer mirrorServer = null;
+            BitbucketRepository repository = null;
+            BitbucketRepositorySynchronizationType syncType = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "actor":
+                        actor = readUser(parser);
+                        break;
+                    case "changes":
+                        changes = readChanges(parser);
+                        break;
+                    case "date":
+                        date = readDate(parser);
+                        break;
+                    case "eventKey":
+                        eventKey = parser.getValueAsString();
+                        break;
+                    case "mirrorServer":
+                        mirrorServer = readMirrorServer(parser);
+                        break;
+                    case "repository":
+                        repository = readRepository(parser);
+                        break;
+                    case "syncType":
+                        syncType = readEnum(parser, BitbucketRepositorySynchronizationType.class);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            require(parser, eventKey, "eventKey");
+            require(parser, date, "date");
+            require(parser, changes, "changes");
+            require(parser, repository, "repository");
+            if (type == MirrorSynchronizedWebhookEvent.class) {
+                return type.cast(new MirrorSynchronizedWebhookEvent(actor, mirrorServer, eventKey, date, changes,
+                        repository, syncType));
+            }
+            return type.cast(new RefsChangedWebhookEvent(actor, eventKey, date, changes, repository));
+        }
+    }
+
+    /**
+     * @param body the raw body of a {@code pr:*} event
+     * @return the parsed event
+     * @throws IOException if the body is not a valid pull request event
+     */
+    PullRequestWebhookEvent parsePullRequestEvent(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            BitbucketUser actor = null;
+            Date date = null;
+            String eventKey = null;
+            BitbucketPullRequest pullRequest = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "actor":
+                        actor = readUser(parser);
+                        break;
+                    case "date":
+                        date = readDate(parser);
+                        break;
+                    case "eventKey":
+                        eventKey = parser.getValueAsString();
+                        break;
+                    case "pullRequest":
+                        pullRequest = readPullRequest(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return new PullRequestWebhookEvent(actor, require(parser, eventKey, "eventKey"),
+                    require(parser, date, "date"), require(parser, pullRequest, "pullRequest"));
+        }
+    }
+
+    /**
+     * Reads the repository before and after a {@code repo:modified} event, which is sent when a repository is renamed
+     * or moved to another project.
+     *
+     * @param body the raw request body
+     * @return the repository before and after the modification, in that order, omitting whichever is missing
+     * @throws IOException if the body is not valid JSON
+     */
+    List<BitbucketRepository> parseModifiedRepositories(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            List<BitbucketRepository> repositories = new ArrayList<>(2);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (("old".equals(field) || "new".equals(field)) && value == JsonToken.START_OBJECT) {
+                    repositories.add(readRepository(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return repositories;
+        }
+    }
+
+    private static void expect(JsonParser parser, @CheckForNull JsonToken actual, JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+
+    private static List<BitbucketNamedLink> readLinks(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        List<BitbucketNamedLink> links = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String href = null;
+            String name = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("href".equals(field)) {
+                    href = parser.getValueAsString();
+                } else if ("name".equals(field)) {
+                    name = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            links.add(new BitbucketNamedLink(name, require(parser, href, "href")));
+        }
+        return links;
+    }
+
+    private static BitbucketRefChange readChange(JsonParser parser) throws IOException {
+        BitbucketRef ref = null;
+        String refId = null;
+        String fromHash = null;
+        String toHash = null;
+        BitbucketRefChangeType type = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "ref":
+                    ref = readRef(parser);
+                    break;
+                case "refId":
+                    refId = parser.getValueAsString();
+                    break;
+                case "fromHash":
+                    fromHash = parser.getValueAsString();
+                    break;
+                case "toHash":
+                    toHash = parser.getValueAsString();
+                    break;
+                case "type":
+                    type = readEnum(parser, BitbucketRefChangeType.class);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new BitbucketRefChange(ref, refId, fromHash, toHash, type);
+    }
+
+    private static List<BitbucketRefChange> readChanges(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        List<BitbucketRefChange> changes = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            expect(parser, token, JsonToken.START_OBJECT);
+            changes.add(readChange(parser));
+        }
+        return changes;
+    }
+
+    private static Date readDate(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return new Date(parser.getLongValue());
+        }
+        try {
+            return new StdDateFormat().parse(parser.getText());
+        } catch (ParseException e) {
+            throw new JsonParseException(parser, "Invalid date: " + parser.getText(), e);
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(JsonParser parser, Class<E> type) throws IOException {
+        String text = parser.getValueAsString();
+        try {
+            return Enum.valueOf(type, text);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new JsonParseException(parser, "Invalid " + type.getSimpleName() + ": " + text, e);
+        }
+    }
+
+    private static BitbucketMirrorServer readMirrorServer(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String id = null;
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsString();
+            } else if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BitbucketMirrorServer(require(parser, id, "id"), require(parser, name, "name"));
+    }
+
+    private static BitbucketProject readProject(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String key = null;
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("key".equals(field)) {
+                key = parser.getValueAsString();
+            } else if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BitbucketProject(require(parser, key, "key"), null, require(parser, name, "name"));
+    }
+
+    private static BitbucketPullRequest readPullRequest(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Long id = null;
+        String title = null;
+        BitbucketPullRequestState state = null;
+        BitbucketPullRequestRef fromRef = null;
+        BitbucketPullRequestRef toRef = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsLong();
+                    break;
+                case "title":
+                    title = parser.getValueAsString();
+                    break;
+                case "state":
+                    state = readEnum(parser, BitbucketPullRequestState.class);
+                    break;
+                case "fromRef":
+                    fromRef = readPullRequestRef(parser);
+                    break;
+                case "toRef":
+                    toRef = readPullRequestRef(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new BitbucketPullRequest(require(parser, id, "id"), title, require(parser, state, "state"),
+                require(parser, fromRef, "fromRef"), require(parser, toRef, "toRef"));
+    }
+
+    private static BitbucketPullRequestRef readPullRequestRef(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String id = null;
+        String displayId = null;
+        String latestCommit = null;
+        BitbucketRepository repository = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsString();
+            } else if ("displayId".equals(field)) {
+                displayId = parser.getValueAsString();
+            } else if ("latestCommit".equals(field)) {
+                latestCommit = parser.getValueAsString();
+            } else if ("repository".equals(field) && value == JsonToken.START_OBJECT) {
+                repository = readRepository(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BitbucketPullRequestRef(require(parser, id, "id"), require(parser, displayId, "displayId"),
+                require(parser, latestCommit, "latestCommit"), require(parser, repository, "repository"));
+    }
+
+    private static BitbucketRef readRef(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String id = null;
+        String displayId = null;
+        BitbucketRefType type = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsString();
+            } else if ("displayId".equals(field)) {
+                displayId = parser.getValueAsString();
+            } else if ("type".equals(field) && value != JsonToken.VALUE_NULL) {
+                type = readEnum(parser, BitbucketRefType.class);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BitbucketRef(id, displayId, type);
+    }
+
+    private static BitbucketRepository readRepository(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        int id = 0;
+        String name = null;
+        Map<String, List<BitbucketNamedLink>> links = null;
+        BitbucketProject project = null;
+        String slug = null;
+        RepositoryState state = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsInt();
+                    break;
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "links":
+                    links = readRepositoryLinks(parser);
+                    break;
+                case "project":
+                    project = readProject(parser);
+                    break;
+                case "slug":
+                    slug = parser.getValueAsString();
+                    break;
+                case "state":
+                    state = readEnum(parser, RepositoryState.class);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new BitbucketRepository(id, name, links, project, slug, state);
+    }
+
+    /**
+     * Reads the clone and self links of a repository, which are the only ones used.
+     */
+    private static Map<String, List<BitbucketNamedLink>> readRepositoryLinks(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, List<BitbucketNamedLink>> links = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (("clone".equals(field) || "self".equals(field)) && value == JsonToken.START_ARRAY) {
+                links.put(field, readLinks(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return links;
+    }
+
+    private static BitbucketUser readUser(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String name = null;
+        String emailAddress = null;
+        String displayName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("emailAddress".equals(field)) {
+                emailAddress = parser.getValueAsString();
+            } else if ("displayName".equals(field)) {
+                displayName = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BitbucketUser(require(parser, name, "name"), emailAddress,
+                require(parser, displayName, "displayName"));
+    }
+
+    private static <T> T require(JsonParser parser, @CheckForNull T value, String name) throws JsonParseException {
+        if (value == null) {
+            throw new JsonParseException(parser, "Missing required property '" + name + "'");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A webhook that was registered (or found to already exist) in Bitbucket Server for a repository, together with the
+ * last time it was verified to still be present.
+ */
+public final class WebhookRegistration {
+
+    private final String mirrorName;
+    private final String projectKey;
+    private final String repositorySlug;
+    private final String serverId;
+    private final long lastVerified;
+    private final boolean pullRequestEvents;
+    private final int webhookId;
+
+    public WebhookRegistration(RepositoryKey key, int webhookId, long lastVerified) {
+        this(key, webhookId, lastVerified, false);
+    }
+
+    public WebhookRegistration(RepositoryKey key, int webhookId, long lastVerified, boolean pullRequestEvents) {
+        requireNonNull(key, "key");
+        this.serverId = key.getServerId();
+        this.projectKey = key.getProjectKey();
+        this.repositorySlug = key.getRepositorySlug();
+        this.mirrorName = key.getMirrorName();
+        this.webhookId = webhookId;
+        this.lastVerified = lastVerified;
+        this.pullRequestEvents = pullRequestEvents;
+    }
+
+    public RepositoryKey getKey() {
+        return new RepositoryKey(serverId, projectKey, repositorySlug, mirrorName);
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, when the webhook was last confirmed to exist in Bitbucket
+     */
+    public long getLastVerified() {
+        return lastVerified;
+    }
+
+    public int getWebhookId() {
+        return webhookId;
+    }
+
+    /**
+     * @return true if the webhook was subscribed to pull request events when it was last verified
+     */
+    public boolean hasPullRequestEvents() {
+        return pullRequestEvents;
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookRegistration{" +
+               "key=" + getKey() +
+               ", webhookId=" + webhookId +
+               ", lastVerified=" + lastVerified +
+               ", pullRequestEvents=" + pullRequestEvents +
+               '}';
+    }
+}
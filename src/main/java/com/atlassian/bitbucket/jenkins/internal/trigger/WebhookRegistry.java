@@ -0,0 +1,202 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.provider.DefaultJenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.BulkChange;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.util.XStream2;
+import jenkins.util.Timer;
+import jenkins.util.io.OnMaster;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Persistent record of the repositories which have a verified webhook in Bitbucket Server. Jobs look up this registry
+ * when they start instead of asking Bitbucket, and {@link WebhookRegistryReconciler} re-verifies the entries in the
+ * background, re-creating webhooks that were deleted in Bitbucket. A registration is trusted for
+ * {@link #TRUST_PERIOD} after it was last verified, which outlasts the time between two reconciliations, so a job
+ * start only asks Bitbucket again when the reconciler could not verify the repository.
+ * <p>
+ * Changes are written to disk {@link #SAVE_DELAY} after the first unsaved change, so that registering webhooks for
+ * many jobs at once rewrites the file once rather than once per repository. Changes not yet written when Jenkins
+ * stops are only lost from this record; the webhooks are verified again when their jobs next start.
+ * <p>
+ * Only one instance of this class must be created per Jenkins instance.
+ */
+@Singleton
+public class WebhookRegistry implements Saveable, OnMaster {
+
+    /**
+     * How long a verified webhook is trusted without asking Bitbucket again, in ms. Defaults to twice the
+     * {@link WebhookRegistryReconciler#RECONCILE_PERIOD reconcile period}, so that registrations are still trusted
+     * while the next reconciliation is re-verifying them.
+     */
+    static final long TRUST_PERIOD = parsePositiveLongFromSystemProperty("bitbucket.webhook.registry.trust",
+            2 * WebhookRegistryReconciler.RECONCILE_PERIOD);
+    /**
+     * How long changes are collected before they are written to disk, in ms. Defaults to 5 seconds.
+     */
+    static final long SAVE_DELAY = parsePositiveLongFromSystemProperty("bitbucket.webhook.registry.save.delay", 5000);
+
+    private static final String CONFIG_FILE_NAME = "bitbucket-webhook-registry.xml";
+    private static final Logger LOGGER = Logger.getLogger(WebhookRegistry.class.getName());
+
+    private final transient Clock clock;
+    private final transient JenkinsProvider jenkinsProvider;
+    private final transient Consumer<Runnable> saveScheduler;
+    private final transient AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final transient XStream2 xStream = new XStream2();
+    private transient volatile ConcurrentMap<RepositoryKey, WebhookRegistration> registrationsByKey;
+    private List<WebhookRegistration> registrations;
+
+    public WebhookRegistry() {
+        this(new DefaultJenkinsProvider());
+    }
+
+    @Inject
+    public WebhookRegistry(JenkinsProvider jenkinsProvider) {
+        this(jenkinsProvider, Clock.systemUTC(),
+                task -> Timer.get().schedule(task, SAVE_DELAY, TimeUnit.MILLISECONDS));
+    }
+
+    @VisibleForTesting
+    WebhookRegistry(JenkinsProvider jenkinsProvider, Clock clock, Consumer<Runnable> saveScheduler) {
+        this.jenkinsProvider = requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.clock = requireNonNull(clock, "clock");
+        this.saveScheduler = requireNonNull(saveScheduler, "saveScheduler");
+        xStream.alias("webhook-registration", WebhookRegistration.class);
+    }
+
+    public Optional<WebhookRegistration> get(RepositoryKey key) {
+        return Optional.ofNullable(getRegistrations().get(key));
+    }
+
+    public Collection<WebhookRegistration> getAll() {
+        return Collections.unmodifiableCollection(getRegistrations().values());
+    }
+
+    /**
+     * Returns true if a webhook has been verified for the repository within the last {@link #TRUST_PERIOD}.
+     *
+     * @param repository the repository to look up
+     * @return true if the repository has a recently verified webhook
+     */
+    public boolean isRegistered(BitbucketSCMRepository repository) {
+        return isRegistered(repository, false);
+    }
+
+    /**
+     * Returns true if a webhook has been verified for the repository within the last {@link #TRUST_PERIOD}, and it
+     * delivers pull request events if they are needed.
+     *
+     * @param repository        the repository to look up
+     * @param pullRequestEvents whether the webhook must deliver pull request events
+     * @return true if the repository has a recently verified webhook delivering the events needed
+     */
+    public boolean isRegistered(BitbucketSCMRepository repository, boolean pullRequestEvents) {
+        WebhookRegistration registration = getRegistrations().get(RepositoryKey.of(repository));
+        return registration != null && clock.millis() - registration.getLastVerified() < TRUST_PERIOD &&
+               (!pullRequestEvents || registration.hasPullRequestEvents());
+    }
+
+    /**
+     * Records that the given webhook exists for the repository, as of now.
+     *
+     * @param repository the repository
+     * @param webhook    the registered webhook
+     */
+    public void record(BitbucketSCMRepository repository, BitbucketWebhook webhook) {
+        record(RepositoryKey.of(repository), webhook);
+    }
+
+    public void record(RepositoryKey key, BitbucketWebhook webhook) {
+        boolean pullRequestEvents = webhook.getEvents().stream()
+                .anyMatch(eventId -> BitbucketWebhookEvent.findByEventId(eventId).isPullRequestEvent());
+        getRegistrations().put(key, new WebhookRegistration(key, webhook.getId(), clock.millis(), pullRequestEvents));
+        scheduleSave();
+    }
+
+    public void remove(RepositoryKey key) {
+        if (getRegistrations().remove(key) != null) {
+            scheduleSave();
+        }
+    }
+
+    @Override
+    public synchronized void save() {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        registrations = new ArrayList<>(getRegistrations().values());
+        try {
+            getConfigFile().write(this);
+        } catch (IOException e) {
+            LOGGER.log(SEVERE, "Failed to persist webhook registrations to disk", e);
+        } finally {
+            registrations = null;
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            saveScheduler.accept(() -> {
+                saveScheduled.set(false);
+                save();
+            });
+        }
+    }
+
+    @VisibleForTesting
+    XmlFile getConfigFile() {
+        return new XmlFile(xStream, new File(jenkinsProvider.get().getRootDir(), CONFIG_FILE_NAME));
+    }
+
+    private ConcurrentMap<RepositoryKey, WebhookRegistration> getRegistrations() {
+        ConcurrentMap<RepositoryKey, WebhookRegistration> result = registrationsByKey;
+        if (result == null) {
+            result = load();
+        }
+        return result;
+    }
+
+    private synchronized ConcurrentMap<RepositoryKey, WebhookRegistration> load() {
+        if (registrationsByKey != null) {
+            return registrationsByKey;
+        }
+        ConcurrentMap<RepositoryKey, WebhookRegistration> loaded = new ConcurrentHashMap<>();
+        XmlFile configFile = getConfigFile();
+        if (configFile.exists()) {
+            try {
+                configFile.unmarshal(this);
+                if (registrations != null) {
+                    registrations.forEach(registration -> loaded.put(registration.getKey(), registration));
+                }
+            } catch (IOException e) {
+                LOGGER.log(SEVERE, "Failed to load webhook registrations from disk, they will be re-verified", e);
+            } finally {
+                registrations = null;
+            }
+        }
+        registrationsByKey = loaded;
+        return loaded;
+    }
+}
@@ -0,0 +1,167 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.NamingThreadFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Re-verifies every repository in the {@link WebhookRegistry} against Bitbucket Server, shortly after startup and
+ * periodically afterwards. Webhooks that have gone missing are re-created, and repositories that can no longer be
+ * verified are removed from the registry so that the next job start registers them again. The registry batches its
+ * own saves, so the registrations verified here are written to disk together.
+ * <p>
+ * Servers are verified in parallel. For each server at most {@link #BATCH_SIZE} repositories are verified at a time,
+ * and a new batch is not started until {@link #BATCH_INTERVAL} has elapsed since the previous one.
+ */
+@Extension
+public class WebhookRegistryReconciler extends AsyncPeriodicWork {
+
+    /**
+     * Number of repositories verified concurrently per server. Defaults to 4.
+     */
+    static final int BATCH_SIZE =
+            (int) max(1, parsePositiveLongFromSystemProperty("bitbucket.webhook.reconcile.batch.size", 4));
+    /**
+     * Minimum time between two batches sent to the same server. Defaults to 1 second in ms.
+     */
+    static final long BATCH_INTERVAL =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.reconcile.batch.interval", 1000);
+    /**
+     * How often the registry is re-verified. Defaults to 12 hours in ms.
+     */
+    static final long RECONCILE_PERIOD =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.reconcile.period", TimeUnit.HOURS.toMillis(12));
+
+    private static final long INITIAL_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_THREADS = 20;
+
+    @Inject
+    private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Inject
+    private RetryingWebhookHandler retryingWebhookHandler;
+    @Inject
+    private WebhookRegistry webhookRegistry;
+
+    public WebhookRegistryReconciler() {
+        super("Bitbucket webhook reconciliation");
+    }
+
+    WebhookRegistryReconciler(BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                              RetryingWebhookHandler retryingWebhookHandler,
+                              WebhookRegistry webhookRegistry) {
+        this();
+        this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
+        this.retryingWebhookHandler = retryingWebhookHandler;
+        this.webhookRegistry = webhookRegistry;
+    }
+
+    @Override
+    public long getInitialDelay() {
+        return INITIAL_DELAY;
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECONCILE_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        PrintStream logger = listener.getLogger();
+        Map<String, Deque<RepositoryKey>> pendingByServer = webhookRegistry.getAll().stream()
+                .map(WebhookRegistration::getKey)
+                .collect(Collectors.groupingBy(RepositoryKey::getServerId, Collectors.toCollection(ArrayDeque::new)));
+        if (pendingByServer.isEmpty()) {
+            return;
+        }
+        logger.println("Verifying webhooks for " + webhookRegistry.getAll().size() + " repositories on " +
+                       pendingByServer.size() + " servers");
+
+        int threads = min(MAX_THREADS, pendingByServer.size() * BATCH_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookReconciler"));
+        try {
+            int verified = 0;
+            int removed = 0;
+            while (!pendingByServer.isEmpty()) {
+                long batchStart = System.currentTimeMillis();
+                Map<RepositoryKey, Future<BitbucketWebhook>> batch = submitBatch(executor, pendingByServer);
+                for (Map.Entry<RepositoryKey, Future<BitbucketWebhook>> entry : batch.entrySet()) {
+                    try {
+                        BitbucketWebhook webhook = entry.getValue().get();
+                        if (webhook == null) {
+                            logger.println("No webhook could be registered for " + entry.getKey());
+                            webhookRegistry.remove(entry.getKey());
+                            removed++;
+                        } else {
+                            webhookRegistry.record(entry.getKey(), webhook);
+                            verified++;
+                        }
+                    } catch (ExecutionException e) {
+                        logger.println("Could not verify webhook for " + entry.getKey() + ": " + e.getCause());
+                        webhookRegistry.remove(entry.getKey());
+                        removed++;
+                    }
+                }
+                long remaining = BATCH_INTERVAL - (System.currentTimeMillis() - batchStart);
+                if (remaining > 0 && !pendingByServer.isEmpty()) {
+                    Thread.sleep(remaining);
+                }
+            }
+            logger.println("Verified " + verified + " webhooks, removed " + removed + " unverifiable registrations");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<RepositoryKey, Future<BitbucketWebhook>> submitBatch(ExecutorService executor,
+                                                                     Map<String, Deque<RepositoryKey>> pendingByServer) {
+        Map<RepositoryKey, Future<BitbucketWebhook>> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Deque<RepositoryKey>>> servers = pendingByServer.entrySet().iterator();
+        while (servers.hasNext()) {
+            Map.Entry<String, Deque<RepositoryKey>> server = servers.next();
+            Optional<BitbucketServerConfiguration> serverConfiguration =
+                    bitbucketPluginConfiguration.getServerById(server.getKey());
+            Deque<RepositoryKey> pending = server.getValue();
+            for (int i = 0; i < BATCH_SIZE && !pending.isEmpty(); i++) {
+                RepositoryKey key = pending.poll();
+                batch.put(key, executor.submit(() -> verify(serverConfiguration, key)));
+            }
+            if (pending.isEmpty()) {
+                servers.remove();
+            }
+        }
+        return batch;
+    }
+
+    private BitbucketWebhook verify(Optional<BitbucketServerConfiguration> maybeServerConfiguration,
+                                    RepositoryKey key) {
+        BitbucketServerConfiguration serverConfiguration = maybeServerConfiguration
+                .orElseThrow(() -> new IllegalStateException("Server config not found for server id " +
+                                                             key.getServerId()));
+        GlobalCredentialsProvider globalCredentialsProvider =
+                serverConfiguration.getGlobalCredentialsProvider("Bitbucket webhook reconciliation");
+        BitbucketSCMRepository repository = new BitbucketSCMRepository(null, null, key.getProjectKey(),
+                key.getProjectKey(), key.getRepositorySlug(), key.getRepositorySlug(), key.getServerId(),
+                key.getMirrorName());
+        return retryingWebhookHandler.register(serverConfiguration.getBaseUrl(), globalCredentialsProvider,
+                repository);
+    }
+}
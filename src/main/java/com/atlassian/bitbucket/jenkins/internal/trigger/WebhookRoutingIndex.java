@@ -0,0 +1,217 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.model.Item;
+import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.ParameterizedJobMixIn;
+import jenkins.triggers.SCMTriggerItem;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+import static jenkins.triggers.SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem;
+
+/**
+ * Finds the jobs that a webhook event could trigger, without walking every job in Jenkins. Jobs using a
+ * {@link BitbucketSCM} are indexed by project, repository and mirror, so that a mirror synchronized event only reaches
+ * jobs cloning from that mirror and a refs changed event from the upstream server only reaches jobs that do not use a
+ * mirror. Jobs using a plain {@link GitSCM} are indexed by clone URL.
+ * <p>
+ * Jobs are indexed whether or not they have a {@link BitbucketWebhookTriggerImpl}, since a trigger can be added
+ * without the job's configuration being submitted, for example by the pipeline {@code properties} step. The Bitbucket
+ * Server a job uses and whether it has the trigger are not part of the index; candidates are still checked for both
+ * by {@link BitbucketWebhookConsumer}. The index is built from all jobs on first use, is kept up to date by
+ * {@link WebhookRoutingIndexListener} and {@link WebhookRoutingIndexSaveableListener}, and is built again after
+ * Jenkins has loaded its jobs.
+ */
+@Singleton
+public class WebhookRoutingIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(WebhookRoutingIndex.class.getName());
+
+    private final JenkinsProvider jenkinsProvider;
+    private final Map<String, Set<String>> jobsByCloneUrl = new HashMap<>();
+    private final Map<RepositoryKey, Set<String>> jobsByRepository = new HashMap<>();
+    private final Map<String, JobRoutes> routesByJob = new HashMap<>();
+    private volatile boolean initialized;
+
+    @Inject
+    public WebhookRoutingIndex(JenkinsProvider jenkinsProvider) {
+        this.jenkinsProvider = requireNonNull(jenkinsProvider, "jenkinsProvider");
+    }
+
+    /**
+     * Returns the full names of the jobs that may be triggered by a change to the given repository.
+     *
+     * @param projectKey     the key of the repository's project
+     * @param repositorySlug the repository's slug
+     * @param mirrorName     the mirror that synchronized the change, or {@code ""} for the upstream server
+     * @param cloneUrls      the repository's clone URLs
+     * @return the candidate jobs
+     */
+    public Set<String> getCandidateJobs(String projectKey, String repositorySlug, String mirrorName,
+                                        Collection<String> cloneUrls) {
+        Set<String> result = new HashSet<>();
+        synchronized (this) {
+            // inside the lock, so that an index discarded meanwhile is not read before it is built again
+            initializeIfRequired();
+            result.addAll(jobsByRepository.getOrDefault(key(projectKey, repositorySlug, mirrorName),
+                    Collections.emptySet()));
+            cloneUrls.forEach(url -> result.addAll(jobsByCloneUrl.getOrDefault(normalize(url),
+                    Collections.emptySet())));
+        }
+        return result;
+    }
+
+    /**
+     * Discards the index, so that it is built again from all jobs on next use. Used once Jenkins has loaded its jobs,
+     * as the index may have been built before all of them were loaded.
+     */
+    public synchronized void invalidate() {
+        initialized = false;
+        jobsByCloneUrl.clear();
+        jobsByRepository.clear();
+        routesByJob.clear();
+    }
+
+    /**
+     * Re-computes the entries of a single job, usually after it has been created, copied or saved.
+     *
+     * @param item the job to index
+     */
+    public void reindex(Item item) {
+        if (!initialized) {
+            // the job will be picked up when the index is built
+            return;
+        }
+        synchronized (this) {
+            removeJob(item.getFullName());
+            indexItem(item);
+        }
+    }
+
+    /**
+     * Removes all entries for the job with the given full name.
+     *
+     * @param fullName the full name of the deleted job
+     */
+    public synchronized void remove(String fullName) {
+        removeJob(fullName);
+    }
+
+    /**
+     * Moves all entries from the old job name to the new one.
+     *
+     * @param oldFullName the full name before the job was renamed or moved
+     * @param newFullName the full name after the job was renamed or moved
+     */
+    public synchronized void rename(String oldFullName, String newFullName) {
+        JobRoutes routes = removeJob(oldFullName);
+        if (routes != null) {
+            add(newFullName, routes);
+        }
+    }
+
+    private static Collection<? extends SCM> getScms(Item item) {
+        if (item instanceof WorkflowJob) {
+            if (((WorkflowJob) item).getDefinition() instanceof CpsScmFlowDefinition) {
+                return Collections.singleton(((CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition()).getScm());
+            }
+            return Collections.emptySet();
+        }
+        SCMTriggerItem triggerItem = asSCMTriggerItem(item);
+        return triggerItem == null ? Collections.emptySet() : triggerItem.getSCMs();
+    }
+
+    private static RepositoryKey key(String projectKey, String repositorySlug, @Nullable String mirrorName) {
+        return new RepositoryKey("", projectKey, repositorySlug, Objects.toString(mirrorName, ""));
+    }
+
+    private static String normalize(String cloneUrl) {
+        return cloneUrl.toLowerCase(Locale.ROOT);
+    }
+
+    private void add(String fullName, JobRoutes routes) {
+        routesByJob.put(fullName, routes);
+        routes.repositories.forEach(key -> jobsByRepository.computeIfAbsent(key, k -> new HashSet<>()).add(fullName));
+        routes.cloneUrls.forEach(url -> jobsByCloneUrl.computeIfAbsent(url, k -> new HashSet<>()).add(fullName));
+    }
+
+    private void indexItem(Item item) {
+        if (!(item instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+            return;
+        }
+        JobRoutes routes = new JobRoutes();
+        for (SCM scm : getScms(item)) {
+            if (scm instanceof BitbucketSCM) {
+                BitbucketSCM bitbucketSCM = (BitbucketSCM) scm;
+                for (BitbucketSCMRepository repository : bitbucketSCM.getRepositories()) {
+                    routes.repositories.add(key(Objects.toString(repository.getProjectKey(), ""),
+                            Objects.toString(repository.getRepositorySlug(), ""), bitbucketSCM.getMirrorName()));
+                }
+            } else if (scm instanceof GitSCM) {
+                ((GitSCM) scm).getRepositories().stream()
+                        .flatMap(remote -> remote.getURIs().stream())
+                        .forEach(uri -> routes.cloneUrls.add(normalize(uri.toString())));
+            }
+        }
+        if (!routes.repositories.isEmpty() || !routes.cloneUrls.isEmpty()) {
+            add(item.getFullName(), routes);
+        }
+    }
+
+    private void initializeIfRequired() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+                List<ParameterizedJobMixIn.ParameterizedJob> jobs =
+                        jenkinsProvider.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class);
+                jobs.forEach(this::indexItem);
+                LOGGER.fine("Webhook routing index built from " + jobs.size() + " jobs");
+            }
+            initialized = true;
+        }
+    }
+
+    @Nullable
+    private JobRoutes removeJob(@Nullable String fullName) {
+        if (fullName == null) {
+            return null;
+        }
+        JobRoutes routes = routesByJob.remove(fullName);
+        if (routes == null) {
+            return null;
+        }
+        routes.repositories.forEach(key -> jobsByRepository.computeIfPresent(key, (k, jobs) -> {
+            jobs.remove(fullName);
+            return jobs.isEmpty() ? null : jobs;
+        }));
+        routes.cloneUrls.forEach(url -> jobsByCloneUrl.computeIfPresent(url, (k, jobs) -> {
+            jobs.remove(fullName);
+            return jobs.isEmpty() ? null : jobs;
+        }));
+        return routes;
+    }
+
+    private static final class JobRoutes {
+
+        private final Set<String> cloneUrls = new HashSet<>();
+        private final Set<RepositoryKey> repositories = new HashSet<>();
+    }
+}
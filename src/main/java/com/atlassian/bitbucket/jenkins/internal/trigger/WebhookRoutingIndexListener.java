@@ -0,0 +1,55 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+
+import javax.inject.Inject;
+
+/**
+ * Keeps the {@link WebhookRoutingIndex} in sync as jobs are created, copied, deleted, moved and updated, and has it
+ * built again once Jenkins has loaded all jobs.
+ */
+@Extension
+public class WebhookRoutingIndexListener extends ItemListener {
+
+    @Inject
+    private WebhookRoutingIndex webhookRoutingIndex;
+
+    public WebhookRoutingIndexListener() {
+    }
+
+    WebhookRoutingIndexListener(WebhookRoutingIndex webhookRoutingIndex) {
+        this.webhookRoutingIndex = webhookRoutingIndex;
+    }
+
+    @Override
+    public void onCopied(Item src, Item item) {
+        webhookRoutingIndex.reindex(item);
+    }
+
+    @Override
+    public void onCreated(Item item) {
+        webhookRoutingIndex.reindex(item);
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        webhookRoutingIndex.remove(item.getFullName());
+    }
+
+    @Override
+    public void onLoaded() {
+        webhookRoutingIndex.invalidate();
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        webhookRoutingIndex.rename(oldFullName, newFullName);
+    }
+
+    @Override
+    public void onUpdated(Item item) {
+        webhookRoutingIndex.reindex(item);
+    }
+}
@@ -0,0 +1,35 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import javax.inject.Inject;
+
+/**
+ * Re-indexes a job in the {@link WebhookRoutingIndex} whenever it is saved. Jobs can be changed and saved without
+ * {@link WebhookRoutingIndexListener} being told, for example when the pipeline {@code properties} step sets the
+ * job's triggers or when a job is reloaded from disk.
+ */
+@Extension
+public class WebhookRoutingIndexSaveableListener extends SaveableListener {
+
+    @Inject
+    private WebhookRoutingIndex webhookRoutingIndex;
+
+    public WebhookRoutingIndexSaveableListener() {
+    }
+
+    WebhookRoutingIndexSaveableListener(WebhookRoutingIndex webhookRoutingIndex) {
+        this.webhookRoutingIndex = webhookRoutingIndex;
+    }
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof Item) {
+            webhookRoutingIndex.reindex((Item) o);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger.journal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A webhook event as recorded in the {@link WebhookEventJournal}.
+ */
+public class JournalEntry {
+
+    private final String eventKey;
+    private final long nextOffset;
+    private final long offset;
+    private final byte[] payload;
+    private final long timestamp;
+
+    JournalEntry(long offset, long nextOffset, long timestamp, String eventKey, byte[] payload) {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.timestamp = timestamp;
+        this.eventKey = requireNonNull(eventKey, "eventKey");
+        this.payload = requireNonNull(payload, "payload");
+    }
+
+    public Date getDate() {
+        return new Date(timestamp);
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    /**
+     * @return the offset directly after this entry, which is where the next entry starts
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getPayload() {
+        return payload.clone();
+    }
+
+    public int getPayloadSize() {
+        return payload.length;
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, when the event was accepted
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+               "offset=" + offset +
+               ", eventKey='" + eventKey + '\'' +
+               ", timestamp=" + timestamp +
+               ", payload=" + new String(payload, StandardCharsets.UTF_8) +
+               '}';
+    }
+}
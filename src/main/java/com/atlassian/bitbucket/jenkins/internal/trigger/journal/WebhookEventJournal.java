@@ -0,0 +1,475 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger.journal;
+
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Append-only journal of accepted webhook events, so that events survive a restart of Jenkins between being
+ * acknowledged and being processed.
+ * <p>
+ * Events are written with buffered NIO to segment files named after the offset of their first entry. Every append is
+ * forced to disk before it returns. Once an event has been processed its end offset is written to a checkpoint file,
+ * and on startup every entry after the checkpoint is replayed. Segments that are fully processed are deleted once
+ * they are older than {@link #RETENTION}, so recent events can still be replayed by an administrator.
+ * <p>
+ * Each entry is stored as {@code [int length][int crc32][long timestamp][short key length][key][payload]}. A torn
+ * entry at the end of the last segment, left by a crash during an append, is truncated when the journal is opened.
+ * <p>
+ * Entries are read one at a time rather than a segment at a time. An entry's offset is its position in the journal,
+ * so reading from an offset seeks straight to it, and entries outside a time range are skipped using their header.
+ * The most recent entries are found by walking the headers of the newest segments, and only those entries are read in
+ * full.
+ */
+@Singleton
+public class WebhookEventJournal {
+
+    /**
+     * Size after which a new segment is started. Defaults to 16MB.
+     */
+    static final long SEGMENT_SIZE =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.journal.segment.size", 16 * 1024 * 1024);
+    /**
+     * How long processed segments are kept for manual replay. Defaults to 7 days in ms.
+     */
+    static final long RETENTION =
+            parsePositiveLongFromSystemProperty("bitbucket.webhook.journal.retention", 7L * 24 * 60 * 60 * 1000);
+
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+    private static final String DIRECTORY_NAME = "bitbucket-webhook-journal";
+    private static final int ENTRY_HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_FIXED_BODY_SIZE = 8 + 2;
+    private static final Logger LOGGER = Logger.getLogger(WebhookEventJournal.class.getName());
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Object checkpointLock = new Object();
+    private final JenkinsProvider jenkinsProvider;
+    private FileChannel activeChannel;
+    private long activeSegmentBase;
+    private volatile long checkpoint = -1;
+    private Path directory;
+
+    @Inject
+    public WebhookEventJournal(JenkinsProvider jenkinsProvider) {
+        this.jenkinsProvider = requireNonNull(jenkinsProvider, "jenkinsProvider");
+    }
+
+    @VisibleForTesting
+    WebhookEventJournal(Path directory) {
+        this.jenkinsProvider = null;
+        this.directory = requireNonNull(directory, "directory");
+    }
+
+    /**
+     * Appends an event to the journal, and forces it to disk.
+     *
+     * @param eventKey the event key sent by Bitbucket
+     * @param payload  the raw request body
+     * @return the entry as written
+     * @throws IOException if the event could not be written
+     */
+    public synchronized JournalEntry append(String eventKey, byte[] payload) throws IOException {
+        FileChannel channel = getActiveChannel();
+        byte[] key = eventKey.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = ENTRY_FIXED_BODY_SIZE + key.length + payload.length;
+        if (channel.size() > 0 && channel.size() + ENTRY_HEADER_SIZE + bodyLength > SEGMENT_SIZE) {
+            channel = rollSegment();
+        }
+        long timestamp = System.currentTimeMillis();
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.putLong(timestamp).putShort((short) key.length).put(key).put(payload).flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        header.putInt(bodyLength).putInt((int) crc.getValue()).flip();
+
+        long position = channel.size();
+        channel.position(position);
+        while (header.hasRemaining() || body.hasRemaining()) {
+            channel.write(new ByteBuffer[]{header, body});
+        }
+        channel.force(false);
+        long offset = activeSegmentBase + position;
+        return new JournalEntry(offset, offset + ENTRY_HEADER_SIZE + bodyLength, timestamp, eventKey, payload);
+    }
+
+    /**
+     * Records that every entry before the given offset has been processed. Checkpoints never move backwards. If the
+     * checkpoint cannot be written it still applies until Jenkins stops, and the entries are replayed on startup.
+     *
+     * @param offset the offset of the first entry that has not been processed
+     */
+    public void checkpoint(long offset) {
+        synchronized (checkpointLock) {
+            if (offset <= getCheckpoint()) {
+                return;
+            }
+            checkpoint = offset;
+            try {
+                Path checkpointFile = getDirectory().resolve(CHECKPOINT_FILE_NAME);
+                Path tempFile = getDirectory().resolve(CHECKPOINT_FILE_NAME + ".tmp");
+                Files.write(tempFile, Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write webhook journal checkpoint, events may be replayed", e);
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+    }
+
+    /**
+     * @return the offset of the first entry that has not been processed
+     */
+    public long getCheckpoint() {
+        if (checkpoint < 0) {
+            synchronized (checkpointLock) {
+                if (checkpoint < 0) {
+                    checkpoint = readCheckpoint();
+                }
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns the most recent entries, newest first.
+     *
+     * @param limit the maximum number of entries to return
+     * @return up to {@code limit} entries
+     * @throws IOException if the journal could not be read
+     */
+    public List<JournalEntry> getRecent(int limit) throws IOException {
+        List<Long> segments = listSegments();
+        Collections.reverse(segments);
+        List<JournalEntry> result = new ArrayList<>();
+        for (Long segment : segments) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.addAll(readNewest(segment, limit - result.size()));
+        }
+        return result;
+    }
+
+    /**
+     * Reads every entry at or after the given offset, oldest first. The offset must be the start of an entry, such
+     * as a {@link #getCheckpoint() checkpoint} or the {@link JournalEntry#getNextOffset() next offset} of an entry.
+     *
+     * @param offset the offset to start from
+     * @param action called with each entry in turn
+     * @throws IOException if the journal could not be read
+     */
+    public void readFrom(long offset, Consumer<JournalEntry> action) throws IOException {
+        List<Long> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            boolean hasLaterSegment = i + 1 < segments.size();
+            if (hasLaterSegment && segments.get(i + 1) <= offset) {
+                continue;
+            }
+            long segmentBase = segments.get(i);
+            readSegment(segmentBase, Math.max(0, offset - segmentBase), null, action);
+        }
+    }
+
+    /**
+     * Reads every entry accepted within the given time range, oldest first.
+     *
+     * @param from   the start of the range, inclusive, in milliseconds since the epoch
+     * @param to     the end of the range, exclusive, in milliseconds since the epoch
+     * @param action called with each entry in turn
+     * @throws IOException if the journal could not be read
+     */
+    public void readRange(long from, long to, Consumer<JournalEntry> action) throws IOException {
+        for (Long segment : listSegments()) {
+            readSegment(segment, 0, timestamp -> timestamp >= from && timestamp < to, action);
+        }
+    }
+
+    private FileChannel getActiveChannel() throws IOException {
+        if (activeChannel == null) {
+            Files.createDirectories(getDirectory());
+            List<Long> segments = listSegments();
+            activeSegmentBase = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+            activeChannel = FileChannel.open(segmentPath(activeSegmentBase),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validLength = new SegmentReader(activeChannel, activeSegmentBase, 0).skipValidEntries();
+            if (validLength < activeChannel.size()) {
+                LOGGER.warning("Truncating incomplete entry at the end of webhook journal segment " +
+                               segmentPath(activeSegmentBase));
+                activeChannel.truncate(validLength);
+            }
+        }
+        return activeChannel;
+    }
+
+    private Path getDirectory() {
+        if (directory == null) {
+            directory = jenkinsProvider.get().getRootDir().toPath().resolve(DIRECTORY_NAME);
+        }
+        return directory;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        Path dir = getDirectory();
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long readCheckpoint() {
+        Path checkpointFile = getDirectory().resolve(CHECKPOINT_FILE_NAME);
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Failed to read webhook journal checkpoint, replaying the whole journal", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Reads up to the given number of the newest valid entries of a segment, newest first. Only entry headers are read
+     * to find them. As with {@link #readFrom}, entries after a corrupt one are not returned, so if one of the entries
+     * found turns out to be corrupt, the entries before it are looked up instead.
+     */
+    private List<JournalEntry> readNewest(long segmentBase, int count) throws IOException {
+        try (SegmentReader reader = new SegmentReader(
+                FileChannel.open(segmentPath(segmentBase), StandardOpenOption.READ), segmentBase, 0)) {
+            long end = Long.MAX_VALUE;
+            while (true) {
+                List<JournalEntry> newest = new ArrayList<>(count);
+                long corruptPosition = -1;
+                for (long position : reader.findLastEntries(count, end)) {
+                    reader.seek(position);
+                    JournalEntry entry = reader.next(null);
+                    if (entry == null) {
+                        corruptPosition = position;
+                        break;
+                    }
+                    newest.add(entry);
+                }
+                if (corruptPosition < 0) {
+                    Collections.reverse(newest);
+                    return newest;
+                }
+                end = corruptPosition;
+            }
+        } catch (NoSuchFileException e) {
+            // The segment was removed by retention before it was opened
+            return Collections.emptyList();
+        }
+    }
+
+    private void readSegment(long segmentBase, long position, @Nullable LongPredicate timestampFilter,
+                             Consumer<JournalEntry> action) throws IOException {
+        try (SegmentReader reader = new SegmentReader(
+                FileChannel.open(segmentPath(segmentBase), StandardOpenOption.READ), segmentBase, position)) {
+            JournalEntry entry;
+            while ((entry = reader.next(timestampFilter)) != null) {
+                action.accept(entry);
+            }
+        } catch (NoSuchFileException e) {
+            // The segment was removed by retention before it was opened
+        }
+    }
+
+    private void removeExpiredSegments() throws IOException {
+        List<Long> segments = listSegments();
+        long processedUpTo = getCheckpoint();
+        long expiry = System.currentTimeMillis() - RETENTION;
+        // A segment is fully processed if the next segment starts at or before the checkpoint
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            Path segment = segmentPath(segments.get(i));
+            if (segments.get(i + 1) <= processedUpTo && Files.getLastModifiedTime(segment).toMillis() < expiry) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    private FileChannel rollSegment() throws IOException {
+        long nextBase = activeSegmentBase + activeChannel.size();
+        activeChannel.close();
+        activeSegmentBase = nextBase;
+        activeChannel = FileChannel.open(segmentPath(activeSegmentBase),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            removeExpiredSegments();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to remove expired webhook journal segments", e);
+        }
+        return activeChannel;
+    }
+
+    private Path segmentPath(long segmentBase) {
+        return getDirectory().resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentBase, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Reads the entries of a segment one at a time, holding no more than one entry in memory. Reading stops at the
+     * first incomplete or corrupt entry, which for the active segment may be an append that is still in progress.
+     */
+    private static final class SegmentReader implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE + 8);
+        private final long segmentBase;
+        private long position;
+
+        private SegmentReader(FileChannel channel, long segmentBase, long position) {
+            this.channel = channel;
+            this.segmentBase = segmentBase;
+            this.position = position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Returns the positions of up to the given number of the last entries that end before the given position,
+         * oldest first, reading only their headers. The headers are walked from the start of the segment, and the walk
+         * stops at the first header that does not describe a complete entry.
+         */
+        private Deque<Long> findLastEntries(int count, long end) throws IOException {
+            Deque<Long> positions = new ArrayDeque<>(count);
+            long size = Math.min(channel.size(), end);
+            long entryPosition = 0;
+            while (readFully(header, entryPosition, size)) {
+                int bodyLength = header.getInt();
+                if (bodyLength < ENTRY_FIXED_BODY_SIZE || entryPosition + ENTRY_HEADER_SIZE + bodyLength > size) {
+                    break;
+                }
+                if (positions.size() == count) {
+                    positions.removeFirst();
+                }
+                positions.addLast(entryPosition);
+                entryPosition += ENTRY_HEADER_SIZE + bodyLength;
+            }
+            return positions;
+        }
+
+        /**
+         * Returns the next entry whose timestamp matches the filter, or null if there are no more complete, valid
+         * entries. Entries not matching the filter are skipped without reading their payload.
+         */
+        @CheckForNull
+        private JournalEntry next(@Nullable LongPredicate timestampFilter) throws IOException {
+            while (true) {
+                long size = channel.size();
+                if (!readFully(header, position, size)) {
+                    return null;
+                }
+                int bodyLength = header.getInt();
+                int expectedCrc = header.getInt();
+                long timestamp = header.getLong();
+                if (bodyLength < ENTRY_FIXED_BODY_SIZE || position + ENTRY_HEADER_SIZE + bodyLength > size) {
+                    return null;
+                }
+                long nextPosition = position + ENTRY_HEADER_SIZE + bodyLength;
+                if (timestampFilter != null && !timestampFilter.test(timestamp)) {
+                    position = nextPosition;
+                    continue;
+                }
+                ByteBuffer body = ByteBuffer.allocate(bodyLength);
+                if (!readFully(body, position + ENTRY_HEADER_SIZE, size)) {
+                    return null;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body.array(), 0, bodyLength);
+                if ((int) crc.getValue() != expectedCrc) {
+                    return null;
+                }
+                body.getLong();
+                int keyLength = body.getShort() & 0xFFFF;
+                if (keyLength > body.remaining()) {
+                    return null;
+                }
+                byte[] key = new byte[keyLength];
+                body.get(key);
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                JournalEntry entry = new JournalEntry(segmentBase + position, segmentBase + nextPosition, timestamp,
+                        new String(key, StandardCharsets.UTF_8), payload);
+                position = nextPosition;
+                return entry;
+            }
+        }
+
+        /**
+         * Moves to the entry at the given position in the segment.
+         */
+        private void seek(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Moves past every valid entry, and returns the position after the last one.
+         */
+        private long skipValidEntries() throws IOException {
+            while (next(null) != null) {
+                // Each entry is checked as it is read
+            }
+            return position;
+        }
+
+        /**
+         * Fills the buffer from the given position and flips it, or returns false if the segment ends first.
+         */
+        private boolean readFully(ByteBuffer buffer, long from, long size) throws IOException {
+            buffer.clear();
+            if (from + buffer.capacity() > size) {
+                return false;
+            }
+            long readPosition = from;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, readPosition);
+                if (read < 0) {
+                    return false;
+                }
+                readPosition += read;
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+}
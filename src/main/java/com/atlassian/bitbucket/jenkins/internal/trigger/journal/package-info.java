@@ -0,0 +1,10 @@
+/**
+ * Add package level annotations to indicate everything is non-null by default.
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+package com.atlassian.bitbucket.jenkins.internal.trigger.journal;
+
+import edu.umd.cs.findbugs.annotations.ReturnValuesAreNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
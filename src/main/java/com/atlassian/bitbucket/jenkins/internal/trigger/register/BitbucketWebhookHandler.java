@@ -10,20 +10,25 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookSupportedE
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent;
 
 import javax.annotation.Nullable;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_MODIFIED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 /**
  * The following assumptions is made while handling webhooks,
- * 1. Separate webhooks will be added for repo ref and mirror sync events
+ * 1. Separate webhooks will be added for repo ref and mirror sync events. The repo ref webhook is also subscribed to
+ * repository modified events, so that cached repository details are dropped when a repository is renamed or moved,
+ * and, when requested for a source that discovers pull requests, to the pull request events supported by the server.
+ * Pull request events are kept once subscribed, so that registering the webhook for a job that does not discover
+ * pull requests does not stop them being delivered for the jobs that do.
  * 2. Input name is unique across all jenkins instance and will not shared by any system. Wrong URL with the given name
  * will be corrected.
  * 3. The callback URL is unique to this instance. Wrong name for given callback will be corrected.
@@ -51,7 +56,7 @@ public class BitbucketWebhookHandler implements WebhookHandler {
     @Override
     public BitbucketWebhook register(WebhookRegisterRequest request) {
         BitbucketWebhookEvent event = getEvent(request);
-        return process(request, event);
+        return process(request, event, getSupportedRepositoryEvents());
     }
 
     private String constructCallbackUrl(WebhookRegisterRequest request) {
@@ -61,8 +66,11 @@ public class BitbucketWebhookHandler implements WebhookHandler {
         return url.append(CALLBACK_URL_SUFFIX).toString();
     }
 
-    private BitbucketWebhookRequest createRequest(WebhookRegisterRequest request, BitbucketWebhookEvent event) {
-        return BitbucketWebhookRequest.Builder.aRequestFor(event.getEventId())
+    private BitbucketWebhookRequest createRequest(WebhookRegisterRequest request, BitbucketWebhookEvent event,
+                                                  Set<String> repositoryEvents) {
+        Set<String> events = getEventIds(event, repositoryEvents);
+        events.remove(event.getEventId());
+        return BitbucketWebhookRequest.Builder.aRequestFor(event.getEventId(), events.toArray(new String[0]))
                 .withCallbackTo(constructCallbackUrl(request))
                 .name(request.getName())
                 .build();
@@ -76,15 +84,15 @@ public class BitbucketWebhookHandler implements WebhookHandler {
     }
 
     private Optional<BitbucketWebhook> findSame(List<BitbucketWebhook> webhooks, WebhookRegisterRequest request,
-                                                BitbucketWebhookEvent toSubscribe) {
+                                                BitbucketWebhookEvent toSubscribe, Set<String> repositoryEvents) {
         String callback = constructCallbackUrl(request);
+        Set<String> events = getEventIds(toSubscribe, repositoryEvents);
         return webhooks
                 .stream()
                 .filter(hook -> hook.getName().equals(request.getName()))
                 .filter(hook -> hook.getUrl().equals(callback))
                 .filter(BitbucketWebhookRequest::isActive)
-                .filter(hook -> hook.getEvents().size() == 1)
-                .filter(hook -> hook.getEvents().contains(toSubscribe.getEventId()))
+                .filter(hook -> hook.getEvents().equals(events))
                 .peek(hook -> LOGGER.info("Found an existing webhook - " + hook))
                 .findFirst();
     }
@@ -121,8 +129,42 @@ public class BitbucketWebhookHandler implements WebhookHandler {
         return REPO_REF_CHANGE;
     }
 
+    /**
+     * Returns every event the webhook for the given event subscribes to. Pull request and repository modified events
+     * are only delivered with repo ref events, since they are always raised by the upstream repository.
+     */
+    private static Set<String> getEventIds(BitbucketWebhookEvent event, Set<String> repositoryEvents) {
+        Set<String> events = new HashSet<>();
+        events.add(event.getEventId());
+        if (event == REPO_REF_CHANGE) {
+            events.addAll(repositoryEvents);
+        }
+        return events;
+    }
+
+    /**
+     * Returns the pull request and repository modified events that the server can send, which is none if it does not
+     * say which webhook events it supports.
+     */
+    private Set<String> getSupportedRepositoryEvents() {
+        try {
+            BitbucketWebhookSupportedEvents events = serverCapabilities.getWebhookSupportedEvents();
+            if (events == null) {
+                return Collections.emptySet();
+            }
+            Set<String> hooks = events.getApplicationWebHooks();
+            return Arrays.stream(BitbucketWebhookEvent.values())
+                    .filter(event -> event.isPullRequestEvent() || event == REPO_MODIFIED)
+                    .map(BitbucketWebhookEvent::getEventId)
+                    .filter(hooks::contains)
+                    .collect(toCollection(LinkedHashSet::new));
+        } catch (BitbucketMissingCapabilityException exception) {
+            return Collections.emptySet();
+        }
+    }
+
     private BitbucketWebhook process(WebhookRegisterRequest request,
-                                     BitbucketWebhookEvent event) {
+                                     BitbucketWebhookEvent event, Set<String> repositoryEvents) {
         String callback = constructCallbackUrl(request);
         List<BitbucketWebhook> ownedHooks =
                 webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())
@@ -135,20 +177,28 @@ public class BitbucketWebhookHandler implements WebhookHandler {
                 .stream()
                 .filter(hook -> hook.getEvents().contains(REPO_REF_CHANGE.getEventId()))
                 .collect(toList());
+        Set<String> subscribedEvents = webhookWithRepoRefChange.stream()
+                .flatMap(hook -> hook.getEvents().stream())
+                .collect(toSet());
+        Set<String> events = repositoryEvents.stream()
+                .filter(eventId -> request.isPullRequestEvents() || subscribedEvents.contains(eventId) ||
+                                   !BitbucketWebhookEvent.findByEventId(eventId).isPullRequestEvent())
+                .collect(toCollection(LinkedHashSet::new));
 
         if (ownedHooks.size() == 0 ||
             (webhookWithMirrorSync.size() == 0 && event == MIRROR_SYNCHRONIZED_EVENT) ||
             (webhookWithRepoRefChange.size() == 0 && event == REPO_REF_CHANGE)) {
-            BitbucketWebhookRequest webhook = createRequest(request, event);
+            BitbucketWebhookRequest webhook = createRequest(request, event, events);
             BitbucketWebhook result = webhookClient.registerWebhook(webhook);
             LOGGER.info("New Webhook registered - " + result);
             return result;
         }
 
         BitbucketWebhook mirrorSyncResult =
-                handleExistingWebhook(request, webhookWithMirrorSync, MIRROR_SYNCHRONIZED_EVENT);
+                handleExistingWebhook(request, webhookWithMirrorSync, MIRROR_SYNCHRONIZED_EVENT, events);
 
-        BitbucketWebhook repoRefResult = handleExistingWebhook(request, webhookWithRepoRefChange, REPO_REF_CHANGE);
+        BitbucketWebhook repoRefResult =
+                handleExistingWebhook(request, webhookWithRepoRefChange, REPO_REF_CHANGE, events);
 
         if (mirrorSyncResult != null && mirrorSyncResult.getEvents().contains(event.getEventId())) {
             return mirrorSyncResult;
@@ -160,10 +210,11 @@ public class BitbucketWebhookHandler implements WebhookHandler {
     @Nullable
     private BitbucketWebhook handleExistingWebhook(WebhookRegisterRequest request,
                                                    List<BitbucketWebhook> existingWebhooks,
-                                                   BitbucketWebhookEvent toSubscribe) {
+                                                   BitbucketWebhookEvent toSubscribe,
+                                                   Set<String> repositoryEvents) {
         BitbucketWebhook result = null;
         if (existingWebhooks.size() > 0) {
-            result = update(existingWebhooks, request, toSubscribe);
+            result = update(existingWebhooks, request, toSubscribe, repositoryEvents);
             existingWebhooks.remove(result);
             deleteWebhooks(existingWebhooks);
         }
@@ -171,14 +222,14 @@ public class BitbucketWebhookHandler implements WebhookHandler {
     }
 
     private BitbucketWebhook update(List<BitbucketWebhook> webhooks, WebhookRegisterRequest request,
-                                    BitbucketWebhookEvent toSubscribe) {
-        return findSame(webhooks, request, toSubscribe)
-                .orElseGet(() -> updateRemoteWebhook(webhooks.get(0), request, toSubscribe));
+                                    BitbucketWebhookEvent toSubscribe, Set<String> repositoryEvents) {
+        return findSame(webhooks, request, toSubscribe, repositoryEvents)
+                .orElseGet(() -> updateRemoteWebhook(webhooks.get(0), request, toSubscribe, repositoryEvents));
     }
 
     private BitbucketWebhook updateRemoteWebhook(BitbucketWebhook existing, WebhookRegisterRequest request,
-                                                 BitbucketWebhookEvent toSubscribe) {
-        BitbucketWebhookRequest r = createRequest(request, toSubscribe);
+                                                 BitbucketWebhookEvent toSubscribe, Set<String> repositoryEvents) {
+        BitbucketWebhookRequest r = createRequest(request, toSubscribe, repositoryEvents);
         BitbucketWebhook updated = webhookClient.updateWebhook(existing.getId(), r);
         LOGGER.info(format("Exising webhook updtated - %s with new webhook %s", existing, r));
         return updated;
@@ -11,15 +11,17 @@ public class WebhookRegisterRequest {
     private final boolean isMirror;
     private final String name;
     private final String projectKey;
+    private final boolean pullRequestEvents;
     private final String repoSlug;
 
     private WebhookRegisterRequest(String projectKey, String repoSlug, String name, String jenkinsUrl,
-                                   boolean isMirror) {
+                                   boolean isMirror, boolean pullRequestEvents) {
         this.projectKey = requireNonNull(projectKey);
         this.repoSlug = requireNonNull(repoSlug);
         this.name = requireNonNull(name);
         this.jenkinsUrl = requireNonNull(jenkinsUrl);
         this.isMirror = isMirror;
+        this.pullRequestEvents = pullRequestEvents;
     }
 
     public String getName() {
@@ -42,12 +44,20 @@ public class WebhookRegisterRequest {
         return isMirror;
     }
 
+    /**
+     * @return true if the webhook should also deliver pull request events, for sources that discover pull requests
+     */
+    public boolean isPullRequestEvents() {
+        return pullRequestEvents;
+    }
+
     public static class Builder {
 
         private final String projectKey;
         private final String repoSlug;
         private boolean isMirror;
         private String jenkinsUrl;
+        private boolean pullRequestEvents;
         private String serverId;
 
         private Builder(String projectKey, String repoSlug) {
@@ -60,7 +70,7 @@ public class WebhookRegisterRequest {
         }
 
         public WebhookRegisterRequest build() {
-            return new WebhookRegisterRequest(projectKey, repoSlug, serverId, jenkinsUrl, isMirror);
+            return new WebhookRegisterRequest(projectKey, repoSlug, serverId, jenkinsUrl, isMirror, pullRequestEvents);
         }
 
         public Builder isMirror(boolean isMirror) {
@@ -68,6 +78,11 @@ public class WebhookRegisterRequest {
             return this;
         }
 
+        public Builder withPullRequestEvents(boolean pullRequestEvents) {
+            this.pullRequestEvents = pullRequestEvents;
+            return this;
+        }
+
         public Builder withJenkinsBaseUrl(String jenkinsUrl) {
             this.jenkinsUrl = jenkinsUrl;
             return this;
@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
 
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ConsumerVerifier;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.InvalidTokenException;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.NoSuchUserException;
@@ -91,6 +92,7 @@ public class OAuth1aRequestFilterTest {
     private SecurityModeChecker securityChecker;
 
     private OAuth1aRequestFilter filter;
+    private ConsumerVerifier verifier;
     private Map<String, String[]> rsaConsumerParameterMap;
     private ByteArrayOutputStream responseOutputStream;
 
@@ -111,7 +113,8 @@ public class OAuth1aRequestFilterTest {
         responseOutputStream = new ByteArrayOutputStream();
         when(response.getOutputStream()).thenReturn(new ByteArrayServletOutputStream(responseOutputStream));
         when(clock.millis()).thenReturn(System.currentTimeMillis());
-        when(consumerStore.get(RSA_CONSUMER.getKey())).thenReturn(Optional.of(RSA_CONSUMER));
+        verifier = new ConsumerVerifier(RSA_CONSUMER);
+        when(consumerStore.getVerifier(RSA_CONSUMER.getKey())).thenReturn(Optional.of(verifier));
         when(securityChecker.isSecurityEnabled()).thenReturn(true);
 
         filter =
@@ -122,11 +125,23 @@ public class OAuth1aRequestFilterTest {
     public void assertThatFailureResultWhenTheConsumerNoLongerExists() throws IOException, ServletException {
         setupRequestWithParameters(rsaConsumerParameterMap);
         when(store.get(TOKEN)).thenReturn(Optional.of(ACCESS_TOKEN));
-        when(consumerStore.get(RSA_CONSUMER.getKey())).thenReturn(null);
+        when(consumerStore.getVerifier(RSA_CONSUMER.getKey())).thenReturn(Optional.empty());
 
         filter.doFilter(request, response, chain);
 
         verify(request, never()).setAttribute(anyString(), anyString());
+        verifyZeroInteractions(validator);
+    }
+
+    @Test
+    public void assertThatMessageIsValidatedWithTheCurrentConsumer() throws Exception {
+        setupRequestWithParameters(rsaConsumerParameterMap);
+        when(store.get(TOKEN)).thenReturn(Optional.of(ACCESS_TOKEN));
+
+        filter.doFilter(request, response, chain);
+
+        verify(validator).validateMessage(isA(OAuthMessage.class), argThat(accessor ->
+                accessor.consumer == verifier.getOAuthConsumer() && TOKEN.equals(accessor.accessToken)));
     }
 
     @Test
@@ -0,0 +1,47 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many nonces {@link OAuthNonceCache} accepts per second when several threads check requests at once,
+ * for a single busy consumer and for requests spread over several consumers. Run it with {@link #main} rather than
+ * as part of the unit tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+@Warmup(iterations = 3, time = 1)
+public class OAuthNonceCacheBenchmark {
+
+    // JMH sets parameters on the generated subclass, so they cannot be private
+    @Param({"1", "16"})
+    public int consumers;
+
+    private final AtomicLong nonces = new AtomicLong();
+    private OAuthNonceCache cache;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OAuthNonceCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        cache = new OAuthNonceCache(ReplayProtectingOAuthValidator.MAX_TIMESTAMP_AGE, OAuthNonceCache.MAX_SIZE);
+    }
+
+    @Benchmark
+    public boolean add() {
+        long nonce = nonces.incrementAndGet();
+        long timestamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        return cache.add("consumer-" + nonce % consumers, "token", Long.toString(nonce), timestamp);
+    }
+}
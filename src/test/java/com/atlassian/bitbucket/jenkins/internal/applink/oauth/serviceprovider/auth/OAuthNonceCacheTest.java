@@ -0,0 +1,103 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class OAuthNonceCacheTest {
+
+    private static final long MAX_TIMESTAMP_AGE = TimeUnit.MINUTES.toMillis(5);
+    private static final long NOW = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    private OAuthNonceCache cache;
+
+    @Before
+    public void setup() {
+        cache = new OAuthNonceCache(MAX_TIMESTAMP_AGE, 1000);
+    }
+
+    @Test
+    public void testConcurrentRequestsAcceptEachNonceOnce() throws Exception {
+        int threads = 8;
+        int nonces = 1000;
+        cache = new OAuthNonceCache(MAX_TIMESTAMP_AGE, Long.MAX_VALUE);
+        AtomicInteger accepted = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int nonce = 0; nonce < nonces; nonce++) {
+                        if (cache.add("consumer", "token", Integer.toString(nonce), NOW + nonce % 600 - 300)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(accepted.get(), is(nonces));
+    }
+
+    @Test
+    public void testConsumersAreBoundedSeparately() {
+        cache = new OAuthNonceCache(MAX_TIMESTAMP_AGE, 12);
+        assertThat(cache.add("consumer", "token", "nonce-1", NOW), is(true));
+
+        assertThat(cache.add("consumer", "token", "nonce-2", NOW), is(false));
+
+        assertThat(cache.add("other-consumer", "token", "nonce-1", NOW), is(true));
+    }
+
+    @Test
+    public void testFullBucketRejectsRequests() {
+        cache = new OAuthNonceCache(MAX_TIMESTAMP_AGE, 12);
+        assertThat(cache.add("consumer", "token", "nonce-1", NOW), is(true));
+
+        assertThat(cache.add("consumer", "token", "nonce-2", NOW), is(false));
+        assertThat(cache.add("consumer", "token", "nonce-1", NOW), is(false));
+    }
+
+    @Test
+    public void testNonceIsRejectedWhenReused() {
+        assertThat(cache.add("consumer", "token", "nonce", NOW), is(true));
+        assertThat(cache.add("consumer", "token", "nonce", NOW), is(false));
+    }
+
+    @Test
+    public void testNonceIsScopedToConsumerTokenAndTimestamp() {
+        assertThat(cache.add("consumer", "token", "nonce", NOW), is(true));
+
+        assertThat(cache.add("other-consumer", "token", "nonce", NOW), is(true));
+        assertThat(cache.add("consumer", "other-token", "nonce", NOW), is(true));
+        assertThat(cache.add("consumer", null, "nonce", NOW), is(true));
+        assertThat(cache.add("consumer", "token", "nonce", NOW + 1), is(true));
+    }
+
+    @Test
+    public void testOldBucketIsReplacedByNewerWindow() {
+        long bucketSeconds = TimeUnit.MILLISECONDS.toSeconds(OAuthNonceCache.BUCKET_WIDTH);
+        // the ring holds 12 buckets for a 5 minute age, so this falls into the same bucket a window later
+        long later = NOW + 12 * bucketSeconds;
+        assertThat(cache.add("consumer", "token", "nonce", NOW), is(true));
+
+        assertThat(cache.add("consumer", "token", "nonce", later), is(true));
+        assertThat(cache.add("consumer", "token", "nonce", later), is(false));
+        assertThat(cache.add("consumer", "token", "other-nonce", NOW), is(false));
+    }
+}
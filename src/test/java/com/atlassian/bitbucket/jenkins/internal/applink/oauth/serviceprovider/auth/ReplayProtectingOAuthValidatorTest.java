@@ -0,0 +1,146 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.RSAKeys;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ConsumerVerifier;
+import net.oauth.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.KEYS;
+import static net.oauth.OAuth.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayProtectingOAuthValidatorTest {
+
+    private static final long NOW = 1_600_000_000_000L;
+
+    @Mock
+    private OAuthNonceCache nonceCache;
+    private ReplayProtectingOAuthValidator validator;
+
+    @Before
+    public void setup() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        validator = new ReplayProtectingOAuthValidator(nonceCache, clock);
+    }
+
+    @Test
+    public void testInvalidRsaSignatureIsRejected() throws Exception {
+        OAuthMessage message = signedMessage(RSAKeys.generateKeyPair().getPrivate());
+        OAuthAccessor accessor = new OAuthAccessor(new ConsumerVerifier(RSA_CONSUMER).getOAuthConsumer());
+
+        try {
+            validator.validateSignature(message, accessor);
+            fail("Expected OAuthProblemException");
+        } catch (OAuthProblemException e) {
+            assertThat(e.getProblem(), is(OAuth.Problems.SIGNATURE_INVALID));
+        }
+    }
+
+    @Test
+    public void testInvalidSignatureDoesNotRecordNonce() throws Exception {
+        OAuthMessage message = signedMessage(RSAKeys.generateKeyPair().getPrivate());
+        OAuthAccessor accessor = new OAuthAccessor(new ConsumerVerifier(RSA_CONSUMER).getOAuthConsumer());
+
+        try {
+            validator.validateMessage(message, accessor);
+            fail("Expected OAuthProblemException");
+        } catch (OAuthProblemException e) {
+            assertThat(e.getProblem(), is(OAuth.Problems.SIGNATURE_INVALID));
+        }
+        verifyZeroInteractions(nonceCache);
+    }
+
+    @Test
+    public void testNewNonceIsAccepted() throws Exception {
+        when(nonceCache.add(RSA_CONSUMER.getKey(), "token", "nonce", NOW / 1000)).thenReturn(true);
+        OAuthMessage message = signedMessage(KEYS.getPrivate());
+        OAuthAccessor accessor = new OAuthAccessor(new ConsumerVerifier(RSA_CONSUMER).getOAuthConsumer());
+
+        validator.validateMessage(message, accessor);
+
+        verify(nonceCache).add(RSA_CONSUMER.getKey(), "token", "nonce", NOW / 1000);
+    }
+
+    @Test
+    public void testRsaSignatureIsCheckedWithVerifier() throws Exception {
+        OAuthMessage message = signedMessage(KEYS.getPrivate());
+        OAuthAccessor accessor = new OAuthAccessor(new ConsumerVerifier(RSA_CONSUMER).getOAuthConsumer());
+
+        validator.validateSignature(message, accessor);
+    }
+
+    @Test
+    public void testOldTimestampIsRefused() throws Exception {
+        long timestamp = (NOW - ReplayProtectingOAuthValidator.MAX_TIMESTAMP_AGE) / 1000 - 1;
+
+        assertProblem(message(timestamp), OAuth.Problems.TIMESTAMP_REFUSED);
+        verifyZeroInteractions(nonceCache);
+    }
+
+    @Test
+    public void testFutureTimestampIsRefused() throws Exception {
+        long timestamp = (NOW + ReplayProtectingOAuthValidator.MAX_TIMESTAMP_AGE) / 1000 + 1;
+
+        assertProblem(message(timestamp), OAuth.Problems.TIMESTAMP_REFUSED);
+        verifyZeroInteractions(nonceCache);
+    }
+
+    @Test
+    public void testUsedNonceIsRejected() throws Exception {
+        when(nonceCache.add(RSA_CONSUMER.getKey(), "token", "nonce", NOW / 1000)).thenReturn(false);
+        OAuthMessage message = signedMessage(KEYS.getPrivate());
+        OAuthAccessor accessor = new OAuthAccessor(new ConsumerVerifier(RSA_CONSUMER).getOAuthConsumer());
+
+        try {
+            validator.validateMessage(message, accessor);
+            fail("Expected OAuthProblemException");
+        } catch (OAuthProblemException e) {
+            assertThat(e.getProblem(), is(OAuth.Problems.NONCE_USED));
+        }
+    }
+
+    private void assertProblem(OAuthMessage message, String problem) throws IOException {
+        try {
+            validator.validateTimestampAndNonce(message);
+            fail("Expected OAuthProblemException");
+        } catch (OAuthProblemException e) {
+            assertThat(e.getProblem(), is(problem));
+        }
+    }
+
+    private static OAuthMessage signedMessage(PrivateKey privateKey) throws Exception {
+        OAuthConsumer signer = new OAuthConsumer(null, RSA_CONSUMER.getKey(), null, null);
+        signer.setProperty(OAUTH_SIGNATURE_METHOD, RSA_SHA1);
+        signer.setProperty(net.oauth.signature.RSA_SHA1.PRIVATE_KEY, privateKey);
+        // the nonce and timestamp are set up front, so that they are kept when the message is signed
+        OAuthMessage message = new OAuthMessage("GET", "http://host/service", OAuth.newList(
+                OAUTH_TOKEN, "token",
+                OAUTH_NONCE, "nonce",
+                OAUTH_TIMESTAMP, Long.toString(NOW / 1000)));
+        message.addRequiredParameters(new OAuthAccessor(signer));
+        return message;
+    }
+
+    private static OAuthMessage message(long timestamp) {
+        return new OAuthMessage("GET", "http://host/service", OAuth.newList(
+                OAUTH_CONSUMER_KEY, "consumer",
+                OAUTH_TOKEN, "token",
+                OAUTH_NONCE, "nonce",
+                OAUTH_TIMESTAMP, Long.toString(timestamp)));
+    }
+}
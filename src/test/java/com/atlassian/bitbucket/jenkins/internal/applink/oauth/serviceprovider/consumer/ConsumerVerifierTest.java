@@ -0,0 +1,93 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthConsumer;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.KEYS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ConsumerVerifierTest {
+
+    private static final Consumer HMAC_CONSUMER = Consumer.key("consumer-hmac")
+            .name("Consumer using HMAC")
+            .signatureMethod(Consumer.SignatureMethod.HMAC_SHA1)
+            .consumerSecret("secret")
+            .build();
+    private static final byte[] DATA =
+            "GET&http%3A%2F%2Fhost%2Fservice&oauth_nonce%3D1".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testCanVerifyRsaSignaturesOfRsaConsumer() {
+        ConsumerVerifier verifier = new ConsumerVerifier(RSA_CONSUMER);
+
+        assertThat(verifier.canVerify(OAuth.RSA_SHA1), is(true));
+        assertThat(verifier.canVerify(OAuth.HMAC_SHA1), is(false));
+    }
+
+    @Test
+    public void testCannotVerifySignaturesOfHmacConsumer() {
+        ConsumerVerifier verifier = new ConsumerVerifier(HMAC_CONSUMER);
+
+        assertThat(verifier.canVerify(OAuth.RSA_SHA1), is(false));
+    }
+
+    @Test
+    public void testConcurrentVerification() throws Exception {
+        ConsumerVerifier verifier = new ConsumerVerifier(RSA_CONSUMER);
+        byte[] signature = sign(DATA);
+        byte[] otherSignature = sign("other".getBytes(StandardCharsets.UTF_8));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                byte[] toVerify = i % 2 == 0 ? signature : otherSignature;
+                futures.add(executor.submit(() -> verifier.verify(DATA, toVerify)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(30, TimeUnit.SECONDS), is(i % 2 == 0));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOAuthConsumerCarriesVerifier() {
+        ConsumerVerifier verifier = new ConsumerVerifier(RSA_CONSUMER);
+        OAuthConsumer oauthConsumer = verifier.getOAuthConsumer();
+
+        assertThat(ConsumerVerifier.of(oauthConsumer), sameInstance(verifier));
+        assertThat(oauthConsumer.consumerKey, is(RSA_CONSUMER.getKey()));
+        assertThat(ConsumerVerifier.of(new OAuthConsumer(null, "key", null, null)), nullValue());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        ConsumerVerifier verifier = new ConsumerVerifier(RSA_CONSUMER);
+        byte[] signature = sign(DATA);
+
+        assertThat(verifier.verify(DATA, signature), is(true));
+        assertThat(verifier.verify("tampered".getBytes(StandardCharsets.UTF_8), signature), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testVerifyWithoutPublicKey() throws Exception {
+        new ConsumerVerifier(HMAC_CONSUMER).verify(DATA, sign(DATA));
+    }
+
+    private static byte[] sign(byte[] data) throws Exception {
+        Signature signer = Signature.getInstance("SHA1withRSA");
+        signer.initSign(KEYS.getPrivate());
+        signer.update(data);
+        return signer.sign();
+    }
+}
@@ -224,6 +224,40 @@ public class PersistentServiceProviderConsumerStoreTest {
         consumerStore.update(newConsumerUpdate);
     }
 
+    @Test
+    public void testGetVerifier() {
+        Optional<ConsumerVerifier> verifier = consumerStore.getVerifier(RSA_CONSUMER.getKey());
+
+        assertThat(verifier.map(ConsumerVerifier::getConsumer), optionalWithValue(sameInstance(RSA_CONSUMER)));
+        assertThat(consumerStore.getVerifier(RSA_CONSUMER.getKey()).get(), sameInstance(verifier.get()));
+        assertThat(consumerStore.getVerifier("non-existent-consumer"), emptyOptional());
+    }
+
+    @Test
+    public void testGetVerifierAfterDelete() {
+        consumerStore.getVerifier(HMAC_CONSUMER.getKey());
+
+        consumerStore.delete(HMAC_CONSUMER.getKey());
+
+        assertThat(consumerStore.getVerifier(HMAC_CONSUMER.getKey()), emptyOptional());
+    }
+
+    @Test
+    public void testGetVerifierAfterUpdate() {
+        ConsumerVerifier verifier = consumerStore.getVerifier(RSA_CONSUMER.getKey()).get();
+        Consumer update = Consumer.key(RSA_CONSUMER.getKey())
+                .name(RSA_CONSUMER.getName())
+                .signatureMethod(RSA_SHA1)
+                .publicKey(KEY_PAIR2.getPublic())
+                .build();
+
+        consumerStore.update(update);
+
+        ConsumerVerifier updatedVerifier = consumerStore.getVerifier(RSA_CONSUMER.getKey()).get();
+        assertThat(updatedVerifier, not(sameInstance(verifier)));
+        assertThat(updatedVerifier.getConsumer(), sameInstance(update));
+    }
+
     private static ConsumerMatcher isConsumer(Consumer consumer) {
         return new ConsumerMatcher(consumer);
     }
@@ -0,0 +1,25 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import hudson.model.TaskListener;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OAuthTokenExpiryReaperTest {
+
+    @Mock
+    private TaskListener listener;
+    @Mock
+    private ServiceProviderTokenStore tokenStore;
+
+    @Test
+    public void testExecuteRemovesExpiredTokensAndSessions() {
+        new OAuthTokenExpiryReaper(tokenStore).execute(listener);
+
+        verify(tokenStore).removeExpiredTokensAndSessions();
+    }
+}
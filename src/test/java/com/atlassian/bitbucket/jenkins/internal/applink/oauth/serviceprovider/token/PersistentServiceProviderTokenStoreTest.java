@@ -115,6 +115,7 @@ public class PersistentServiceProviderTokenStoreTest {
         doAnswer(invocation -> {
             inMemoryTokenMap.clear();
             inMemoryTokenMap.putAll(persistedTokenMap);
+            tokenStore.rebuildIndexes();
             return null;
         }).when(tokenStore).load();
         doAnswer(invocation -> {
@@ -122,6 +123,12 @@ public class PersistentServiceProviderTokenStoreTest {
             persistedTokenMap.putAll(inMemoryTokenMap);
             return null;
         }).when(tokenStore).save();
+        // changes are journaled rather than saved, so appending to the journal persists the in-memory map as well
+        doAnswer(invocation -> {
+            persistedTokenMap.clear();
+            persistedTokenMap.putAll(inMemoryTokenMap);
+            return null;
+        }).when(tokenStore).appendToJournal(anyList());
     }
 
     @Test
@@ -253,6 +260,73 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testRemoveExpiredTokensAndSessions() {
+        long now = currentTimeMillis();
+        ServiceProviderToken expiredToken = newRequestToken("expired-token")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(now - ofMinutes(5L).toMillis())
+                .timeToLive(ofMinutes(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .verifier("abc123")
+                .build();
+        ServiceProviderToken tokenWithExpiredSession = newAccessToken("token-with-expired-session")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(now)
+                .timeToLive(ofDays(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .verifier("abc123")
+                .session(newSession("expired-session")
+                        .creationTime(now - ofMinutes(10L).toMillis())
+                        .lastRenewalTime(now - ofMinutes(5L).toMillis())
+                        .timeToLive(ofMinutes(2L).toMillis())
+                        .build())
+                .build();
+        tokenStore.put(expiredToken);
+        tokenStore.put(tokenWithExpiredSession);
+
+        tokenStore.removeExpiredTokensAndSessions();
+
+        verify(tokenStore).appendToJournal(argThat(records -> records.size() == 2));
+        assertThat(tokenStore.get(expiredToken.getToken()), emptyOptional());
+        assertThat(tokenStore.get(tokenWithExpiredSession.getToken()), emptyOptional());
+        assertThat(inMemoryTokenMap, aMapWithSize(4));
+    }
+
+    @Test
+    public void testRemoveExpiredTokensAfterRenewal() {
+        long creationTime = currentTimeMillis() - ofMinutes(5L).toMillis();
+        ServiceProviderToken expiredToken = newRequestToken("renewed-token")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(creationTime)
+                .timeToLive(ofMinutes(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .verifier("abc123")
+                .build();
+        ServiceProviderToken renewedToken = newRequestToken("renewed-token")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(currentTimeMillis())
+                .timeToLive(ofMinutes(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .verifier("abc123")
+                .build();
+        tokenStore.put(expiredToken);
+        tokenStore.put(renewedToken);
+
+        tokenStore.removeExpiredTokens();
+
+        assertThat(tokenStore.get(renewedToken.getToken()), optionalWithValue(requestToken(renewedToken)));
+    }
+
+    @Test
     public void testRemoveByConsumer() {
         tokenStore.removeByConsumer(RSA_CONSUMER.getKey());
 
@@ -263,6 +337,40 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testGetAccessTokensForUserAfterReauthorization() {
+        ServiceProviderToken reauthorizedToken = newRequestToken(REQUEST_TOKEN_2.getToken())
+                .callback(REQUEST_TOKEN_2.getCallback())
+                .consumer(RSA_CONSUMER_WITH_2LO)
+                .creationTime(REQUEST_TOKEN_2.getCreationTime())
+                .timeToLive(REQUEST_TOKEN_2.getTimeToLive())
+                .tokenSecret(REQUEST_TOKEN_2.getTokenSecret())
+                .authorizedBy("test-user3")
+                .verifier(REQUEST_TOKEN_2.getVerifier())
+                .build();
+
+        tokenStore.put(reauthorizedToken);
+
+        assertThat(tokenStore.getAccessTokensForUser("test-user2"), contains(accessToken(ACCESS_TOKEN_1)));
+        assertThat(tokenStore.getAccessTokensForUser("test-user3"),
+                containsInAnyOrder(requestToken(reauthorizedToken), accessToken(ACCESS_TOKEN_2)));
+    }
+
+    @Test
+    public void testGetAccessTokensForUserAfterRemove() {
+        tokenStore.remove(ACCESS_TOKEN_1.getToken());
+
+        assertThat(tokenStore.getAccessTokensForUser("test-user2"), contains(requestToken(REQUEST_TOKEN_2)));
+    }
+
+    @Test
+    public void testRemoveByConsumerRemovesFromUserIndex() {
+        tokenStore.removeByConsumer(RSA_CONSUMER_WITH_2LO.getKey());
+
+        assertThat(tokenStore.getAccessTokensForUser("test-user2"), contains(accessToken(ACCESS_TOKEN_1)));
+        assertThat(tokenStore.getAccessTokensForUser("test-user3"), emptyIterable());
+    }
+
     private static TokenMatcher accessToken(ServiceProviderToken token) {
         return new TokenMatcher(true, token.getCallback(),
                 ofNullable(token.getConsumer()).map(Consumer::getKey).orElse(null), token.getTokenSecret(),
@@ -0,0 +1,136 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenJournal.Record;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ServiceProviderTokenJournalTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+    private ServiceProviderTokenJournal journal;
+
+    @Before
+    public void setup() {
+        file = new File(tempFolder.getRoot(), "oauth-tokens.journal");
+        journal = new ServiceProviderTokenJournal(file);
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        journal.append(singletonList(Record.put("token")));
+
+        journal.delete();
+
+        assertThat(file.exists(), is(false));
+        assertThat(replay(), empty());
+    }
+
+    @Test
+    public void testReplayMissingJournal() throws IOException {
+        assertThat(replay(), empty());
+    }
+
+    @Test
+    public void testReplayInOrder() throws IOException {
+        journal.append(Arrays.asList(Record.put("token-1"), Record.put("token-2")));
+        journal.append(singletonList(Record.remove("token-1")));
+
+        assertThat(replay(), contains("put token-1", "put token-2", "remove token-1"));
+    }
+
+    @Test
+    public void testReplayDiscardsIncompleteRecord() throws IOException {
+        journal.append(singletonList(Record.put("token-1")));
+        long length = file.length();
+        journal.append(singletonList(Record.put("token-2")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 2);
+        }
+
+        assertThat(replay(), contains("put token-1"));
+        assertThat(file.length(), is(length));
+
+        journal.append(singletonList(Record.remove("token-1")));
+        assertThat(replay(), contains("put token-1", "remove token-1"));
+    }
+
+    @Test
+    public void testReplayDiscardsCorruptRecordAndLaterRecords() throws IOException {
+        journal.append(singletonList(Record.put("token-1")));
+        long length = file.length();
+        journal.append(Arrays.asList(Record.put("token-2"), Record.put("token-3")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // flip the last byte of token-2's payload
+            long position = length + (file.length() - length) / 2 - 1;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+
+        assertThat(replay(), contains("put token-1"));
+        assertThat(file.length(), is(length));
+
+        journal.append(singletonList(Record.remove("token-1")));
+        assertThat(replay(), contains("put token-1", "remove token-1"));
+    }
+
+    @Test
+    public void testReplayDiscardsRecordWithImpossibleLength() throws IOException {
+        journal.append(singletonList(Record.put("token-1")));
+        long length = file.length();
+        journal.append(singletonList(Record.put("token-2")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length + 1);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertThat(replay(), contains("put token-1"));
+        assertThat(file.length(), is(length));
+    }
+
+    @Test
+    public void testReplayDiscardsUnknownOperation() throws IOException {
+        journal.append(singletonList(Record.put("token-1")));
+        long length = file.length();
+        journal.append(singletonList(Record.put("token-2")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length);
+            raf.write(42);
+        }
+
+        assertThat(replay(), contains("put token-1"));
+        assertThat(file.length(), is(length));
+    }
+
+    @Test
+    public void testReplayNonAsciiPayload() throws IOException {
+        journal.append(singletonList(Record.put("<user>jürgen</user>")));
+
+        assertThat(replay(), contains("put <user>jürgen</user>"));
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        int count = journal.replay(record -> records.add((record.isRemove() ? "remove " : "put ") +
+                                                         record.getPayload()));
+        assertThat(count, is(records.size()));
+        return records;
+    }
+}
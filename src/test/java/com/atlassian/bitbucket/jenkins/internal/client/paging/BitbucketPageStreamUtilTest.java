@@ -1,19 +1,27 @@
 package com.atlassian.bitbucket.jenkins.internal.client.paging;
 
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.convertToElementStream;
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -42,6 +50,48 @@ public class BitbucketPageStreamUtilTest {
         assertThat(convertToElementStream(stream).collect(toList()), contains(1, 2, 3, 4, 5, 6));
     }
 
+    @Test
+    public void testPrefetchingPageStream() {
+        BitbucketPage<Integer> firstPage = new BitbucketPage<>();
+        firstPage.setValues(asList(1, 2));
+
+        BitbucketPage<Integer> lastPage = new BitbucketPage<>();
+        lastPage.setValues(asList(3, 4));
+        lastPage.setLastPage(true);
+
+        when(nextPageFetcher.next(firstPage)).thenReturn(lastPage);
+        List<Runnable> scheduled = new ArrayList<>();
+
+        Iterator<BitbucketPage<Integer>> pages =
+                BitbucketPageStreamUtil.toStream(firstPage, nextPageFetcher, scheduled::add).iterator();
+
+        assertThat(pages.next().getValues(), contains(1, 2));
+        // The second page is requested as soon as the first one is handed out
+        assertThat(scheduled.size(), equalTo(1));
+        scheduled.get(0).run();
+        assertThat(pages.next().getValues(), contains(3, 4));
+        assertFalse(pages.hasNext());
+    }
+
+    @Test
+    public void testPrefetchingPageStreamRethrowsClientException() {
+        BitbucketPage<Integer> firstPage = new BitbucketPage<>();
+        firstPage.setValues(asList(1, 2));
+        BitbucketClientException exception = new BitbucketClientException("error", 500, null);
+        when(nextPageFetcher.next(firstPage)).thenThrow(exception);
+
+        Iterator<BitbucketPage<Integer>> pages =
+                BitbucketPageStreamUtil.toStream(firstPage, nextPageFetcher, Runnable::run).iterator();
+        pages.next();
+
+        try {
+            pages.next();
+            fail("Expected BitbucketClientException");
+        } catch (BitbucketClientException e) {
+            assertThat(e, sameInstance(exception));
+        }
+    }
+
     @Test
     public void testSinglePage() {
         BitbucketPage<Integer> firstPage = new BitbucketPage<>();
@@ -0,0 +1,89 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.provider.DefaultJenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import hudson.model.FreeStyleProject;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BaseUrlJobUpdaterTest {
+
+    @ClassRule
+    public static final JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void testResumeUpdatesPendingJobs() throws Exception {
+        BitbucketSCM initialScm = createBitbucketSCM("0");
+        FreeStyleProject project = createProject(initialScm);
+
+        // Jenkins stops before the update runs
+        new BaseUrlJobUpdater(new DefaultJenkinsProvider(), command -> { }).start(singleton("0"));
+        assertThat(project.getScm(), sameInstance(initialScm));
+
+        BaseUrlJobUpdater updater = new BaseUrlJobUpdater(new DefaultJenkinsProvider());
+        updater.resume();
+
+        assertTrue(updater.awaitIdle(30000));
+        assertThat(project.getScm(), not(sameInstance(initialScm)));
+        assertThat(updater.getCompleted(), equalTo(1));
+        assertFalse(updater.getConfigFile().exists());
+    }
+
+    @Test
+    public void testStartAfterUpdateFinishes() throws Exception {
+        BitbucketSCM firstScm = createBitbucketSCM("0");
+        FreeStyleProject firstProject = createProject(firstScm);
+        BaseUrlJobUpdater updater = new BaseUrlJobUpdater(new DefaultJenkinsProvider());
+        updater.start(singleton("0"));
+        assertTrue(updater.awaitIdle(30000));
+
+        BitbucketSCM secondScm = createBitbucketSCM("2");
+        FreeStyleProject secondProject = createProject(secondScm);
+        updater.start(singleton("2"));
+
+        assertTrue(updater.awaitIdle(30000));
+        assertThat(firstProject.getScm(), not(sameInstance(firstScm)));
+        assertThat(secondProject.getScm(), not(sameInstance(secondScm)));
+        assertFalse(updater.isRunning());
+    }
+
+    @Test
+    public void testStartOnlyUpdatesJobsOfChangedServers() throws Exception {
+        BitbucketSCM changedScm = createBitbucketSCM("0");
+        BitbucketSCM unchangedScm = createBitbucketSCM("1");
+        FreeStyleProject changedProject = createProject(changedScm);
+        FreeStyleProject unchangedProject = createProject(unchangedScm);
+        BaseUrlJobUpdater updater = new BaseUrlJobUpdater(new DefaultJenkinsProvider());
+
+        updater.start(singleton("0"));
+
+        assertTrue(updater.awaitIdle(30000));
+        assertThat(changedProject.getScm(), not(sameInstance(changedScm)));
+        assertThat(((BitbucketSCM) changedProject.getScm()).getServerId(), equalTo("0"));
+        assertThat(unchangedProject.getScm(), sameInstance(unchangedScm));
+        assertThat(updater.getFailedJobs(), empty());
+    }
+
+    private static BitbucketSCM createBitbucketSCM(String serverId) {
+        BitbucketSCM scm = mock(BitbucketSCM.class);
+        when(scm.getServerId()).thenReturn(serverId);
+        return scm;
+    }
+
+    private static FreeStyleProject createProject(BitbucketSCM scm) throws IOException {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm);
+        return project;
+    }
+}
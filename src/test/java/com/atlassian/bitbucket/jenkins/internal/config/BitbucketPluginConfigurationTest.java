@@ -21,9 +21,11 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.not;
@@ -94,6 +96,7 @@ public class BitbucketPluginConfigurationTest {
         }).when(request).bindJSON(pluginConfiguration, formData);
 
         assertTrue(pluginConfiguration.configure(request, formData));
+        assertTrue(jenkins.getInstance().getInjector().getInstance(BaseUrlJobUpdater.class).awaitIdle(30000));
 
         SCM newScm = jenkins.getInstance().getAllItems(FreeStyleProject.class).get(0).getScm();
         assertThat(newScm, not(equalTo(bitbucketSCMInitial)));
@@ -128,6 +131,37 @@ public class BitbucketPluginConfigurationTest {
         verify(request).bindJSON(pluginConfiguration, formData);
     }
 
+    @Test
+    public void testGetConfigurationVersionChangesWithServerList() {
+        pluginConfiguration.setServerList(singletonList(validServerConfiguration));
+        long version = pluginConfiguration.getConfigurationVersion();
+
+        assertThat(pluginConfiguration.getConfigurationVersion(), equalTo(version));
+        pluginConfiguration.setServerList(Arrays.asList(validServerConfiguration, invalidServerConfigurationOne));
+
+        assertThat(pluginConfiguration.getConfigurationVersion(), not(equalTo(version)));
+    }
+
+    @Test
+    public void testGetServerById() {
+        pluginConfiguration.setServerList(Arrays.asList(validServerConfiguration, invalidServerConfigurationOne));
+
+        assertThat(pluginConfiguration.getServerById("1"), equalTo(Optional.of(invalidServerConfigurationOne)));
+        assertThat(pluginConfiguration.getServerById("2"), equalTo(Optional.empty()));
+        assertThat(pluginConfiguration.getServerById(""), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void testGetServerByIdAfterServerAddedToList() {
+        pluginConfiguration.setServerList(new ArrayList<>(singletonList(validServerConfiguration)));
+        long version = pluginConfiguration.getConfigurationVersion();
+
+        pluginConfiguration.getServerList().add(invalidServerConfigurationTwo);
+
+        assertThat(pluginConfiguration.getServerById("2"), equalTo(Optional.of(invalidServerConfigurationTwo)));
+        assertThat(pluginConfiguration.getConfigurationVersion(), not(equalTo(version)));
+    }
+
     @Test
     public void testGetValidServerListAllValid() {
         pluginConfiguration.setServerList(singletonList(validServerConfiguration));
@@ -0,0 +1,115 @@
+package com.atlassian.bitbucket.jenkins.internal.credentials;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketCredentialsCacheTest {
+
+    private static final BitbucketCredentials CREDENTIALS =
+            JenkinsToBitbucketCredentialsImpl.getBearerCredentials("token");
+
+    private BitbucketCredentialsCache cache;
+    @Mock
+    private Clock clock;
+    @Mock
+    private Supplier<Optional<BitbucketCredentials>> loader;
+
+    @Before
+    public void setup() {
+        cache = new BitbucketCredentialsCache(clock);
+    }
+
+    @Test
+    public void testCredentialsAreCached() {
+        when(loader.get()).thenReturn(Optional.of(CREDENTIALS));
+
+        assertThat(get("credentials-id", null), is(Optional.of(CREDENTIALS)));
+        assertThat(get(" credentials-id ", null), is(Optional.of(CREDENTIALS)));
+
+        verify(loader).get();
+    }
+
+    @Test
+    public void testCredentialsAreCachedPerContext() {
+        Item context = mock(Item.class);
+        when(context.getFullName()).thenReturn("folder/job");
+        when(loader.get()).thenReturn(Optional.of(CREDENTIALS));
+
+        get("credentials-id", null);
+        get("credentials-id", context);
+
+        verify(loader, times(2)).get();
+    }
+
+    @Test
+    public void testCredentialsAreCachedPerType() {
+        when(loader.get()).thenReturn(Optional.of(CREDENTIALS));
+
+        get("credentials-id", null);
+        Optional<String> other = cache.get("credentials-id", null, String.class, () -> Optional.of("other"));
+
+        assertThat(other, is(Optional.of("other")));
+        verify(loader).get();
+    }
+
+    @Test
+    public void testExpiredCredentialsAreReloaded() {
+        when(loader.get()).thenReturn(Optional.of(CREDENTIALS));
+
+        get("credentials-id", null);
+        when(clock.millis()).thenReturn(BitbucketCredentialsCache.TTL);
+        get("credentials-id", null);
+
+        verify(loader, times(2)).get();
+    }
+
+    @Test
+    public void testMissingCredentialsAreCached() {
+        when(loader.get()).thenReturn(Optional.empty());
+
+        assertThat(get("credentials-id", null), is(Optional.empty()));
+        assertThat(get("credentials-id", null), is(Optional.empty()));
+
+        verify(loader).get();
+    }
+
+    @Test
+    public void testSavingCredentialsStoreInvalidates() {
+        when(loader.get()).thenReturn(Optional.empty(), Optional.of(CREDENTIALS));
+        get("credentials-id", null);
+
+        new BitbucketCredentialsCacheListener(cache).onChange(mock(SystemCredentialsProvider.class), null);
+
+        assertThat(get("credentials-id", null), is(Optional.of(CREDENTIALS)));
+    }
+
+    @Test
+    public void testSavingJobDoesNotInvalidate() {
+        when(loader.get()).thenReturn(Optional.of(CREDENTIALS));
+        get("credentials-id", null);
+
+        new BitbucketCredentialsCacheListener(cache).onChange(mock(FreeStyleProject.class), null);
+        get("credentials-id", null);
+
+        verify(loader).get();
+    }
+
+    private Optional<BitbucketCredentials> get(String credentialsId, Item context) {
+        return cache.get(credentialsId, context, BitbucketCredentials.class, loader);
+    }
+}
@@ -20,6 +20,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.util.*;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -33,6 +34,8 @@ public class BitbucketJobLinkActionFactoryTest {
     private static final String BASE_URL = "http://localhost:8080/bitbucket";
 
     private BitbucketJobLinkActionFactory actionFactory;
+    @Mock
+    private Clock clock;
     @Rule
     public JenkinsRule jenkins = new JenkinsRule();
     @Mock
@@ -41,6 +44,7 @@ public class BitbucketJobLinkActionFactoryTest {
     private BitbucketSCMRepository bitbucketRepository;
     @Mock
     private BitbucketServerConfiguration configuration;
+    private BitbucketJobLinkCache jobLinkCache;
     @Mock
     private BitbucketScmFormValidationDelegate formValidationDelegate;
     @Mock
@@ -76,6 +80,7 @@ public class BitbucketJobLinkActionFactoryTest {
         when(configuration.getBaseUrl()).thenReturn(BASE_URL);
         when(configuration.validate()).thenReturn(FormValidation.ok());
 
+        jobLinkCache = new BitbucketJobLinkCache(clock);
         actionFactory = getActionFactory();
     }
 
@@ -147,8 +152,60 @@ public class BitbucketJobLinkActionFactoryTest {
         assertThat(actions.size(), equalTo(0));
     }
 
+    @Test
+    public void testLinkIsCached() {
+        actionFactory.createFor(freeStyleProject);
+        Collection<? extends Action> actions = actionFactory.createFor(freeStyleProject);
+
+        assertThat(actions.size(), equalTo(1));
+        verify(configuration).validate();
+    }
+
+    @Test
+    public void testLinkIsRecomputedAfterConfigurationChange() {
+        actionFactory.createFor(freeStyleProject);
+        when(pluginConfiguration.getConfigurationVersion()).thenReturn(1L);
+        when(configuration.validate()).thenReturn(FormValidation.error("config invalid"));
+
+        assertThat(actionFactory.createFor(freeStyleProject).size(), equalTo(0));
+    }
+
+    @Test
+    public void testLinkIsRecomputedAfterExpiry() {
+        actionFactory.createFor(freeStyleProject);
+        when(clock.millis()).thenReturn(BitbucketJobLinkCache.TTL);
+
+        actionFactory.createFor(freeStyleProject);
+
+        verify(configuration, times(2)).validate();
+    }
+
+    @Test
+    public void testLinkIsRecomputedAfterJobSaved() {
+        actionFactory.createFor(workflowJob);
+        workflowJob.setDefinition(new CpsScmFlowDefinition(mock(SCM.class), "Jenkinsfile"));
+
+        new BitbucketJobLinkCacheListener(jobLinkCache).onChange(workflowJob, null);
+
+        assertThat(actionFactory.createFor(workflowJob).size(), equalTo(0));
+    }
+
+    @Test
+    public void testLinkIsRecomputedAfterParentSaved() {
+        doReturn(multibranchProject).when(freeStyleProject).getParent();
+        actionFactory.createFor(freeStyleProject);
+
+        jobLinkCache.invalidate(workflowJob);
+        actionFactory.createFor(freeStyleProject);
+        verify(configuration).validate();
+
+        jobLinkCache.invalidate(multibranchProject);
+        actionFactory.createFor(freeStyleProject);
+        verify(configuration, times(2)).validate();
+    }
+
     private BitbucketJobLinkActionFactory getActionFactory() {
-        return new BitbucketJobLinkActionFactory(pluginConfiguration, formValidationDelegate) {
+        return new BitbucketJobLinkActionFactory(pluginConfiguration, formValidationDelegate, jobLinkCache) {
 
             @Override
             Collection<? extends SCM> getWorkflowSCMs(WorkflowJob job) {
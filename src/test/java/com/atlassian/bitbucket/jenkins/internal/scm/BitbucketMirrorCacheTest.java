@@ -0,0 +1,53 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketMirrorCacheTest {
+
+    private static final String CLONE_URL = "http://mirror.example.com/scm/proj/repo.git";
+
+    private BitbucketMirrorCache cache;
+    @Mock
+    private Clock clock;
+    @Mock
+    private MirrorLatencyProbe probe;
+
+    @Before
+    public void setup() {
+        cache = new BitbucketMirrorCache(clock);
+    }
+
+    @Test
+    public void testLatencyIsCachedPerHost() {
+        when(probe.probe(CLONE_URL)).thenReturn(100L);
+
+        cache.getLatency(CLONE_URL, probe);
+        when(clock.millis()).thenReturn(BitbucketMirrorCache.LATENCY_TTL - 1);
+
+        assertThat(cache.getLatency("http://mirror.example.com/scm/proj/other.git", probe), is(100L));
+        verify(probe).probe(CLONE_URL);
+        verifyNoMoreInteractions(probe);
+    }
+
+    @Test
+    public void testUnreachableMirrorIsProbedAgainSooner() {
+        when(probe.probe(CLONE_URL)).thenReturn(MirrorLatencyProbe.UNREACHABLE, 100L);
+
+        cache.getLatency(CLONE_URL, probe);
+        when(clock.millis()).thenReturn(BitbucketMirrorCache.UNREACHABLE_TTL);
+
+        assertThat(cache.getLatency(CLONE_URL, probe), is(100L));
+        verify(probe, times(2)).probe(CLONE_URL);
+    }
+}
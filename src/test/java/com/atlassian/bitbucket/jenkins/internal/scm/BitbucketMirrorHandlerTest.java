@@ -3,6 +3,7 @@ package com.atlassian.bitbucket.jenkins.internal.scm;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketMirrorClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
@@ -20,16 +21,19 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.ERROR_AVAILABLE;
 import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.NOT_MIRRORED;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
 import static java.lang.String.format;
 import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.collection.IsIterableWithSize.iterableWithSize;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -48,23 +52,76 @@ public class BitbucketMirrorHandlerTest {
     private BitbucketRepository bitbucketRepository;
     @Mock
     private GlobalCredentialsProvider globalCredentialsProvider;
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private BitbucketMirrorHandler bitbucketMirrorHandler;
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    private BitbucketRepoFetcher repoFetcher;
 
     @Before
     public void setup() {
         BitbucketCredentials bitbucketCredentials = mock(BitbucketCredentials.class);
-        BitbucketClientFactoryProvider bitbucketClientFactoryProvider = mock(BitbucketClientFactoryProvider.class);
+        bitbucketClientFactoryProvider = mock(BitbucketClientFactoryProvider.class);
         BitbucketClientFactory clientFactory = mockClientFactory(bitbucketClientFactoryProvider, bitbucketCredentials);
 
-        JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials =
-                mockCredentialConversion(bitbucketCredentials);
+        jenkinsToBitbucketCredentials = mockCredentialConversion(bitbucketCredentials);
 
-        BitbucketRepoFetcher repoFetcher = mock(BitbucketRepoFetcher.class);
+        repoFetcher = mock(BitbucketRepoFetcher.class);
         when(repoFetcher.fetchRepo(clientFactory, PROJECT, REPO)).thenReturn(bitbucketRepository);
         when(bitbucketRepository.getId()).thenReturn(REPO_ID);
         createInstance(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, repoFetcher);
     }
 
+    @Test
+    public void testAutoSelectsFastestReachableMirror() {
+        Map<String, Long> latencies = new HashMap<>();
+        latencies.put("http://mirror0.example.com/repo.git", 300L);
+        latencies.put("http://mirror1.example.com/repo.git", MirrorLatencyProbe.UNREACHABLE);
+        latencies.put("http://mirror2.example.com/repo.git", 100L);
+        bitbucketMirrorHandler = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                jenkinsToBitbucketCredentials, repoFetcher, null, latencies::get);
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(4);
+        mockMirroredRepo(descriptors.get("Mirror0"), AVAILABLE, "http://mirror0.example.com/repo.git");
+        mockMirroredRepo(descriptors.get("Mirror1"), AVAILABLE, "http://mirror1.example.com/repo.git");
+        mockMirroredRepo(descriptors.get("Mirror2"), AVAILABLE, "http://mirror2.example.com/repo.git");
+        mockMirroredRepo(descriptors.get("Mirror3"), NOT_MIRRORED, "http://mirror3.example.com/repo.git");
+
+        EnrichedBitbucketMirroredRepository repository = bitbucketMirrorHandler.fetchRepository(
+                new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO,
+                        BitbucketMirrorHandler.AUTO_MIRROR_NAME));
+
+        assertThat(repository.getMirroringDetails().getMirrorName(), is(equalTo("Mirror2")));
+    }
+
+    @Test
+    public void testAutoPrefersMirrorThatIsInSync() {
+        Map<String, Long> latencies = new HashMap<>();
+        latencies.put("http://mirror0.example.com/repo.git", 100L);
+        latencies.put("http://mirror1.example.com/repo.git", 300L);
+        bitbucketMirrorHandler = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                jenkinsToBitbucketCredentials, repoFetcher, null, latencies::get);
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(2);
+        mockMirroredRepo(descriptors.get("Mirror0"), ERROR_AVAILABLE, "http://mirror0.example.com/repo.git");
+        mockMirroredRepo(descriptors.get("Mirror1"), AVAILABLE, "http://mirror1.example.com/repo.git");
+
+        EnrichedBitbucketMirroredRepository repository = bitbucketMirrorHandler.fetchRepository(
+                new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO,
+                        BitbucketMirrorHandler.AUTO_MIRROR_NAME));
+
+        assertThat(repository.getMirroringDetails().getMirrorName(), is(equalTo("Mirror1")));
+    }
+
+    @Test(expected = MirrorFetchException.class)
+    public void testAutoWithoutReachableMirror() {
+        bitbucketMirrorHandler = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                jenkinsToBitbucketCredentials, repoFetcher, null, cloneUrl -> MirrorLatencyProbe.UNREACHABLE);
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+
+        bitbucketMirrorHandler.fetchRepository(
+                new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO,
+                        BitbucketMirrorHandler.AUTO_MIRROR_NAME));
+    }
+
     @Test(expected = MirrorFetchException.class)
     public void testDoesNotFetchUnAvailableRepository() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(2);
@@ -93,6 +150,38 @@ public class BitbucketMirrorHandlerTest {
                 .collect(Collectors.toList()), hasItems("Primary Server=", "Mirror0=Mirror0[selected]", "Mirror1=Mirror1"));
     }
 
+    @Test
+    public void testFailingMirrorIsUnavailable() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(3);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        when(bbRepoMirrorsClient.getRepositoryDetails(descriptors.get("Mirror1")))
+                .thenThrow(new BitbucketClientException("Mirror is down"));
+        mockMirroredRepo(descriptors.get("Mirror2"));
+
+        List<Option> options =
+                bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0"));
+
+        assertThat(options.stream()
+                .map(Option::toString)
+                .collect(Collectors.toList()), contains("Primary Server=", "Mirror0=Mirror0[selected]", "Mirror2=Mirror2"));
+    }
+
+    @Test
+    public void testFetchUsesCachedMirrors() {
+        bitbucketMirrorHandler = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                jenkinsToBitbucketCredentials, repoFetcher, new BitbucketMirrorCache());
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        MirrorFetchRequest request = new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0");
+
+        bitbucketMirrorHandler.fetchRepository(request);
+        EnrichedBitbucketMirroredRepository repository = bitbucketMirrorHandler.fetchRepository(request);
+
+        assertThat(repository.getMirroringDetails().getMirrorName(), is(equalTo("Mirror0")));
+        verify(bbRepoMirrorsClient).getMirroredRepositoryDescriptors();
+        verify(bbRepoMirrorsClient).getRepositoryDetails(descriptors.get("Mirror0"));
+    }
+
     @Test
     public void testFindMirroredRepository() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
@@ -155,13 +244,19 @@ public class BitbucketMirrorHandlerTest {
 
     private String mockMirroredRepo(BitbucketMirroredRepositoryDescriptor descriptor,
                                     BitbucketMirroredRepositoryStatus status) {
+        return mockMirroredRepo(descriptor, status, "http://mirror.example.com/scm/stash/jenkins/jenkins.git");
+    }
+
+    private String mockMirroredRepo(BitbucketMirroredRepositoryDescriptor descriptor,
+                                    BitbucketMirroredRepositoryStatus status,
+                                    String repoCloneUrl) {
         Map<String, List<BitbucketNamedLink>> repoLinks = new HashMap<>();
-        String repoCloneUrl = "http://mirror.example.com/scm/stash/jenkins/jenkins.git";
         repoLinks.put("clone", singletonList(new BitbucketNamedLink("http", repoCloneUrl)));
         BitbucketMirroredRepository
                 mirroredRepo =
                 new BitbucketMirroredRepository(
-                        status == AVAILABLE, repoLinks, descriptor.getMirrorServer().getName(), REPO_ID, status);
+                        status == AVAILABLE || status == ERROR_AVAILABLE, repoLinks,
+                        descriptor.getMirrorServer().getName(), REPO_ID, status);
 
         when(bbRepoMirrorsClient.getRepositoryDetails(descriptor)).thenReturn(mirroredRepo);
         return repoCloneUrl;
@@ -0,0 +1,212 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketFilePathClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCommit;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPathType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequestRef;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequestState;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketTag;
+import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
+import hudson.model.TaskListener;
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.plugins.git.GitSCMSourceContext;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
+import jenkins.scm.api.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketRefDiscoveryTest {
+
+    private static final String FEATURE_COMMIT = "0a943a29376f2336b78312d99e65da17048951db";
+    private static final String MASTER_COMMIT = "e5e2c7e5b3cd0a0b1c4a8b8ce3b8d2b7c1e0f4a1";
+    private static final BitbucketRepository REPOSITORY = new BitbucketRepository(1, "repo", null,
+            new BitbucketProject("PROJ", null, "Project"), "repo", RepositoryState.AVAILABLE);
+    private static final BitbucketRepository FORK = new BitbucketRepository(2, "repo", null,
+            new BitbucketProject("~USER", null, "User"), "repo", RepositoryState.AVAILABLE);
+
+    private BitbucketRefDiscovery discovery;
+    @Mock
+    private BitbucketFilePathClient filePathClient;
+    private final SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+    @Mock
+    private BitbucketRepositoryClient repositoryClient;
+    @Mock
+    private SCMSource source;
+    private final BitbucketTagTimestampCache tagTimestamps = new BitbucketTagTimestampCache();
+
+    @Before
+    public void setup() {
+        discovery = new BitbucketRefDiscovery(repositoryClient, false, tagTimestamps);
+    }
+
+    @Test
+    public void testDiscoverBranches() throws Exception {
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(
+                new BitbucketBranch("refs/heads/master", "master", MASTER_COMMIT, true),
+                new BitbucketBranch("refs/heads/feature/a", "feature/a", FEATURE_COMMIT, false)));
+
+        discovery.discover(new GitSCMSourceContext<>(null, observer).wantBranches(true), source, TaskListener.NULL);
+
+        Map<SCMHead, SCMRevision> result = observer.result();
+        assertThat(result.keySet(), containsInAnyOrder(
+                new GitBranchSCMHead("master"), new GitBranchSCMHead("feature/a")));
+        assertThat(result.get(new GitBranchSCMHead("master")),
+                equalTo(new GitBranchSCMRevision(new GitBranchSCMHead("master"), MASTER_COMMIT)));
+        verify(repositoryClient, never()).getTags();
+    }
+
+    @Test
+    public void testDiscoverBranchesMeetingCriteria() throws Exception {
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(
+                new BitbucketBranch("refs/heads/master", "master", MASTER_COMMIT, true),
+                new BitbucketBranch("refs/heads/feature/a", "feature/a", FEATURE_COMMIT, false)));
+        when(repositoryClient.getFilePathClient()).thenReturn(filePathClient);
+        when(filePathClient.getPathType(MASTER_COMMIT, "Jenkinsfile")).thenReturn(BitbucketPathType.FILE);
+        when(filePathClient.getPathType(FEATURE_COMMIT, "Jenkinsfile")).thenThrow(new NotFoundException("", null));
+        SCMSourceCriteria criteria = (probe, listener) -> probe.stat("Jenkinsfile").exists();
+
+        discovery.discover(new GitSCMSourceContext<>(criteria, observer).wantBranches(true), source,
+                TaskListener.NULL);
+
+        assertThat(observer.result().keySet(), contains(new GitBranchSCMHead("master")));
+    }
+
+    @Test
+    public void testDiscoverPullRequests() throws Exception {
+        when(repositoryClient.getPullRequests()).thenReturn(Stream.of(
+                pullRequest(1, REPOSITORY), pullRequest(2, FORK)));
+        discovery = new BitbucketRefDiscovery(repositoryClient, true, tagTimestamps);
+
+        discovery.discover(new GitSCMSourceContext<>(null, observer), source, TaskListener.NULL);
+
+        Map<SCMHead, SCMRevision> result = observer.result();
+        assertThat(result.keySet(), hasSize(2));
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest(1, REPOSITORY));
+        BitbucketPullRequestSCMRevision revision = (BitbucketPullRequestSCMRevision) result.get(head);
+        assertThat(revision.getHead().getName(), equalTo("PR-1"));
+        assertThat(revision.getHead().getOrigin(), equalTo(SCMHeadOrigin.DEFAULT));
+        assertThat(revision.getFromHash(), equalTo(FEATURE_COMMIT));
+        assertThat(revision.getToHash(), equalTo(MASTER_COMMIT));
+        assertThat(head.getTarget(), equalTo(new GitBranchSCMHead("master")));
+        SCMHead forkHead = result.get(new BitbucketPullRequestSCMHead(pullRequest(2, FORK))).getHead();
+        assertThat(forkHead.getOrigin(), instanceOf(SCMHeadOrigin.Fork.class));
+        verify(repositoryClient, never()).getBranches();
+        verify(repositoryClient, never()).getTags();
+    }
+
+    @Test
+    public void testDiscoverWithoutPullRequests() throws Exception {
+        when(repositoryClient.getBranches()).thenReturn(Stream.empty());
+
+        discovery.discover(new GitSCMSourceContext<>(null, observer).wantBranches(true), source, TaskListener.NULL);
+
+        verify(repositoryClient, never()).getPullRequests();
+    }
+
+    @Test
+    public void testObserveChangedHeads() throws Exception {
+        GitBranchSCMHead head = new GitBranchSCMHead("feature/a");
+
+        discovery.observe(new GitSCMSourceContext<>(null, observer).wantBranches(true), source,
+                singletonMap(head, new GitBranchSCMRevision(head, FEATURE_COMMIT)), TaskListener.NULL);
+
+        Map<SCMHead, SCMRevision> result = observer.result();
+        assertThat(result.keySet(), contains(head));
+        assertThat(((SCMRevisionImpl) result.get(head)).getHash(), equalTo(FEATURE_COMMIT));
+        verifyZeroInteractions(repositoryClient);
+    }
+
+    @Test
+    public void testObserveTagUsesCommitTimestamp() throws Exception {
+        GitTagSCMHead head = new GitTagSCMHead("v1", 0L);
+        when(repositoryClient.getCommit(MASTER_COMMIT)).thenReturn(new BitbucketCommit(MASTER_COMMIT, 1000L));
+
+        discovery.observe(new GitSCMSourceContext<>(null, observer).wantTags(true), source,
+                singletonMap(head, new GitTagSCMRevision(head, MASTER_COMMIT)), TaskListener.NULL);
+
+        Map<SCMHead, SCMRevision> result = observer.result();
+        GitTagSCMHead observed = (GitTagSCMHead) result.keySet().iterator().next();
+        assertThat(observed.getTimestamp(), equalTo(1000L));
+        assertThat(((SCMRevisionImpl) result.get(observed)).getHash(), equalTo(MASTER_COMMIT));
+    }
+
+    @Test
+    public void testObserveSkipsPullRequestsWhenNotWanted() throws Exception {
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest(1, REPOSITORY));
+
+        discovery.observe(new GitSCMSourceContext<>(null, observer).wantBranches(true), source,
+                singletonMap(head, new BitbucketPullRequestSCMRevision(head, FEATURE_COMMIT, MASTER_COMMIT)),
+                TaskListener.NULL);
+
+        assertThat(observer.result().keySet(), empty());
+    }
+
+    @Test
+    public void testPullRequestRevisionOnlyChangesWithSourceCommit() {
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest(1, REPOSITORY));
+        BitbucketPullRequestSCMRevision revision =
+                new BitbucketPullRequestSCMRevision(head, FEATURE_COMMIT, MASTER_COMMIT);
+
+        assertThat(new BitbucketPullRequestSCMRevision(head, FEATURE_COMMIT, FEATURE_COMMIT), equalTo(revision));
+        assertThat(new BitbucketPullRequestSCMRevision(head, MASTER_COMMIT, MASTER_COMMIT), not(equalTo(revision)));
+    }
+
+    @Test
+    public void testDiscoverTags() throws Exception {
+        when(repositoryClient.getTags()).thenReturn(Stream.of(new BitbucketTag("refs/tags/v1", "v1", MASTER_COMMIT)));
+        when(repositoryClient.getCommit(MASTER_COMMIT)).thenReturn(new BitbucketCommit(MASTER_COMMIT, 1000L));
+
+        discovery.discover(new GitSCMSourceContext<>(null, observer).wantTags(true), source, TaskListener.NULL);
+
+        Map<SCMHead, SCMRevision> result = observer.result();
+        assertThat(result.keySet(), hasSize(1));
+        GitTagSCMHead head = (GitTagSCMHead) result.keySet().iterator().next();
+        assertThat(head.getName(), equalTo("v1"));
+        assertThat(head.getTimestamp(), equalTo(1000L));
+        assertThat(((SCMRevisionImpl) result.get(head)).getHash(), equalTo(MASTER_COMMIT));
+        verify(repositoryClient, never()).getBranches();
+    }
+
+    @Test
+    public void testTagTimestampIsOnlyLookedUpOnce() throws Exception {
+        when(repositoryClient.getTags()).thenAnswer(invocation ->
+                Stream.of(new BitbucketTag("refs/tags/v1", "v1", MASTER_COMMIT)));
+        when(repositoryClient.getCommit(MASTER_COMMIT)).thenReturn(new BitbucketCommit(MASTER_COMMIT, 1000L));
+
+        discovery.discover(new GitSCMSourceContext<>(null, observer).wantTags(true), source, TaskListener.NULL);
+        SCMHeadObserver.Collector secondObserver = SCMHeadObserver.collect();
+        new BitbucketRefDiscovery(repositoryClient, false, tagTimestamps).discover(
+                new GitSCMSourceContext<>(null, secondObserver).wantTags(true), source, TaskListener.NULL);
+
+        GitTagSCMHead head = (GitTagSCMHead) secondObserver.result().keySet().iterator().next();
+        assertThat(head.getTimestamp(), equalTo(1000L));
+        verify(repositoryClient).getCommit(MASTER_COMMIT);
+    }
+
+    private static BitbucketPullRequest pullRequest(long id, BitbucketRepository fromRepository) {
+        return new BitbucketPullRequest(id, "title", BitbucketPullRequestState.OPEN,
+                new BitbucketPullRequestRef("refs/heads/feature/a", "feature/a", FEATURE_COMMIT, fromRepository),
+                new BitbucketPullRequestRef("refs/heads/master", "master", MASTER_COMMIT, REPOSITORY));
+    }
+}
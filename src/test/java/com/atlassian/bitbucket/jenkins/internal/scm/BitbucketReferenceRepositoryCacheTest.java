@@ -0,0 +1,227 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketReferenceRepositoryCacheTest {
+
+    private static final String CLONE_URL = "http://bitbucket.example.com/scm/proj/repo.git";
+    private static final BitbucketSCMRepository REPOSITORY = repository("repo");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final ReferenceRepositoryBorrower BORROWER =
+            new ReferenceRepositoryBorrower("", "/var/jenkins/workspace/job/.git");
+
+    private final List<ReferenceRepositoryBorrower> dissociated = new ArrayList<>();
+    private boolean dissociateSucceeds = true;
+    private final List<String> fetched = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private BitbucketReferenceRepositoryCache cache;
+    @Mock
+    private Clock clock;
+    private Runnable duringFetch = () -> { };
+
+    @Before
+    public void setup() throws IOException {
+        cache = createCache(temporaryFolder.newFolder(), 1000);
+    }
+
+    @Test
+    public void testReferenceIsCreatedInTheBackground() {
+        assertThat(cache.getReferencePath(REPOSITORY, CLONE_URL, "credentials", null), is(Optional.empty()));
+        assertThat(scheduled, hasSize(1));
+
+        runScheduled();
+
+        Optional<String> path = cache.getReferencePath(REPOSITORY, CLONE_URL, "credentials", null);
+        assertThat(path.isPresent(), is(true));
+        assertThat(new File(path.get(), "objects").isDirectory(), is(true));
+        assertThat(fetched, contains(CLONE_URL));
+        assertThat(scheduled, empty());
+    }
+
+    @Test
+    public void testRefresh() {
+        cache.getReferencePath(REPOSITORY, CLONE_URL, null, null);
+        runScheduled();
+
+        cache.refresh("PROJ", "REPO");
+        cache.refresh("PROJ", "other");
+        runScheduled();
+
+        assertThat(fetched, contains(CLONE_URL, CLONE_URL));
+    }
+
+    @Test
+    public void testRefreshWhileFetchingFetchesAgain() {
+        duringFetch = () -> {
+            duringFetch = () -> { };
+            cache.refresh("PROJ", "repo");
+        };
+        cache.getReferencePath(REPOSITORY, CLONE_URL, null, null);
+
+        runScheduled();
+
+        assertThat(fetched, contains(CLONE_URL, CLONE_URL));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        BitbucketSCMRepository other = repository("other");
+        String otherCloneUrl = "http://bitbucket.example.com/scm/proj/other.git";
+        cache.getReferencePath(REPOSITORY, CLONE_URL, null, null);
+        runScheduled();
+        when(clock.millis()).thenReturn(1L);
+
+        cache.getReferencePath(other, otherCloneUrl, null, null);
+        runScheduled();
+
+        assertThat(cache.getReferencePath(other, otherCloneUrl, null, null).isPresent(), is(true));
+        assertThat(cache.getReferencePath(REPOSITORY, CLONE_URL, null, null), is(Optional.empty()));
+    }
+
+    @Test
+    public void testReferenceInUseIsNotEvicted() {
+        BitbucketSCMRepository other = repository("other");
+        String otherCloneUrl = "http://bitbucket.example.com/scm/proj/other.git";
+        cache.getReferencePath(REPOSITORY, CLONE_URL, null, null);
+        runScheduled();
+        String path = cache.getReferencePath(REPOSITORY, CLONE_URL, null, null).get();
+        when(clock.millis()).thenReturn(1L);
+
+        cache.getReferencePath(other, otherCloneUrl, null, null);
+        runScheduled();
+
+        assertThat(new File(path, "objects").isDirectory(), is(true));
+        cache.release(path);
+        cache.refresh("PROJ", "other");
+        runScheduled();
+        assertThat(new File(path).exists(), is(false));
+    }
+
+    @Test
+    public void testBorrowerIsDissociatedBeforeEviction() {
+        String path = createReference(REPOSITORY, CLONE_URL);
+        cache.addBorrower(path, BORROWER);
+        cache.release(path);
+
+        evictReference();
+
+        assertThat(dissociated, contains(BORROWER));
+        assertThat(new File(path).exists(), is(false));
+    }
+
+    @Test
+    public void testReferenceIsKeptWhenBorrowerCannotBeDissociated() {
+        dissociateSucceeds = false;
+        String path = createReference(REPOSITORY, CLONE_URL);
+        cache.addBorrower(path, BORROWER);
+        cache.release(path);
+
+        evictReference();
+
+        assertThat(dissociated, contains(BORROWER));
+        assertThat(new File(path, "objects").isDirectory(), is(true));
+    }
+
+    @Test
+    public void testBorrowersAreKeptAfterRestart() throws IOException {
+        File rootDir = temporaryFolder.newFolder();
+        cache = createCache(rootDir, 1000);
+        String path = createReference(REPOSITORY, CLONE_URL);
+        cache.addBorrower(path, BORROWER);
+        cache.release(path);
+
+        cache = createCache(rootDir, 1000);
+        evictReference();
+
+        assertThat(dissociated, contains(BORROWER));
+        assertThat(new File(path).exists(), is(false));
+    }
+
+    @Test
+    public void testExistingReferenceIsUsedAfterRestart() throws IOException {
+        File rootDir = temporaryFolder.newFolder();
+        createCache(rootDir, 1000).getReferencePath(REPOSITORY, CLONE_URL, null, null);
+        runScheduled();
+
+        BitbucketReferenceRepositoryCache restarted = createCache(rootDir, 1000);
+
+        assertThat(restarted.getReferencePath(REPOSITORY, CLONE_URL, null, null).isPresent(), is(true));
+        assertThat(scheduled, hasSize(1));
+    }
+
+    @Test
+    public void testZeroQuotaDisablesReferences() throws IOException {
+        cache = createCache(temporaryFolder.newFolder(), 0);
+
+        assertThat(cache.getReferencePath(REPOSITORY, CLONE_URL, null, null), is(Optional.empty()));
+        assertThat(scheduled, empty());
+    }
+
+    private static BitbucketSCMRepository repository(String slug) {
+        return new BitbucketSCMRepository("credentials", null, "Project", "PROJ", slug, slug, "server", "");
+    }
+
+    private BitbucketReferenceRepositoryCache createCache(File rootDir, long quota) {
+        return new BitbucketReferenceRepositoryCache(rootDir, quota, clock, scheduled::add,
+                (directory, cloneUrl, credentialsId, context) -> {
+                    fetched.add(cloneUrl);
+                    duringFetch.run();
+                    File packs = new File(directory, "objects/pack");
+                    packs.mkdirs();
+                    File packFile = new File(packs, "pack-" + fetched.size());
+                    try (RandomAccessFile pack = new RandomAccessFile(packFile, "rw")) {
+                        pack.setLength(600);
+                    }
+                },
+                (reference, borrower) -> {
+                    dissociated.add(borrower);
+                    return dissociateSucceeds;
+                });
+    }
+
+    /**
+     * Creates the reference repository and returns its path, which is in use until it is released.
+     */
+    private String createReference(BitbucketSCMRepository repository, String cloneUrl) {
+        cache.getReferencePath(repository, cloneUrl, null, null);
+        runScheduled();
+        return cache.getReferencePath(repository, cloneUrl, null, null).get();
+    }
+
+    /**
+     * Creates a more recently used reference repository that does not fit within the quota alongside the first.
+     */
+    private void evictReference() {
+        when(clock.millis()).thenReturn(1L);
+        cache.getReferencePath(repository("other"), "http://bitbucket.example.com/scm/proj/other.git", null, null);
+        runScheduled();
+    }
+
+    private void runScheduled() {
+        while (!scheduled.isEmpty()) {
+            scheduled.remove(0).run();
+        }
+    }
+}
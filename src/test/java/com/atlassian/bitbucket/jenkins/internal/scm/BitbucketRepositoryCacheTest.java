@@ -0,0 +1,176 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketRepositoryCacheTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final BitbucketProject PROJECT = new BitbucketProject("PROJ", null, "My Project");
+    private static final BitbucketRepository REPOSITORY =
+            new BitbucketRepository(1, "My Repo", null, PROJECT, "my-repo", RepositoryState.AVAILABLE);
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private BitbucketRepositoryCache cache;
+    @Mock
+    private Clock clock;
+    @Mock
+    private Supplier<BitbucketRepository> loader;
+
+    @Before
+    public void setup() {
+        cache = new BitbucketRepositoryCache(clock, scheduled::add);
+    }
+
+    @Test
+    public void testClientErrorIsNotCached() {
+        when(loader.get()).thenThrow(new BitbucketClientException("error", 500, null)).thenReturn(REPOSITORY);
+
+        try {
+            getRepository("My Project", "My Repo");
+            fail("Expected BitbucketClientException");
+        } catch (BitbucketClientException e) {
+            // expected
+        }
+
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+        verify(loader, times(2)).get();
+    }
+
+    @Test
+    public void testExpiredRepositoryIsReloaded() {
+        when(loader.get()).thenReturn(REPOSITORY);
+
+        getRepository("My Project", "My Repo");
+        when(clock.millis()).thenReturn(BitbucketRepositoryCache.TTL);
+        getRepository("My Project", "My Repo");
+
+        verify(loader, times(2)).get();
+        assertThat(scheduled, empty());
+    }
+
+    @Test
+    public void testInvalidate() {
+        when(loader.get()).thenReturn(REPOSITORY);
+        getRepository("My Project", "My Repo");
+
+        cache.invalidate("proj", "MY-REPO");
+        getRepository("My Project", "My Repo");
+
+        verify(loader, times(2)).get();
+    }
+
+    @Test
+    public void testInvalidateOtherRepository() {
+        when(loader.get()).thenReturn(REPOSITORY);
+        getRepository("My Project", "My Repo");
+
+        cache.invalidate("PROJ", "other-repo");
+        getRepository("My Project", "My Repo");
+
+        verify(loader).get();
+    }
+
+    @Test
+    public void testInvalidateRemovesNotFound() {
+        when(loader.get()).thenThrow(new NotFoundException("not found", null)).thenReturn(REPOSITORY);
+        getRepositoryExpectingNotFound();
+
+        cache.invalidate("PROJ", "other-repo");
+
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+    }
+
+    @Test
+    public void testNotFoundIsCached() {
+        when(loader.get()).thenThrow(new NotFoundException("not found", null));
+
+        getRepositoryExpectingNotFound();
+        getRepositoryExpectingNotFound();
+
+        verify(loader).get();
+    }
+
+    @Test
+    public void testNotFoundExpires() {
+        when(loader.get()).thenThrow(new NotFoundException("not found", null)).thenReturn(REPOSITORY);
+        getRepositoryExpectingNotFound();
+
+        when(clock.millis()).thenReturn(BitbucketRepositoryCache.NOT_FOUND_TTL);
+
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+    }
+
+    @Test
+    public void testProjectsAndRepositoriesAreCachedSeparately() {
+        when(loader.get()).thenReturn(REPOSITORY);
+
+        BitbucketProject project =
+                cache.getProject(BASE_URL, ANONYMOUS_CREDENTIALS, "My Project", () -> PROJECT);
+        getRepository("My Project", "My Repo");
+
+        assertThat(project, is(PROJECT));
+        verify(loader).get();
+    }
+
+    @Test
+    public void testRepositoryIsCached() {
+        when(loader.get()).thenReturn(REPOSITORY);
+
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+        assertThat(getRepository("my project", "MY REPO"), is(REPOSITORY));
+
+        verify(loader).get();
+    }
+
+    @Test
+    public void testRepositoryIsRefreshedInTheBackground() {
+        BitbucketRepository renamed =
+                new BitbucketRepository(1, "Renamed", null, PROJECT, "renamed", RepositoryState.AVAILABLE);
+        when(loader.get()).thenReturn(REPOSITORY, renamed);
+        getRepository("My Project", "My Repo");
+
+        when(clock.millis()).thenReturn(BitbucketRepositoryCache.TTL / 2);
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+        assertThat(getRepository("My Project", "My Repo"), is(REPOSITORY));
+        assertThat(scheduled, hasSize(1));
+
+        scheduled.get(0).run();
+
+        assertThat(getRepository("My Project", "My Repo"), is(renamed));
+        verify(loader, times(2)).get();
+    }
+
+    private BitbucketRepository getRepository(String projectName, String repositoryName) {
+        return cache.getRepository(BASE_URL, ANONYMOUS_CREDENTIALS, projectName, repositoryName, loader);
+    }
+
+    private void getRepositoryExpectingNotFound() {
+        try {
+            getRepository("My Project", "My Repo");
+            fail("Expected NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketFilePathClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketDirectoryChild;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPathType;
+import jenkins.scm.api.SCMFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketSCMFileSystemTest {
+
+    private static final String COMMIT_ID = "0a943a29376f2336b78312d99e65da17048951db";
+
+    private BitbucketFileContentCache cache;
+    @Mock
+    private BitbucketFilePathClient filePathClient;
+    private BitbucketSCMFileSystem fileSystem;
+    @Mock
+    private BitbucketRepositoryClient repositoryClient;
+
+    @Before
+    public void setup() {
+        cache = new BitbucketFileContentCache();
+        when(repositoryClient.getFilePathClient()).thenReturn(filePathClient);
+        fileSystem = createFileSystem(COMMIT_ID);
+    }
+
+    @Test
+    public void testChildrenOfCollapsedDirectory() throws Exception {
+        when(filePathClient.getDirectoryContent(COMMIT_ID, "")).thenReturn(Arrays.asList(
+                new BitbucketDirectoryChild(Arrays.asList("src", "main"), BitbucketPathType.DIRECTORY),
+                new BitbucketDirectoryChild(singletonList("Jenkinsfile"), BitbucketPathType.FILE),
+                new BitbucketDirectoryChild(singletonList("module"), BitbucketPathType.SUBMODULE)));
+
+        List<SCMFile> children = new ArrayList<>();
+        fileSystem.getRoot().children().forEach(children::add);
+
+        assertThat(children, hasSize(3));
+        assertThat(children.get(0).getName(), is("src"));
+        assertThat(children.get(0).getType(), is(SCMFile.Type.DIRECTORY));
+        assertThat(children.get(1).getName(), is("Jenkinsfile"));
+        assertThat(children.get(1).getType(), is(SCMFile.Type.REGULAR_FILE));
+        assertThat(children.get(2).getType(), is(SCMFile.Type.OTHER));
+        verify(filePathClient, never()).getPathType(anyString(), anyString());
+    }
+
+    @Test
+    public void testContentIsCachedByCommit() throws Exception {
+        when(filePathClient.getRawContent(COMMIT_ID, "ci/Jenkinsfile")).thenReturn("pipeline {}".getBytes(UTF_8));
+
+        assertThat(fileSystem.child("ci/Jenkinsfile").contentAsString(), is("pipeline {}"));
+        assertThat(createFileSystem(COMMIT_ID).child("ci/Jenkinsfile").contentAsString(), is("pipeline {}"));
+
+        verify(filePathClient).getRawContent(COMMIT_ID, "ci/Jenkinsfile");
+    }
+
+    @Test
+    public void testContentOfOtherCommitIsNotShared() throws Exception {
+        String otherCommitId = "8d51122def5632836d1cb1026e879069e10a1e13";
+        when(filePathClient.getRawContent(COMMIT_ID, "Jenkinsfile")).thenReturn("old".getBytes(UTF_8));
+        when(filePathClient.getRawContent(otherCommitId, "Jenkinsfile")).thenReturn("new".getBytes(UTF_8));
+
+        assertThat(fileSystem.child("Jenkinsfile").contentAsString(), is("old"));
+        assertThat(createFileSystem(otherCommitId).child("Jenkinsfile").contentAsString(), is("new"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testContentOfMissingFile() throws Exception {
+        when(filePathClient.getRawContent(COMMIT_ID, "Jenkinsfile")).thenThrow(new NotFoundException("missing", null));
+
+        fileSystem.child("Jenkinsfile").content();
+    }
+
+    @Test
+    public void testMissingFileIsNotCached() throws Exception {
+        when(filePathClient.getPathType(COMMIT_ID, "Jenkinsfile"))
+                .thenThrow(new NotFoundException("missing", null))
+                .thenReturn(BitbucketPathType.FILE);
+
+        assertThat(fileSystem.child("Jenkinsfile").getType(), is(SCMFile.Type.NONEXISTENT));
+        assertThat(fileSystem.child("Jenkinsfile").getType(), is(SCMFile.Type.REGULAR_FILE));
+    }
+
+    private BitbucketSCMFileSystem createFileSystem(String commitId) {
+        return new BitbucketSCMFileSystem(repositoryClient, "server:credentials:PROJ/repo", commitId, null, cache);
+    }
+}
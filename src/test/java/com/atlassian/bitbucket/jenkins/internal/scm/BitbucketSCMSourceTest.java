@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketTokenCredentials;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
@@ -8,16 +9,22 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookMultibranchTrigger;
 import com.atlassian.bitbucket.jenkins.internal.trigger.RetryingWebhookHandler;
+import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.UserRemoteConfig;
 import hudson.scm.SCM;
 import jenkins.branch.MultiBranchProject;
+import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
+import jenkins.plugins.git.GitBranchSCMHead;
 import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMHeadOrigin;
 import jenkins.scm.api.SCMSourceDescriptor;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -26,10 +33,14 @@ import java.util.Optional;
 import static java.util.Collections.singletonList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.*;
@@ -66,6 +77,37 @@ public class BitbucketSCMSourceTest {
         assertEquals(sshCloneLink, userRemoteConfigs.get(0).getUrl());
     }
 
+    @Test
+    public void testBuildPullRequestFromForkAtTrustedRevision() {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead("1", "feature/a",
+                new GitBranchSCMHead("master"), new SCMHeadOrigin.Fork("~USER/repo"));
+        SCMRevisionImpl trustedRevision = new SCMRevisionImpl(head.getTarget(), "targetHash");
+
+        GitSCM gitSCM = (GitSCM) scmSource.build(head, trustedRevision);
+
+        assertThat(gitSCM.getBranches().get(0).getName(), is(equalTo("targetHash")));
+        assertThat(gitSCM.getUserRemoteConfigs().get(0).getRefspec(), containsString("refs/heads/master"));
+        assertThat(gitSCM.getUserRemoteConfigs().get(0).getRefspec(), not(containsString("refs/pull-requests")));
+    }
+
+    @Test
+    public void testRetrieveFailsWhenPullRequestsCannotBeListed() throws Exception {
+        BitbucketSCMSource scmSource = spy(createInstance("credentialsId", "serverId", "project", "repo"));
+        BitbucketRefDiscovery refDiscovery = mock(BitbucketRefDiscovery.class);
+        doReturn(Optional.of(refDiscovery)).when(scmSource).getRefDiscovery(any());
+        doReturn(true).when(scmSource).isDiscoverPullRequests();
+        doThrow(new BitbucketClientException("Service unavailable"))
+                .when(refDiscovery).discover(any(), any(), any());
+
+        try {
+            scmSource.retrieve(null, mock(SCMHeadObserver.class), null, TaskListener.NULL);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertThat(e.getCause(), is(instanceOf(BitbucketClientException.class)));
+        }
+    }
+
     @Test
     public void testCredentialAndServerIdSaved() {
         String credentialsId = "valid-credentials";
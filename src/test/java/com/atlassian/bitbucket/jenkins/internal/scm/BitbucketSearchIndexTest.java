@@ -0,0 +1,132 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketSearchIndexTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final BitbucketProject CORE = new BitbucketProject("CORE", null, "Core Services");
+    private static final BitbucketProject MOBILE = new BitbucketProject("MOB", null, "Mobile");
+    private static final BitbucketRepository CORE_API = repository(1, "core-api", CORE);
+    private static final BitbucketRepository MOBILE_API = repository(2, "mobileApi", MOBILE);
+    private static final BitbucketRepository PAYMENTS = repository(3, "Payments2", CORE);
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    @Mock
+    private BitbucketClientFactory client;
+    @Mock
+    private Clock clock;
+    private BitbucketSearchIndex index;
+    @Mock
+    private BitbucketSearchClient searchClient;
+
+    @Before
+    public void setup() {
+        index = new BitbucketSearchIndex(clock, scheduled::add);
+        when(client.getSearchClient("")).thenReturn(searchClient);
+    }
+
+    @Test
+    public void testIndexIsBuiltInTheBackground() {
+        stubSearchClient();
+
+        assertThat(findProjects("co"), is(Optional.empty()));
+        assertThat(findProjects("mo"), is(Optional.empty()));
+        assertThat(scheduled, hasSize(1));
+        scheduled.remove(0).run();
+
+        assertThat(findProjects("co"), is(Optional.of(singletonList(CORE))));
+        assertThat(scheduled, empty());
+    }
+
+    @Test
+    public void testProjectsMatchAnyWord() {
+        buildIndex();
+
+        assertThat(findProjects("SERV").get(), contains(CORE));
+        assertThat(findProjects("core serv").get(), contains(CORE));
+        assertThat(findProjects("ervices").get(), empty());
+    }
+
+    @Test
+    public void testRepositoriesAreFilteredByProject() {
+        buildIndex();
+
+        assertThat(findRepositories("Core Services", "api").get(), contains(CORE_API));
+        assertThat(findRepositories("Mobile", "api").get(), contains(MOBILE_API));
+        assertThat(findRepositories("Core Services", "2").get(), contains(PAYMENTS));
+    }
+
+    @Test
+    public void testExpiredIndexIsRebuiltInTheBackground() {
+        buildIndex();
+        when(clock.millis()).thenReturn(BitbucketSearchIndex.TTL);
+
+        assertThat(findProjects("mob").get(), contains(MOBILE));
+        assertThat(scheduled, hasSize(1));
+        scheduled.remove(0).run();
+
+        verify(searchClient, times(2)).getAllProjects();
+    }
+
+    @Test
+    public void testFailedBuildIsNotCached() {
+        when(searchClient.getAllProjects())
+                .thenThrow(new BitbucketClientException("error", 500, null))
+                .thenAnswer(invocation -> Stream.of(CORE, MOBILE));
+        when(searchClient.getAllRepositories()).thenAnswer(invocation -> Stream.of(CORE_API));
+
+        findProjects("co");
+        scheduled.remove(0).run();
+        assertThat(findProjects("co"), is(Optional.empty()));
+        scheduled.remove(0).run();
+
+        assertThat(findProjects("co").get(), contains(CORE));
+    }
+
+    private static BitbucketRepository repository(int id, String name, BitbucketProject project) {
+        return new BitbucketRepository(id, name, null, project, name.toLowerCase(), RepositoryState.AVAILABLE);
+    }
+
+    private void buildIndex() {
+        stubSearchClient();
+        findProjects("");
+        scheduled.remove(0).run();
+    }
+
+    private Optional<List<BitbucketProject>> findProjects(String prefix) {
+        return index.findProjects(BASE_URL, ANONYMOUS_CREDENTIALS, prefix, () -> client);
+    }
+
+    private Optional<List<BitbucketRepository>> findRepositories(String projectName, String prefix) {
+        return index.findRepositories(BASE_URL, ANONYMOUS_CREDENTIALS, projectName, prefix, () -> client);
+    }
+
+    private void stubSearchClient() {
+        when(searchClient.getAllProjects()).thenAnswer(invocation -> Stream.of(MOBILE, CORE));
+        when(searchClient.getAllRepositories()).thenAnswer(invocation -> Stream.of(PAYMENTS, MOBILE_API, CORE_API));
+    }
+}
@@ -19,6 +19,8 @@ import java.nio.file.Files;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -88,4 +90,19 @@ public class BitbucketTriggerWorkerTest {
         verify(triggerItem).poll(any(StreamTaskListener.class));
         verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction), eq(additionalAction));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTriggerRecordsTimingsOnCause() {
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.BUILD_NOW);
+        BitbucketWebhookTriggerCause cause =
+                new BitbucketWebhookTriggerCause(BitbucketWebhookTriggerRequest.builder().build());
+        CauseAction action = new CauseAction(cause);
+
+        new BitbucketTriggerWorker(job, triggerItem, action, emptyList()).run();
+
+        TriggerTimings timings = cause.getTimings();
+        assertThat(timings.getTimestamp(TriggerStage.POLL_STARTED).isPresent(), is(true));
+        assertThat(timings.getTimestamp(TriggerStage.POLL_COMPLETED).isPresent(), is(true));
+        assertThat(timings.getTimestamp(TriggerStage.BUILD_SCHEDULED).isPresent(), is(true));
+    }
+}
@@ -3,12 +3,23 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMHead;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMRevision;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketReferenceRepositoryCache;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import hudson.model.FreeStyleProject;
 import hudson.plugins.git.GitSCM;
+import jenkins.model.Jenkins;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
 import org.apache.groovy.util.Maps;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
@@ -22,6 +33,7 @@ import org.junit.runner.RunWith;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
@@ -31,7 +43,11 @@ import java.util.Map;
 import java.util.Optional;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_DECLINED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
@@ -74,6 +90,12 @@ public class BitbucketWebhookConsumerTest {
     private BitbucketWebhookTriggerImpl nullBitbucketTrigger;
     private FreeStyleProject nullProject;
     private RefsChangedWebhookEvent refsChangedEvent;
+    @Mock
+    private BitbucketReferenceRepositoryCache referenceRepositoryCache;
+    @Mock
+    private RefHeadStore refHeadStore;
+    @Spy
+    private WebhookRoutingIndex webhookRoutingIndex = new WebhookRoutingIndex(Jenkins::get);
     private WorkflowJob workflowJob;
     @Mock
     private BitbucketSCM workflowSCM;
@@ -144,6 +166,40 @@ public class BitbucketWebhookConsumerTest {
         verify(workflowTrigger, never()).trigger(any());
     }
 
+    @Test
+    public void testMirrorSynchronizedShouldOnlyTriggerJobsUsingThatMirror() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(serverId)).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        when(bitbucketSCM.getMirrorName()).thenReturn("mirror1");
+        MirrorSynchronizedWebhookEvent event = new MirrorSynchronizedWebhookEvent(
+                BITBUCKET_USER,
+                new BitbucketMirrorServer("1", "mirror1"),
+                MIRROR_SYNCHRONIZED_EVENT.getEventId(),
+                new Date(),
+                refChanges(),
+                bitbucketRepository,
+                BitbucketRepositorySynchronizationType.INCREMENTAL);
+
+        consumer.process(event);
+
+        verify(bitbucketTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+        verify(workflowTrigger, never()).trigger(any());
+    }
+
+    @Test
+    public void testRefsChangedShouldNotTriggerJobsUsingAMirror() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(serverId)).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        when(bitbucketSCM.getMirrorName()).thenReturn("mirror1");
+
+        consumer.process(refsChangedEvent);
+
+        verify(bitbucketTrigger, never()).trigger(any());
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+    }
+
     @Test
     public void testRefsChangedShouldNotTriggerBitbucketSCMIfRepositoryDoesNotMatch() {
         BitbucketRepository repository =
@@ -221,6 +277,13 @@ public class BitbucketWebhookConsumerTest {
                         eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
     }
 
+    @Test
+    public void testRefsChangedRefreshesReferenceRepository() {
+        consumer.process(refsChangedEvent);
+
+        verify(referenceRepositoryCache).refresh(JENKINS_PROJECT_KEY, JENKINS_REPO_SLUG);
+    }
+
     @Test
     public void testRefsChangedTriggerBuild() {
         consumer.process(refsChangedEvent);
@@ -231,6 +294,23 @@ public class BitbucketWebhookConsumerTest {
         verify(nullBitbucketTrigger, never()).trigger(any());
     }
 
+    @Test
+    public void testRefsChangedTriggersJobWhoseTriggerWasAddedAfterIndexing() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        try {
+            project.setScm(gitSCM);
+            consumer.process(refsChangedEvent);
+            BitbucketWebhookTriggerImpl trigger = mock(BitbucketWebhookTriggerImpl.class);
+            project.addTrigger(trigger);
+
+            consumer.process(refsChangedEvent);
+
+            verify(trigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+        } finally {
+            project.delete();
+        }
+    }
+
     @Test
     public void testShouldNotTriggerBuildIfRepositoryDoesNotMatch() {
         BitbucketRepository repository =
@@ -259,6 +339,75 @@ public class BitbucketWebhookConsumerTest {
         assertThat(headEvent.heads(scmSource), equalTo(emptyMap()));
     }
 
+    @Test
+    public void testRefsChangedHeadsSkipDeletedRefs() {
+        BitbucketSCMRepository scmRepo = mock(BitbucketSCMRepository.class);
+        doReturn("PROJ_1").when(scmRepo).getProjectKey();
+        doReturn("rep_1").when(scmRepo).getRepositorySlug();
+        BitbucketSCMSource scmSource = mock(BitbucketSCMSource.class);
+        doReturn(scmRepo).when(scmSource).getBitbucketSCMRepository();
+
+        BitbucketRefChange addedTag = new BitbucketRefChange(
+                new BitbucketRef("refs/tags/v1", "v1", BitbucketRefType.TAG), "refs/tags/v1",
+                "0000000000000000000000000000000000000000", "tagHash", BitbucketRefChangeType.ADD);
+        BitbucketRefChange deletedBranch = new BitbucketRefChange(
+                new BitbucketRef("refs/heads/old", "old", BitbucketRefType.BRANCH), "refs/heads/old",
+                "oldHash", "0000000000000000000000000000000000000000", BitbucketRefChangeType.DELETE);
+        RefsChangedWebhookEvent payload = new RefsChangedWebhookEvent(null, REPO_REF_CHANGE.getEventId(), new Date(),
+                asList(refChanges().get(0), addedTag, deletedBranch),
+                repository("http://localhost:7990/bitbucket/scm/proj_1/rep_1.git", "PROJ_1", "rep_1"));
+
+        Map<SCMHead, SCMRevision> heads =
+                new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(null, payload, null).heads(scmSource);
+
+        assertThat(heads.size(), equalTo(2));
+        assertThat(((GitBranchSCMRevision) heads.get(new GitBranchSCMHead("master"))).getHash(), equalTo("tohash"));
+        SCMHead tag = heads.keySet().stream().filter(GitTagSCMHead.class::isInstance).findFirst().get();
+        assertThat(tag.getName(), equalTo("v1"));
+        assertThat(((GitTagSCMRevision) heads.get(tag)).getHash(), equalTo("tagHash"));
+    }
+
+    @Test
+    public void testPullRequestEventHeads() {
+        BitbucketSCMRepository scmRepo = mock(BitbucketSCMRepository.class);
+        doReturn("PROJ_1").when(scmRepo).getProjectKey();
+        doReturn("rep_1").when(scmRepo).getRepositorySlug();
+        BitbucketSCMSource scmSource = mock(BitbucketSCMSource.class);
+        doReturn(scmRepo).when(scmSource).getBitbucketSCMRepository();
+        PullRequestWebhookEvent payload = pullRequestEvent(PULL_REQUEST_FROM_REF_UPDATED);
+
+        Map<SCMHead, SCMRevision> heads =
+                new BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent(SCMEvent.Type.UPDATED, payload, null)
+                        .heads(scmSource);
+
+        assertThat(heads.size(), equalTo(1));
+        BitbucketPullRequestSCMRevision revision = (BitbucketPullRequestSCMRevision) heads.values().iterator().next();
+        assertThat(revision.getHead().getName(), equalTo("PR-7"));
+        assertThat(((BitbucketPullRequestSCMHead) revision.getHead()).getOriginName(), equalTo("feature"));
+        assertThat(revision.getFromHash(), equalTo("fromHash"));
+        assertThat(revision.getToHash(), equalTo("toHash"));
+    }
+
+    @Test
+    public void testPullRequestEventHeadsSkipMirroredSource() {
+        BitbucketSCMSource scmSource = mock(BitbucketSCMSource.class);
+        doReturn("mirror").when(scmSource).getMirrorName();
+        PullRequestWebhookEvent payload = pullRequestEvent(PULL_REQUEST_OPENED);
+
+        assertThat(new BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent(SCMEvent.Type.CREATED, payload, null)
+                .heads(scmSource), equalTo(emptyMap()));
+    }
+
+    @Test
+    public void testPullRequestEventTypes() {
+        assertThat(BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent.getType(
+                pullRequestEvent(PULL_REQUEST_OPENED)), equalTo(SCMEvent.Type.CREATED));
+        assertThat(BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent.getType(
+                pullRequestEvent(PULL_REQUEST_FROM_REF_UPDATED)), equalTo(SCMEvent.Type.UPDATED));
+        assertThat(BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent.getType(
+                pullRequestEvent(PULL_REQUEST_DECLINED)), equalTo(SCMEvent.Type.REMOVED));
+    }
+
     @Test
     public void testRefsChangedNotMatchingMultibranchRepo() {
         BitbucketSCMRepository mockScmRepo = mock(BitbucketSCMRepository.class);
@@ -281,6 +430,15 @@ public class BitbucketWebhookConsumerTest {
         assertThat(headEvent.heads(scmSource), equalTo(emptyMap()));
     }
 
+    private PullRequestWebhookEvent pullRequestEvent(BitbucketWebhookEvent event) {
+        BitbucketRepository repository =
+                repository("http://localhost:7990/bitbucket/scm/proj_1/rep_1.git", "PROJ_1", "rep_1");
+        BitbucketPullRequest pullRequest = new BitbucketPullRequest(7, "title", BitbucketPullRequestState.OPEN,
+                new BitbucketPullRequestRef("refs/heads/feature", "feature", "fromHash", repository),
+                new BitbucketPullRequestRef("refs/heads/master", "master", "toHash", repository));
+        return new PullRequestWebhookEvent(BITBUCKET_USER, event.getEventId(), new Date(), pullRequest);
+    }
+
     private List<BitbucketRefChange> refChanges() {
         return refChanges(BitbucketRefChangeType.ADD);
     }
@@ -59,7 +59,7 @@ public class BitbucketWebhookMultibranchTriggerTest {
         boolean result = descriptor.addTrigger(project, scmSource);
 
         assertThat(result, is(true));
-        verify(webhookHandler).register(baseUrl, credentialsProvider, bbsRepo);
+        verify(webhookHandler).register(baseUrl, credentialsProvider, bbsRepo, false);
     }
 
     @Test
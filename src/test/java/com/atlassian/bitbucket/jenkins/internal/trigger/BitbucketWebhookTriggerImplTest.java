@@ -4,6 +4,7 @@ import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfigurat
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketUser;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
@@ -22,10 +23,12 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.annotation.Nullable;
+import java.time.Clock;
 import java.util.*;
 
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -34,6 +37,8 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class BitbucketWebhookTriggerImplTest {
 
+    private static final long NOW = 1_600_000_000_000L;
+
     @Mock
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private BitbucketWebhookTriggerDescriptor descriptor;
@@ -45,6 +50,7 @@ public class BitbucketWebhookTriggerImplTest {
     private SequentialExecutionQueue queue;
     @Mock
     private RetryingWebhookHandler webhookHandler;
+    private int projectCount;
 
     @Before
     public void setup() {
@@ -152,7 +158,8 @@ public class BitbucketWebhookTriggerImplTest {
 
         trigger.start(project, true);
 
-        verify(webhookHandler, never()).register(anyString(), any(GlobalCredentialsProvider.class), any(BitbucketSCMRepository.class));
+        verify(webhookHandler, never()).register(anyString(), any(GlobalCredentialsProvider.class),
+                any(BitbucketSCMRepository.class), anyBoolean());
     }
 
     @Test
@@ -225,6 +232,23 @@ public class BitbucketWebhookTriggerImplTest {
                         argThat(arg -> arg.equals(actualRepo)));
     }
 
+    @Test
+    public void testWorkflowJobStartSkipsRepositoryVerifiedByReconciler() {
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenReturn(NOW, NOW + WebhookRegistryReconciler.RECONCILE_PERIOD);
+        WebhookRegistry webhookRegistry = new WebhookRegistry(jenkinsProvider, clock, task -> { });
+        BitbucketSCMRepository repo = new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, REPO, REPO,
+                "serverId", "");
+        webhookRegistry.record(repo, new BitbucketWebhook(1, "webhook", emptySet(), BITBUCKET_BASE_URL, true));
+        descriptor = new BitbucketWebhookTriggerDescriptor(queue, webhookHandler, jenkinsProvider,
+                bitbucketPluginConfiguration, webhookRegistry);
+
+        BitbucketWebhookTriggerImpl trigger = createInstance(descriptor, createSCM(repo));
+        trigger.start(createWorkflowJob(), true);
+
+        verifyZeroInteractions(webhookHandler);
+    }
+
     @Test
     public void testWorkflowJobAreWebhookEligible() {
         BitbucketWebhookTriggerImpl t = new BitbucketWebhookTriggerImpl();
@@ -240,7 +264,8 @@ public class BitbucketWebhookTriggerImplTest {
         BitbucketWebhookTriggerImpl trigger = createInstance(descriptor, null);
         trigger.start(workflowJob, true);
 
-        verify(webhookHandler, never()).register(anyString(), any(GlobalCredentialsProvider.class), any(BitbucketSCMRepository.class));
+        verify(webhookHandler, never()).register(anyString(), any(GlobalCredentialsProvider.class),
+                any(BitbucketSCMRepository.class), anyBoolean());
     }
 
     private FreeStyleProject createFreeStyleProject() {
@@ -249,6 +274,7 @@ public class BitbucketWebhookTriggerImplTest {
         when(itemGroup.getFullName()).thenReturn("Item name");
         when(project.getParent()).thenReturn(itemGroup);
         when(project.getName()).thenReturn("Project name");
+        lenient().when(project.getFullName()).thenReturn("Project name " + projectCount++);
         return project;
     }
 
@@ -367,6 +393,7 @@ public class BitbucketWebhookTriggerImplTest {
         when(itemGroup.getFullName()).thenReturn("Item name");
         when(workflowJob.getParent()).thenReturn(itemGroup);
         when(workflowJob.getName()).thenReturn("WorkflowJob name");
+        lenient().when(workflowJob.getFullName()).thenReturn("WorkflowJob name");
         return workflowJob;
     }
 
@@ -0,0 +1,179 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.atlassian.bitbucket.jenkins.internal.trigger.register.WebhookRegistrationFailed;
+import hudson.model.Item;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkWebhookRegistrarTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final String SERVER_ID = "serverId";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mock
+    private GlobalCredentialsProvider globalCredentialsProvider;
+    @Mock
+    private Item item;
+    @Mock
+    private Jenkins jenkins;
+    @Mock
+    private JenkinsProvider jenkinsProvider;
+    @Mock
+    private BitbucketPluginConfiguration pluginConfiguration;
+    private final Deque<Runnable> pendingTasks = new ArrayDeque<>();
+    private BulkWebhookRegistrar registrar;
+    @Mock
+    private BitbucketServerConfiguration serverConfiguration;
+    @Mock
+    private RetryingWebhookHandler webhookHandler;
+    private WebhookRegistry webhookRegistry;
+
+    @Before
+    public void setup() throws Exception {
+        when(jenkinsProvider.get()).thenReturn(jenkins);
+        when(jenkins.getRootDir()).thenReturn(temporaryFolder.newFolder());
+        lenient().when(pluginConfiguration.getServerById(SERVER_ID)).thenReturn(Optional.of(serverConfiguration));
+        lenient().when(serverConfiguration.getBaseUrl()).thenReturn(BASE_URL);
+        lenient().when(serverConfiguration.getGlobalCredentialsProvider(item)).thenReturn(globalCredentialsProvider);
+        webhookRegistry = new WebhookRegistry(jenkinsProvider, Clock.systemUTC(), Runnable::run);
+        registrar = new BulkWebhookRegistrar(pluginConfiguration, webhookHandler, webhookRegistry,
+                serverId -> pendingTasks::add);
+    }
+
+    @Test
+    public void testAlreadyVerifiedRepositoryIsNotRegistered() {
+        webhookRegistry.record(createSCMRepo(REPO), createWebhook(1));
+
+        CompletableFuture<BitbucketWebhook> result = registrar.register(item, createSCMRepo(REPO));
+
+        assertThat(result.isDone(), is(true));
+        assertThat(pendingTasks.isEmpty(), is(true));
+        verifyZeroInteractions(webhookHandler);
+    }
+
+    @Test
+    public void testVerifiedRepositoryIsRegisteredAgainForPullRequestEvents() {
+        webhookRegistry.record(createSCMRepo(REPO), createWebhook(1));
+        BitbucketWebhook webhook = new BitbucketWebhook(1, "webhook",
+                new HashSet<>(Arrays.asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId())),
+                "http://localhost/jenkins", true);
+        when(webhookHandler.register(eq(BASE_URL), eq(globalCredentialsProvider), any(), eq(true)))
+                .thenReturn(webhook);
+
+        CompletableFuture<BitbucketWebhook> result = registrar.register(item, createSCMRepo(REPO), true);
+        runPendingTasks();
+
+        assertThat(result.join(), is(webhook));
+        assertThat(webhookRegistry.isRegistered(createSCMRepo(REPO), true), is(true));
+    }
+
+    @Test
+    public void testDuplicateRepositoriesShareRegistration() {
+        BitbucketWebhook webhook = createWebhook(1);
+        when(webhookHandler.register(eq(BASE_URL), eq(globalCredentialsProvider), any(), eq(false)))
+                .thenReturn(webhook);
+
+        CompletableFuture<BitbucketWebhook> first = registrar.register(item, createSCMRepo(REPO));
+        CompletableFuture<BitbucketWebhook> second = registrar.register(item, createSCMRepo(REPO.toUpperCase()));
+        runPendingTasks();
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(first.join(), is(webhook));
+        verify(webhookHandler).register(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void testFailedRegistrationIsRetriedOnNextRequest() {
+        when(webhookHandler.register(eq(BASE_URL), eq(globalCredentialsProvider), any(), eq(false)))
+                .thenThrow(new WebhookRegistrationFailed("failed", new RuntimeException()))
+                .thenReturn(createWebhook(1));
+
+        CompletableFuture<BitbucketWebhook> first = registrar.register(item, createSCMRepo(REPO));
+        runPendingTasks();
+        CompletableFuture<BitbucketWebhook> second = registrar.register(item, createSCMRepo(REPO));
+        runPendingTasks();
+
+        assertThat(first.isCompletedExceptionally(), is(true));
+        assertThat(second.isCompletedExceptionally(), is(false));
+        assertThat(webhookRegistry.isRegistered(createSCMRepo(REPO)), is(true));
+    }
+
+    @Test
+    public void testRegisterAllRecordsEveryRepository() {
+        BitbucketSCMRepository repo1 = createSCMRepo(REPO);
+        BitbucketSCMRepository repo2 = createSCMRepo("other-repo");
+        when(webhookHandler.register(BASE_URL, globalCredentialsProvider, repo1, false)).thenReturn(createWebhook(1));
+        when(webhookHandler.register(BASE_URL, globalCredentialsProvider, repo2, false)).thenReturn(createWebhook(2));
+
+        CompletableFuture<Void> result = registrar.registerAll(item, Arrays.asList(repo1, repo2, repo1));
+        assertThat(result.isDone(), is(false));
+        runPendingTasks();
+
+        assertThat(result.isDone(), is(true));
+        assertThat(webhookRegistry.isRegistered(repo1), is(true));
+        assertThat(webhookRegistry.isRegistered(repo2), is(true));
+        verify(webhookHandler, times(2)).register(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void testUnknownServerFailsRegistration() {
+        BitbucketSCMRepository repo = new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, REPO, REPO,
+                "unknownServer", "");
+
+        CompletableFuture<BitbucketWebhook> result = registrar.register(item, repo);
+        runPendingTasks();
+
+        assertThat(result.isCompletedExceptionally(), is(true));
+        verifyZeroInteractions(webhookHandler);
+    }
+
+    private BitbucketSCMRepository createSCMRepo(String repositorySlug) {
+        return new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, repositorySlug, repositorySlug,
+                SERVER_ID, "");
+    }
+
+    private BitbucketWebhook createWebhook(int id) {
+        return new BitbucketWebhook(id, "webhook", emptySet(), "http://localhost/jenkins", true);
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.poll().run();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram("test");
+
+    @Test
+    public void testEmpty() {
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getMean(), is(0L));
+        assertThat(histogram.getP99(), is(0L));
+    }
+
+    @Test
+    public void testPercentilesAreBucketUpperBounds() {
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(2_000);
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getP50(), is(50L));
+        assertThat(histogram.getP95(), is(2_000L));
+        assertThat(histogram.getMax(), is(2_000L));
+        assertThat(histogram.getMean(), is(236L));
+    }
+
+    @Test
+    public void testLatenciesPastLastBucketReportMax() {
+        histogram.record(1_000_000);
+
+        assertThat(histogram.getP50(), is(1_000_000L));
+        assertThat(histogram.getBucketCounts()[LatencyHistogram.BUCKET_BOUNDS.length], is(1L));
+    }
+
+    @Test
+    public void testNegativeLatenciesAreRecordedAsZero() {
+        histogram.record(-5);
+
+        assertThat(histogram.getMax(), is(0L));
+        assertThat(histogram.getBucketCounts()[0], is(1L));
+    }
+}
@@ -0,0 +1,42 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TriggerTimingsTest {
+
+    @Test
+    public void testStageDurationSkipsUnrecordedStages() {
+        TriggerTimings timings = TriggerTimings.receivedAt(1_000);
+        timings.record(TriggerStage.DISPATCHED, 1_100);
+        timings.record(TriggerStage.POLL_STARTED, 1_500);
+
+        assertThat(timings.getStageDuration(TriggerStage.DISPATCHED), is(Optional.of(100L)));
+        assertThat(timings.getStageDuration(TriggerStage.POLL_STARTED), is(Optional.of(400L)));
+        assertThat(timings.getStageDuration(TriggerStage.QUEUED), is(Optional.empty()));
+        assertThat(timings.getStageDuration(TriggerStage.RECEIVED), is(Optional.empty()));
+    }
+
+    @Test
+    public void testTotalDurationUsesLatestStage() {
+        TriggerTimings timings = TriggerTimings.receivedAt(1_000);
+        timings.record(TriggerStage.BUILD_STARTED, 4_000);
+        timings.record(TriggerStage.DISPATCHED, 1_100);
+
+        assertThat(timings.getTotalDuration(), is(Optional.of(3_000L)));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        TriggerTimings timings = TriggerTimings.receivedAt(1_000);
+        TriggerTimings copy = timings.copy();
+        copy.record(TriggerStage.DISPATCHED, 1_100);
+
+        assertThat(timings.getTimestamp(TriggerStage.DISPATCHED), is(Optional.empty()));
+        assertThat(copy.getTimestamp(TriggerStage.RECEIVED), is(Optional.of(1_000L)));
+    }
+}
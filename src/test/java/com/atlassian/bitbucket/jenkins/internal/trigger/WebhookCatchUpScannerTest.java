@@ -0,0 +1,214 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketProjectClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WebhookCatchUpScannerTest {
+
+    private static final String BASE_URL = "http://localhost:7990/bitbucket";
+    private static final RepositoryKey KEY = new RepositoryKey("serverId", PROJECT, REPO, "");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mock
+    private BitbucketClientFactory clientFactory;
+    @Mock
+    private BitbucketClientFactoryProvider clientFactoryProvider;
+    @Mock
+    private Jenkins jenkins;
+    @Mock
+    private JenkinsProvider jenkinsProvider;
+    @Mock
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    @Mock
+    private BitbucketPluginConfiguration pluginConfiguration;
+    @Mock
+    private BitbucketProjectClient projectClient;
+    private RefHeadStore refHeadStore;
+    @Mock
+    private BitbucketRepositoryClient repositoryClient;
+    private WebhookCatchUpScanner scanner;
+    @Mock
+    private BitbucketWebhookConsumer webhookConsumer;
+    private WebhookRegistry webhookRegistry;
+
+    @Before
+    public void setup() throws Exception {
+        when(jenkinsProvider.get()).thenReturn(jenkins);
+        when(jenkins.getRootDir()).thenReturn(temporaryFolder.newFolder());
+        when(clientFactory.getProjectClient(PROJECT.toUpperCase())).thenReturn(projectClient);
+        when(projectClient.getRepositoryClient(REPO)).thenReturn(repositoryClient);
+        refHeadStore = new RefHeadStore(jenkinsProvider);
+        webhookRegistry = new WebhookRegistry(jenkinsProvider, Clock.systemUTC(), Runnable::run);
+        scanner = new WebhookCatchUpScanner(clientFactoryProvider, pluginConfiguration, webhookConsumer,
+                jenkinsToBitbucketCredentials, refHeadStore, webhookRegistry);
+    }
+
+    @Test
+    public void testFirstScanRecordsHeadsWithoutReplaying() {
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "aaa")));
+
+        WebhookCatchUpScanner.Scan result = scanner.scan(clientFactory, KEY);
+
+        assertThat(result.getMissedEvent().isPresent(), is(false));
+        assertThat(result.getHeads(), hasEntry("refs/heads/master", "aaa"));
+    }
+
+    @Test
+    public void testHeadsAreNotUpdatedWhenReplayFails() throws Exception {
+        mockServer();
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "bbb")));
+        doThrow(new IllegalStateException("replay failed"))
+                .when(webhookConsumer).process(any(RefsChangedWebhookEvent.class));
+
+        scanner.execute(new StreamTaskListener(new ByteArrayOutputStream()));
+
+        assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "aaa"));
+    }
+
+    @Test
+    public void testHeadsAreUpdatedAfterReplay() throws Exception {
+        mockServer();
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "bbb")));
+        doAnswer(invocation -> {
+            assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "aaa"));
+            return null;
+        }).when(webhookConsumer).process(any(RefsChangedWebhookEvent.class));
+
+        scanner.execute(new StreamTaskListener(new ByteArrayOutputStream()));
+
+        verify(webhookConsumer).process(any(RefsChangedWebhookEvent.class));
+        assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "bbb"));
+    }
+
+    @Test
+    public void testHeadsRecordedByWebhookDuringScanAreKept() throws Exception {
+        mockServer();
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "bbb")));
+        BitbucketRef ref = new BitbucketRef("refs/heads/master", "master", BitbucketRefType.BRANCH);
+        doAnswer(invocation -> {
+            refHeadStore.recordChanges(KEY, singletonList(
+                    new BitbucketRefChange(ref, ref.getId(), "bbb", "ccc", BitbucketRefChangeType.UPDATE)));
+            return null;
+        }).when(webhookConsumer).process(any(RefsChangedWebhookEvent.class));
+
+        scanner.execute(new StreamTaskListener(new ByteArrayOutputStream()));
+
+        assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "ccc"));
+    }
+
+    @Test
+    public void testMirrorRegistrationIsReplayedToUpstreamJobsOnly() throws Exception {
+        mockServer();
+        webhookRegistry.remove(KEY);
+        webhookRegistry.record(new RepositoryKey("serverId", PROJECT, REPO, "mirror"),
+                new BitbucketWebhook(2, "webhook", emptySet(), BASE_URL, true));
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "bbb")));
+
+        scanner.execute(new StreamTaskListener(new ByteArrayOutputStream()));
+
+        // jobs cloning from the mirror are left to its mirror synchronized webhooks
+        verify(webhookConsumer).process(argThat((RefsChangedWebhookEvent event) ->
+                !(event instanceof MirrorSynchronizedWebhookEvent)));
+        assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "bbb"));
+    }
+
+    @Test
+    public void testNewAndMovedBranchesAreReplayed() {
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches())
+                .thenReturn(Stream.of(branch("master", "bbb"), branch("feature", "ccc")));
+        when(repositoryClient.getRepository()).thenReturn(
+                new BitbucketRepository(1, REPO, null, new BitbucketProject(PROJECT, null, PROJECT), REPO,
+                        RepositoryState.AVAILABLE));
+
+        RefsChangedWebhookEvent event = scanner.scan(clientFactory, KEY).getMissedEvent().get();
+
+        assertThat(event.getChanges(), hasSize(2));
+        Map<String, BitbucketRefChangeType> changeTypes = event.getChanges().stream()
+                .collect(toMap(change -> change.getRef().getDisplayId(),
+                        BitbucketRefChange::getType));
+        assertThat(changeTypes, hasEntry("master", BitbucketRefChangeType.UPDATE));
+        assertThat(changeTypes, hasEntry("feature", BitbucketRefChangeType.ADD));
+        assertThat(refHeadStore.getHeads(KEY).get(), hasEntry("refs/heads/master", "aaa"));
+    }
+
+    @Test
+    public void testUnchangedBranchesAreNotReplayed() {
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "aaa")));
+
+        assertThat(scanner.scan(clientFactory, KEY).getMissedEvent().isPresent(), is(false));
+    }
+
+    @Test
+    public void testWebhookChangesUpdateTrackedHeads() {
+        refHeadStore.setHeads(KEY, singletonMap("refs/heads/master", "aaa"));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(branch("master", "bbb")));
+        BitbucketRef ref = new BitbucketRef("refs/heads/master", "master", BitbucketRefType.BRANCH);
+
+        refHeadStore.recordChanges(new RepositoryKey("serverId", PROJECT, REPO, "mirror"),
+                singletonList(
+                        new BitbucketRefChange(ref, ref.getId(), "aaa", "bbb", BitbucketRefChangeType.UPDATE)));
+
+        assertThat(scanner.scan(clientFactory, KEY).getMissedEvent().isPresent(), is(false));
+    }
+
+    private void mockServer() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        GlobalCredentialsProvider globalCredentialsProvider = mock(GlobalCredentialsProvider.class);
+        when(pluginConfiguration.getServerById("serverId")).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BASE_URL);
+        when(serverConfiguration.getGlobalCredentialsProvider(anyString())).thenReturn(globalCredentialsProvider);
+        when(globalCredentialsProvider.getGlobalAdminCredentials()).thenReturn(Optional.empty());
+        when(clientFactoryProvider.getClient(BASE_URL, null)).thenReturn(clientFactory);
+        when(repositoryClient.getRepository()).thenReturn(
+                new BitbucketRepository(1, REPO, null, new BitbucketProject(PROJECT, null, PROJECT), REPO,
+                        RepositoryState.AVAILABLE));
+        webhookRegistry.record(KEY, new BitbucketWebhook(1, "webhook", emptySet(), BASE_URL, true));
+    }
+
+    private static BitbucketBranch branch(String name, String latestCommit) {
+        return new BitbucketBranch("refs/heads/" + name, name, latestCommit, "master".equals(name));
+    }
+}
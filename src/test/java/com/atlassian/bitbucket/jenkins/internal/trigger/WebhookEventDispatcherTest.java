@@ -0,0 +1,171 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.JournalEntry;
+import com.atlassian.bitbucket.jenkins.internal.trigger.journal.WebhookEventJournal;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WebhookEventDispatcherTest {
+
+    @Mock
+    private BitbucketWebhookConsumer consumer;
+    private WebhookEventDispatcher dispatcher;
+    @Mock
+    private JournalEntry entry;
+    @Mock
+    private WebhookEventJournal journal;
+    @Mock
+    private PullRequestWebhookEvent pullRequestEvent;
+    @Mock
+    private RefsChangedWebhookEvent refsChangedEvent;
+
+    @Before
+    public void setup() {
+        dispatcher = new WebhookEventDispatcher(consumer, journal, Runnable::run);
+        lenient().when(entry.getOffset()).thenReturn(10L);
+        lenient().when(entry.getNextOffset()).thenReturn(42L);
+    }
+
+    @Test
+    public void testAcceptJournalsBeforeProcessing() throws IOException {
+        byte[] payload = new byte[0];
+        when(journal.append(REPO_REF_CHANGE.getEventId(), payload)).thenReturn(entry);
+        mockUnprocessed(entry);
+
+        dispatcher.accept(REPO_REF_CHANGE.getEventId(), payload, refsChangedEvent, 1000L);
+
+        verify(journal).append(REPO_REF_CHANGE.getEventId(), payload);
+        verify(consumer).process(eq(refsChangedEvent), argThat(receivedAt(1000L)));
+        verify(journal).checkpoint(42L);
+        verify(entry, never()).getPayload();
+    }
+
+    @Test
+    public void testAcceptedEventIsNotDispatchedOnceProcessed() throws IOException {
+        when(journal.append(anyString(), any())).thenReturn(entry);
+        mockUnprocessed(entry);
+
+        dispatcher.accept(REPO_REF_CHANGE.getEventId(), new byte[0], refsChangedEvent, 1000L);
+        when(journal.getCheckpoint()).thenReturn(42L);
+        dispatcher.replayUnprocessed();
+
+        verify(consumer).process(eq(refsChangedEvent), any(TriggerTimings.class));
+        verify(journal).readFrom(eq(42L), any());
+    }
+
+    @Test
+    public void testAcceptProcessesImmediatelyWhenJournalFails() throws IOException {
+        when(journal.append(anyString(), any())).thenThrow(new IOException("disk full"));
+
+        dispatcher.accept(REPO_REF_CHANGE.getEventId(), new byte[0], refsChangedEvent, 1000L);
+
+        verify(consumer).process(eq(refsChangedEvent), any(TriggerTimings.class));
+        verify(journal, never()).checkpoint(anyLong());
+    }
+
+    @Test
+    public void testCheckpointsEvenWhenProcessingFails() throws IOException {
+        when(journal.append(anyString(), any())).thenReturn(entry);
+        mockUnprocessed(entry);
+        doThrow(new RuntimeException("boom"))
+                .when(consumer).process(eq(refsChangedEvent), any(TriggerTimings.class));
+
+        dispatcher.accept(REPO_REF_CHANGE.getEventId(), new byte[0], refsChangedEvent, 1000L);
+
+        verify(journal).checkpoint(42L);
+    }
+
+    @Test
+    public void testAcceptDispatchesPullRequestEvent() throws IOException {
+        byte[] payload = new byte[0];
+        when(journal.append(PULL_REQUEST_OPENED.getEventId(), payload)).thenReturn(entry);
+        mockUnprocessed(entry);
+
+        dispatcher.accept(PULL_REQUEST_OPENED.getEventId(), payload, pullRequestEvent, 1000L);
+
+        verify(consumer).process(pullRequestEvent);
+        verify(consumer, never()).process(any(RefsChangedWebhookEvent.class), any(TriggerTimings.class));
+        verify(journal).checkpoint(42L);
+    }
+
+    @Test
+    public void testReplayDoesNotMoveCheckpoint() throws IOException {
+        mockMirrorSynchronizedEntry();
+        doAnswer(invocation -> {
+            invocation.<Consumer<JournalEntry>>getArgument(2).accept(entry);
+            return null;
+        }).when(journal).readRange(eq(0L), eq(2000L), any());
+
+        int replayed = dispatcher.replay(0L, 2000L);
+
+        assertThat(replayed, is(1));
+        verify(consumer).process(any(MirrorSynchronizedWebhookEvent.class), argThat(receivedAt(1000L)));
+        verify(journal, never()).checkpoint(anyLong());
+    }
+
+    @Test
+    public void testReplayUnprocessedParsesJournaledEvents() throws IOException {
+        mockMirrorSynchronizedEntry();
+        mockUnprocessed(entry);
+
+        dispatcher.replayUnprocessed();
+
+        verify(consumer).process(any(MirrorSynchronizedWebhookEvent.class), argThat(receivedAt(1000L)));
+        verify(journal).checkpoint(42L);
+    }
+
+    @Test
+    public void testReplayUnprocessedDispatchesJournaledPullRequestEvent() throws IOException {
+        when(entry.getEventKey()).thenReturn(PULL_REQUEST_FROM_REF_UPDATED.getEventId());
+        when(entry.getTimestamp()).thenReturn(1000L);
+        when(entry.getPayload()).thenReturn(
+                IOUtils.toByteArray(getClass().getResource("/webhook/pr_from_ref_updated_body.json")));
+        mockUnprocessed(entry);
+
+        dispatcher.replayUnprocessed();
+
+        verify(consumer).process(any(PullRequestWebhookEvent.class));
+        verify(journal).checkpoint(42L);
+    }
+
+    private void mockMirrorSynchronizedEntry() throws IOException {
+        when(entry.getEventKey()).thenReturn(MIRROR_SYNCHRONIZED_EVENT.getEventId());
+        when(entry.getTimestamp()).thenReturn(1000L);
+        when(entry.getPayload()).thenReturn(
+                IOUtils.toByteArray(getClass().getResource("/webhook/mirrors_synchronized_body.json")));
+    }
+
+    /**
+     * Makes the journal return the entry when read from offset 10, which is where the entry starts.
+     */
+    private void mockUnprocessed(JournalEntry unprocessed) throws IOException {
+        lenient().when(journal.getCheckpoint()).thenReturn(10L);
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<JournalEntry>>getArgument(1).accept(unprocessed);
+            return null;
+        }).when(journal).readFrom(eq(10L), any());
+    }
+
+    private static ArgumentMatcher<TriggerTimings> receivedAt(long timestamp) {
+        return timings -> timings.getTimestamp(TriggerStage.RECEIVED).equals(Optional.of(timestamp));
+    }
+}
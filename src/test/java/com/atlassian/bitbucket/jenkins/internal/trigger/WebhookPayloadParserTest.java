@@ -0,0 +1,149 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+
+public class WebhookPayloadParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebhookPayloadParser parser = new WebhookPayloadParser();
+
+    @Test
+    public void testParseMirrorSynchronizedMatchesDataBinding() throws IOException {
+        byte[] body = resource("/webhook/mirrors_synchronized_body.json");
+
+        MirrorSynchronizedWebhookEvent expected = objectMapper.readValue(body, MirrorSynchronizedWebhookEvent.class);
+        MirrorSynchronizedWebhookEvent actual = parser.parse(body, MirrorSynchronizedWebhookEvent.class);
+
+        assertSameEvent(actual, expected);
+        assertThat(actual.getMirrorServer().get().getId(), is(expected.getMirrorServer().get().getId()));
+        assertThat(actual.getMirrorServer().get().getName(), is(expected.getMirrorServer().get().getName()));
+        assertThat(actual.getSyncType(), is(expected.getSyncType()));
+    }
+
+    @Test
+    public void testParsePullRequestMatchesDataBinding() throws IOException {
+        byte[] body = resource("/webhook/pr_from_ref_updated_body.json");
+
+        PullRequestWebhookEvent expected = objectMapper.readValue(body, PullRequestWebhookEvent.class);
+        PullRequestWebhookEvent actual = parser.parsePullRequestEvent(body);
+
+        assertThat(actual.getEventKey(), is(expected.getEventKey()));
+        assertThat(actual.getDate(), is(expected.getDate()));
+        assertThat(actual.getActor().get().getName(), is(expected.getActor().get().getName()));
+        BitbucketPullRequest actualPullRequest = actual.getPullRequest();
+        BitbucketPullRequest expectedPullRequest = expected.getPullRequest();
+        assertThat(actualPullRequest.getId(), is(expectedPullRequest.getId()));
+        assertThat(actualPullRequest.getTitle(), is(expectedPullRequest.getTitle()));
+        assertThat(actualPullRequest.getState(), is(expectedPullRequest.getState()));
+        assertThat(actualPullRequest.getFromRef().getDisplayId(), is(expectedPullRequest.getFromRef().getDisplayId()));
+        assertThat(actualPullRequest.getFromRef().getLatestCommit(),
+                is(expectedPullRequest.getFromRef().getLatestCommit()));
+        assertThat(actualPullRequest.getToRef().getLatestCommit(),
+                is(expectedPullRequest.getToRef().getLatestCommit()));
+        assertThat(actualPullRequest.getToRef().getRepository().getSlug(),
+                is(expectedPullRequest.getToRef().getRepository().getSlug()));
+        assertThat(actualPullRequest.isFromOtherRepository(), is(true));
+    }
+
+    @Test
+    public void testParseRefsChangedMatchesDataBinding() throws IOException {
+        byte[] body = resource("/webhook/refs_changed_body.json");
+
+        RefsChangedWebhookEvent expected = objectMapper.readValue(body, RefsChangedWebhookEvent.class);
+        RefsChangedWebhookEvent actual = parser.parse(body, RefsChangedWebhookEvent.class);
+
+        assertSameEvent(actual, expected);
+        assertThat(actual.getActor().get().getName(), is(expected.getActor().get().getName()));
+        assertThat(actual.getActor().get().getDisplayName(), is(expected.getActor().get().getDisplayName()));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testMissingRequiredFieldIsRejected() throws IOException {
+        parser.parse(bytes("{\"eventKey\": \"repo:refs_changed\", \"date\": 0, \"changes\": []}"),
+                RefsChangedWebhookEvent.class);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testUnknownEnumIsRejected() throws IOException {
+        parser.parse(bytes("{\"eventKey\": \"repo:refs_changed\", \"date\": 0, \"changes\": [{\"type\": \"MOVE\"}], " +
+                           "\"repository\": {}}"),
+                RefsChangedWebhookEvent.class);
+    }
+
+    @Test
+    public void testParseModifiedRepositories() throws IOException {
+        List<BitbucketRepository> repositories = parser.parseModifiedRepositories(
+                bytes("{\"eventKey\": \"repo:modified\", \"date\": 0, " +
+                      "\"old\": {\"slug\": \"old-repo\", \"project\": {\"key\": \"OLD\", \"name\": \"Old\"}}, " +
+                      "\"new\": {\"slug\": \"new-repo\", \"project\": {\"key\": \"NEW\", \"name\": \"New\"}}}"));
+
+        assertThat(repositories, hasSize(2));
+        assertThat(repositories.get(0).getProject().getKey(), is("OLD"));
+        assertThat(repositories.get(0).getSlug(), is("old-repo"));
+        assertThat(repositories.get(1).getProject().getKey(), is("NEW"));
+        assertThat(repositories.get(1).getSlug(), is("new-repo"));
+    }
+
+    @Test
+    public void testUnusedFieldsAreSkipped() throws IOException {
+        RefsChangedWebhookEvent event = parser.parse(
+                bytes("{\"extra\": {\"nested\": [1, {\"a\": [true]}]}, \"eventKey\": \"repo:refs_changed\", " +
+                      "\"date\": 0, \"changes\": [{\"ref\": {\"id\": \"refs/heads/master\", \"extra\": {}}, " +
+                      "\"type\": \"ADD\"}], \"repository\": {\"slug\": \"repo\", \"links\": {\"other\": []}}}"),
+                RefsChangedWebhookEvent.class);
+
+        assertThat(event.getChanges(), hasSize(1));
+        assertThat(event.getChanges().get(0).getRef().getId(), is("refs/heads/master"));
+        assertThat(event.getRepository().getSlug(), is("repo"));
+        assertThat(event.getRepository().getCloneUrls(), hasSize(0));
+    }
+
+    private static void assertSameEvent(RefsChangedWebhookEvent actual, RefsChangedWebhookEvent expected) {
+        assertThat(actual.getEventKey(), is(expected.getEventKey()));
+        assertThat(actual.getDate(), is(expected.getDate()));
+        assertThat(actual.getRepository().getId(), is(expected.getRepository().getId()));
+        assertThat(actual.getRepository().getName(), is(expected.getRepository().getName()));
+        assertThat(actual.getRepository().getSlug(), is(expected.getRepository().getSlug()));
+        assertThat(actual.getRepository().getState(), is(expected.getRepository().getState()));
+        assertThat(actual.getRepository().getSelfLink(), is(expected.getRepository().getSelfLink()));
+        assertThat(actual.getRepository().getProject().getKey(), is(expected.getRepository().getProject().getKey()));
+        assertThat(actual.getRepository().getCloneUrls(), hasSize(expected.getRepository().getCloneUrls().size()));
+        for (int i = 0; i < expected.getRepository().getCloneUrls().size(); i++) {
+            assertThat(actual.getRepository().getCloneUrls().get(i).getHref(),
+                    is(expected.getRepository().getCloneUrls().get(i).getHref()));
+        }
+        assertThat(actual.getChanges(), hasSize(expected.getChanges().size()));
+        for (int i = 0; i < expected.getChanges().size(); i++) {
+            BitbucketRefChange actualChange = actual.getChanges().get(i);
+            BitbucketRefChange expectedChange = expected.getChanges().get(i);
+            assertThat(actualChange.getRef().getId(), is(expectedChange.getRef().getId()));
+            assertThat(actualChange.getRef().getDisplayId(), is(expectedChange.getRef().getDisplayId()));
+            assertThat(actualChange.getRef().getType(), is(expectedChange.getRef().getType()));
+            assertThat(actualChange.getFromHash(), is(expectedChange.getFromHash()));
+            assertThat(actualChange.getToHash(), is(expectedChange.getToHash()));
+            assertThat(actualChange.getType(), is(expectedChange.getType()));
+        }
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] resource(String path) throws IOException {
+        return IOUtils.toByteArray(getClass().getResource(path));
+    }
+}
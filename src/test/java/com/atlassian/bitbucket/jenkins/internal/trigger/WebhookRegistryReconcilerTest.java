@@ -0,0 +1,106 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.atlassian.bitbucket.jenkins.internal.trigger.register.WebhookRegistrationFailed;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WebhookRegistryReconcilerTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final Instant NOW = Instant.ofEpochMilli(1_600_000_000_000L);
+    private static final String SERVER_ID = "serverId";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mock
+    private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Mock
+    private GlobalCredentialsProvider globalCredentialsProvider;
+    @Mock
+    private Jenkins jenkins;
+    @Mock
+    private JenkinsProvider jenkinsProvider;
+    @Mock
+    private RetryingWebhookHandler retryingWebhookHandler;
+    private WebhookRegistryReconciler reconciler;
+    @Mock
+    private BitbucketServerConfiguration serverConfiguration;
+    private WebhookRegistry webhookRegistry;
+
+    @Before
+    public void setup() throws Exception {
+        when(jenkinsProvider.get()).thenReturn(jenkins);
+        when(jenkins.getRootDir()).thenReturn(temporaryFolder.newFolder());
+        when(bitbucketPluginConfiguration.getServerById(SERVER_ID)).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BASE_URL);
+        when(serverConfiguration.getGlobalCredentialsProvider(anyString())).thenReturn(globalCredentialsProvider);
+        webhookRegistry = new WebhookRegistry(jenkinsProvider, Clock.fixed(NOW, ZoneOffset.UTC), Runnable::run);
+        reconciler = new WebhookRegistryReconciler(bitbucketPluginConfiguration, retryingWebhookHandler,
+                webhookRegistry);
+    }
+
+    @Test
+    public void testFailedRepositoryIsRemoved() throws Exception {
+        webhookRegistry.record(createSCMRepo("repo"), createWebhook(1));
+        when(retryingWebhookHandler.register(eq(BASE_URL), any(), any()))
+                .thenThrow(new WebhookRegistrationFailed("failed", new RuntimeException()));
+
+        reconciler.execute(TaskListener.NULL);
+
+        assertThat(webhookRegistry.get(RepositoryKey.of(createSCMRepo("repo"))).isPresent(), is(false));
+    }
+
+    @Test
+    public void testRepositoryWithoutWebhookIsRemoved() throws Exception {
+        webhookRegistry.record(createSCMRepo("repo"), createWebhook(1));
+        webhookRegistry.record(createSCMRepo("other-repo"), createWebhook(2));
+        when(retryingWebhookHandler.register(eq(BASE_URL), any(),
+                argThat((BitbucketSCMRepository repository) -> "repo".equals(repository.getRepositorySlug()))))
+                .thenReturn(null);
+        when(retryingWebhookHandler.register(eq(BASE_URL), any(),
+                argThat((BitbucketSCMRepository repository) -> "other-repo".equals(repository.getRepositorySlug()))))
+                .thenReturn(createWebhook(3));
+
+        reconciler.execute(TaskListener.NULL);
+
+        assertThat(webhookRegistry.get(RepositoryKey.of(createSCMRepo("repo"))).isPresent(), is(false));
+        assertThat(webhookRegistry.get(RepositoryKey.of(createSCMRepo("other-repo"))).get().getWebhookId(), is(3));
+    }
+
+    private BitbucketSCMRepository createSCMRepo(String slug) {
+        return new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, slug, slug, SERVER_ID, "");
+    }
+
+    private BitbucketWebhook createWebhook(int id) {
+        return new BitbucketWebhook(id, "webhook", emptySet(), "http://localhost/jenkins", true);
+    }
+}
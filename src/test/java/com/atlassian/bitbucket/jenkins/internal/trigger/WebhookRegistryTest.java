@@ -0,0 +1,148 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.BulkChange;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WebhookRegistryTest {
+
+    private static final Instant NOW = Instant.ofEpochMilli(1_600_000_000_000L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mock
+    private Jenkins jenkins;
+    @Mock
+    private JenkinsProvider jenkinsProvider;
+
+    @Before
+    public void setup() throws Exception {
+        when(jenkinsProvider.get()).thenReturn(jenkins);
+        when(jenkins.getRootDir()).thenReturn(temporaryFolder.newFolder());
+    }
+
+    @Test
+    public void testBulkChangeDefersSave() throws Exception {
+        WebhookRegistry registry = createRegistry(NOW);
+        try (BulkChange bc = new BulkChange(registry)) {
+            registry.record(createSCMRepo(""), createWebhook(1));
+            assertThat(registry.getConfigFile().exists(), is(false));
+            bc.commit();
+        }
+
+        assertThat(registry.getConfigFile().exists(), is(true));
+    }
+
+    @Test
+    public void testChangesAreSavedTogether() {
+        List<Runnable> saves = new ArrayList<>();
+        WebhookRegistry registry = new WebhookRegistry(jenkinsProvider, Clock.fixed(NOW, ZoneOffset.UTC), saves::add);
+
+        registry.record(createSCMRepo(""), createWebhook(1));
+        registry.record(createSCMRepo("mirror"), createWebhook(2));
+        registry.remove(RepositoryKey.of(createSCMRepo("")));
+
+        assertThat(saves, hasSize(1));
+        assertThat(registry.getConfigFile().exists(), is(false));
+        saves.get(0).run();
+        assertThat(createRegistry(NOW).getAll(), hasSize(1));
+
+        registry.record(createSCMRepo(""), createWebhook(3));
+        assertThat(saves, hasSize(2));
+    }
+
+    @Test
+    public void testExpiredRegistrationIsNotTrusted() {
+        createRegistry(NOW).record(createSCMRepo(""), createWebhook(1));
+
+        assertThat(createRegistry(NOW.plusMillis(WebhookRegistry.TRUST_PERIOD - 1)).isRegistered(createSCMRepo("")),
+                is(true));
+        assertThat(createRegistry(NOW.plusMillis(WebhookRegistry.TRUST_PERIOD)).isRegistered(createSCMRepo("")),
+                is(false));
+    }
+
+    @Test
+    public void testIsRegisteredIgnoresKeyCase() {
+        WebhookRegistry registry = createRegistry(NOW);
+
+        registry.record(createSCMRepo(""), createWebhook(1));
+
+        assertThat(registry.isRegistered(new BitbucketSCMRepository(null, null, PROJECT, PROJECT.toUpperCase(),
+                REPO, REPO.toUpperCase(), "serverId", "")), is(true));
+    }
+
+    @Test
+    public void testMirrorIsRegisteredSeparately() {
+        WebhookRegistry registry = createRegistry(NOW);
+
+        registry.record(createSCMRepo(""), createWebhook(1));
+
+        assertThat(registry.isRegistered(createSCMRepo("mirror")), is(false));
+    }
+
+    @Test
+    public void testRegistrationsSurviveReload() {
+        createRegistry(NOW).record(createSCMRepo(""), createWebhook(42));
+
+        WebhookRegistry reloaded = createRegistry(NOW);
+
+        assertThat(reloaded.isRegistered(createSCMRepo("")), is(true));
+        assertThat(reloaded.getAll(), hasSize(1));
+        assertThat(reloaded.get(RepositoryKey.of(createSCMRepo(""))).get().getWebhookId(), is(42));
+    }
+
+    @Test
+    public void testRemove() {
+        WebhookRegistry registry = createRegistry(NOW);
+        registry.record(createSCMRepo(""), createWebhook(1));
+
+        registry.remove(RepositoryKey.of(createSCMRepo("")));
+
+        assertThat(registry.isRegistered(createSCMRepo("")), is(false));
+        assertThat(createRegistry(NOW).isRegistered(createSCMRepo("")), is(false));
+    }
+
+    @Test
+    public void testRegistrationIsTrustedUntilNextReconciliation() {
+        createRegistry(NOW).record(createSCMRepo(""), createWebhook(1));
+
+        assertThat(createRegistry(NOW.plusMillis(WebhookRegistryReconciler.RECONCILE_PERIOD))
+                .isRegistered(createSCMRepo("")), is(true));
+    }
+
+    private WebhookRegistry createRegistry(Instant now) {
+        return new WebhookRegistry(jenkinsProvider, Clock.fixed(now, ZoneOffset.UTC), Runnable::run);
+    }
+
+    private BitbucketSCMRepository createSCMRepo(String mirrorName) {
+        return new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, REPO, REPO, "serverId", mirrorName);
+    }
+
+    private BitbucketWebhook createWebhook(int id) {
+        return new BitbucketWebhook(id, "webhook", emptySet(), "http://localhost/jenkins", true);
+    }
+}
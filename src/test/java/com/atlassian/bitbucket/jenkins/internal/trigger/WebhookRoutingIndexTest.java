@@ -0,0 +1,166 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.model.FreeStyleProject;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Set;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WebhookRoutingIndexTest {
+
+    @Mock
+    private Jenkins jenkins;
+    @Mock
+    private JenkinsProvider jenkinsProvider;
+    private WebhookRoutingIndex index;
+
+    @Before
+    public void setup() {
+        when(jenkinsProvider.get()).thenReturn(jenkins);
+        index = new WebhookRoutingIndex(jenkinsProvider);
+    }
+
+    @Test
+    public void testDeletedJobIsRemoved() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        index.remove("existing");
+
+        assertThat(getCandidateJobs(""), empty());
+    }
+
+    @Test
+    public void testDifferentMirrorIsNotCandidate() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+
+        assertThat(getCandidateJobs("mirror"), empty());
+    }
+
+    @Test
+    public void testIndexIsBuiltOnlyOnce() {
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(emptyList());
+
+        getCandidateJobs("");
+        getCandidateJobs("");
+
+        verify(jenkins, times(1)).getAllItems(any(Class.class));
+    }
+
+    @Test
+    public void testCopiedJobIsIndexed() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        FreeStyleProject copy = createProject("copy", createSCM("", createSCMRepo()));
+        new WebhookRoutingIndexListener(index).onCopied(existing, copy);
+
+        assertThat(getCandidateJobs(""), containsInAnyOrder("existing", "copy"));
+    }
+
+    @Test
+    public void testIndexIsBuiltAgainOnceJobsAreLoaded() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        FreeStyleProject loaded = createProject("loaded", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing), asList(existing, loaded));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        new WebhookRoutingIndexListener(index).onLoaded();
+
+        assertThat(getCandidateJobs(""), containsInAnyOrder("existing", "loaded"));
+    }
+
+    @Test
+    public void testJobWithoutTriggerIsIndexed() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+
+        // the trigger is checked when an event is dispatched, as it can be added without the job being re-indexed
+        assertThat(getCandidateJobs(""), contains("existing"));
+    }
+
+    @Test
+    public void testReindexPicksUpChangedSCM() {
+        BitbucketSCM scm = createSCM("", createSCMRepo());
+        FreeStyleProject existing = createProject("existing", scm);
+        FreeStyleProject other = createProject("other");
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(asList(existing, other));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        when(scm.getMirrorName()).thenReturn("mirror");
+        index.reindex(existing);
+
+        assertThat(getCandidateJobs(""), empty());
+        assertThat(getCandidateJobs("mirror"), contains("existing"));
+    }
+
+    @Test
+    public void testSavedJobIsReindexed() {
+        BitbucketSCM scm = createSCM("", createSCMRepo());
+        FreeStyleProject existing = createProject("existing", scm);
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        when(scm.getMirrorName()).thenReturn("mirror");
+        new WebhookRoutingIndexSaveableListener(index).onChange(existing, null);
+
+        assertThat(getCandidateJobs(""), empty());
+        assertThat(getCandidateJobs("mirror"), contains("existing"));
+    }
+
+    @Test
+    public void testRenamedJobIsMoved() {
+        FreeStyleProject existing = createProject("existing", createSCM("", createSCMRepo()));
+        when(jenkins.getAllItems(any(Class.class))).thenReturn(singletonList(existing));
+        assertThat(getCandidateJobs(""), contains("existing"));
+
+        index.rename("existing", "renamed");
+
+        assertThat(getCandidateJobs(""), contains("renamed"));
+    }
+
+    private FreeStyleProject createProject(String name, BitbucketSCM... scms) {
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        lenient().when(project.getFullName()).thenReturn(name);
+        lenient().doReturn(asList(scms)).when(project).getSCMs();
+        return project;
+    }
+
+    private BitbucketSCM createSCM(String mirrorName, BitbucketSCMRepository... repositories) {
+        BitbucketSCM scm = mock(BitbucketSCM.class);
+        lenient().when(scm.getMirrorName()).thenReturn(mirrorName);
+        lenient().when(scm.getRepositories()).thenReturn(asList(repositories));
+        return scm;
+    }
+
+    private BitbucketSCMRepository createSCMRepo() {
+        return new BitbucketSCMRepository("credentialId", "", PROJECT, PROJECT, REPO, REPO, "serverId", "");
+    }
+
+    private Set<String> getCandidateJobs(String mirrorName) {
+        return index.getCandidateJobs(PROJECT, REPO, mirrorName, emptyList());
+    }
+}
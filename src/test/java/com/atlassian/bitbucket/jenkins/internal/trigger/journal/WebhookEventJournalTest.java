@@ -0,0 +1,177 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+
+public class WebhookEventJournalTest {
+
+    private static final String EVENT_KEY = "repo:refs_changed";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Path directory;
+    private WebhookEventJournal journal;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.newFolder().toPath();
+        journal = new WebhookEventJournal(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void testAppendAndReadFrom() throws IOException {
+        JournalEntry first = journal.append(EVENT_KEY, bytes("first"));
+        JournalEntry second = journal.append(EVENT_KEY, bytes("second"));
+
+        assertThat(first.getOffset(), is(0L));
+        assertThat(second.getOffset(), is(first.getNextOffset()));
+        assertThat(payloads(readFrom(journal, 0)), contains("first", "second"));
+        assertThat(payloads(readFrom(journal, second.getOffset())), contains("second"));
+        assertThat(readFrom(journal, second.getNextOffset()), empty());
+        assertThat(readFrom(journal, 0).get(0).getEventKey(), is(EVENT_KEY));
+    }
+
+    @Test
+    public void testCheckpointIsPersistedAndMonotonic() throws IOException {
+        JournalEntry first = journal.append(EVENT_KEY, bytes("first"));
+        JournalEntry second = journal.append(EVENT_KEY, bytes("second"));
+        journal.checkpoint(second.getNextOffset());
+        journal.checkpoint(first.getNextOffset());
+        journal.close();
+
+        WebhookEventJournal reopened = new WebhookEventJournal(directory);
+
+        assertThat(reopened.getCheckpoint(), is(second.getNextOffset()));
+        assertThat(readFrom(reopened, reopened.getCheckpoint()), empty());
+    }
+
+    @Test
+    public void testGetRecentReturnsNewestFirst() throws IOException {
+        journal.append(EVENT_KEY, bytes("first"));
+        journal.append(EVENT_KEY, bytes("second"));
+        journal.append(EVENT_KEY, bytes("third"));
+
+        assertThat(payloads(journal.getRecent(2)), contains("third", "second"));
+    }
+
+    @Test
+    public void testGetRecentStopsAtCorruptEntry() throws IOException {
+        journal.append(EVENT_KEY, bytes("first"));
+        JournalEntry second = journal.append(EVENT_KEY, bytes("second"));
+        journal.append(EVENT_KEY, bytes("third"));
+        try (FileChannel channel = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")), second.getNextOffset() - 1);
+        }
+
+        // entries after the corrupt one are not replayed by readFrom, so they are not listed either
+        assertThat(payloads(journal.getRecent(2)), contains("first"));
+        assertThat(payloads(readFrom(journal, 0)), contains("first"));
+    }
+
+    @Test
+    public void testReadRange() throws IOException {
+        JournalEntry entry = journal.append(EVENT_KEY, bytes("first"));
+
+        assertThat(readRange(entry.getTimestamp(), entry.getTimestamp() + 1), hasSize(1));
+        assertThat(readRange(entry.getTimestamp() + 1, Long.MAX_VALUE), empty());
+        assertThat(readRange(0, entry.getTimestamp()), empty());
+    }
+
+    @Test
+    public void testTornEntryIsTruncatedOnOpen() throws IOException {
+        JournalEntry first = journal.append(EVENT_KEY, bytes("first"));
+        JournalEntry second = journal.append(EVENT_KEY, bytes("second"));
+        journal.close();
+        Path segment = onlySegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(second.getNextOffset() - 3);
+        }
+
+        WebhookEventJournal reopened = new WebhookEventJournal(directory);
+        assertThat(payloads(readFrom(reopened, 0)), contains("first"));
+        JournalEntry third = reopened.append(EVENT_KEY, bytes("third"));
+        reopened.close();
+
+        assertThat(third.getOffset(), is(first.getNextOffset()));
+        assertThat(payloads(readFrom(reopened, 0)), contains("first", "third"));
+    }
+
+    @Test
+    public void testGetRecentAcrossLimit() throws IOException {
+        journal.append(EVENT_KEY, bytes("first"));
+        journal.append(EVENT_KEY, bytes("second"));
+
+        assertThat(payloads(journal.getRecent(5)), contains("second", "first"));
+        assertThat(journal.getRecent(0), empty());
+    }
+
+    @Test
+    public void testReadFromSeeksToOffset() throws IOException {
+        journal.append(EVENT_KEY, bytes("first"));
+        JournalEntry second = journal.append(EVENT_KEY, bytes("second"));
+        journal.append(EVENT_KEY, bytes("third"));
+
+        List<JournalEntry> entries = readFrom(journal, second.getOffset());
+
+        assertThat(payloads(entries), contains("second", "third"));
+        assertThat(entries.get(0).getOffset(), is(second.getOffset()));
+        assertThat(entries.get(1).getOffset(), is(second.getNextOffset()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(path -> path.getFileName().toString().endsWith(".log"))
+                    .collect(toList());
+            assertThat(segments, hasSize(1));
+            return segments.get(0);
+        }
+    }
+
+    private static List<JournalEntry> readFrom(WebhookEventJournal journal, long offset) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        journal.readFrom(offset, entries::add);
+        return entries;
+    }
+
+    private List<JournalEntry> readRange(long from, long to) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        journal.readRange(from, to, entries::add);
+        return entries;
+    }
+
+    private static List<String> payloads(List<JournalEntry> entries) {
+        return entries.stream()
+                .map(entry -> new String(entry.getPayload(), StandardCharsets.UTF_8))
+                .collect(toList());
+    }
+}
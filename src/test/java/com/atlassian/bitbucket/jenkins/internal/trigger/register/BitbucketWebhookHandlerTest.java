@@ -17,6 +17,9 @@ import java.util.HashSet;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_MODIFIED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
@@ -72,6 +75,77 @@ public class BitbucketWebhookHandlerTest {
         verify(webhookClient, never()).deleteWebhook(anyInt());
     }
 
+    @Test
+    public void testSupportedPullRequestEventsAreSubscribed() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId(),
+                        PULL_REQUEST_FROM_REF_UPDATED.getEventId()))));
+
+        BitbucketWebhook result =
+                handler.register(defaultBuilder.isMirror(false).withPullRequestEvents(true).build());
+
+        assertThat(result.getEvents(), iterableWithSize(3));
+        assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_OPENED.getEventId()));
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_FROM_REF_UPDATED.getEventId()));
+    }
+
+    @Test
+    public void testPullRequestEventsAreNotSubscribedUnlessRequested() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId()))));
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
+
+        assertThat(result.getEvents(), iterableWithSize(1));
+        assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
+    }
+
+    @Test
+    public void testSubscribedPullRequestEventsAreKept() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId()))));
+        BitbucketWebhook existing = new BitbucketWebhook(1, WEBHOOK_NAME,
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId())), EXPECTED_URL,
+                true);
+        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId()))
+                .thenReturn(singleton(existing).stream());
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
+
+        assertThat(result, is(existing));
+        verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
+    }
+
+    @Test
+    public void testRepositoryModifiedEventIsSubscribed() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), REPO_MODIFIED.getEventId()))));
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
+
+        assertThat(result.getEvents(), iterableWithSize(2));
+        assertThat(result.getEvents(), hasItem(REPO_MODIFIED.getEventId()));
+    }
+
+    @Test
+    public void testExistingWebhookIsUpdatedWithPullRequestEvents() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId()))));
+        BitbucketWebhook existing =
+                new BitbucketWebhook(1, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), EXPECTED_URL, true);
+        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId()))
+                .thenReturn(singleton(existing).stream());
+
+        BitbucketWebhook result =
+                handler.register(defaultBuilder.isMirror(false).withPullRequestEvents(true).build());
+
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_OPENED.getEventId()));
+        verify(webhookClient).updateWebhook(eq(1), any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
+    }
+
     @Test
     public void testCorrectEventSubscriptionForMirrors() {
         WebhookRegisterRequest request = defaultBuilder.isMirror(true).build();
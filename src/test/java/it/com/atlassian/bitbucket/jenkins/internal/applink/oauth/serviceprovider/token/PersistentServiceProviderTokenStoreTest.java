@@ -138,6 +138,40 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testJournalIsReplayedOnLoad() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.put(REQUEST_TOKEN_1);
+        tokenStore.save();
+        tokenStore.put(REQUEST_TOKEN_2);
+        tokenStore.put(ACCESS_TOKEN_1);
+        tokenStore.remove(REQUEST_TOKEN_1.getToken());
+
+        TestServiceProviderTokenStore reloadedStore = new TestServiceProviderTokenStore(consumerStore, tokensXmlFile);
+        reloadedStore.load();
+
+        assertThat(reloadedStore.getEntityMap(), allOf(aMapWithSize(2),
+                hasEntry(is(REQUEST_TOKEN_2.getToken()), requestToken(REQUEST_TOKEN_2)),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1))));
+    }
+
+    @Test
+    public void testSaveCompactsJournal() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.put(REQUEST_TOKEN_1);
+        tokenStore.put(ACCESS_TOKEN_2);
+        assertThat(tokenStore.getJournalFile().exists(), is(true));
+
+        tokenStore.save();
+
+        assertThat(tokenStore.getJournalFile().exists(), is(false));
+        TestServiceProviderTokenStore reloadedStore = new TestServiceProviderTokenStore(consumerStore, tokensXmlFile);
+        reloadedStore.load();
+        assertThat(reloadedStore.getEntityMap(), allOf(aMapWithSize(2),
+                hasEntry(is(REQUEST_TOKEN_1.getToken()), requestToken(REQUEST_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
     private static TokenMatcher accessToken(ServiceProviderToken token) {
         return new TokenMatcher(true, token.getCallback(),
                 ofNullable(token.getConsumer()).map(Consumer::getKey).orElse(null), token.getTokenSecret(),
@@ -284,6 +318,11 @@ public class PersistentServiceProviderTokenStoreTest {
             return entityMap;
         }
 
+        @Override
+        public File getJournalFile() {
+            return super.getJournalFile();
+        }
+
         @VisibleForTesting
         public void setEntityMap(Map<String, ServiceProviderToken> entityMap) {
             this.entityMap = entityMap;